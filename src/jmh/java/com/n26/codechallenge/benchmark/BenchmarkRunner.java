@@ -0,0 +1,42 @@
+package com.n26.codechallenge.benchmark;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmarks once per thread count and writes all the results to a single JSON file.
+ *
+ * Arguments are regular JMH command line options, e.g. a benchmark filter or `-p size=10000`. The thread counts are
+ * read from the `benchmark.threads` system property (comma separated, default 1) and the results file from
+ * `benchmark.results` (default benchmarks.json). The thread count of every result is its `threads` field.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        final List<RunResult> results = new ArrayList<>();
+        for (String threads : System.getProperty("benchmark.threads", "1").split(",")) {
+            results.addAll(new Runner(new OptionsBuilder().parent(commandLine).threads(Integer.parseInt(threads.trim())).build()).run());
+        }
+        final Path file = Paths.get(System.getProperty("benchmark.results", "benchmarks.json")).toAbsolutePath();
+        Files.createDirectories(file.getParent());
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), true, "UTF-8")) {
+            ResultFormatFactory.getInstance(ResultFormatType.JSON, out).writeOut(results);
+        }
+        System.out.println("Results written to " + file);
+    }
+}
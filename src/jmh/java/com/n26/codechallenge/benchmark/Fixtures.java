@@ -0,0 +1,95 @@
+package com.n26.codechallenge.benchmark;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.repository.StorageEngine;
+import com.n26.codechallenge.repository.TransactionalRepository;
+import com.n26.codechallenge.service.ReadOptimizedTransactionService;
+import com.n26.codechallenge.service.ShardedTransactionService;
+import com.n26.codechallenge.service.TransactionalService;
+import com.n26.codechallenge.service.WriteOptimizedTransactionService;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Builds the services and stores the benchmarks run against
+ */
+public final class Fixtures {
+
+    /**
+     * The service implementations under benchmark
+     */
+    public enum Strategy {
+        READ_OPTIMIZED, WRITE_OPTIMIZED
+    }
+
+    static final long SEED = 42;
+
+    private static final int CHUNK = 100_000;
+
+    private Fixtures() {
+    }
+
+    static TransactionalService service(Strategy strategy, TransactionalRepository repository) {
+        return strategy == Strategy.READ_OPTIMIZED ? new ReadOptimizedTransactionService(repository, false) : new WriteOptimizedTransactionService(repository);
+    }
+
+    /**
+     * Builds a service over a new store holding transactions 0 to size - 1, added in batches
+     */
+    static TransactionalService filledService(Strategy strategy, StorageEngine storage, TreeShape shape, int size) {
+        return filledService(strategy, storage, shape, size, 1);
+    }
+
+    /**
+     * Builds a service spreading transactions 0 to size - 1 over shards, each with its own new store, see
+     * {@link ShardedTransactionService}
+     */
+    static TransactionalService filledService(Strategy strategy, StorageEngine storage, TreeShape shape, int size, int shards) {
+        final TransactionalService service;
+        if (shards == 1) {
+            service = service(strategy, storage.create());
+        } else {
+            final List<TransactionalService> services = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                services.add(service(strategy, storage.create()));
+            }
+            service = new ShardedTransactionService(services);
+        }
+        fill(shape.transactions(0, size, SEED), service::addTransactions);
+        return service;
+    }
+
+    /**
+     * Builds a store holding transactions 0 to size - 1
+     */
+    static TransactionalRepository filledRepository(StorageEngine storage, TreeShape shape, int size) {
+        final TransactionalRepository repository = storage.create();
+        fill(shape.transactions(0, size, SEED), repository::addTransactions);
+        return repository;
+    }
+
+    /**
+     * Hands parents first transactions over in chunks, which keeps every chunk parents first
+     */
+    private static void fill(Map<Long, Transaction> transactions, Function<Map<Long, Transaction>, Map<?, ?>> sink) {
+        Map<Long, Transaction> chunk = new LinkedHashMap<>();
+        for (Map.Entry<Long, Transaction> entry : transactions.entrySet()) {
+            chunk.put(entry.getKey(), entry.getValue());
+            if (chunk.size() == CHUNK) {
+                check(sink.apply(chunk));
+                chunk = new LinkedHashMap<>();
+            }
+        }
+        check(sink.apply(chunk));
+    }
+
+    private static void check(Map<?, ?> rejected) {
+        if (!rejected.isEmpty()) {
+            throw new IllegalStateException("Could not build the fixture: " + rejected.values().iterator().next());
+        }
+    }
+}
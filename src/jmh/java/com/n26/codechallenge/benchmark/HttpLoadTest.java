@@ -0,0 +1,150 @@
+package com.n26.codechallenge.benchmark;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+import com.n26.codechallenge.ApiApplication;
+import com.n26.codechallenge.controller.NettyTransactionalServer;
+import com.n26.codechallenge.service.TransactionalService;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares the Tomcat and Netty front ends under a mixed load: cheap clients reading and adding single transactions
+ * while slow clients keep summing a tree spanning every transaction, over keep-alive connections.
+ *
+ * Both front ends run in the same application, over the same write optimized service, one after the other. The
+ * latency of the cheap requests shows whether the slow ones starve them of threads.
+ *
+ * Options are system properties: load.transactions (default 1000000, all children of transaction 0), load.cheap-clients (64),
+ * load.slow-clients (16), load.seconds (20 per front end) and load.tomcat-threads (the Tomcat worker pool, 32).
+ */
+public final class HttpLoadTest {
+
+    private static final byte[] NEW_TRANSACTION = "{\"amount\":1,\"type\":\"load\",\"parent_id\":1}".getBytes(StandardCharsets.UTF_8);
+
+    private static final AtomicLong nextId = new AtomicLong();
+
+    private HttpLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int transactions = Integer.getInteger("load.transactions", 1_000_000);
+        final int cheapClients = Integer.getInteger("load.cheap-clients", 64);
+        final int slowClients = Integer.getInteger("load.slow-clients", 16);
+        final int seconds = Integer.getInteger("load.seconds", 20);
+        System.setProperty("http.maxConnections", String.valueOf(cheapClients + slowClients));
+
+        final ConfigurableApplicationContext context = SpringApplication.run(ApiApplication.class,
+                "--server.port=0", "--server.tomcat.max-threads=" + Integer.getInteger("load.tomcat-threads", 32),
+                "--transactionservice.strategy=write", "--transactionservice.netty.port=0", "--logging.level.root=WARN");
+        try {
+            final TransactionalService service = context.getBean(TransactionalService.class);
+            final Map<?, ?> rejected = service.addTransactions(TreeShape.WIDE_FANOUT.transactions(0, transactions, Fixtures.SEED));
+            if (!rejected.isEmpty()) {
+                throw new IllegalStateException("Could not load the transactions: " + rejected.values().iterator().next());
+            }
+            nextId.set(transactions);
+            final int tomcat = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+            final int netty = context.getBean(NettyTransactionalServer.class).port();
+            System.out.println(String.format("%d transactions, %d cheap and %d slow clients, %d s per front end",
+                    transactions, cheapClients, slowClients, seconds));
+            System.out.println(String.format("%-8s %12s %10s %10s %10s %12s", "", "cheap req/s", "p50 ms", "p99 ms", "p999 ms", "sums/s"));
+            for (String frontEnd : new String[]{"tomcat", "netty"}) {
+                final Result result = run("http://localhost:" + ("tomcat".equals(frontEnd) ? tomcat : netty), transactions, cheapClients, slowClients, seconds);
+                final Snapshot latencies = result.cheapLatencies.getSnapshot();
+                System.out.println(String.format("%-8s %12.0f %10.2f %10.2f %10.2f %12.1f", frontEnd,
+                        result.cheapRequests.sum() / (double) seconds, latencies.getMedian() / 1e6, latencies.get99thPercentile() / 1e6,
+                        latencies.get999thPercentile() / 1e6, result.sums.sum() / (double) seconds));
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    private static class Result {
+        final Histogram cheapLatencies = new Histogram(new UniformReservoir(1 << 20));
+        final LongAdder cheapRequests = new LongAdder();
+        final LongAdder sums = new LongAdder();
+    }
+
+    private static Result run(String base, int transactions, int cheapClients, int slowClients, int seconds) throws InterruptedException {
+        final Result result = new Result();
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final ExecutorService clients = Executors.newFixedThreadPool(cheapClients + slowClients);
+        final List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < slowClients; i++) {
+            tasks.add(() -> {
+                while (System.nanoTime() < end) {
+                    call(base + "/transactionservice/sum/0", "GET", null);
+                    result.sums.increment();
+                }
+            });
+        }
+        for (int i = 0; i < cheapClients; i++) {
+            tasks.add(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    final long start = System.nanoTime();
+                    if (random.nextInt(4) == 0) {
+                        call(base + "/transactionservice/transaction/" + nextId.getAndIncrement(), "PUT", NEW_TRANSACTION);
+                    } else {
+                        call(base + "/transactionservice/transaction/" + random.nextInt(transactions), "GET", null);
+                    }
+                    result.cheapLatencies.update(System.nanoTime() - start);
+                    result.cheapRequests.increment();
+                }
+            });
+        }
+        tasks.forEach(clients::execute);
+        clients.shutdown();
+        clients.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+        return result;
+    }
+
+    /**
+     * Sends a request and reads the whole response, so that the connection goes back to the keep-alive pool
+     */
+    private static void call(String url, String method, byte[] body) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestMethod(method);
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json;charset=UTF-8");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+            final int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                final byte[] buffer = new byte[8192];
+                while (in != null && in.read(buffer) >= 0) {
+                    // drain
+                }
+            }
+            if (status >= 500) {
+                throw new IllegalStateException(method + " " + url + " answered " + status);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(method + " " + url + " failed", e);
+        }
+    }
+}
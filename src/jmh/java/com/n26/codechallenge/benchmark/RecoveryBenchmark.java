@@ -0,0 +1,84 @@
+package com.n26.codechallenge.benchmark;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.persistence.DurableTransactionalService;
+import com.n26.codechallenge.repository.StorageEngine;
+import com.n26.codechallenge.repository.TransactionalRepository;
+import com.n26.codechallenge.service.ReadOptimizedTransactionService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time to restart a {@link DurableTransactionalService}, rebuilding a read optimized service over each store.
+ *
+ * The durable state holds `size` random forest transactions, of which `snapshotted` percent are covered by a
+ * snapshot and the rest are replayed from the log. Each thread recovers its own copy of the durable state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RecoveryBenchmark {
+
+    private static final long NEVER = TimeUnit.DAYS.toMillis(1);
+    private static final int SEGMENT_SIZE = 64 << 20;
+
+    @Param({"MAP", "PRIMITIVE", "COLUMNAR"})
+    StorageEngine storage;
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"0", "100"})
+    int snapshotted;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("recovery-benchmark");
+        final Map<Long, Transaction> transactions = TreeShape.RANDOM_FOREST.transactions(0, size, Fixtures.SEED);
+        final long snapshotAfter = (long) size * snapshotted / 100;
+        try (DurableTransactionalService service = open()) {
+            for (Map.Entry<Long, Transaction> entry : transactions.entrySet()) {
+                service.addTransaction(entry.getKey(), entry.getValue());
+                if (entry.getKey() == snapshotAfter - 1) {
+                    service.snapshot();
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not build the durable state", e);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Object recover() throws IOException {
+        try (DurableTransactionalService service = open()) {
+            return service.transactionSum(0L);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not recover", e);
+        }
+    }
+
+    private DurableTransactionalService open() throws IOException {
+        final TransactionalRepository repository = storage.create();
+        return new DurableTransactionalService(new ReadOptimizedTransactionService(repository, false), repository, directory,
+                SEGMENT_SIZE, NEVER, NEVER);
+    }
+}
@@ -0,0 +1,82 @@
+package com.n26.codechallenge.benchmark;
+
+import com.n26.codechallenge.repository.StorageEngine;
+import com.n26.codechallenge.service.TransactionalService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the read operations of both services, over every store, tree shape and store size.
+ *
+ * {@link #transactionSumOfRoot} sums the largest tree of the store, which is what makes the write optimized
+ * service slow on large stores. The other operations pick a random transaction or type. With several shards, the
+ * type queries merge the answers of every shard.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ServiceReadBenchmark {
+
+    @Param({"READ_OPTIMIZED", "WRITE_OPTIMIZED"})
+    Fixtures.Strategy strategy;
+
+    @Param({"MAP", "PRIMITIVE", "COLUMNAR"})
+    StorageEngine storage;
+
+    @Param({"DEEP_CHAIN", "WIDE_FANOUT", "RANDOM_FOREST"})
+    TreeShape shape;
+
+    @Param({"10000", "1000000"})
+    int size;
+
+    @Param({"1", "4"})
+    int shards;
+
+    private TransactionalService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = Fixtures.filledService(strategy, storage, shape, size, shards);
+    }
+
+    @Benchmark
+    public Object transaction() throws Exception {
+        return service.transaction(randomId());
+    }
+
+    @Benchmark
+    public long transactionByType(Blackhole blackhole) {
+        long count = 0;
+        for (Long id : service.transactionByType(TreeShape.type(ThreadLocalRandom.current().nextInt(TreeShape.TYPES)))) {
+            blackhole.consume(id);
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public List<Long> transactionByTypesPage() {
+        return service.transactionByTypes(TreeShape.typeNames(2), randomId(), 1000);
+    }
+
+    @Benchmark
+    public Double transactionSum() throws Exception {
+        return service.transactionSum(randomId());
+    }
+
+    @Benchmark
+    public Double transactionSumOfRoot() throws Exception {
+        return service.transactionSum(0L);
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+}
@@ -0,0 +1,110 @@
+package com.n26.codechallenge.benchmark;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.repository.StorageEngine;
+import com.n26.codechallenge.service.TransactionalService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of adding transactions to both services, one by one and in batches, over every store and tree shape.
+ *
+ * The store is refilled with `size` transactions before every iteration. Every thread then adds its own transactions
+ * following the tree shape: a chain hanging from the deepest preloaded transaction, children of the preloaded root,
+ * or children of random preloaded transactions.
+ *
+ * With several shards, the trees are spread over as many services, see
+ * {@link com.n26.codechallenge.service.ShardedTransactionService}: writes to trees of different shards never contend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ServiceWriteBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"READ_OPTIMIZED", "WRITE_OPTIMIZED"})
+    Fixtures.Strategy strategy;
+
+    @Param({"MAP", "PRIMITIVE", "COLUMNAR"})
+    StorageEngine storage;
+
+    @Param({"DEEP_CHAIN", "WIDE_FANOUT", "RANDOM_FOREST"})
+    TreeShape shape;
+
+    @Param({"10000", "1000000"})
+    int size;
+
+    @Param({"1", "4"})
+    int shards;
+
+    TransactionalService service;
+    private final AtomicInteger writers = new AtomicInteger();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        service = Fixtures.filledService(strategy, storage, shape, size, shards);
+        writers.set(0);
+    }
+
+    /**
+     * The transactions added by a single thread, whose identifiers follow the preloaded ones
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+
+        private Random random;
+        private long nextId;
+        private Long lastId;
+
+        @Setup(Level.Iteration)
+        public void setUp(ServiceWriteBenchmark benchmark) {
+            final int writer = benchmark.writers.getAndIncrement();
+            random = new Random(Fixtures.SEED + writer);
+            nextId = benchmark.size + ((long) writer << 32);
+            lastId = null;
+        }
+
+        Transaction next(ServiceWriteBenchmark benchmark) {
+            final Long parentId;
+            switch (benchmark.shape) {
+                case DEEP_CHAIN:
+                    parentId = lastId == null ? benchmark.size - 1L : lastId;
+                    break;
+                case WIDE_FANOUT:
+                    parentId = 0L;
+                    break;
+                default:
+                    parentId = random.nextInt(1000) == 0 ? null : (long) random.nextInt(benchmark.size);
+            }
+            lastId = nextId;
+            return new Transaction((double) random.nextInt(10_000), TreeShape.type(nextId), parentId);
+        }
+    }
+
+    @Benchmark
+    public void addTransaction(Writer writer) throws InvalidTransaction {
+        final Transaction transaction = writer.next(this);
+        service.addTransaction(writer.nextId++, transaction);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Map<Long, InvalidTransaction> addTransactions(Writer writer) {
+        final Map<Long, Transaction> batch = new LinkedHashMap<>(BATCH * 2);
+        for (int i = 0; i < BATCH; i++) {
+            final Transaction transaction = writer.next(this);
+            batch.put(writer.nextId++, transaction);
+        }
+        return service.addTransactions(batch);
+    }
+}
@@ -0,0 +1,86 @@
+package com.n26.codechallenge.benchmark;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.repository.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of the operations of each {@link SumRepository}, over every tree shape and store size.
+ *
+ * A transaction is added to the underlying store before its amount is registered, as the read optimized service does.
+ * With asynchronous propagation, {@link #addAmount} mostly measures the enqueuing, but waits for the propagator every
+ * {@link #BACKLOG} additions so that the backlog, and the time to drain it at the end of an iteration, stay bounded.
+ * {@link #transitiveSum} includes waiting for the pending increments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SumRepositoryBenchmark {
+
+    private static final int BACKLOG = 4096;
+
+    public enum Propagation {
+        SYNC, ASYNC
+    }
+
+    @Param({"SYNC", "ASYNC"})
+    Propagation propagation;
+
+    @Param({"DEEP_CHAIN", "WIDE_FANOUT", "RANDOM_FOREST"})
+    TreeShape shape;
+
+    @Param({"10000", "1000000"})
+    int size;
+
+    private TransactionalRepository repository;
+    private SumRepository sums;
+    private final AtomicLong nextId = new AtomicLong();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        final Map<Long, Transaction> transactions = shape.transactions(0, size, Fixtures.SEED);
+        repository = StorageEngine.MAP.create();
+        repository.addTransactions(transactions);
+        sums = propagation == Propagation.SYNC ? new InMemorySumRepository(repository) : new AsyncInMemorySumRepository(repository);
+        sums.addAmounts(transactions);
+        sums.transitiveSum(0L);
+        nextId.set(size);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        if (sums instanceof AutoCloseable) {
+            ((AutoCloseable) sums).close();
+        }
+    }
+
+    @Benchmark
+    public void addAmount() throws InvalidTransaction {
+        final long id = nextId.getAndIncrement();
+        final Transaction transaction = new Transaction(1d, TreeShape.type(id), randomId());
+        repository.addTransaction(id, transaction);
+        sums.addAmount(id, transaction);
+        if (id % BACKLOG == 0 && sums instanceof AsyncInMemorySumRepository) {
+            final AsyncInMemorySumRepository async = (AsyncInMemorySumRepository) sums;
+            async.awaitPropagation(async.submittedSequence());
+        }
+    }
+
+    @Benchmark
+    public Double transitiveSum() {
+        return sums.transitiveSum(randomId());
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+}
@@ -0,0 +1,64 @@
+package com.n26.codechallenge.benchmark;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.repository.StorageEngine;
+import com.n26.codechallenge.repository.TransactionalRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of the operations of each {@link TransactionalRepository}, over every tree shape and store size.
+ *
+ * Additions go to random preloaded parents, with identifiers following the preloaded ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TransactionalRepositoryBenchmark {
+
+    @Param({"MAP", "PRIMITIVE", "COLUMNAR"})
+    StorageEngine storage;
+
+    @Param({"DEEP_CHAIN", "WIDE_FANOUT", "RANDOM_FOREST"})
+    TreeShape shape;
+
+    @Param({"10000", "1000000"})
+    int size;
+
+    private TransactionalRepository repository;
+    private final AtomicLong nextId = new AtomicLong();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        repository = Fixtures.filledRepository(storage, shape, size);
+        nextId.set(size);
+    }
+
+    @Benchmark
+    public Transaction transaction() {
+        return repository.transaction(randomId());
+    }
+
+    @Benchmark
+    public Map<Long, Transaction> children() {
+        return repository.children(randomId());
+    }
+
+    @Benchmark
+    public void addTransaction() throws InvalidTransaction {
+        final long id = nextId.getAndIncrement();
+        repository.addTransaction(id, new Transaction(1d, TreeShape.type(id), randomId()));
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+}
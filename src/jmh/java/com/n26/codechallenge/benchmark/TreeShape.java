@@ -0,0 +1,93 @@
+package com.n26.codechallenge.benchmark;
+
+import com.n26.codechallenge.Transaction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The shapes of the transaction trees the benchmarks run against
+ */
+public enum TreeShape {
+
+    /**
+     * A single chain, every transaction being the parent of the next one
+     */
+    DEEP_CHAIN {
+        @Override
+        Long parent(long first, int index, Random random) {
+            return index == 0 ? null : first + index - 1;
+        }
+    },
+
+    /**
+     * A single root, parent of every other transaction
+     */
+    WIDE_FANOUT {
+        @Override
+        Long parent(long first, int index, Random random) {
+            return index == 0 ? null : first;
+        }
+    },
+
+    /**
+     * Random recursive trees: every transaction hangs from a uniformly chosen earlier one, or starts a new tree
+     * once in a thousand. Trees are about logarithmically deep.
+     */
+    RANDOM_FOREST {
+        @Override
+        Long parent(long first, int index, Random random) {
+            return index == 0 || random.nextInt(1000) == 0 ? null : first + random.nextInt(index);
+        }
+    };
+
+    /**
+     * Number of distinct types, transactions are spread evenly over them
+     */
+    public static final int TYPES = 16;
+
+    /**
+     * The parent of the transaction at the given position of a tree
+     * @param first the identifier of the first transaction of the tree
+     * @param index the position of the transaction
+     * @param random
+     * @return the identifier of the parent, always lower than the one of the transaction; null for roots
+     */
+    abstract Long parent(long first, int index, Random random);
+
+    /**
+     * Builds transactions with consecutive identifiers, parents first
+     * @param first the identifier of the first transaction
+     * @param size the number of transactions
+     * @param seed
+     * @return
+     */
+    public Map<Long, Transaction> transactions(long first, int size, long seed) {
+        final Random random = new Random(seed);
+        final Map<Long, Transaction> transactions = new LinkedHashMap<>(size * 2);
+        for (int index = 0; index < size; index++) {
+            transactions.put(first + index, new Transaction((double) random.nextInt(10_000), type(index), parent(first, index, random)));
+        }
+        return transactions;
+    }
+
+    public static String type(long index) {
+        return "type-" + (index % TYPES);
+    }
+
+    /**
+     * The first types
+     * @param count
+     * @return
+     */
+    public static List<String> typeNames(int count) {
+        final List<String> types = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            types.add(type(index));
+        }
+        return types;
+    }
+}
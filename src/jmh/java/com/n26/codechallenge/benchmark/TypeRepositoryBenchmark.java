@@ -0,0 +1,70 @@
+package com.n26.codechallenge.benchmark;
+
+import com.n26.codechallenge.TypeDictionary;
+import com.n26.codechallenge.repository.BitmapTypeRepository;
+import com.n26.codechallenge.repository.InMemoryTypeRepository;
+import com.n26.codechallenge.repository.TypeRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of the operations of each {@link TypeRepository}, over several store sizes.
+ *
+ * Transactions are spread evenly over {@link TreeShape#TYPES} types, so a type holds a sixteenth of the store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TypeRepositoryBenchmark {
+
+    public enum Index {
+        SET, BITMAP
+    }
+
+    @Param({"SET", "BITMAP"})
+    Index index;
+
+    @Param({"10000", "1000000"})
+    int size;
+
+    private TypeRepository repository;
+    private final AtomicLong nextId = new AtomicLong();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        repository = index == Index.SET ? new InMemoryTypeRepository() : new BitmapTypeRepository();
+        for (long id = 0; id < size; id++) {
+            repository.addTransaction(TypeDictionary.encode(TreeShape.type(id)), id);
+        }
+        nextId.set(size);
+    }
+
+    @Benchmark
+    public void addTransaction() {
+        final long id = nextId.getAndIncrement();
+        repository.addTransaction(TypeDictionary.encode(TreeShape.type(id)), id);
+    }
+
+    @Benchmark
+    public long transactionIdsByType(Blackhole blackhole) {
+        long count = 0;
+        for (Long id : repository.getTransactionIdsByType(TreeShape.type(ThreadLocalRandom.current().nextInt(TreeShape.TYPES)))) {
+            blackhole.consume(id);
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public List<Long> transactionIdsByTypesPage() {
+        return repository.getTransactionIdsByTypes(TreeShape.typeNames(2), (long) ThreadLocalRandom.current().nextInt(size), 1000);
+    }
+}
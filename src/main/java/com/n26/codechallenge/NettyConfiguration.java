@@ -0,0 +1,27 @@
+package com.n26.codechallenge;
+
+import com.codahale.metrics.MetricRegistry;
+import com.n26.codechallenge.controller.NettyTransactionalServer;
+import com.n26.codechallenge.service.TransactionalService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Starts the {@link NettyTransactionalServer} next to the servlet front end when transactionservice.netty.port is set.
+ *
+ * Both front ends share the same {@link TransactionalService}. Running with spring.main.web-environment=false leaves
+ * Netty alone.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "transactionservice.netty", name = "port")
+public class NettyConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public NettyTransactionalServer nettyTransactionalServer(TransactionalService transactionalService, MetricRegistry metricRegistry,
+                                                             ServiceProperties properties) throws InterruptedException {
+        ServiceProperties.Netty netty = properties.getNetty();
+        return new NettyTransactionalServer(transactionalService, metricRegistry, netty.getPort(), netty.getEventLoopThreads(),
+                netty.getQueryThreads(), netty.getQueryQueue(), properties.getJsonCacheMb() << 20);
+    }
+}
@@ -0,0 +1,239 @@
+package com.n26.codechallenge;
+
+import com.codahale.metrics.MetricRegistry;
+import com.n26.codechallenge.cluster.ClusterTransactionalService;
+import com.n26.codechallenge.cluster.HttpClusterClient;
+import com.n26.codechallenge.cluster.LocalNode;
+import com.n26.codechallenge.metrics.ServiceMetrics;
+import com.n26.codechallenge.persistence.DurableTransactionalService;
+import com.n26.codechallenge.replication.ChangeLog;
+import com.n26.codechallenge.replication.FollowerTransactionalService;
+import com.n26.codechallenge.replication.HttpChangeStreamClient;
+import com.n26.codechallenge.replication.ReplicatedTransactionalService;
+import com.n26.codechallenge.repository.AsyncInMemorySumRepository;
+import com.n26.codechallenge.repository.BitmapTypeRepository;
+import com.n26.codechallenge.repository.EulerTourSumRepository;
+import com.n26.codechallenge.repository.FixedPointSumRepository;
+import com.n26.codechallenge.repository.TransactionalRepository;
+import com.n26.codechallenge.service.AdaptiveTransactionService;
+import com.n26.codechallenge.service.ReadOptimizedTransactionService;
+import com.n26.codechallenge.service.ShardedTransactionService;
+import com.n26.codechallenge.service.TransactionalService;
+import com.n26.codechallenge.service.WriteOptimizedTransactionService;
+import com.n26.codechallenge.subscription.PublishingTransactionalService;
+import com.n26.codechallenge.subscription.SubscriptionHub;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds the {@link TransactionalService} used by the application, following {@link ServiceProperties}.
+ */
+@Configuration
+@EnableConfigurationProperties(ServiceProperties.class)
+public class ServiceConfiguration {
+
+    @Bean
+    public SubscriptionHub subscriptionHub(ServiceProperties properties) {
+        return new SubscriptionHub(properties.getSubscriptions().getMaxPending());
+    }
+
+    @Bean
+    public TransactionalService transactionalService(ServiceProperties properties, MetricRegistry metricRegistry, SubscriptionHub subscriptions) throws IOException {
+        ServiceMetrics metrics = new ServiceMetrics(metricRegistry);
+        metrics.register(subscriptions);
+        boolean replicated = !properties.getReplication().getRole().isEmpty();
+        if (!properties.getCluster().getSelf().isEmpty()) {
+            if (replicated) {
+                throw new IllegalArgumentException("transactionservice.replication is not supported with transactionservice.cluster");
+            }
+            return cluster(properties, metrics);
+        }
+        if (properties.getShards() > 1) {
+            if (replicated) {
+                throw new IllegalArgumentException("transactionservice.replication is not supported with transactionservice.shards");
+            }
+            return published(sharded(properties, metrics), subscriptions, properties.getSubscriptions());
+        }
+        if ("follower".equals(properties.getReplication().getRole())) {
+            return follower(properties, metrics, subscriptions);
+        }
+        TransactionalRepository repository = properties.getStorage().create();
+        metrics.register(repository);
+        TransactionalService service = published(durable(strategy(repository, properties, metrics, null), repository, properties.getDurability()),
+                subscriptions, properties.getSubscriptions());
+        metrics.register(service);
+        return replicated ? primary(service, repository, properties.getReplication(), metrics) : service;
+    }
+
+    /**
+     * Publishes the transactions accepted by the service to the subscribers, a follower publishing the ones it applies
+     */
+    private static TransactionalService published(TransactionalService service, SubscriptionHub hub, ServiceProperties.Subscriptions subscriptions) {
+        return new PublishingTransactionalService(service, hub, subscriptions.getFlushMs());
+    }
+
+    /**
+     * The primary, publishing the changes of the service
+     */
+    private static TransactionalService primary(TransactionalService service, TransactionalRepository repository,
+                                                ServiceProperties.Replication replication, ServiceMetrics metrics) {
+        if (!"primary".equals(replication.getRole())) {
+            throw new IllegalArgumentException("Unknown transactionservice.replication.role: " + replication.getRole());
+        }
+        ChangeLog changes = new ChangeLog(System.currentTimeMillis());
+        ReplicatedTransactionalService primary = new ReplicatedTransactionalService(service, repository, changes);
+        metrics.register(changes);
+        return primary;
+    }
+
+    /**
+     * A follower, applying the changes of its primary to a store and strategy built again, along with their metrics,
+     * whenever it starts over
+     */
+    private static TransactionalService follower(ServiceProperties properties, ServiceMetrics metrics, SubscriptionHub subscriptions) {
+        ServiceProperties.Replication replication = properties.getReplication();
+        if (replication.getPrimary().isEmpty()) {
+            throw new IllegalArgumentException("transactionservice.replication.primary is required by a follower");
+        }
+        if (!properties.getDurability().getDirectory().isEmpty()) {
+            throw new IllegalArgumentException("transactionservice.durability.directory is not supported by a follower");
+        }
+        AtomicReference<TransactionalRepository> repository = new AtomicReference<>();
+        FollowerTransactionalService follower = new FollowerTransactionalService(() -> {
+            metrics.unregister("sum.cache");
+            metrics.unregister("sums");
+            repository.set(properties.getStorage().create());
+            return published(strategy(repository.get(), properties, metrics, null), subscriptions, properties.getSubscriptions());
+        }, new HttpChangeStreamClient(replication.getPrimary(), replication.getTimeoutMs(), replication.getPollWaitMs()),
+                replication.getBatchSize(), replication.getPollWaitMs(), replication.getReadWaitMs());
+        metrics.register(repository::get);
+        metrics.register((TransactionalService) follower);
+        metrics.register(follower);
+        return follower;
+    }
+
+    /**
+     * One store and one strategy per shard, whose metrics are prefixed by shard.{index}
+     */
+    private static TransactionalService sharded(ServiceProperties properties, ServiceMetrics metrics) {
+        if (!properties.getDurability().getDirectory().isEmpty()) {
+            throw new IllegalArgumentException("transactionservice.durability.directory is not supported with transactionservice.shards");
+        }
+        List<TransactionalRepository> repositories = new ArrayList<>();
+        List<TransactionalService> shards = new ArrayList<>();
+        for (int i = 0; i < properties.getShards(); i++) {
+            TransactionalRepository repository = properties.getStorage().create();
+            repositories.add(repository);
+            shards.add(strategy(repository, properties, metrics, MetricRegistry.name("shard", String.valueOf(i))));
+        }
+        metrics.register(repositories);
+        TransactionalService service = new ShardedTransactionService(shards);
+        metrics.register(service);
+        return service;
+    }
+
+    /**
+     * A node of a cluster, whose local store and strategy are built again whenever trees leave the node, along with
+     * their metrics
+     */
+    private static TransactionalService cluster(ServiceProperties properties, ServiceMetrics metrics) {
+        if (!properties.getDurability().getDirectory().isEmpty()) {
+            throw new IllegalArgumentException("transactionservice.durability.directory is not supported with transactionservice.cluster");
+        }
+        if (properties.getShards() > 1) {
+            throw new IllegalArgumentException("transactionservice.shards is not supported with transactionservice.cluster");
+        }
+        ServiceProperties.Cluster cluster = properties.getCluster();
+        List<String> nodes = cluster.getNodes().isEmpty() ? Collections.singletonList(cluster.getSelf()) : cluster.getNodes();
+        ClusterTransactionalService service = new ClusterTransactionalService(cluster.getSelf(), nodes, cluster.getVirtualNodes(), () -> {
+            metrics.unregister("sum.cache");
+            metrics.unregister("sums");
+            TransactionalRepository repository = properties.getStorage().create();
+            return new LocalNode(strategy(repository, properties, metrics, null), repository);
+        }, new HttpClusterClient(cluster.getTimeoutMs()));
+        metrics.register(() -> service.local().repository());
+        metrics.register(service);
+        return service;
+    }
+
+    private static TransactionalService durable(TransactionalService service, TransactionalRepository repository, ServiceProperties.Durability durability) throws IOException {
+        if (durability.getDirectory().isEmpty()) {
+            return service;
+        }
+        return new DurableTransactionalService(service, repository, Paths.get(durability.getDirectory()),
+                durability.getSegmentSizeMb() << 20, durability.getSnapshotPeriodS() * 1000, durability.getFlushPeriodMs());
+    }
+
+    /**
+     * @param shard the prefix of the metrics of the strategy, null if the service is not sharded
+     */
+    private static TransactionalService strategy(TransactionalRepository repository, ServiceProperties properties, ServiceMetrics metrics, String shard) {
+        final int parallelThreshold = properties.getSum().getParallelThreshold();
+        if ("fixed".equals(properties.getSum().getAmounts()) && !"read".equals(properties.getStrategy())) {
+            throw new IllegalArgumentException("transactionservice.sum.amounts=fixed requires transactionservice.strategy=read");
+        }
+        if ("euler".equals(properties.getSum().getView()) && !"read".equals(properties.getStrategy())) {
+            throw new IllegalArgumentException("transactionservice.sum.view=euler requires transactionservice.strategy=read");
+        }
+        if ("async".equals(properties.getSum().getPropagation()) && !"read".equals(properties.getStrategy())) {
+            throw new IllegalArgumentException("transactionservice.sum.propagation=async requires transactionservice.strategy=read");
+        }
+        final int cacheSize = properties.getSum().getCacheSize();
+        switch (properties.getStrategy()) {
+            case "adaptive":
+                AdaptiveTransactionService adaptive = new AdaptiveTransactionService(repository, parallelThreshold, properties.getAdaptive().policy(), cacheSize, metrics);
+                metrics.register(MetricRegistry.name(shard, "sum.cache"), adaptive);
+                return adaptive;
+            case "write":
+                WriteOptimizedTransactionService writeOptimized = new WriteOptimizedTransactionService(repository, parallelThreshold, cacheSize, metrics);
+                metrics.register(MetricRegistry.name(shard, "sum.cache"), writeOptimized);
+                return writeOptimized;
+            case "read":
+                return readOptimized(repository, properties.getSum(), metrics, shard);
+            default:
+                throw new IllegalArgumentException("Unknown transactionservice.strategy: " + properties.getStrategy());
+        }
+    }
+
+    private static TransactionalService readOptimized(TransactionalRepository repository, ServiceProperties.Sum sum, ServiceMetrics metrics, String shard) {
+        switch (sum.getView()) {
+            case "ancestors":
+                break;
+            case "euler":
+                if (!"floating".equals(sum.getAmounts()) || "async".equals(sum.getPropagation())) {
+                    throw new IllegalArgumentException("The Euler tour sum view only adds floating amounts, synchronously");
+                }
+                EulerTourSumRepository tour = new EulerTourSumRepository();
+                metrics.register(MetricRegistry.name(shard, "sums"), tour);
+                return new ReadOptimizedTransactionService(repository, new BitmapTypeRepository(), tour);
+            default:
+                throw new IllegalArgumentException("Unknown transactionservice.sum.view: " + sum.getView());
+        }
+        switch (sum.getAmounts()) {
+            case "floating":
+                if ("async".equals(sum.getPropagation())) {
+                    AsyncInMemorySumRepository propagated = new AsyncInMemorySumRepository(repository);
+                    metrics.register(MetricRegistry.name(shard, "sums"), propagated);
+                    return new ReadOptimizedTransactionService(repository, new BitmapTypeRepository(), propagated);
+                }
+                return new ReadOptimizedTransactionService(repository, false);
+            case "fixed":
+                if ("async".equals(sum.getPropagation())) {
+                    throw new IllegalArgumentException("Fixed point sums are only propagated synchronously");
+                }
+                FixedPointSumRepository sums = new FixedPointSumRepository(sum.getScale());
+                metrics.register(MetricRegistry.name(shard, "sums"), sums);
+                return new ReadOptimizedTransactionService(repository, new BitmapTypeRepository(), sums);
+            default:
+                throw new IllegalArgumentException("Unknown transactionservice.sum.amounts: " + sum.getAmounts());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.n26.codechallenge;
+
+import com.n26.codechallenge.cluster.HashRing;
+import com.n26.codechallenge.repository.EulerTourSumRepository;
+import com.n26.codechallenge.repository.FixedPointSumRepository;
+import com.n26.codechallenge.repository.StorageEngine;
+import com.n26.codechallenge.repository.TransactionTreeTraversal;
+import com.n26.codechallenge.service.AdaptiveTransactionService;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The properties, prefixed by transactionservice, used by {@link ServiceConfiguration} to assemble the service
+ * (e.g. -Dtransactionservice.storage=primitive or -Dtransactionservice.durability.directory=/var/lib/transactions)
+ */
+@Data
+@ConfigurationProperties(prefix = "transactionservice")
+public class ServiceProperties {
+
+    /**
+     * The {@link StorageEngine} backing the service
+     */
+    private StorageEngine storage = StorageEngine.MAP;
+
+    /**
+     * adaptive, write or read
+     */
+    private String strategy = "adaptive";
+
+    /**
+     * The number of shards the trees of transactions are spread over, each with its own store and views, 1 for none
+     */
+    private int shards = 1;
+
+    /**
+     * The bound, in megabytes, of the cache of the JSON representation of transactions served by GET /transaction/{id}
+     */
+    private long jsonCacheMb = 64;
+
+    private Sum sum = new Sum();
+    private Adaptive adaptive = new Adaptive();
+    private Durability durability = new Durability();
+    private Netty netty = new Netty();
+    private Cluster cluster = new Cluster();
+    private Replication replication = new Replication();
+    private Subscriptions subscriptions = new Subscriptions();
+
+    @Data
+    public static class Sum {
+
+        /**
+         * The number of visited transactions after which a subtree sum goes parallel
+         */
+        private int parallelThreshold = TransactionTreeTraversal.DEFAULT_PARALLEL_THRESHOLD;
+
+        /**
+         * The number of sums computed on the fly by the write optimized and adaptive strategies memoized at most, 0 to compute every sum
+         */
+        private int cacheSize = 10_000;
+
+        /**
+         * sync or async, how the read optimized sum view updates ancestors
+         */
+        private String propagation = "sync";
+
+        /**
+         * floating or fixed, how the read optimized sum view adds amounts up, see {@link FixedPointSumRepository}
+         */
+        private String amounts = "floating";
+
+        /**
+         * The number of decimals kept by fixed point sums
+         */
+        private int scale = FixedPointSumRepository.DEFAULT_SCALE;
+
+        /**
+         * ancestors or euler, how the read optimized sum view is kept: a sum per transaction, to which the amounts of
+         * its descendants are added, or an {@link EulerTourSumRepository} also answering subtree statistics by type
+         */
+        private String view = "ancestors";
+    }
+
+    /**
+     * The {@link AdaptiveTransactionService.SwitchPolicy} of the adaptive strategy
+     */
+    @Data
+    public static class Adaptive {
+        private double readOptimizeAbove = 4;
+        private double writeOptimizeBelow = 1;
+        private long minOperations = 1000;
+        private long evaluationPeriodMs = 10_000;
+
+        AdaptiveTransactionService.SwitchPolicy policy() {
+            return new AdaptiveTransactionService.SwitchPolicy(readOptimizeAbove, writeOptimizeBelow, minOperations, evaluationPeriodMs);
+        }
+    }
+
+    @Data
+    public static class Durability {
+
+        /**
+         * If set, transactions are logged and snapshotted to this directory and recovered from it on startup
+         */
+        private String directory = "";
+
+        private int segmentSizeMb = 64;
+        private long snapshotPeriodS = 300;
+        private long flushPeriodMs = 1000;
+    }
+
+    /**
+     * The non-blocking front end, see {@link NettyConfiguration}
+     */
+    @Data
+    public static class Netty {
+
+        /**
+         * If set, the API is also served by Netty on this port, 0 for any free port
+         */
+        private int port = -1;
+
+        /**
+         * The number of event loop threads, 0 for twice the number of processors
+         */
+        private int eventLoopThreads = 0;
+
+        /**
+         * The number of threads running sums, type queries and batches
+         */
+        private int queryThreads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * The number of queries waiting for a thread beyond which queries are refused with a 503
+         */
+        private int queryQueue = 1024;
+    }
+
+    /**
+     * The cluster this instance is a node of, see {@link com.n26.codechallenge.cluster.ClusterTransactionalService}
+     */
+    @Data
+    public static class Cluster {
+
+        /**
+         * If set, the base URL other nodes reach this node at, such as http://10.0.0.1:8080, and the API is served
+         * by the cluster of {@link #nodes}
+         */
+        private String self = "";
+
+        /**
+         * The base URLs of every node of the cluster on startup, this one included
+         */
+        private List<String> nodes = new ArrayList<>();
+
+        /**
+         * The number of points of every node on the consistent hash ring
+         */
+        private int virtualNodes = HashRing.DEFAULT_VIRTUAL_NODES;
+
+        /**
+         * The connection and read timeouts of the calls to other nodes
+         */
+        private int timeoutMs = 5000;
+    }
+
+    /**
+     * Read replicas, see {@link com.n26.codechallenge.replication.ReplicatedTransactionalService} and
+     * {@link com.n26.codechallenge.replication.FollowerTransactionalService}
+     */
+    @Data
+    public static class Replication {
+
+        /**
+         * primary or follower, none if not set
+         */
+        private String role = "";
+
+        /**
+         * The base URL of the primary a follower replicates
+         */
+        private String primary = "";
+
+        /**
+         * The maximum number of changes a follower reads at once
+         */
+        private int batchSize = 10_000;
+
+        /**
+         * How long the primary holds the poll of a follower when there is no new change
+         */
+        private long pollWaitMs = 1000;
+
+        /**
+         * How long a read asking for a write waits for the follower to apply it before failing with a 503
+         */
+        private long readWaitMs = 1000;
+
+        /**
+         * The connection timeout of the polls of a follower, and their read timeout on top of the poll wait
+         */
+        private int timeoutMs = 5000;
+    }
+
+    /**
+     * The clients watching sums and types under GET /transactionservice/subscribe, see
+     * {@link com.n26.codechallenge.subscription.SubscriptionHub}
+     */
+    @Data
+    public static class Subscriptions {
+
+        /**
+         * How often the changes pending for each client are sent as one event
+         */
+        private long flushMs = 100;
+
+        /**
+         * The number of new transactions kept for a client between two events, past which they are only counted
+         */
+        private int maxPending = 10_000;
+    }
+}
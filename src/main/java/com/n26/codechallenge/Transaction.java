@@ -5,16 +5,19 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import lombok.EqualsAndHashCode;
-import lombok.ToString;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 /**
  * An immutable representation of a Transaction
+ *
+ * The type is kept along with its {@link TypeDictionary} code. A transaction read from a request only looks its type
+ * up: a type never seen is registered once the transaction is accepted, see {@link #typeCode()} and {@link #encoded()},
+ * so that requests which are then rejected do not grow the dictionary.
  */
-@ToString
-@EqualsAndHashCode
+@EqualsAndHashCode(exclude = "typeCode")
+@JsonPropertyOrder({"amount", "type", "parent_id"})
 public class Transaction {
 
     private static final ObjectMapper mapper = new ObjectMapper()
@@ -29,6 +32,9 @@ public class Transaction {
     @NotNull(message = "type cannot be null")
     private final String type;
 
+    @JsonIgnore
+    private final int typeCode;
+
     @Min(value =  0, message = "parent_id cannot be negative")
     private final Long parentId;
 
@@ -41,8 +47,24 @@ public class Transaction {
      */
     @JsonCreator
     public Transaction (@JsonProperty("amount") Double amount, @JsonProperty("type") String type, @JsonProperty("parent_id") Long parentId){
+        final int code = TypeDictionary.lookup(type);
+        this.amount = amount;
+        this.type = code == TypeDictionary.NONE ? type : TypeDictionary.decode(code);
+        this.typeCode = code;
+        this.parentId = parentId;
+    }
+
+    /**
+     * Builds a transaction whose type is already encoded
+     *
+     * @param amount
+     * @param typeCode a code of the {@link TypeDictionary}
+     * @param parentId
+     */
+    public Transaction (Double amount, int typeCode, Long parentId){
         this.amount = amount;
-        this.type = type;
+        this.type = TypeDictionary.decode(typeCode);
+        this.typeCode = typeCode;
         this.parentId = parentId;
     }
 
@@ -64,7 +86,16 @@ public class Transaction {
      * @return
      */
     public boolean hasType(String type){
-        return this.type.equals(type);
+        return this.type != null && this.type.equals(type);
+    }
+
+    /**
+     * Checks whether this transaction has a given type, given its code
+     * @param typeCode
+     * @return
+     */
+    public boolean hasType(int typeCode){
+        return typeCode != TypeDictionary.NONE && typeCode() == typeCode;
     }
 
     /**
@@ -88,10 +119,28 @@ public class Transaction {
      * Exposes the type of the transaction
      * @return
      */
+    @JsonProperty("type")
     public String type(){
         return type;
     }
 
+    /**
+     * Exposes the {@link TypeDictionary} code of the type of the transaction, registering the type if it was never
+     * seen: only called on the write path once the transaction is accepted
+     * @return
+     */
+    public int typeCode(){
+        return typeCode != TypeDictionary.NONE || type == null ? typeCode : TypeDictionary.encode(type);
+    }
+
+    /**
+     * This transaction with its type registered, as kept by a store once accepted
+     * @return this transaction if its type is already registered, an equal one otherwise
+     */
+    public Transaction encoded(){
+        return typeCode != TypeDictionary.NONE || type == null ? this : new Transaction(amount, TypeDictionary.encode(type), parentId);
+    }
+
     /**
      * Builds a JSON representation of this model
      * @return
@@ -101,4 +150,18 @@ public class Transaction {
         return mapper.writeValueAsString(this);
     }
 
+    /**
+     * Builds a JSON representation of this model, encoded in UTF-8
+     * @return
+     * @throws JsonProcessingException
+     */
+    public byte[] toJsonBytes() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(this);
+    }
+
+    @Override
+    public String toString() {
+        return "Transaction(amount=" + amount + ", type=" + type + ", parentId=" + parentId + ")";
+    }
+
 }
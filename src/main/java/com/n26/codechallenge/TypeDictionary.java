@@ -0,0 +1,91 @@
+package com.n26.codechallenge;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A process wide dictionary of transaction types, assigning every distinct type a dense int code.
+ *
+ * Types are encoded once a transaction is accepted, so that storage and indexes keep and compare ints rather than
+ * strings, and requests that are rejected only look their type up. Codes are never reused nor released, and only live as long as the process: whatever leaves the process
+ * (JSON, log records, snapshots) carries the type names.
+ *
+ * Lookups are lock free; only the first occurrence of a type takes a lock.
+ */
+public final class TypeDictionary {
+
+    /**
+     * The code of a missing type, which is never assigned to any name
+     */
+    public static final int NONE = -1;
+
+    private static final ConcurrentMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private static final Object lock = new Object();
+    private static volatile String[] names = new String[64];
+
+    private TypeDictionary() {
+    }
+
+    /**
+     * Returns the code of a type, assigning the next one if the type was never seen
+     * @param type
+     * @return the code, or {@link #NONE} for a null type
+     */
+    public static int encode(String type) {
+        if (type == null) {
+            return NONE;
+        }
+        final Integer code = codes.get(type);
+        return code != null ? code : assign(type);
+    }
+
+    /**
+     * Returns the code of a type, without assigning any
+     * @param type
+     * @return the code, or {@link #NONE} if the type was never seen
+     */
+    public static int lookup(String type) {
+        if (type == null) {
+            return NONE;
+        }
+        final Integer code = codes.get(type);
+        return code != null ? code : NONE;
+    }
+
+    /**
+     * Returns the name of a type
+     * @param code a code returned by {@link #encode}, or {@link #NONE}
+     * @return the name, or null for {@link #NONE}
+     */
+    public static String decode(int code) {
+        return code == NONE ? null : names[code];
+    }
+
+    /**
+     * The number of distinct types seen so far
+     * @return
+     */
+    public static int size() {
+        return codes.size();
+    }
+
+    /**
+     * The name is stored before the code is published in the map, so any thread that got hold of a code can decode it
+     */
+    private static int assign(String type) {
+        synchronized (lock) {
+            final Integer existing = codes.get(type);
+            if (existing != null) {
+                return existing;
+            }
+            final int code = codes.size();
+            if (code == names.length) {
+                names = Arrays.copyOf(names, code * 2);
+            }
+            names[code] = type;
+            codes.put(type, code);
+            return code;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.n26.codechallenge;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * An immutable summary of the amounts of a set of transactions, such as the transactions of a type or of a subtree
+ */
+@EqualsAndHashCode
+@ToString
+public class TypeStatistics {
+
+    /**
+     * The statistics of a type without any transaction
+     */
+    public static final TypeStatistics EMPTY = new TypeStatistics(0, 0d, null, null);
+
+    private final long count;
+    private final double sum;
+    private final Double min;
+    private final Double max;
+
+    /**
+     * @param count the number of transactions
+     * @param sum the total amount
+     * @param min the lowest amount, null if there is no transaction
+     * @param max the highest amount, null if there is no transaction
+     */
+    public TypeStatistics(long count, double sum, Double min, Double max) {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    public Double min() {
+        return min;
+    }
+
+    public Double max() {
+        return max;
+    }
+
+    /**
+     * The mean amount
+     * @return null if there is no transaction
+     */
+    public Double average() {
+        return count == 0 ? null : sum / count;
+    }
+
+    /**
+     * The statistics of the transactions of both summaries, which must not share any transaction
+     * @param other
+     * @return
+     */
+    public TypeStatistics merge(TypeStatistics other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            return other;
+        }
+        return new TypeStatistics(count + other.count, sum + other.sum, Math.min(min, other.min), Math.max(max, other.max));
+    }
+}
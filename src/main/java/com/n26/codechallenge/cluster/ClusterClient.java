@@ -0,0 +1,46 @@
+package com.n26.codechallenge.cluster;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.ClusterUnavailableException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Calls the other nodes of a cluster, each method standing for the {@link ClusterTransactionalService} method of the
+ * same name on the given node.
+ *
+ * Every method throws {@link ClusterUnavailableException} if the node cannot be reached or fails to answer.
+ */
+public interface ClusterClient {
+
+    Map<Long, Long> roots(String node, Collection<Long> ids, Hop hop);
+
+    Set<Long> reserve(String node, Map<Long, Long> roots, Hop hop);
+
+    void release(String node, Map<Long, Long> roots, Hop hop);
+
+    Map<Long, InvalidTransaction> addTransactions(String node, Map<Long, Transaction> transactions, Map<Long, Long> roots, Hop hop);
+
+    Map<Long, Transaction> transactions(String node, Map<Long, Long> roots, Hop hop);
+
+    Map<Long, Double> transactionSums(String node, Map<Long, Long> roots, Hop hop);
+
+    TypeStatistics subTreeStatistics(String node, Long parentId, Long root, String type, Hop hop);
+
+    Set<Long> localTransactionByType(String node, String type);
+
+    List<Long> localTransactionByTypes(String node, Collection<String> types, Long after, int limit);
+
+    TypeStatistics localTypeStatistics(String node, String type);
+
+    void prepare(String node, List<String> current, List<String> pending);
+
+    void migrate(String node);
+
+    void commit(String node, List<String> nodes);
+}
@@ -0,0 +1,185 @@
+package com.n26.codechallenge.cluster;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The JSON bodies the nodes of a cluster exchange, shared by {@link HttpClusterClient} and the cluster endpoints.
+ *
+ * Maps of identifiers are JSON objects keyed by identifier. A rejected transaction travels as its {@link Rejection}
+ * and is turned back into the exception the owner of its tree raised.
+ */
+public final class ClusterProtocol {
+
+    public static final TypeReference<List<Long>> IDS = new TypeReference<List<Long>>() {};
+    public static final TypeReference<Set<Long>> ID_SET = new TypeReference<Set<Long>>() {};
+    public static final TypeReference<List<String>> NODES = new TypeReference<List<String>>() {};
+    public static final TypeReference<Map<Long, Long>> ROOTS = new TypeReference<Map<Long, Long>>() {};
+    public static final TypeReference<Map<Long, Transaction>> TRANSACTIONS = new TypeReference<Map<Long, Transaction>>() {};
+    public static final TypeReference<Map<Long, Double>> SUMS = new TypeReference<Map<Long, Double>>() {};
+    public static final TypeReference<Map<Long, Rejection>> REJECTIONS = new TypeReference<Map<Long, Rejection>>() {};
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+            .setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private static final String INVALID = new InvalidTransaction("").getMessage();
+    private static final String INVALID_AMOUNT = new InvalidAmountException(0d, "").getMessage().replace("0.0 ", "");
+
+    private ClusterProtocol() {
+    }
+
+    /**
+     * A batch of transactions along with the root of each one
+     */
+    public static final class Batch {
+        public Map<Long, Transaction> transactions;
+        public Map<Long, Long> roots;
+
+        public Batch() {
+        }
+
+        public Batch(Map<Long, Transaction> transactions, Map<Long, Long> roots) {
+            this.transactions = transactions;
+            this.roots = roots;
+        }
+    }
+
+    /**
+     * The nodes of the rings a node is moving between
+     */
+    public static final class Membership {
+        public List<String> current;
+        public List<String> pending;
+
+        public Membership() {
+        }
+
+        public Membership(List<String> current, List<String> pending) {
+            this.current = current;
+            this.pending = pending;
+        }
+    }
+
+    /**
+     * Why a transaction was rejected: its kind, one of exists, parent, amount or invalid, and the reason given
+     */
+    public static final class Rejection {
+        public String kind;
+        public String reason;
+
+        public Rejection() {
+        }
+
+        Rejection(String kind, String reason) {
+            this.kind = kind;
+            this.reason = reason;
+        }
+    }
+
+    public static byte[] write(Object body) {
+        try {
+            return mapper.writeValueAsBytes(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static <T> T read(byte[] body, Class<T> type) {
+        try {
+            return mapper.readValue(body, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static <T> T read(byte[] body, TypeReference<T> type) {
+        try {
+            return mapper.readValue(body, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static Map<String, Object> fields(TypeStatistics statistics) {
+        final Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("count", statistics.count());
+        fields.put("sum", statistics.sum());
+        fields.put("min", statistics.min());
+        fields.put("max", statistics.max());
+        return fields;
+    }
+
+    /**
+     * @return null for a null body, as sent for a missing subtree
+     */
+    public static TypeStatistics readStatistics(byte[] body) {
+        final Map<String, Number> fields = read(body, new TypeReference<Map<String, Number>>() {});
+        if (fields == null) {
+            return null;
+        }
+        final Number min = fields.get("min");
+        final Number max = fields.get("max");
+        return new TypeStatistics(fields.get("count").longValue(), fields.get("sum").doubleValue(),
+                min == null ? null : min.doubleValue(), max == null ? null : max.doubleValue());
+    }
+
+    public static Map<Long, Rejection> encode(Map<Long, InvalidTransaction> rejected) {
+        final Map<Long, Rejection> rejections = new HashMap<>();
+        rejected.forEach((id, e) -> {
+            if (e instanceof TransactionAlreadyExistsException) {
+                rejections.put(id, new Rejection("exists", null));
+            } else if (e instanceof ParentTransactionDoesNotExistException) {
+                rejections.put(id, new Rejection("parent", null));
+            } else if (e instanceof InvalidAmountException) {
+                final String message = e.getMessage();
+                rejections.put(id, new Rejection("amount", message.substring(message.indexOf(' ', INVALID_AMOUNT.length()) + 1)));
+            } else {
+                rejections.put(id, new Rejection("invalid", e.getMessage().substring(INVALID.length())));
+            }
+        });
+        return rejections;
+    }
+
+    /**
+     * @param batch the transactions the rejections are about
+     */
+    public static Map<Long, InvalidTransaction> decode(Map<Long, Rejection> rejections, Map<Long, Transaction> batch) {
+        final Map<Long, InvalidTransaction> rejected = new HashMap<>();
+        rejections.forEach((id, rejection) -> {
+            switch (rejection.kind) {
+                case "exists":
+                    rejected.put(id, new TransactionAlreadyExistsException(id));
+                    break;
+                case "parent":
+                    rejected.put(id, new ParentTransactionDoesNotExistException(batch.get(id).parentId()));
+                    break;
+                case "amount":
+                    rejected.put(id, new InvalidAmountException(batch.get(id).amount(), rejection.reason));
+                    break;
+                default:
+                    rejected.put(id, new InvalidTransaction(rejection.reason));
+            }
+        });
+        return rejected;
+    }
+}
@@ -0,0 +1,728 @@
+package com.n26.codechallenge.cluster;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.repository.TransactionBatch;
+import com.n26.codechallenge.service.TransactionalService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * One node of a cluster splitting the forest of transactions between several instances of the application.
+ *
+ * Trees are placed by consistent hashing of their root on a {@link HashRing}: the node owning a tree stores all of its
+ * transactions in its {@link LocalNode}, with its own type index and sum view. Since identifiers do not tell their
+ * root, every node also keeps the identifier to root entries of a directory partitioned over the same ring by
+ * identifier. Any node accepts any request: it finds the roots in the directory and hands every transaction over to
+ * the owner of its tree. Reserving an identifier in the directory, with an atomic put-if-absent, keeps identifiers
+ * unique across the cluster, and the reservation is released if the owner of the tree rejects the transaction.
+ * Type queries are asked to every node and their answers merged.
+ *
+ * The node set is changed by {@link #reconfigure(List)} in three steps:
+ *
+ * - prepare: every node learns the new ring, and keeps routing by the current one
+ * - migrate: one node after the other, every node of the current ring hands the trees and directory entries it no
+ *   longer owns over to their new owners, then forwards the requests for them
+ * - commit: every node routes by the new ring
+ *
+ * While a node migrates, its writes wait. A node never routes a request more than twice, see {@link Hop}.
+ */
+@Slf4j
+public class ClusterTransactionalService implements TransactionalService, AutoCloseable {
+
+    /**
+     * The number of transactions handed over to another node per request while migrating
+     */
+    static final int MIGRATION_CHUNK = 10_000;
+
+    private final String self;
+    private final ClusterClient client;
+    private final Supplier<LocalNode> localNodes;
+    private final ExecutorService peers;
+
+    /**
+     * Held by the writes of this node and, exclusively, by its migration, so that no write lands in a tree being handed
+     * over. Reads go by the {@link #state} they start with and never wait
+     */
+    private final ReadWriteLock migration = new ReentrantReadWriteLock();
+    private volatile State state;
+
+    /**
+     * @param self the base URL of this node, as listed in the rings
+     * @param nodes the base URLs of every node of the cluster, this one included
+     * @param virtualNodes the number of points of every node on the ring
+     * @param localNodes builds an empty local node, once on startup and again whenever trees leave this node
+     * @param client calls the other nodes
+     */
+    public ClusterTransactionalService(String self, List<String> nodes, int virtualNodes, Supplier<LocalNode> localNodes, ClusterClient client) {
+        this.self = self;
+        this.client = client;
+        this.localNodes = localNodes;
+        this.peers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "cluster-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.state = new State(new HashRing(nodes, virtualNodes), null, false, localNodes.get(), new ConcurrentHashMap<>());
+    }
+
+    /**
+     * The immutable routing state of the node, replaced as a whole
+     */
+    private static final class State {
+        final HashRing current;
+        final HashRing pending;
+        final boolean migrated;
+        final LocalNode local;
+        final ConcurrentMap<Long, Long> roots;
+
+        State(HashRing current, HashRing pending, boolean migrated, LocalNode local, ConcurrentMap<Long, Long> roots) {
+            this.current = current;
+            this.pending = pending;
+            this.migrated = migrated;
+            this.local = local;
+            this.roots = roots;
+        }
+
+        /**
+         * Every node that may hold transactions
+         */
+        Set<String> nodes() {
+            final Set<String> nodes = new LinkedHashSet<>(current.nodes());
+            if (pending != null) {
+                nodes.addAll(pending.nodes());
+            }
+            return nodes;
+        }
+    }
+
+    public String self() {
+        return self;
+    }
+
+    /**
+     * The nodes of the current ring, followed by the nodes of the ring being prepared if any
+     * @return the current nodes, under "current", and the pending ones, under "pending"
+     */
+    public Map<String, List<String>> membership() {
+        final State state = this.state;
+        final Map<String, List<String>> membership = new LinkedHashMap<>();
+        membership.put("current", state.current.nodes());
+        membership.put("pending", state.pending == null ? null : state.pending.nodes());
+        return membership;
+    }
+
+    /**
+     * The transactions currently stored by this node
+     * @return
+     */
+    public LocalNode local() {
+        return state.local;
+    }
+
+    @Override
+    public void addTransaction(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException, InvalidAmountException {
+        final InvalidTransaction rejection = addTransactions(Collections.singletonMap(id, transaction)).get(id);
+        if (rejection instanceof TransactionAlreadyExistsException) {
+            throw (TransactionAlreadyExistsException) rejection;
+        } else if (rejection instanceof ParentTransactionDoesNotExistException) {
+            throw (ParentTransactionDoesNotExistException) rejection;
+        } else if (rejection instanceof InvalidAmountException) {
+            throw (InvalidAmountException) rejection;
+        } else if (rejection != null) {
+            throw new IllegalStateException("Unexpected rejection of transaction " + id, rejection);
+        }
+    }
+
+    /**
+     * Finds the roots of the parents of the batch in the directory, reserves the identifiers of the batch, then hands
+     * each tree of the batch over to its owner, parents first. If an owner fails, the identifiers of the transactions
+     * that were not stored are released before the failure is thrown
+     *
+     * @param transactions the transactions, by identifier
+     * @return the rejected transactions, along with the reason
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        final Map<Long, InvalidTransaction> rejected = new HashMap<>();
+        final Map<Long, Transaction> ordered = TransactionBatch.parentsFirst(transactions);
+        final Set<Long> parentIds = ordered.values().stream().map(Transaction::parentId).filter(Objects::nonNull).collect(Collectors.toSet());
+        // a parent of the batch that already exists keeps its root, and its duplicate is rejected below
+        final Map<Long, Long> parentRoots = roots(parentIds, Hop.CLIENT);
+        final Map<Long, Long> roots = new LinkedHashMap<>();
+        for (Map.Entry<Long, Transaction> entry : ordered.entrySet()) {
+            final Long parentId = entry.getValue().parentId();
+            final Long root = parentId == null ? entry.getKey() : parentRoots.getOrDefault(parentId, roots.get(parentId));
+            if (root == null) {
+                rejected.put(entry.getKey(), new ParentTransactionDoesNotExistException(parentId));
+            } else {
+                roots.put(entry.getKey(), root);
+            }
+        }
+        for (Long id : reserve(roots, Hop.CLIENT)) {
+            roots.remove(id);
+            rejected.put(id, new TransactionAlreadyExistsException(id));
+        }
+        final Map<Long, Transaction> accepted = new LinkedHashMap<>();
+        roots.keySet().forEach(id -> accepted.put(id, ordered.get(id)));
+        final Map<Long, InvalidTransaction> refused;
+        try {
+            refused = addTransactions(accepted, roots, Hop.CLIENT);
+        } catch (RuntimeException e) {
+            releaseUnstored(roots, e);
+            throw e;
+        }
+        if (!refused.isEmpty()) {
+            final Map<Long, Long> released = new HashMap<>();
+            refused.keySet().forEach(id -> released.put(id, roots.get(id)));
+            release(released, Hop.CLIENT);
+            rejected.putAll(refused);
+        }
+        return rejected;
+    }
+
+    @Override
+    public Transaction transaction(Long transactionId) throws TransactionDoesNotExistException {
+        final Transaction transaction = transactions(Collections.singleton(transactionId)).get(transactionId);
+        if (transaction == null) {
+            throw new TransactionDoesNotExistException(transactionId);
+        }
+        return transaction;
+    }
+
+    @Override
+    public Map<Long, Transaction> transactions(Collection<Long> transactionIds) {
+        return transactions(roots(transactionIds, Hop.CLIENT), Hop.CLIENT);
+    }
+
+    @Override
+    public Set<Long> transactionByType(String type) {
+        final Set<Long> ids = new HashSet<>();
+        fanOut(() -> localTransactionByType(type), node -> client.localTransactionByType(node, type)).forEach(ids::addAll);
+        return ids;
+    }
+
+    /**
+     * Merges the pages of every node, each holding the lowest identifiers of its node, into the page of the lowest
+     * identifiers overall
+     */
+    @Override
+    public List<Long> transactionByTypes(Collection<String> types, Long after, int limit) {
+        final SortedSet<Long> ids = new TreeSet<>();
+        fanOut(() -> localTransactionByTypes(types, after, limit), node -> client.localTransactionByTypes(node, types, after, limit))
+                .forEach(ids::addAll);
+        return ids.stream().limit(limit).collect(Collectors.toList());
+    }
+
+    @Override
+    public TypeStatistics typeStatistics(String type) {
+        TypeStatistics statistics = TypeStatistics.EMPTY;
+        for (TypeStatistics node : fanOut(() -> localTypeStatistics(type), node -> client.localTypeStatistics(node, type))) {
+            statistics = statistics.merge(node);
+        }
+        return statistics;
+    }
+
+    @Override
+    public Double transactionSum(Long parentId) throws TransactionDoesNotExistException {
+        final Double sum = transactionSums(Collections.singleton(parentId)).get(parentId);
+        if (sum == null) {
+            throw new TransactionDoesNotExistException(parentId);
+        }
+        return sum;
+    }
+
+    @Override
+    public Map<Long, Double> transactionSums(Collection<Long> parentIds) {
+        return transactionSums(roots(parentIds, Hop.CLIENT), Hop.CLIENT);
+    }
+
+    @Override
+    public TypeStatistics subTreeStatistics(Long parentId, String type) throws TransactionDoesNotExistException {
+        final Long root = roots(Collections.singleton(parentId), Hop.CLIENT).get(parentId);
+        final TypeStatistics statistics = root == null ? null : subTreeStatistics(parentId, root, type, Hop.CLIENT);
+        if (statistics == null) {
+            throw new TransactionDoesNotExistException(parentId);
+        }
+        return statistics;
+    }
+
+    /**
+     * The footprint of the type index of this node only
+     */
+    @Override
+    public long typeIndexFootprint() {
+        return state.local.service().typeIndexFootprint();
+    }
+
+    /**
+     * The roots of the identifiers found in the directory
+     * @param ids
+     * @param hop
+     * @return the roots, by identifier, identifiers without an entry being left out
+     */
+    public Map<Long, Long> roots(Collection<Long> ids, Hop hop) {
+        final State state = this.state;
+        final Map<String, List<Long>> idsByNode = byOwner(state, ids, id -> id, hop);
+        final Map<Long, Long> roots = new HashMap<>();
+        for (Long id : idsByNode.getOrDefault(self, Collections.emptyList())) {
+            final Long root = state.roots.get(id);
+            if (root != null) {
+                roots.put(id, root);
+            }
+        }
+        onOtherNodes(idsByNode, (node, part) -> client.roots(node, part, hop.next())).forEach(roots::putAll);
+        return roots;
+    }
+
+    /**
+     * Adds entries to the directory, unless their identifier is already there
+     * @param roots the roots, by identifier
+     * @param hop
+     * @return the identifiers already in the directory
+     */
+    public Set<Long> reserve(Map<Long, Long> roots, Hop hop) {
+        final Set<Long> used = new HashSet<>();
+        final Map<String, List<Long>> idsByNode;
+        migration.readLock().lock();
+        try {
+            final State state = this.state;
+            idsByNode = byOwner(state, roots.keySet(), id -> id, hop);
+            for (Long id : idsByNode.getOrDefault(self, Collections.emptyList())) {
+                if (state.roots.putIfAbsent(id, roots.get(id)) != null) {
+                    used.add(id);
+                }
+            }
+        } finally {
+            migration.readLock().unlock();
+        }
+        onOtherNodes(idsByNode, (node, part) -> client.reserve(node, select(roots, part), hop.next())).forEach(used::addAll);
+        return used;
+    }
+
+    /**
+     * Removes entries from the directory, if they still have the given root
+     * @param roots the roots, by identifier
+     * @param hop
+     */
+    public void release(Map<Long, Long> roots, Hop hop) {
+        final Map<String, List<Long>> idsByNode;
+        migration.readLock().lock();
+        try {
+            final State state = this.state;
+            idsByNode = byOwner(state, roots.keySet(), id -> id, hop);
+            idsByNode.getOrDefault(self, Collections.emptyList()).forEach(id -> state.roots.remove(id, roots.get(id)));
+        } finally {
+            migration.readLock().unlock();
+        }
+        onOtherNodes(idsByNode, (node, part) -> {
+            client.release(node, select(roots, part), hop.next());
+            return null;
+        });
+    }
+
+    /**
+     * Adds transactions to the trees they belong to
+     * @param transactions the transactions, parents first
+     * @param roots the root of every transaction
+     * @param hop
+     * @return the transactions rejected by the owners of their tree
+     */
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions, Map<Long, Long> roots, Hop hop) {
+        final Map<Long, InvalidTransaction> rejected = new HashMap<>();
+        final Map<String, List<Long>> idsByNode;
+        migration.readLock().lock();
+        try {
+            final State state = this.state;
+            idsByNode = byOwner(state, transactions.keySet(), roots::get, hop);
+            final List<Long> local = idsByNode.get(self);
+            if (local != null) {
+                rejected.putAll(state.local.service().addTransactions(select(transactions, local)));
+            }
+        } finally {
+            migration.readLock().unlock();
+        }
+        onOtherNodes(idsByNode, (node, part) -> client.addTransactions(node, select(transactions, part), select(roots, part), hop.next()))
+                .forEach(rejected::putAll);
+        return rejected;
+    }
+
+    /**
+     * Reads transactions from the trees they belong to
+     * @param roots the root of every transaction
+     * @param hop
+     * @return the transactions found, by identifier
+     */
+    public Map<Long, Transaction> transactions(Map<Long, Long> roots, Hop hop) {
+        final State state = this.state;
+        final Map<String, List<Long>> idsByNode = byOwner(state, roots.keySet(), roots::get, hop);
+        final Map<Long, Transaction> found = new HashMap<>();
+        final List<Long> local = idsByNode.get(self);
+        if (local != null) {
+            found.putAll(state.local.service().transactions(local));
+        }
+        onOtherNodes(idsByNode, (node, part) -> client.transactions(node, select(roots, part), hop.next())).forEach(found::putAll);
+        return found;
+    }
+
+    /**
+     * Sums transactions within the trees they belong to
+     * @param roots the root of every transaction
+     * @param hop
+     * @return the sums, by identifier
+     */
+    public Map<Long, Double> transactionSums(Map<Long, Long> roots, Hop hop) {
+        final State state = this.state;
+        final Map<String, List<Long>> idsByNode = byOwner(state, roots.keySet(), roots::get, hop);
+        final Map<Long, Double> sums = new HashMap<>();
+        final List<Long> local = idsByNode.get(self);
+        if (local != null) {
+            sums.putAll(state.local.service().transactionSums(local));
+        }
+        onOtherNodes(idsByNode, (node, part) -> client.transactionSums(node, select(roots, part), hop.next())).forEach(sums::putAll);
+        return sums;
+    }
+
+    /**
+     * Computes the statistics of a subtree on the owner of its tree
+     * @param parentId the root of the subtree
+     * @param root the root of its tree
+     * @param type
+     * @param hop
+     * @return null if the owner holds no such transaction
+     */
+    public TypeStatistics subTreeStatistics(Long parentId, Long root, String type, Hop hop) {
+        final State state = this.state;
+        final String owner = byOwner(state, Collections.singleton(parentId), id -> root, hop).keySet().iterator().next();
+        if (!self.equals(owner)) {
+            return client.subTreeStatistics(owner, parentId, root, type, hop.next());
+        }
+        try {
+            return state.local.service().subTreeStatistics(parentId, type);
+        } catch (TransactionDoesNotExistException e) {
+            return null;
+        }
+    }
+
+    public Set<Long> localTransactionByType(String type) {
+        return state.local.service().transactionByType(type);
+    }
+
+    public List<Long> localTransactionByTypes(Collection<String> types, Long after, int limit) {
+        return state.local.service().transactionByTypes(types, after, limit);
+    }
+
+    public TypeStatistics localTypeStatistics(String type) {
+        return state.local.service().typeStatistics(type);
+    }
+
+    /**
+     * Changes the nodes of the cluster, this node coordinating the prepare, migrate and commit steps.
+     *
+     * New nodes must be running, started with the nodes of the current ring so that they hold no transaction. A node
+     * that fails a step leaves the cluster in between rings; reconfiguring again to the same nodes resumes where it
+     * stopped, a node whose migration failed handing its trees over again, including those already received.
+     *
+     * @param nodes the base URLs of the nodes of the new ring
+     * @return the new membership
+     */
+    public synchronized Map<String, List<String>> reconfigure(List<String> nodes) {
+        final State state = this.state;
+        final List<String> current = state.current.nodes();
+        final HashRing target = new HashRing(nodes, state.current.virtualNodes());
+        final Set<String> everyone = new LinkedHashSet<>(current);
+        everyone.addAll(target.nodes());
+        log.info("Reconfiguring the cluster from {} to {}", current, target.nodes());
+        for (String node : everyone) {
+            if (self.equals(node)) {
+                prepare(current, target.nodes());
+            } else {
+                client.prepare(node, current, target.nodes());
+            }
+        }
+        for (String node : current) {
+            if (self.equals(node)) {
+                migrate();
+            } else {
+                client.migrate(node);
+            }
+        }
+        for (String node : everyone) {
+            if (self.equals(node)) {
+                commit(target.nodes());
+            } else {
+                client.commit(node, target.nodes());
+            }
+        }
+        return membership();
+    }
+
+    /**
+     * Learns the ring the cluster is moving to
+     * @param current the nodes of the ring the cluster is moving from, adopted by nodes joining the cluster
+     * @param pending the nodes of the ring the cluster is moving to
+     * @throws IllegalStateException if this node has already migrated to another ring
+     */
+    public void prepare(List<String> current, List<String> pending) {
+        migration.writeLock().lock();
+        try {
+            final State state = this.state;
+            if (state.migrated && !state.pending.nodes().equals(pending)) {
+                throw new IllegalStateException("The node already migrated to " + state.pending.nodes());
+            }
+            final int virtualNodes = state.current.virtualNodes();
+            final HashRing from = state.current.nodes().equals(current) ? state.current : new HashRing(current, virtualNodes);
+            this.state = new State(from, new HashRing(pending, virtualNodes), state.migrated, state.local, state.roots);
+        } finally {
+            migration.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hands the trees and directory entries this node does not own on the pending ring over to their new owners,
+     * then rebuilds the local node with the trees it keeps. Writes wait until the migration completes
+     */
+    public void migrate() {
+        migration.writeLock().lock();
+        try {
+            final State state = this.state;
+            if (state.pending == null || state.migrated) {
+                return;
+            }
+            final LocalNode kept = migrateTrees(state);
+            final ConcurrentMap<Long, Long> keptRoots = migrateRoots(state);
+            this.state = new State(state.current, state.pending, true, kept, keptRoots);
+            state.local.close();
+        } finally {
+            migration.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Routes by the pending ring from now on
+     * @param nodes the nodes of the pending ring
+     * @throws IllegalStateException if the node has not prepared this ring
+     */
+    public void commit(List<String> nodes) {
+        migration.writeLock().lock();
+        try {
+            final State state = this.state;
+            if (state.pending == null) {
+                if (!state.current.nodes().equals(nodes)) {
+                    throw new IllegalStateException("The node has not prepared " + nodes);
+                }
+                return;
+            }
+            if (!state.pending.nodes().equals(nodes)) {
+                throw new IllegalStateException("The node has prepared " + state.pending.nodes() + ", not " + nodes);
+            }
+            this.state = new State(state.pending, null, false, state.local, state.roots);
+            log.info("Node {} now routes by {}", self, nodes);
+        } finally {
+            migration.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        peers.shutdownNow();
+        state.local.close();
+    }
+
+    /**
+     * Walks the local transactions parents first, which gives the root of each one from the root of its parent, and
+     * hands the trees owned by other nodes on the pending ring over to them in chunks
+     * @return a new local node holding the trees this node keeps
+     */
+    private LocalNode migrateTrees(State state) {
+        final Map<Long, Long> roots = new HashMap<>();
+        final Map<Long, Transaction> kept = new LinkedHashMap<>();
+        final Map<String, Map<Long, Transaction>> moving = new HashMap<>();
+        int moved = 0;
+        for (Map.Entry<Long, Transaction> entry : state.local.repository().allTransactions().entrySet()) {
+            final Long parentId = entry.getValue().parentId();
+            final Long root = parentId == null ? entry.getKey() : roots.get(parentId);
+            roots.put(entry.getKey(), root);
+            final String owner = state.pending.owner(root);
+            if (self.equals(owner)) {
+                kept.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            final Map<Long, Transaction> chunk = moving.computeIfAbsent(owner, k -> new LinkedHashMap<>());
+            chunk.put(entry.getKey(), entry.getValue());
+            moved++;
+            if (chunk.size() == MIGRATION_CHUNK) {
+                handOver(owner, moving.remove(owner), roots);
+            }
+        }
+        moving.forEach((owner, chunk) -> handOver(owner, chunk, roots));
+        final LocalNode local = localNodes.get();
+        final Map<Long, InvalidTransaction> rejected = local.service().addTransactions(kept);
+        if (!rejected.isEmpty()) {
+            throw new IllegalStateException("Could not keep the transactions of node " + self + ": " + rejected.values().iterator().next().getMessage());
+        }
+        log.info("Node {} handed {} transactions over and kept {}", self, moved, kept.size());
+        return local;
+    }
+
+    /**
+     * Hands a chunk over to its new owner. Transactions the owner already holds, received by a migration that failed
+     * afterwards, are accepted as long as they are the same
+     */
+    private void handOver(String owner, Map<Long, Transaction> chunk, Map<Long, Long> roots) {
+        final Map<Long, InvalidTransaction> rejected = client.addTransactions(owner, chunk, select(roots, chunk.keySet()), Hop.FORWARDED);
+        final Set<Long> received = rejected.entrySet().stream()
+                .filter(entry -> entry.getValue() instanceof TransactionAlreadyExistsException)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        if (!received.isEmpty()) {
+            client.transactions(owner, select(roots, received), Hop.FORWARDED).forEach((id, transaction) -> {
+                if (transaction.equals(chunk.get(id))) {
+                    rejected.remove(id);
+                }
+            });
+        }
+        if (!rejected.isEmpty()) {
+            throw new IllegalStateException("Node " + owner + " refused transactions handed over: " + rejected.values().iterator().next().getMessage());
+        }
+    }
+
+    /**
+     * Releases the identifiers of a write that failed part way, except for those of the transactions that were stored.
+     * When some owner cannot tell what it stored, only the part stored by this node is known to be stored
+     */
+    private void releaseUnstored(Map<Long, Long> roots, RuntimeException failure) {
+        final Map<Long, Long> released = new HashMap<>(roots);
+        try {
+            released.keySet().removeAll(transactions(roots, Hop.CLIENT).keySet());
+        } catch (RuntimeException e) {
+            released.keySet().removeAll(state.local.service().transactions(roots.keySet()).keySet());
+        }
+        try {
+            release(released, Hop.CLIENT);
+        } catch (RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Hands the directory entries owned by other nodes on the pending ring over to them
+     * @return the entries this node keeps
+     */
+    private ConcurrentMap<Long, Long> migrateRoots(State state) {
+        final ConcurrentMap<Long, Long> kept = new ConcurrentHashMap<>();
+        final Map<String, Map<Long, Long>> moving = new HashMap<>();
+        state.roots.forEach((id, root) -> {
+            final String owner = state.pending.owner(id);
+            if (self.equals(owner)) {
+                kept.put(id, root);
+            } else {
+                moving.computeIfAbsent(owner, k -> new HashMap<>()).put(id, root);
+            }
+        });
+        moving.forEach((owner, entries) -> client.reserve(owner, entries, Hop.FORWARDED));
+        return kept;
+    }
+
+    /**
+     * Groups identifiers by the node serving them.
+     *
+     * Keys are routed by the current ring, except for the keys this node already handed over, which go to their
+     * owner on the pending ring. A node owning a key on the pending ring only receives it routed by a node that
+     * committed, so after every node migrated, and serves it.
+     *
+     * @param key the key of each identifier on the ring: itself for the directory, its root for the trees
+     */
+    private Map<String, List<Long>> byOwner(State state, Collection<Long> ids, ToLongFunction<Long> key, Hop hop) {
+        if (hop == Hop.FORWARDED) {
+            return Collections.singletonMap(self, new ArrayList<>(ids));
+        }
+        final Map<String, List<Long>> idsByNode = new HashMap<>();
+        for (Long id : ids) {
+            final long k = key.applyAsLong(id);
+            String owner = state.current.owner(k);
+            if (state.pending != null) {
+                if (self.equals(owner) && state.migrated) {
+                    owner = state.pending.owner(k);
+                } else if (hop == Hop.ROUTED && self.equals(state.pending.owner(k))) {
+                    owner = self;
+                }
+            }
+            idsByNode.computeIfAbsent(owner, k2 -> new ArrayList<>()).add(id);
+        }
+        return idsByNode;
+    }
+
+    /**
+     * Calls the nodes other than this one in parallel
+     * @return the answer of every node
+     */
+    private <T> List<T> onOtherNodes(Map<String, List<Long>> idsByNode, BiFunction<String, List<Long>, T> call) {
+        final List<CompletableFuture<T>> answers = new ArrayList<>();
+        idsByNode.forEach((node, ids) -> {
+            if (!self.equals(node)) {
+                answers.add(CompletableFuture.supplyAsync(() -> call.apply(node, ids), peers));
+            }
+        });
+        return join(answers);
+    }
+
+    /**
+     * Asks every node that may hold transactions, this one locally
+     */
+    private <T> List<T> fanOut(Supplier<T> local, Function<String, T> remote) {
+        final List<CompletableFuture<T>> answers = new ArrayList<>();
+        for (String node : state.nodes()) {
+            if (!self.equals(node)) {
+                answers.add(CompletableFuture.supplyAsync(() -> remote.apply(node), peers));
+            }
+        }
+        final T own = local.get();
+        final List<T> all = join(answers);
+        all.add(own);
+        return all;
+    }
+
+    private static <T> List<T> join(List<CompletableFuture<T>> answers) {
+        final List<T> joined = new ArrayList<>(answers.size() + 1);
+        for (CompletableFuture<T> answer : answers) {
+            try {
+                joined.add(answer.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return joined;
+    }
+
+    /**
+     * The entries of a map for some of its keys, in the order of the keys
+     */
+    private static <V> Map<Long, V> select(Map<Long, V> map, Collection<Long> keys) {
+        final Map<Long, V> selected = new LinkedHashMap<>(keys.size() * 2);
+        keys.forEach(key -> selected.put(key, map.get(key)));
+        return selected;
+    }
+}
@@ -0,0 +1,99 @@
+package com.n26.codechallenge.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * An immutable consistent hash ring over the nodes of a cluster.
+ *
+ * Every node is placed at {@link #virtualNodes} points of the ring and a key belongs to the node of the first point
+ * at or after the hash of the key, wrapping around. Adding or removing a node therefore only moves the keys of the
+ * arcs it gains or loses, about one key in as many as there are nodes.
+ */
+public final class HashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final List<String> nodes;
+    private final int virtualNodes;
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * @param nodes the base URLs of the nodes, duplicates being ignored
+     * @param virtualNodes the number of points of every node
+     */
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs at least one node");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Every node needs at least one point of the ring");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(nodes)));
+        this.virtualNodes = virtualNodes;
+        final long[][] placed = new long[this.nodes.size() * virtualNodes][];
+        int next = 0;
+        for (int node = 0; node < this.nodes.size(); node++) {
+            for (int point = 0; point < virtualNodes; point++) {
+                placed[next++] = new long[]{hash(this.nodes.get(node), point), node};
+            }
+        }
+        Arrays.sort(placed, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[placed.length];
+        this.owners = new String[placed.length];
+        for (int i = 0; i < placed.length; i++) {
+            points[i] = placed[i][0];
+            owners[i] = this.nodes.get((int) placed[i][1]);
+        }
+    }
+
+    /**
+     * The nodes of the ring, in the order they were given
+     * @return
+     */
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public int virtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * The node a key belongs to
+     * @param key a transaction identifier
+     * @return
+     */
+    public String owner(long key) {
+        final int index = Arrays.binarySearch(points, mix(key));
+        final int point = index >= 0 ? index : -index - 1;
+        return owners[point == points.length ? 0 : point];
+    }
+
+    /**
+     * The 64 bits finalizer of SplitMix64, which spreads consecutive identifiers over the whole ring
+     */
+    private static long mix(long key) {
+        long hash = key + 0x9E3779B97F4A7C15L;
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * A point of a node: the FNV-1a hash of its URL, mixed with the index of the point
+     */
+    private static long hash(String node, int point) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : node.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(hash ^ (point * 0x9E3779B97F4A7C15L));
+    }
+}
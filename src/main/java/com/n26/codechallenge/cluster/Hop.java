@@ -0,0 +1,30 @@
+package com.n26.codechallenge.cluster;
+
+/**
+ * How far a request of the cluster has travelled, which bounds how many times it is routed
+ */
+public enum Hop {
+
+    /**
+     * Received from a client of the API: routed by this node
+     */
+    CLIENT,
+
+    /**
+     * Routed here by another node: served if this node owns the keys, forwarded once more otherwise
+     */
+    ROUTED,
+
+    /**
+     * Forwarded here by the node that was routed the request: always served by this node
+     */
+    FORWARDED;
+
+    /**
+     * The hop of a request this node sends on
+     * @return
+     */
+    public Hop next() {
+        return this == CLIENT ? ROUTED : FORWARDED;
+    }
+}
@@ -0,0 +1,136 @@
+package com.n26.codechallenge.cluster;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.cluster.ClusterProtocol.Batch;
+import com.n26.codechallenge.cluster.ClusterProtocol.Membership;
+import com.n26.codechallenge.exception.ClusterUnavailableException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Calls the cluster endpoints of the other nodes, served under /cluster, with JSON bodies of the {@link ClusterProtocol}
+ */
+public class HttpClusterClient implements ClusterClient {
+
+    private final RestTemplate rest;
+
+    /**
+     * @param timeoutMs the connection and read timeouts of every call
+     */
+    public HttpClusterClient(int timeoutMs) {
+        final SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout(timeoutMs);
+        factory.setReadTimeout(timeoutMs);
+        this.rest = new RestTemplate(factory);
+    }
+
+    @Override
+    public Map<Long, Long> roots(String node, Collection<Long> ids, Hop hop) {
+        return ClusterProtocol.read(post(node, "/cluster/directory/roots", hop, ids), ClusterProtocol.ROOTS);
+    }
+
+    @Override
+    public Set<Long> reserve(String node, Map<Long, Long> roots, Hop hop) {
+        return ClusterProtocol.read(post(node, "/cluster/directory/reserve", hop, roots), ClusterProtocol.ID_SET);
+    }
+
+    @Override
+    public void release(String node, Map<Long, Long> roots, Hop hop) {
+        post(node, "/cluster/directory/release", hop, roots);
+    }
+
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(String node, Map<Long, Transaction> transactions, Map<Long, Long> roots, Hop hop) {
+        final byte[] rejections = post(node, "/cluster/trees/add", hop, new Batch(transactions, roots));
+        return ClusterProtocol.decode(ClusterProtocol.read(rejections, ClusterProtocol.REJECTIONS), transactions);
+    }
+
+    @Override
+    public Map<Long, Transaction> transactions(String node, Map<Long, Long> roots, Hop hop) {
+        return ClusterProtocol.read(post(node, "/cluster/trees/transactions", hop, roots), ClusterProtocol.TRANSACTIONS);
+    }
+
+    @Override
+    public Map<Long, Double> transactionSums(String node, Map<Long, Long> roots, Hop hop) {
+        return ClusterProtocol.read(post(node, "/cluster/trees/sums", hop, roots), ClusterProtocol.SUMS);
+    }
+
+    @Override
+    public TypeStatistics subTreeStatistics(String node, Long parentId, Long root, String type, Hop hop) {
+        final UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(node).path("/cluster/trees/{root}/{id}/stats")
+                .queryParam("hop", hop);
+        if (type != null) {
+            uri.queryParam("type", type);
+        }
+        return ClusterProtocol.readStatistics(call(node, uri.buildAndExpand(root, parentId).encode().toUriString(), HttpMethod.GET, null));
+    }
+
+    @Override
+    public Set<Long> localTransactionByType(String node, String type) {
+        final String uri = UriComponentsBuilder.fromHttpUrl(node).path("/cluster/local/types/{type}").buildAndExpand(type).encode().toUriString();
+        return ClusterProtocol.read(call(node, uri, HttpMethod.GET, null), ClusterProtocol.ID_SET);
+    }
+
+    @Override
+    public List<Long> localTransactionByTypes(String node, Collection<String> types, Long after, int limit) {
+        final UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(node).path("/cluster/local/types")
+                .queryParam("type", types.toArray())
+                .queryParam("limit", limit);
+        if (after != null) {
+            uri.queryParam("after", after);
+        }
+        return ClusterProtocol.read(call(node, uri.build().encode().toUriString(), HttpMethod.GET, null), ClusterProtocol.IDS);
+    }
+
+    @Override
+    public TypeStatistics localTypeStatistics(String node, String type) {
+        final String uri = UriComponentsBuilder.fromHttpUrl(node).path("/cluster/local/types/{type}/stats").buildAndExpand(type).encode().toUriString();
+        return ClusterProtocol.readStatistics(call(node, uri, HttpMethod.GET, null));
+    }
+
+    @Override
+    public void prepare(String node, List<String> current, List<String> pending) {
+        call(node, node + "/cluster/prepare", HttpMethod.POST, new Membership(current, pending));
+    }
+
+    @Override
+    public void migrate(String node) {
+        call(node, node + "/cluster/migrate", HttpMethod.POST, null);
+    }
+
+    @Override
+    public void commit(String node, List<String> nodes) {
+        call(node, node + "/cluster/commit", HttpMethod.POST, nodes);
+    }
+
+    private byte[] post(String node, String path, Hop hop, Object body) {
+        return call(node, node + path + "?hop=" + hop, HttpMethod.POST, body);
+    }
+
+    /**
+     * @throws ClusterUnavailableException if the node could not be reached, failed or answered an unreadable body
+     */
+    private byte[] call(String node, String uri, HttpMethod method, Object body) {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        try {
+            return rest.exchange(uri, method, new HttpEntity<>(body == null ? null : ClusterProtocol.write(body), headers), byte[].class).getBody();
+        } catch (RestClientException | UncheckedIOException e) {
+            throw new ClusterUnavailableException(node, e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.n26.codechallenge.cluster;
+
+import com.n26.codechallenge.repository.TransactionalRepository;
+import com.n26.codechallenge.service.TransactionalService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The transactions a node of the cluster holds itself: a service along with the repository it stores them in
+ */
+@Slf4j
+public final class LocalNode implements AutoCloseable {
+
+    private final TransactionalService service;
+    private final TransactionalRepository repository;
+
+    public LocalNode(TransactionalService service, TransactionalRepository repository) {
+        this.service = service;
+        this.repository = repository;
+    }
+
+    public TransactionalService service() {
+        return service;
+    }
+
+    public TransactionalRepository repository() {
+        return repository;
+    }
+
+    /**
+     * Releases the threads of the service, if it has any
+     */
+    @Override
+    public void close() {
+        if (service instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) service).close();
+            } catch (Exception e) {
+                log.warn("Could not close a discarded local service", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.n26.codechallenge.controller;
+
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.cluster.ClusterProtocol;
+import com.n26.codechallenge.cluster.ClusterProtocol.Batch;
+import com.n26.codechallenge.cluster.ClusterProtocol.Membership;
+import com.n26.codechallenge.cluster.ClusterTransactionalService;
+import com.n26.codechallenge.cluster.Hop;
+import com.n26.codechallenge.service.TransactionalService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binds the requests the nodes of a cluster send each other to the {@link ClusterTransactionalService} of this node,
+ * along with the membership endpoints: GET /cluster/nodes shows the rings of the node and PUT /cluster/nodes, given a
+ * JSON array of base URLs, moves the cluster to these nodes.
+ *
+ * Bodies are the JSON of the {@link ClusterProtocol}. Only served when transactionservice.cluster.self is set.
+ */
+@Controller
+@ConditionalOnProperty(prefix = "transactionservice.cluster", name = "self")
+@RequestMapping(value = "/cluster", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+class ClusterController {
+
+    private final ClusterTransactionalService cluster;
+
+    /**
+     * @param transactionalService the cluster service, built by {@link com.n26.codechallenge.ServiceConfiguration}
+     *                             when transactionservice.cluster.self is set
+     */
+    ClusterController(TransactionalService transactionalService) {
+        this.cluster = (ClusterTransactionalService) transactionalService;
+    }
+
+    @PostMapping("/directory/roots")
+    public ResponseEntity<byte[]> roots(@RequestParam Hop hop, @RequestBody byte[] ids) {
+        return json(cluster.roots(ClusterProtocol.read(ids, ClusterProtocol.IDS), hop));
+    }
+
+    @PostMapping("/directory/reserve")
+    public ResponseEntity<byte[]> reserve(@RequestParam Hop hop, @RequestBody byte[] roots) {
+        return json(cluster.reserve(ClusterProtocol.read(roots, ClusterProtocol.ROOTS), hop));
+    }
+
+    @PostMapping("/directory/release")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void release(@RequestParam Hop hop, @RequestBody byte[] roots) {
+        cluster.release(ClusterProtocol.read(roots, ClusterProtocol.ROOTS), hop);
+    }
+
+    @PostMapping("/trees/add")
+    public ResponseEntity<byte[]> addTransactions(@RequestParam Hop hop, @RequestBody byte[] body) {
+        final Batch batch = ClusterProtocol.read(body, Batch.class);
+        return json(ClusterProtocol.encode(cluster.addTransactions(batch.transactions, batch.roots, hop)));
+    }
+
+    @PostMapping("/trees/transactions")
+    public ResponseEntity<byte[]> transactions(@RequestParam Hop hop, @RequestBody byte[] roots) {
+        return json(cluster.transactions(ClusterProtocol.read(roots, ClusterProtocol.ROOTS), hop));
+    }
+
+    @PostMapping("/trees/sums")
+    public ResponseEntity<byte[]> transactionSums(@RequestParam Hop hop, @RequestBody byte[] roots) {
+        return json(cluster.transactionSums(ClusterProtocol.read(roots, ClusterProtocol.ROOTS), hop));
+    }
+
+    @GetMapping("/trees/{root}/{id}/stats")
+    public ResponseEntity<byte[]> subTreeStatistics(@PathVariable Long root, @PathVariable Long id, @RequestParam Hop hop,
+                                                    @RequestParam(value = "type", required = false) String type) {
+        final TypeStatistics statistics = cluster.subTreeStatistics(id, root, type, hop);
+        return json(statistics == null ? null : ClusterProtocol.fields(statistics));
+    }
+
+    @GetMapping("/local/types/{type}")
+    public ResponseEntity<byte[]> localTransactionByType(@PathVariable String type) {
+        return json(cluster.localTransactionByType(type));
+    }
+
+    @GetMapping("/local/types")
+    public ResponseEntity<byte[]> localTransactionByTypes(@RequestParam("type") List<String> types,
+                                                          @RequestParam(value = "after", required = false) Long after,
+                                                          @RequestParam("limit") int limit) {
+        return json(cluster.localTransactionByTypes(types, after, limit));
+    }
+
+    @GetMapping("/local/types/{type}/stats")
+    public ResponseEntity<byte[]> localTypeStatistics(@PathVariable String type) {
+        return json(ClusterProtocol.fields(cluster.localTypeStatistics(type)));
+    }
+
+    @GetMapping("/nodes")
+    public ResponseEntity<byte[]> membership() {
+        return json(cluster.membership());
+    }
+
+    /**
+     * Moves the cluster to the given nodes, this node coordinating the move, and returns the new membership
+     */
+    @PutMapping(value = "/nodes", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> reconfigure(@RequestBody byte[] nodes) {
+        return json(cluster.reconfigure(ClusterProtocol.read(nodes, ClusterProtocol.NODES)));
+    }
+
+    @PostMapping("/prepare")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void prepare(@RequestBody byte[] body) {
+        final Membership membership = ClusterProtocol.read(body, Membership.class);
+        cluster.prepare(membership.current, membership.pending);
+    }
+
+    @PostMapping("/migrate")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void migrate() {
+        cluster.migrate();
+    }
+
+    @PostMapping("/commit")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void commit(@RequestBody byte[] nodes) {
+        cluster.commit(ClusterProtocol.read(nodes, ClusterProtocol.NODES));
+    }
+
+    /**
+     * A node asked to prepare or commit a ring that conflicts with the one it is moving to
+     */
+    @ExceptionHandler
+    public ResponseEntity<Map<String, String>> handleException(IllegalStateException exception) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(Collections.singletonMap("message", exception.getMessage()));
+    }
+
+    private static ResponseEntity<byte[]> json(Object body) {
+        return ResponseEntity.ok(ClusterProtocol.write(body));
+    }
+}
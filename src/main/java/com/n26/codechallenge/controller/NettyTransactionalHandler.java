@@ -0,0 +1,384 @@
+package com.n26.codechallenge.controller;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.service.TransactionalService;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Serves the /transactionservice API over Netty, with the same paths, bodies and status codes as {@link TransactionalController}.
+ *
+ * Adding and reading a single transaction, as well as reading the statistics of a type, cost about the same whatever
+ * the size of the data, so they run on the event loop. Sums, type queries, batches and lookups grow with the data and run on the query pool instead, so that they never
+ * hold up the cheap requests of the connections sharing their event loop. Queries are refused with a 503 when the
+ * queue of the pool is full.
+ *
+ * Requests are timed under the same http.{method}.{path} metrics as the requests served by Tomcat.
+ *
+ * The responses of a connection are written in the order of its requests, a response waiting for the queries
+ * received before it: the responses of a connection are queued on its event loop, which writes them from the head
+ * of the queue as they are built, whichever thread builds them.
+ */
+@Slf4j
+@ChannelHandler.Sharable
+class NettyTransactionalHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+    private static final String ROOT = "/transactionservice";
+    private static final String TRANSACTION = ROOT + "/transaction/";
+    private static final String TRANSACTIONS = ROOT + "/transactions";
+    private static final String TYPES = ROOT + "/types";
+    private static final String STATS = "/stats";
+    private static final String SUM = ROOT + "/sum/";
+    private static final String LOOKUP = ROOT + "/lookup";
+    private static final String JSON_UTF8 = "application/json;charset=UTF-8";
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private static final AttributeKey<Queue<CompletableFuture<Runnable>>> PENDING_RESPONSES = AttributeKey.valueOf("pendingResponses");
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
+    /**
+     * Builds the response to a request, on the event loop or on the query pool
+     */
+    @FunctionalInterface
+    private interface Operation {
+        FullHttpResponse apply(ByteBufAllocator allocator) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+        void write(OutputStream body) throws IOException;
+    }
+
+    private final TransactionalService transactionalService;
+    private final TransactionJsonCache jsonCache;
+    private final Executor queries;
+    private final MetricRegistry metrics;
+
+    NettyTransactionalHandler(TransactionalService transactionalService, TransactionJsonCache jsonCache, Executor queries, MetricRegistry metrics) {
+        this.transactionalService = transactionalService;
+        this.jsonCache = jsonCache;
+        this.queries = queries;
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+        final String path = new QueryStringDecoder(request.uri()).path();
+        final HttpMethod method = request.method();
+        if (path.startsWith(TRANSACTION) && method.equals(HttpMethod.PUT)) {
+            serve(ctx, request, "/transaction/{id}", false, allocator -> addTransaction(allocator, path.substring(TRANSACTION.length()), request.content()));
+        } else if (path.startsWith(TRANSACTION) && method.equals(HttpMethod.GET)) {
+            serve(ctx, request, "/transaction/{id}", false, allocator -> getTransaction(path.substring(TRANSACTION.length())));
+        } else if (path.equals(TRANSACTIONS) && method.equals(HttpMethod.POST)) {
+            serve(ctx, request, "/transactions", true, allocator -> addTransactions(allocator, request.content()));
+        } else if (path.startsWith(TYPES + "/") && path.endsWith(STATS) && path.length() > TYPES.length() + 1 + STATS.length()
+                && method.equals(HttpMethod.GET)) {
+            final String type = QueryStringDecoder.decodeComponent(path.substring(TYPES.length() + 1, path.length() - STATS.length()));
+            serve(ctx, request, "/types/{type}/stats", false, allocator -> json(allocator, HttpResponseStatus.OK,
+                    body -> TransactionalJson.writeStatistics(body, transactionalService.typeStatistics(type))));
+        } else if (path.startsWith(TYPES + "/") && method.equals(HttpMethod.GET)) {
+            final String type = QueryStringDecoder.decodeComponent(path.substring(TYPES.length() + 1));
+            serve(ctx, request, "/types/{type}", true, allocator -> json(allocator, HttpResponseStatus.OK,
+                    body -> TransactionalJson.writeIds(body, transactionalService.transactionByType(type))));
+        } else if (path.equals(TYPES) && method.equals(HttpMethod.GET)) {
+            serve(ctx, request, "/types", true, allocator -> getTransactionIdsByTypes(allocator, new QueryStringDecoder(request.uri())));
+        } else if (path.startsWith(SUM) && path.endsWith(STATS) && path.length() > SUM.length() + STATS.length()
+                && method.equals(HttpMethod.GET)) {
+            final String parentId = path.substring(SUM.length(), path.length() - STATS.length());
+            serve(ctx, request, "/sum/{parentId}/stats", true, allocator -> getSubTreeStatistics(allocator, parentId, new QueryStringDecoder(request.uri())));
+        } else if (path.startsWith(SUM) && method.equals(HttpMethod.GET)) {
+            serve(ctx, request, "/sum/{parentId}", true, allocator -> getChildrensSum(allocator, path.substring(SUM.length())));
+        } else if (path.equals(LOOKUP + "/transactions") && method.equals(HttpMethod.POST)) {
+            serve(ctx, request, "/lookup/transactions", true, allocator -> getTransactions(allocator, request.content()));
+        } else if (path.equals(LOOKUP + "/sums") && method.equals(HttpMethod.POST)) {
+            serve(ctx, request, "/lookup/sums", true, allocator -> getChildrensSums(allocator, request.content()));
+        } else {
+            final boolean known = path.startsWith(TRANSACTION) || path.equals(TRANSACTIONS) || path.startsWith(TYPES) || path.startsWith(SUM)
+                    || path.startsWith(LOOKUP);
+            final HttpResponseStatus status = known ? HttpResponseStatus.METHOD_NOT_ALLOWED : HttpResponseStatus.NOT_FOUND;
+            serve(ctx, request, null, false, allocator -> error(allocator, status, path, status.reasonPhrase()));
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.debug("Closing a connection after an error", cause);
+        ctx.close();
+    }
+
+    private FullHttpResponse addTransaction(ByteBufAllocator allocator, String id, ByteBuf content) throws Exception {
+        final Long transactionId = Long.valueOf(id);
+        final Transaction transaction;
+        try (InputStream body = new ByteBufInputStream(content)) {
+            transaction = MAPPER.readValue(body, Transaction.class);
+        }
+        final Set<ConstraintViolation<Transaction>> violations = VALIDATOR.validate(transaction);
+        if (!violations.isEmpty()) {
+            throw new InvalidTransaction(violations.stream().map(ConstraintViolation::getMessage).collect(Collectors.toList()).toString());
+        }
+        transactionalService.addTransaction(transactionId, transaction);
+        return sequenced(json(allocator, HttpResponseStatus.CREATED, body -> MAPPER.writeValue(body, Collections.singletonMap("status", "ok"))));
+    }
+
+    /**
+     * Wraps the cached JSON of the transaction, which is written to the socket without being copied
+     */
+    private FullHttpResponse getTransaction(String id) throws Exception {
+        return response(HttpResponseStatus.OK, Unpooled.wrappedBuffer(jsonCache.json(Long.valueOf(id), transactionalService)));
+    }
+
+    private FullHttpResponse addTransactions(ByteBufAllocator allocator, ByteBuf content) throws Exception {
+        final TransactionBatchReader batch;
+        try (InputStream body = new ByteBufInputStream(content)) {
+            batch = TransactionBatchReader.read(body);
+        }
+        final List<?> results = batch.results(transactionalService.addTransactions(batch.transactions()));
+        return sequenced(json(allocator, HttpResponseStatus.OK, body -> MAPPER.writeValue(body, results)));
+    }
+
+    /**
+     * Gives the client the sequence number covering its write, if the service is replicated
+     */
+    private FullHttpResponse sequenced(FullHttpResponse response) {
+        final long sequence = transactionalService.sequence();
+        if (sequence > 0) {
+            response.headers().set(TransactionalJson.SEQUENCE_HEADER, sequence);
+        }
+        return response;
+    }
+
+    private FullHttpResponse getTransactionIdsByTypes(ByteBufAllocator allocator, QueryStringDecoder query) throws Exception {
+        final List<String> types = new ArrayList<>();
+        for (String type : query.parameters().getOrDefault("type", Collections.emptyList())) {
+            Collections.addAll(types, type.split(","));
+        }
+        if (types.isEmpty()) {
+            throw new IllegalArgumentException("Required parameter 'type' is not present");
+        }
+        final Long after = query.parameters().containsKey("after") ? Long.valueOf(query.parameters().get("after").get(0)) : null;
+        final int limit = query.parameters().containsKey("limit") ? Integer.parseInt(query.parameters().get("limit").get(0)) : DEFAULT_PAGE_SIZE;
+        final int pageSize = TransactionalJson.pageSize(limit);
+        final List<Long> ids = transactionalService.transactionByTypes(types, after, pageSize);
+        return json(allocator, HttpResponseStatus.OK, body -> TransactionalJson.writePage(body, ids, pageSize));
+    }
+
+    private FullHttpResponse getChildrensSum(ByteBufAllocator allocator, String parentId) throws Exception {
+        final Double sum = transactionalService.transactionSum(Long.valueOf(parentId));
+        return json(allocator, HttpResponseStatus.OK, body -> TransactionalJson.writeSum(body, sum));
+    }
+
+    private FullHttpResponse getSubTreeStatistics(ByteBufAllocator allocator, String parentId, QueryStringDecoder query) throws Exception {
+        final List<String> type = query.parameters().get("type");
+        final TypeStatistics statistics = transactionalService.subTreeStatistics(Long.valueOf(parentId), type == null ? null : type.get(0));
+        return json(allocator, HttpResponseStatus.OK, body -> TransactionalJson.writeStatistics(body, statistics));
+    }
+
+    private FullHttpResponse getTransactions(ByteBufAllocator allocator, ByteBuf content) throws Exception {
+        final List<Long> ids;
+        try (InputStream body = new ByteBufInputStream(content)) {
+            ids = TransactionalJson.readIds(body);
+        }
+        final Map<Long, byte[]> transactions = jsonCache.json(ids, transactionalService);
+        return json(allocator, HttpResponseStatus.OK, body -> TransactionalJson.writeTransactions(body, ids, transactions));
+    }
+
+    private FullHttpResponse getChildrensSums(ByteBufAllocator allocator, ByteBuf content) throws Exception {
+        final List<Long> ids;
+        try (InputStream body = new ByteBufInputStream(content)) {
+            ids = TransactionalJson.readIds(body);
+        }
+        final Map<Long, Double> sums = transactionalService.transactionSums(ids);
+        return json(allocator, HttpResponseStatus.OK, body -> TransactionalJson.writeSums(body, ids, sums));
+    }
+
+    /**
+     * Runs an operation, inline or on the query pool, and writes its response once the responses to the previous
+     * requests of the connection are written. An operation that has to wait for the writes a client asks for runs on
+     * the query pool
+     */
+    private void serve(ChannelHandlerContext ctx, FullHttpRequest request, String endpoint, boolean query, Operation read) {
+        final String minSequence = request.headers().get(TransactionalJson.MIN_SEQUENCE_HEADER);
+        final Operation operation = minSequence == null ? read : allocator -> {
+            transactionalService.awaitSequence(Long.parseLong(minSequence));
+            return read.apply(allocator);
+        };
+        final long start = System.nanoTime();
+        final String method = request.method().name();
+        final String path = request.uri();
+        final boolean keepAlive = HttpUtil.isKeepAlive(request);
+        CompletableFuture<FullHttpResponse> response;
+        if (query || minSequence != null) {
+            request.retain();
+            try {
+                response = CompletableFuture.supplyAsync(() -> execute(ctx.alloc(), path, operation), queries);
+                response.whenComplete((ignored, e) -> request.release());
+            } catch (RejectedExecutionException e) {
+                request.release();
+                response = CompletableFuture.completedFuture(execute(ctx.alloc(), path,
+                        allocator -> error(allocator, HttpResponseStatus.SERVICE_UNAVAILABLE, path, "too many queries are pending")));
+            }
+        } else {
+            response = CompletableFuture.completedFuture(execute(ctx.alloc(), path, operation));
+        }
+        final Attribute<Queue<CompletableFuture<Runnable>>> attribute = ctx.channel().attr(PENDING_RESPONSES);
+        if (attribute.get() == null) {
+            attribute.set(new ArrayDeque<>());
+        }
+        final Queue<CompletableFuture<Runnable>> pending = attribute.get();
+        final CompletableFuture<Runnable> written = response.thenApply(r -> () -> {
+            record(method, endpoint, r.status(), start);
+            write(ctx, r, keepAlive);
+        });
+        pending.add(written);
+        written.whenComplete((ignored, e) -> {
+            if (ctx.executor().inEventLoop()) {
+                writeReady(pending);
+            } else {
+                ctx.executor().execute(() -> writeReady(pending));
+            }
+        });
+    }
+
+    /**
+     * Writes the responses at the head of the queue of a connection, as long as they are built. Only ever runs on the
+     * event loop of the connection, which owns the queue
+     */
+    private static void writeReady(Queue<CompletableFuture<Runnable>> pending) {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            pending.poll().join().run();
+        }
+    }
+
+    private FullHttpResponse execute(ByteBufAllocator allocator, String path, Operation operation) {
+        try {
+            return operation.apply(allocator);
+        } catch (Exception e) {
+            final HttpResponseStatus status = status(e);
+            if (status.code() >= 500) {
+                log.error("Could not serve " + path, e);
+            }
+            try {
+                return error(allocator, status, path, e.getMessage());
+            } catch (IOException unexpected) {
+                return response(HttpResponseStatus.INTERNAL_SERVER_ERROR, Unpooled.EMPTY_BUFFER);
+            }
+        }
+    }
+
+    /**
+     * The status of the {@link ResponseStatus} of an exception, as the servlet front end answers
+     */
+    private static HttpResponseStatus status(Exception exception) {
+        final ResponseStatus annotation = AnnotationUtils.findAnnotation(exception.getClass(), ResponseStatus.class);
+        if (annotation != null) {
+            return HttpResponseStatus.valueOf(annotation.value().value());
+        }
+        if (exception instanceof JsonProcessingException || exception instanceof IllegalArgumentException) {
+            return HttpResponseStatus.BAD_REQUEST;
+        }
+        return HttpResponseStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * Times the request under the same names as the servlet front end, see RequestMetricsInterceptor
+     * @param endpoint the path pattern of the endpoint below the root, null if the request matched none
+     */
+    private void record(String method, String endpoint, HttpResponseStatus status, long start) {
+        final String name = MetricRegistry.name("http", method, endpoint != null ? ROOT + endpoint : "unmapped");
+        metrics.timer(name).update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (status.code() >= 400) {
+            metrics.meter(MetricRegistry.name(name, status.code() / 100 + "xx")).mark();
+        }
+    }
+
+    private static FullHttpResponse error(ByteBufAllocator allocator, HttpResponseStatus status, String path, String message) throws IOException {
+        return json(allocator, status, body -> {
+            try (JsonGenerator generator = JSON.createGenerator(body)) {
+                generator.writeStartObject();
+                generator.writeNumberField("status", status.code());
+                generator.writeStringField("error", status.reasonPhrase());
+                generator.writeStringField("message", message);
+                generator.writeStringField("path", path);
+                generator.writeEndObject();
+            }
+        });
+    }
+
+    private static FullHttpResponse json(ByteBufAllocator allocator, HttpResponseStatus status, BodyWriter writer) throws IOException {
+        final ByteBuf content = allocator.buffer();
+        try (OutputStream body = new ByteBufOutputStream(content)) {
+            writer.write(body);
+        } catch (IOException | RuntimeException e) {
+            content.release();
+            throw e;
+        }
+        return response(status, content);
+    }
+
+    private static FullHttpResponse response(HttpResponseStatus status, ByteBuf content) {
+        final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, JSON_UTF8);
+        response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+        return response;
+    }
+
+    private static void write(ChannelHandlerContext ctx, FullHttpResponse response, boolean keepAlive) {
+        if (keepAlive) {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            ctx.writeAndFlush(response, ctx.voidPromise());
+        } else {
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+}
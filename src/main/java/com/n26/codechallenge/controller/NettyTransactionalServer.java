@@ -0,0 +1,97 @@
+package com.n26.codechallenge.controller;
+
+import com.codahale.metrics.MetricRegistry;
+import com.n26.codechallenge.service.TransactionalService;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A non-blocking HTTP front end of the /transactionservice API, an alternative to the servlet front end served by
+ * Tomcat, where every request holds a worker thread until it completes.
+ *
+ * Connections are multiplexed over a few event loop threads, which serve the cheap requests themselves and hand the
+ * queries over to a separate bounded pool, see {@link NettyTransactionalHandler}. Request bodies are aggregated up
+ * to {@link #MAX_CONTENT_LENGTH} bytes.
+ */
+@Slf4j
+public class NettyTransactionalServer implements AutoCloseable {
+
+    public static final int MAX_CONTENT_LENGTH = 256 << 20;
+
+    private final EventLoopGroup acceptor = new NioEventLoopGroup(1, new DefaultThreadFactory("netty-acceptor"));
+    private final EventLoopGroup eventLoops;
+    private final ThreadPoolExecutor queries;
+    private final Channel channel;
+
+    /**
+     * Starts serving on the given port
+     *
+     * @param transactionalService the service requests are delegated to
+     * @param metrics the registry receiving the timers of the endpoints
+     * @param port the port to listen on, 0 for any free port
+     * @param eventLoopThreads the number of event loop threads, 0 for twice the number of processors
+     * @param queryThreads the number of threads of the query pool
+     * @param queryQueue the number of queries waiting for a thread beyond which queries are refused
+     * @param jsonCacheBytes the bound of the cache of encoded transactions, see {@link TransactionJsonCache}
+     */
+    public NettyTransactionalServer(TransactionalService transactionalService, MetricRegistry metrics, int port,
+                                    int eventLoopThreads, int queryThreads, int queryQueue, long jsonCacheBytes) throws InterruptedException {
+        this.eventLoops = new NioEventLoopGroup(eventLoopThreads, new DefaultThreadFactory("netty-event-loop"));
+        this.queries = new ThreadPoolExecutor(queryThreads, queryThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queryQueue), new DefaultThreadFactory("netty-query"));
+        final NettyTransactionalHandler handler = new NettyTransactionalHandler(transactionalService, new TransactionJsonCache(jsonCacheBytes), queries, metrics);
+        try {
+            this.channel = new ServerBootstrap()
+                    .group(acceptor, eventLoops)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel channel) {
+                            channel.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(MAX_CONTENT_LENGTH), handler);
+                        }
+                    })
+                    .bind(port).sync().channel();
+        } catch (InterruptedException | RuntimeException e) {
+            shutdown();
+            throw e;
+        }
+        log.info("Netty front end listening on port " + port());
+    }
+
+    /**
+     * The port the server listens on
+     * @return
+     */
+    public int port() {
+        return ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    /**
+     * Stops accepting connections and releases the threads, letting running queries complete
+     */
+    @Override
+    public void close() {
+        channel.close().syncUninterruptibly();
+        shutdown();
+    }
+
+    private void shutdown() {
+        acceptor.shutdownGracefully(0, 2, TimeUnit.SECONDS);
+        eventLoops.shutdownGracefully(0, 2, TimeUnit.SECONDS);
+        queries.shutdown();
+    }
+}
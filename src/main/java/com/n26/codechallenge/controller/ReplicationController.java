@@ -0,0 +1,66 @@
+package com.n26.codechallenge.controller;
+
+import com.n26.codechallenge.replication.ChangeBatch;
+import com.n26.codechallenge.replication.ReplicatedTransactionalService;
+import com.n26.codechallenge.replication.Replicated;
+import com.n26.codechallenge.service.TransactionalService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Serves the change stream of a primary to its followers, and the replication status of both.
+ *
+ * Only served when transactionservice.replication.role is set.
+ */
+@Controller
+@ConditionalOnProperty(prefix = "transactionservice.replication", name = "role")
+@RequestMapping(value = "/replication", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+class ReplicationController {
+
+    static final long MAX_WAIT_MS = 30_000;
+    static final int MAX_BATCH_SIZE = 100_000;
+
+    private final TransactionalService transactionalService;
+
+    /**
+     * @param transactionalService the primary or follower built by {@link com.n26.codechallenge.ServiceConfiguration}
+     *                             when transactionservice.replication.role is set
+     */
+    ReplicationController(TransactionalService transactionalService) {
+        this.transactionalService = transactionalService;
+    }
+
+    /**
+     * Returns the records following a sequence number, holding the request up to wait_ms until there is one
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<byte[]> changes(@RequestParam("after") long after,
+                                          @RequestParam(value = "limit", defaultValue = "10000") int limit,
+                                          @RequestParam(value = "wait_ms", defaultValue = "0") long waitMs) throws IOException, InterruptedException {
+        if (!(transactionalService instanceof ReplicatedTransactionalService)) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        final ChangeBatch changes = ((ReplicatedTransactionalService) transactionalService).changes()
+                .read(after, Math.max(1, Math.min(limit, MAX_BATCH_SIZE)), Math.max(0, Math.min(waitMs, MAX_WAIT_MS)));
+        return ResponseEntity.ok(changes.toJson());
+    }
+
+    /**
+     * Returns the role of the node and its position in the stream, along with its lag on a follower
+     */
+    @GetMapping("/status")
+    @ResponseBody
+    public Map<String, Object> status() {
+        return ((Replicated) transactionalService).replicationStatus();
+    }
+}
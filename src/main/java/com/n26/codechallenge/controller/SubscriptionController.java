@@ -0,0 +1,60 @@
+package com.n26.codechallenge.controller;
+
+import com.n26.codechallenge.exception.InvalidLookupException;
+import com.n26.codechallenge.subscription.Subscription;
+import com.n26.codechallenge.subscription.SubscriptionHub;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams the changes of watched sums and types to clients as server-sent events.
+ *
+ * Not served by the nodes of a cluster, which only see the writes they are sent.
+ */
+@Controller
+@ConditionalOnExpression("'${transactionservice.cluster.self:}'.isEmpty()")
+@RequestMapping("/transactionservice")
+class SubscriptionController {
+
+    static final String EVENT_NAME = "changes";
+
+    private final SubscriptionHub subscriptions;
+
+    SubscriptionController(SubscriptionHub subscriptions) {
+        this.subscriptions = subscriptions;
+    }
+
+    /**
+     * Opens a stream of events, each holding the new transactions of the given types and the latest sums of the given
+     * transactions since the previous one; the first event holds the current sums
+     */
+    @GetMapping(value = "/subscribe", produces = "text/event-stream")
+    public SseEmitter subscribe(@RequestParam(value = "id", required = false) List<Long> ids,
+                               @RequestParam(value = "type", required = false) List<String> types) throws InvalidLookupException {
+        if ((ids == null || ids.isEmpty()) && (types == null || types.isEmpty())) {
+            throw new InvalidLookupException("neither an id nor a type is watched");
+        }
+        final SseEmitter emitter = new SseEmitter(0L);
+        final Subscription subscription = subscriptions.subscribe(ids == null ? Collections.emptyList() : ids,
+                types == null ? Collections.emptyList() : types, changes -> {
+                    try {
+                        emitter.send(SseEmitter.event().name(EVENT_NAME).data(changes.toJson(), MediaType.APPLICATION_JSON_UTF8));
+                    } catch (IOException e) {
+                        emitter.completeWithError(e);
+                        throw e;
+                    }
+                });
+        emitter.onCompletion(() -> subscriptions.unsubscribe(subscription));
+        emitter.onTimeout(() -> subscriptions.unsubscribe(subscription));
+        return emitter;
+    }
+}
@@ -0,0 +1,158 @@
+package com.n26.codechallenge.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Reads a batch of transactions from a request body, either a JSON array or newline delimited JSON objects.
+ *
+ * Every object carries the identifier of the transaction next to its fields, e.g. {"id":10,"amount":5000,"type":"cars"}.
+ * The body is parsed as a stream of tokens, so no intermediate tree or string of the whole body is ever built.
+ * Items failing validation are reported and left out of the batch handed over to the service, the others are
+ * kept in their original order.
+ */
+class TransactionBatchReader {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private final List<Long> ids = new ArrayList<>();
+    private final List<String> errors = new ArrayList<>();
+    private final Map<Long, Transaction> transactions = new LinkedHashMap<>();
+
+    private TransactionBatchReader() {
+    }
+
+    /**
+     * Reads and validates the whole body
+     * @param body
+     * @return
+     * @throws InvalidTransaction if the body is not made of JSON objects
+     */
+    static TransactionBatchReader read(InputStream body) throws IOException, InvalidTransaction {
+        final TransactionBatchReader reader = new TransactionBatchReader();
+        try (JsonParser parser = JSON.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            final boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token == JsonToken.START_OBJECT) {
+                reader.readItem(parser);
+                token = parser.nextToken();
+            }
+            if (array ? token != JsonToken.END_ARRAY || parser.nextToken() != null : token != null) {
+                throw new InvalidTransaction("the batch must be a JSON array of objects or newline delimited JSON objects");
+            }
+        } catch (JsonParseException e) {
+            throw new InvalidTransaction("the batch is not valid JSON: " + e.getOriginalMessage());
+        }
+        return reader;
+    }
+
+    /**
+     * The valid transactions of the batch, by identifier, in the order of the body
+     * @return
+     */
+    Map<Long, Transaction> transactions() {
+        return transactions;
+    }
+
+    /**
+     * One result per item of the body, in the order of the body
+     * @param rejected the transactions rejected by the service
+     * @return
+     */
+    List<Map<String, Object>> results(Map<Long, InvalidTransaction> rejected) {
+        final List<Map<String, Object>> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            final Long id = ids.get(i);
+            final InvalidTransaction rejection = errors.get(i) == null ? rejected.get(id) : null;
+            final String error = rejection != null ? rejection.getMessage() : errors.get(i);
+            final Map<String, Object> result = new LinkedHashMap<>();
+            result.put("id", id);
+            result.put("status", error == null ? "ok" : "error");
+            if (error != null) {
+                result.put("error", error);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private void readItem(JsonParser parser) throws IOException {
+        Long id = null;
+        Double amount = null;
+        String type = null;
+        Long parentId = null;
+        final List<String> problems = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = longValue(parser, value, field, problems);
+                    break;
+                case "amount":
+                    if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+                        amount = parser.getDoubleValue();
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        problems.add("amount must be a number");
+                    }
+                    break;
+                case "type":
+                    if (value == JsonToken.VALUE_STRING) {
+                        type = parser.getText();
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        problems.add("type must be a string");
+                    }
+                    break;
+                case "parent_id":
+                    parentId = longValue(parser, value, field, problems);
+                    break;
+                default:
+                    break;
+            }
+            // leaves nested values of unknown or mistyped fields behind
+            parser.skipChildren();
+        }
+        ids.add(id);
+        if (id == null) {
+            problems.add("id cannot be null");
+        }
+        if (problems.isEmpty()) {
+            final Transaction transaction = new Transaction(amount, type, parentId);
+            for (ConstraintViolation<Transaction> violation : VALIDATOR.validate(transaction)) {
+                problems.add(violation.getMessage());
+            }
+            if (problems.isEmpty() && transactions.putIfAbsent(id, transaction) != null) {
+                errors.add(new TransactionAlreadyExistsException(id).getMessage());
+                return;
+            }
+        }
+        errors.add(problems.isEmpty() ? null : new InvalidTransaction(problems.stream().sorted().collect(Collectors.toList()).toString()).getMessage());
+    }
+
+    private static Long longValue(JsonParser parser, JsonToken value, String field, List<String> problems) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+            return parser.getLongValue();
+        }
+        if (value != JsonToken.VALUE_NULL) {
+            problems.add(field + " must be an integer");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,202 @@
+package com.n26.codechallenge.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.service.TransactionalService;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A memory bounded cache of the JSON representation of transactions, encoded once as UTF-8 bytes.
+ *
+ * Transactions are immutable, so a cached representation only goes stale when the service drops the transactions it
+ * served, as a follower starting over does: the cache then follows the {@link TransactionalService#generation()
+ * generation} of the service, dropping every entry once it grows and refusing the ones read under an older one. The
+ * cache is split in stripes, each one a least recently used map with its own lock and an equal share of the bound, so
+ * that concurrent reads of different transactions seldom contend.
+ */
+class TransactionJsonCache {
+
+    static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    /**
+     * Estimated bytes held by an entry besides its JSON: the map entry, the boxed key and the array header
+     */
+    static final int ENTRY_OVERHEAD = 96;
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * The generation of the service the cached representations were read under
+     */
+    private volatile long generation;
+
+    /**
+     * @param maxBytes the bound of the estimated heap held by the cache, 0 to cache nothing
+     */
+    TransactionJsonCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("The size of the cache cannot be negative");
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(maxBytes / STRIPES);
+        }
+    }
+
+    TransactionJsonCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Returns the JSON of a transaction, encoding and caching it if it is not cached yet
+     * @param id
+     * @param service the service the transaction is read from on a miss
+     * @return
+     * @throws TransactionDoesNotExistException
+     */
+    byte[] json(Long id, TransactionalService service) throws TransactionDoesNotExistException, JsonProcessingException {
+        final long generation = follow(service.generation());
+        byte[] json = get(id);
+        if (json == null) {
+            json = service.transaction(id).toJsonBytes();
+            put(id, json, generation);
+        }
+        return json;
+    }
+
+    /**
+     * Returns the JSON of a batch of transactions, reading the ones that are not cached from the service at once
+     * @param ids the identifiers, possibly repeated
+     * @param service the service the transactions are read from on a miss
+     * @return the JSON of the transactions, by identifier. Identifiers without a transaction are left out
+     */
+    Map<Long, byte[]> json(Collection<Long> ids, TransactionalService service) throws JsonProcessingException {
+        final long generation = follow(service.generation());
+        final Map<Long, byte[]> found = new HashMap<>();
+        final Set<Long> missing = new HashSet<>();
+        for (Long id : ids) {
+            if (!found.containsKey(id) && !missing.contains(id)) {
+                final byte[] json = get(id);
+                if (json != null) {
+                    found.put(id, json);
+                } else {
+                    missing.add(id);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Map.Entry<Long, Transaction> transaction : service.transactions(missing).entrySet()) {
+                final byte[] json = transaction.getValue().toJsonBytes();
+                put(transaction.getKey(), json, generation);
+                found.put(transaction.getKey(), json);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param id
+     * @return the JSON of the transaction, or null if it is not cached
+     */
+    byte[] get(Long id) {
+        final Stripe stripe = stripe(id);
+        synchronized (stripe) {
+            return stripe.get(id);
+        }
+    }
+
+    /**
+     * Caches the JSON of a transaction, evicting the least recently used ones as needed
+     */
+    void put(Long id, byte[] json) {
+        put(id, json, generation);
+    }
+
+    /**
+     * Caches the JSON of a transaction read under a generation of the service, unless the cache moved past it since
+     */
+    private void put(Long id, byte[] json, long generation) {
+        final Stripe stripe = stripe(id);
+        synchronized (stripe) {
+            if (generation == this.generation) {
+                stripe.add(id, json);
+            }
+        }
+    }
+
+    /**
+     * Drops every entry if the service moved to a newer generation. The generation is moved before the stripes are
+     * cleared, so that an entry read under the previous one is either refused or cleared
+     *
+     * @return the generation of the service
+     */
+    private long follow(long generation) {
+        if (generation > this.generation) {
+            synchronized (this) {
+                if (generation > this.generation) {
+                    this.generation = generation;
+                    for (Stripe stripe : stripes) {
+                        synchronized (stripe) {
+                            stripe.clear();
+                            stripe.bytes = 0;
+                        }
+                    }
+                }
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * The estimated heap held by the cache
+     * @return
+     */
+    long bytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    private Stripe stripe(Long id) {
+        final long hash = id * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (hash >>> 60)];
+    }
+
+    private static class Stripe extends LinkedHashMap<Long, byte[]> {
+
+        private final long maxBytes;
+        private long bytes;
+
+        Stripe(long maxBytes) {
+            super(16, 0.75f, true);
+            this.maxBytes = maxBytes;
+        }
+
+        void add(Long id, byte[] json) {
+            final long size = json.length + ENTRY_OVERHEAD;
+            if (size > maxBytes) {
+                return;
+            }
+            final byte[] previous = put(id, json);
+            bytes += previous == null ? size : json.length - previous.length;
+            final Iterator<Map.Entry<Long, byte[]>> eldest = entrySet().iterator();
+            while (bytes > maxBytes) {
+                bytes -= eldest.next().getValue().length + ENTRY_OVERHEAD;
+                eldest.remove();
+            }
+        }
+    }
+}
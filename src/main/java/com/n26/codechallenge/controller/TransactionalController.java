@@ -1,11 +1,14 @@
 package com.n26.codechallenge.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.n26.codechallenge.ServiceProperties;
 import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidLookupException;
 import com.n26.codechallenge.exception.InvalidTransaction;
 import com.n26.codechallenge.exception.TransactionDoesNotExistException;
 import com.n26.codechallenge.service.WriteOptimizedTransactionService;
 import com.n26.codechallenge.service.TransactionalService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
@@ -15,56 +18,186 @@ import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
  * Bind HTTPs requests to Java methods.
  *
  * The behaviour is delegated to an implemenation of {@link TransactionalService},
- * which defaults to {@link WriteOptimizedTransactionService}
+ * which is provided by {@link com.n26.codechallenge.ServiceConfiguration} and defaults to {@link WriteOptimizedTransactionService}
  */
 @Controller
 @RequestMapping(value = "/transactionservice", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
 class TransactionalController {
 
+    static final String NDJSON_VALUE = "application/x-ndjson";
+
     private final TransactionalService transactionalService;
+    private final TransactionJsonCache jsonCache;
 
     TransactionalController(){
         this(new WriteOptimizedTransactionService());
     }
 
     TransactionalController(TransactionalService transactionalService){
+        this(transactionalService, new TransactionJsonCache());
+    }
+
+    @Autowired
+    TransactionalController(TransactionalService transactionalService, ServiceProperties properties){
+        this(transactionalService, new TransactionJsonCache(properties.getJsonCacheMb() << 20));
+    }
+
+    TransactionalController(TransactionalService transactionalService, TransactionJsonCache jsonCache){
         this.transactionalService = transactionalService;
+        this.jsonCache = jsonCache;
+    }
+
+    /**
+     * Runs before every request: when the client gives the sequence number of one of its writes, waits until the
+     * service reads it, which only takes time on a follower
+     */
+    @ModelAttribute
+    public void awaitSequence(@RequestHeader(value = TransactionalJson.MIN_SEQUENCE_HEADER, required = false) Long minSequence) {
+        if (minSequence != null) {
+            transactionalService.awaitSequence(minSequence);
+        }
     }
 
     @PutMapping(value = "/transaction/{id}", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
     @ResponseBody
     @ResponseStatus(HttpStatus.CREATED)
-    public Object addTransaction(@PathVariable Long id, @RequestBody @Validated Transaction transaction, BindingResult validationResult) throws InvalidTransaction {
+    public Object addTransaction(@PathVariable Long id, @RequestBody @Validated Transaction transaction, BindingResult validationResult,
+                                 HttpServletResponse response) throws InvalidTransaction {
         if (validationResult.hasErrors()) {
             throw new InvalidTransaction(validationResult.getAllErrors().stream().map(ObjectError::getDefaultMessage).collect(Collectors.toList()).toString());
         }
         transactionalService.addTransaction(id, transaction);
+        writeSequence(response);
         return Collections.singletonMap("status", "ok");
     }
 
-    @GetMapping(value = "/transaction/{id}")
+    /**
+     * Adds a batch of transactions, given as a JSON array or as newline delimited JSON objects, each with an "id" field.
+     *
+     * The batch is applied even if some of its transactions are invalid: the response lists the outcome of every item,
+     * in the order of the request.
+     */
+    @PostMapping(value = "/transactions", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON_VALUE})
     @ResponseBody
-    public Object getTransaction(@PathVariable Long id) throws TransactionDoesNotExistException, JsonProcessingException {
-        return transactionalService.transaction(id).toJson();
+    public Object addTransactions(InputStream body, HttpServletResponse response) throws IOException, InvalidTransaction {
+        TransactionBatchReader batch = TransactionBatchReader.read(body);
+        final Object results = batch.results(transactionalService.addTransactions(batch.transactions()));
+        writeSequence(response);
+        return results;
     }
 
+    /**
+     * Writes the JSON of the transaction straight to the response. Transactions never change, so their JSON is
+     * encoded once and served from the {@link TransactionJsonCache} while it is kept there, without reading the
+     * transaction again unless the service dropped the ones it served since
+     */
+    @GetMapping(value = "/transaction/{id}")
+    public void getTransaction(@PathVariable Long id, HttpServletResponse response) throws TransactionDoesNotExistException, IOException {
+        final byte[] json = jsonCache.json(id, transactionalService);
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        response.setContentLength(json.length);
+        response.getOutputStream().write(json);
+    }
+
+    /**
+     * Writes the identifiers straight to the response while they are read, so the result set is never
+     * held in memory, however popular the type
+     */
     @GetMapping(value = "/types/{type}")
-    @ResponseBody
-    public Object getTransactionIdsByType(@PathVariable String type) {
-        return transactionalService.transactionByType(type);
+    public void getTransactionIdsByType(@PathVariable String type, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        TransactionalJson.writeIds(response.getOutputStream(), transactionalService.transactionByType(type));
+    }
+
+    /**
+     * Returns the count, total, lowest, highest and average amount of the transactions of a type
+     */
+    @GetMapping(value = "/types/{type}/stats")
+    public void getTypeStatistics(@PathVariable String type, HttpServletResponse response) throws IOException {
+        final TypeStatistics statistics = transactionalService.typeStatistics(type);
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        TransactionalJson.writeStatistics(response.getOutputStream(), statistics);
+    }
+
+    /**
+     * Returns a page of the identifiers of the transactions having any of the given types, in ascending order,
+     * along with the cursor of the next page, null after the last page
+     */
+    @GetMapping(value = "/types")
+    public void getTransactionIdsByTypes(@RequestParam("type") List<String> types,
+                                         @RequestParam(value = "after", required = false) Long after,
+                                         @RequestParam(value = "limit", defaultValue = "1000") int limit,
+                                         HttpServletResponse response) throws IOException {
+        final int pageSize = TransactionalJson.pageSize(limit);
+        final List<Long> ids = transactionalService.transactionByTypes(types, after, pageSize);
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        TransactionalJson.writePage(response.getOutputStream(), ids, pageSize);
     }
 
     @GetMapping(value = "/sum/{parentId}")
-    @ResponseBody
-    public Object getChildrensSum(@PathVariable Long parentId) throws TransactionDoesNotExistException {
-        return Collections.singletonMap("sum", transactionalService.transactionSum(parentId));
+    public void getChildrensSum(@PathVariable Long parentId, HttpServletResponse response) throws TransactionDoesNotExistException, IOException {
+        final Double sum = transactionalService.transactionSum(parentId);
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        TransactionalJson.writeSum(response.getOutputStream(), sum);
+    }
+
+    /**
+     * Returns the count, total, lowest, highest and average amount of the transactions linked to a transaction, itself
+     * included, only counting the transactions of a type when one is given
+     */
+    @GetMapping(value = "/sum/{parentId}/stats")
+    public void getSubTreeStatistics(@PathVariable Long parentId, @RequestParam(value = "type", required = false) String type,
+                                     HttpServletResponse response) throws TransactionDoesNotExistException, IOException {
+        final TypeStatistics statistics = transactionalService.subTreeStatistics(parentId, type);
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        TransactionalJson.writeStatistics(response.getOutputStream(), statistics);
+    }
+
+    /**
+     * Returns the transactions of a JSON array of identifiers, one result per identifier in the order of the request.
+     * Identifiers without a transaction are reported inline. Transactions are served from the {@link TransactionJsonCache}
+     * when cached and read from the service at once otherwise
+     */
+    @PostMapping(value = "/lookup/transactions", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void getTransactions(InputStream body, HttpServletResponse response) throws IOException, InvalidLookupException {
+        final List<Long> ids = TransactionalJson.readIds(body);
+        final Map<Long, byte[]> transactions = jsonCache.json(ids, transactionalService);
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        TransactionalJson.writeTransactions(response.getOutputStream(), ids, transactions);
+    }
+
+    /**
+     * Returns the sums of a JSON array of identifiers, one result per identifier in the order of the request.
+     * Identifiers without a transaction are reported inline
+     */
+    @PostMapping(value = "/lookup/sums", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void getChildrensSums(InputStream body, HttpServletResponse response) throws IOException, InvalidLookupException {
+        final List<Long> ids = TransactionalJson.readIds(body);
+        final Map<Long, Double> sums = transactionalService.transactionSums(ids);
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        TransactionalJson.writeSums(response.getOutputStream(), ids, sums);
+    }
+
+    /**
+     * Gives the client the sequence number covering its write, if the service is replicated
+     */
+    private void writeSequence(HttpServletResponse response) {
+        final long sequence = transactionalService.sequence();
+        if (sequence > 0) {
+            response.setHeader(TransactionalJson.SEQUENCE_HEADER, String.valueOf(sequence));
+        }
     }
 
     @ExceptionHandler
@@ -0,0 +1,201 @@
+package com.n26.codechallenge.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidLookupException;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams the JSON bodies of the read endpoints, and reads the identifiers of lookups, shared by every HTTP front end so that they answer byte for byte
+ * the same. Nothing but the generator stands between the service results and the output stream.
+ */
+final class TransactionalJson {
+
+    static final int MAX_PAGE_SIZE = 10_000;
+
+    /**
+     * The header of the responses to writes carrying the sequence number of the write on a primary, and the header
+     * of reads asking a follower to wait until it has applied the writes up to such a sequence number
+     */
+    static final String SEQUENCE_HEADER = "X-Sequence";
+    static final String MIN_SEQUENCE_HEADER = "X-Min-Sequence";
+
+    /**
+     * The maximum number of identifiers of a lookup
+     */
+    static final int MAX_LOOKUP_SIZE = 100_000;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private TransactionalJson() {
+    }
+
+    /**
+     * The size of a page, given the limit requested by a client
+     */
+    static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Writes the identifiers as an array, while they are iterated
+     */
+    static void writeIds(OutputStream out, Iterable<Long> ids) throws IOException {
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.writeStartArray();
+            for (Long id : ids) {
+                generator.writeNumber(id);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Writes a page of identifiers along with the cursor of the next page, null after the last page
+     */
+    static void writePage(OutputStream out, List<Long> ids, int pageSize) throws IOException {
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("ids");
+            for (Long id : ids) {
+                generator.writeNumber(id);
+            }
+            generator.writeEndArray();
+            generator.writeFieldName("next");
+            if (ids.size() == pageSize) {
+                generator.writeNumber(ids.get(ids.size() - 1));
+            } else {
+                generator.writeNull();
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Reads the identifiers of a lookup, a JSON array of integers
+     * @throws InvalidLookupException if the body is not such an array, or holds more than {@link #MAX_LOOKUP_SIZE} identifiers
+     */
+    static List<Long> readIds(InputStream in) throws IOException, InvalidLookupException {
+        final List<Long> ids = new ArrayList<>();
+        try (JsonParser parser = JSON.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new InvalidLookupException("the body must be a JSON array of identifiers");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                if (ids.size() == MAX_LOOKUP_SIZE) {
+                    throw new InvalidLookupException("no more than " + MAX_LOOKUP_SIZE + " identifiers can be looked up at once");
+                }
+                ids.add(parser.getLongValue());
+            }
+            if (token != JsonToken.END_ARRAY || parser.nextToken() != null) {
+                throw new InvalidLookupException("the body must be a JSON array of identifiers");
+            }
+        } catch (JsonParseException e) {
+            throw new InvalidLookupException("the body is not valid JSON: " + e.getOriginalMessage());
+        }
+        return ids;
+    }
+
+    /**
+     * Writes one result per identifier, in the order of the identifiers: the already encoded JSON of the transaction,
+     * or an error if there is none. The encoded JSON is copied to the output stream as is, between the buffered
+     * output of the generator, which is handed to the stream without flushing it
+     */
+    static void writeTransactions(OutputStream out, List<Long> ids, Map<Long, byte[]> transactions) throws IOException {
+        try (JsonGenerator generator = JSON.createGenerator(out).disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM)) {
+            generator.writeStartArray();
+            for (Long id : ids) {
+                final byte[] json = transactions.get(id);
+                writeResult(generator, id, json != null);
+                if (json != null) {
+                    generator.writeFieldName("transaction");
+                    // an empty raw value lets the generator write the separator and count the value as written
+                    generator.writeRawValue("");
+                    generator.flush();
+                    out.write(json);
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Writes one result per identifier, in the order of the identifiers: the sum, or an error if there is no such transaction
+     */
+    static void writeSums(OutputStream out, List<Long> ids, Map<Long, Double> sums) throws IOException {
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.writeStartArray();
+            for (Long id : ids) {
+                final Double sum = sums.get(id);
+                writeResult(generator, id, sum != null);
+                if (sum != null) {
+                    generator.writeNumberField("sum", sum);
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Opens the result of an identifier, with the same fields as the results of a batch of transactions
+     */
+    private static void writeResult(JsonGenerator generator, Long id, boolean found) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", id);
+        generator.writeStringField("status", found ? "ok" : "error");
+        if (!found) {
+            generator.writeStringField("error", new TransactionDoesNotExistException(id).getMessage());
+        }
+    }
+
+    /**
+     * Writes the statistics of a type, with null lowest, highest and average amounts when there is no transaction
+     */
+    static void writeStatistics(OutputStream out, TypeStatistics statistics) throws IOException {
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeNumberField("count", statistics.count());
+            generator.writeNumberField("sum", statistics.sum());
+            writeNullableNumber(generator, "min", statistics.min());
+            writeNullableNumber(generator, "max", statistics.max());
+            writeNullableNumber(generator, "average", statistics.average());
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeNullableNumber(JsonGenerator generator, String field, Double value) throws IOException {
+        generator.writeFieldName(field);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+
+    static void writeSum(OutputStream out, Double sum) throws IOException {
+        try (JsonGenerator generator = JSON.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeFieldName("sum");
+            if (sum == null) {
+                generator.writeNull();
+            } else {
+                generator.writeNumber(sum);
+            }
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.n26.codechallenge.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Indicates a failure because another node of the cluster could not serve its part of a request
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ClusterUnavailableException extends RuntimeException {
+
+    public ClusterUnavailableException(String node, Throwable cause) {
+        super(String.format("The node %s could not be reached: %s", node, cause.getMessage()), cause);
+    }
+}
@@ -0,0 +1,16 @@
+package com.n26.codechallenge.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Indicates a {@link com.n26.codechallenge.Transaction } is invalid because its amount cannot be accounted for exactly,
+ * either because it has too many decimals or because a sum it contributes to would overflow
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidAmountException extends InvalidTransaction {
+
+    public InvalidAmountException(Double amount, String reason){
+        super(String.format("the amount %s %s", amount, reason));
+    }
+}
@@ -0,0 +1,15 @@
+package com.n26.codechallenge.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Indicates a batch of identifiers to look up cannot be read
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidLookupException extends Exception {
+
+    public InvalidLookupException(String errorMessage) {
+        super(String.format("The lookup is invalid because %s", errorMessage));
+    }
+}
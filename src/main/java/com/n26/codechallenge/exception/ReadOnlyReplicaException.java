@@ -0,0 +1,15 @@
+package com.n26.codechallenge.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Indicates a write was sent to a follower, which only applies the writes of its primary
+ */
+@ResponseStatus(HttpStatus.METHOD_NOT_ALLOWED)
+public class ReadOnlyReplicaException extends RuntimeException {
+
+    public ReadOnlyReplicaException(String primary) {
+        super(String.format("This node is a read replica, writes are accepted by %s", primary));
+    }
+}
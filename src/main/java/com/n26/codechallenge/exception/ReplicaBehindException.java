@@ -0,0 +1,15 @@
+package com.n26.codechallenge.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Indicates a read asked for writes a follower has not applied yet
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ReplicaBehindException extends RuntimeException {
+
+    public ReplicaBehindException(long sequence, long applied) {
+        super(String.format("The replica applied the writes up to %s, not up to %s yet", applied, sequence));
+    }
+}
@@ -0,0 +1,35 @@
+package com.n26.codechallenge.metrics;
+
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+/**
+ * Collects the metrics of the application in a single {@link MetricRegistry}, published as MBeans of the
+ * {@value #JMX_DOMAIN} domain and served as JSON by {@link MetricsController}
+ */
+@Configuration
+public class MetricsConfiguration extends WebMvcConfigurerAdapter {
+
+    static final String JMX_DOMAIN = "transactionservice";
+
+    @Bean
+    public MetricRegistry metricRegistry() {
+        return new MetricRegistry();
+    }
+
+    @Bean(destroyMethod = "stop")
+    public JmxReporter jmxReporter(MetricRegistry metricRegistry) {
+        final JmxReporter reporter = JmxReporter.forRegistry(metricRegistry).inDomain(JMX_DOMAIN).build();
+        reporter.start();
+        return reporter;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RequestMetricsInterceptor(metricRegistry())).excludePathPatterns("/error");
+    }
+}
@@ -0,0 +1,34 @@
+package com.n26.codechallenge.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.json.MetricsModule;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the content of the {@link MetricRegistry} as JSON: rates per second and durations in milliseconds
+ */
+@Controller
+class MetricsController {
+
+    private final MetricRegistry registry;
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new MetricsModule(TimeUnit.SECONDS, TimeUnit.MILLISECONDS, false));
+
+    @Autowired
+    MetricsController(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @GetMapping("/transactionservice/metrics")
+    public void metrics(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        mapper.writeValue(response.getOutputStream(), registry);
+    }
+}
@@ -0,0 +1,48 @@
+package com.n26.codechallenge.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every request handled by a controller, per HTTP method and mapped path pattern, so that all the requests of
+ * an endpoint share a single timer whatever their path variables (e.g. http.GET./transactionservice/sum/{parentId}).
+ *
+ * A timer yields both the latency percentiles and the throughput of its endpoint. Responses with a 4xx or 5xx status
+ * are also counted per status class.
+ */
+class RequestMetricsInterceptor extends HandlerInterceptorAdapter {
+
+    private static final String START = RequestMetricsInterceptor.class.getName() + ".start";
+
+    private final MetricRegistry registry;
+
+    RequestMetricsInterceptor(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(START, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        final Object start = request.getAttribute(START);
+        if (start == null) {
+            return;
+        }
+        final Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        final String endpoint = MetricRegistry.name("http", request.getMethod(), pattern != null ? pattern.toString() : "unmapped");
+        registry.timer(endpoint).update(System.nanoTime() - (Long) start, TimeUnit.NANOSECONDS);
+        final int status = ex != null && response.getStatus() < 400 ? 500 : response.getStatus();
+        if (status >= 400) {
+            registry.meter(MetricRegistry.name(endpoint, status / 100 + "xx")).mark();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.n26.codechallenge.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.n26.codechallenge.TypeDictionary;
+import com.n26.codechallenge.replication.ChangeLog;
+import com.n26.codechallenge.replication.FollowerTransactionalService;
+import com.n26.codechallenge.repository.AsyncInMemorySumRepository;
+import com.n26.codechallenge.repository.LockStatistics;
+import com.n26.codechallenge.repository.SubTreeListener;
+import com.n26.codechallenge.repository.TransactionalRepository;
+import com.n26.codechallenge.service.SumCacheStatistics;
+import com.n26.codechallenge.service.TransactionalService;
+import com.n26.codechallenge.subscription.SubscriptionHub;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The metrics of the service and repository layers.
+ *
+ * Subtree sizes and depths are recorded as histograms whenever a sum is computed by traversing a subtree, sums read
+ * from a precomputed view recording nothing. Everything else is a gauge, only evaluated when the metrics are read.
+ */
+public class ServiceMetrics implements SubTreeListener {
+
+    private final MetricRegistry registry;
+    private final Histogram subTreeSizes;
+    private final Histogram subTreeDepths;
+
+    public ServiceMetrics(MetricRegistry registry) {
+        this.registry = registry;
+        this.subTreeSizes = registry.histogram("sum.subtree.size");
+        this.subTreeDepths = registry.histogram("sum.subtree.depth");
+    }
+
+    @Override
+    public void subTreeVisited(int size, int depth) {
+        subTreeSizes.update(size);
+        subTreeDepths.update(depth);
+    }
+
+    /**
+     * Registers the size and footprint of the store, and the contention of its lock if it has one
+     */
+    public void register(TransactionalRepository repository) {
+        registry.register("store.size", (Gauge<Integer>) () -> repository.allTransactions().size());
+        registry.register("store.bytes", (Gauge<Long>) repository::footprint);
+        if (repository instanceof LockStatistics) {
+            register("store", (LockStatistics) repository);
+        }
+    }
+
+    /**
+     * Registers the total size and footprint of the stores of a sharded service, and the contention of the lock of
+     * each store under store.shard.{index}
+     */
+    public void register(List<? extends TransactionalRepository> repositories) {
+        registry.register("store.size", (Gauge<Integer>) () -> repositories.stream().mapToInt(repository -> repository.allTransactions().size()).sum());
+        registry.register("store.bytes", (Gauge<Long>) () -> repositories.stream().mapToLong(TransactionalRepository::footprint).sum());
+        for (int i = 0; i < repositories.size(); i++) {
+            if (repositories.get(i) instanceof LockStatistics) {
+                register(MetricRegistry.name("store", "shard", String.valueOf(i)), (LockStatistics) repositories.get(i));
+            }
+        }
+    }
+
+    /**
+     * Registers the size and footprint of a store that is replaced over time, such as the local store of a node of
+     * a cluster
+     */
+    public void register(Supplier<? extends TransactionalRepository> repository) {
+        registry.register("store.size", (Gauge<Integer>) () -> repository.get().allTransactions().size());
+        registry.register("store.bytes", (Gauge<Long>) () -> repository.get().footprint());
+    }
+
+    /**
+     * Registers the sequence number of the last change of a primary
+     */
+    public void register(ChangeLog changes) {
+        registry.register("replication.sequence", (Gauge<Long>) changes::lastSequence);
+    }
+
+    /**
+     * Registers the sequence number up to which a follower applied the changes of its primary, and how far behind the
+     * primary it is, in changes and in milliseconds
+     */
+    public void register(FollowerTransactionalService follower) {
+        registry.register("replication.sequence", (Gauge<Long>) follower::sequence);
+        registry.register("replication.lag.records", (Gauge<Long>) follower::lagRecords);
+        registry.register("replication.lag.ms", (Gauge<Long>) follower::lagMillis);
+    }
+
+    /**
+     * Registers the number of subscribers and of the new transactions left out of their events because they did not
+     * keep up
+     */
+    public void register(SubscriptionHub subscriptions) {
+        registry.register("subscriptions.count", (Gauge<Integer>) subscriptions::subscriptions);
+        registry.register("subscriptions.dropped", (Gauge<Long>) subscriptions::droppedTransactions);
+    }
+
+    /**
+     * Removes the metrics registered under a prefix, so that the component they measure can be replaced
+     * @param name the prefix of the metrics, e.g. sum.cache
+     */
+    public void unregister(String name) {
+        registry.removeMatching((metric, value) -> metric.startsWith(name + "."));
+    }
+
+    /**
+     * Registers the number of distinct types and the footprint of the type index of the service
+     */
+    public void register(TransactionalService service) {
+        registry.register("types.count", (Gauge<Integer>) TypeDictionary::size);
+        registry.register("types.index.bytes", (Gauge<Long>) service::typeIndexFootprint);
+    }
+
+    /**
+     * Registers the hits, misses, evictions and size of a memo of sums
+     * @param name the prefix of the metrics, e.g. sum.cache
+     * @param cache
+     */
+    public void register(String name, SumCacheStatistics cache) {
+        registry.register(MetricRegistry.name(name, "hits"), (Gauge<Long>) cache::sumCacheHits);
+        registry.register(MetricRegistry.name(name, "misses"), (Gauge<Long>) cache::sumCacheMisses);
+        registry.register(MetricRegistry.name(name, "evictions"), (Gauge<Long>) cache::sumCacheEvictions);
+        registry.register(MetricRegistry.name(name, "size"), (Gauge<Long>) cache::sumCacheSize);
+    }
+
+    /**
+     * Registers how far behind the writes the asynchronous propagation of sums is, and how much work it did
+     * @param name the prefix of the metrics, e.g. sums
+     * @param sums
+     */
+    public void register(String name, AsyncInMemorySumRepository sums) {
+        registry.register(MetricRegistry.name(name, "propagation", "pending"), (Gauge<Long>) sums::pendingIncrements);
+        registry.register(MetricRegistry.name(name, "propagation", "lag-ms"), (Gauge<Double>) () -> sums.lastLag(TimeUnit.MICROSECONDS) / 1e3);
+        registry.register(MetricRegistry.name(name, "propagation", "max-lag-ms"), (Gauge<Double>) () -> sums.maxLag(TimeUnit.MICROSECONDS) / 1e3);
+        registry.register(MetricRegistry.name(name, "propagation", "increments"), (Gauge<Long>) sums::propagatedIncrements);
+        registry.register(MetricRegistry.name(name, "propagation", "ancestor-updates"), (Gauge<Long>) sums::ancestorUpdates);
+    }
+
+    /**
+     * Registers the acquisitions of a lock and the total time spent waiting for it
+     * @param name the prefix of the metrics, e.g. store
+     * @param lock
+     */
+    public void register(String name, LockStatistics lock) {
+        registry.register(MetricRegistry.name(name, "lock", "acquisitions"), (Gauge<Long>) lock::lockAcquisitions);
+        registry.register(MetricRegistry.name(name, "lock", "wait-ms"), (Gauge<Double>) () -> lock.lockWaitNanos() / 1e6);
+    }
+}
@@ -0,0 +1,225 @@
+package com.n26.codechallenge.persistence;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.repository.TransactionBatch;
+import com.n26.codechallenge.repository.TransactionalRepository;
+import com.n26.codechallenge.service.TransactionalService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes the transactions of a {@link TransactionalService} survive restarts.
+ *
+ * Every transaction accepted by the underlying service is appended to a {@link TransactionLog} before the call returns.
+ * Snapshots of the repository behind the service are written periodically in the background, after which the log
+ * segments covered by every snapshot kept are deleted.
+ *
+ * On construction, the latest snapshot is loaded and the log records written after it are replayed, both through
+ * {@link TransactionalService#addTransaction}, so that the derived views of the service (types, sums) are rebuilt along
+ * with its repository. Snapshots are taken while writers keep going, so a transaction may be both in a snapshot and in
+ * the log after it: such duplicates are skipped on replay.
+ *
+ * Transactions are logged after being accepted, without holding up other writers, so a child accepted right after its
+ * parent may be logged before it: such a child is held back on replay until its parent is replayed.
+ */
+@Slf4j
+public class DurableTransactionalService implements TransactionalService, AutoCloseable {
+
+    private final TransactionalService delegate;
+    private final TransactionalRepository repository;
+    private final TransactionLog transactionLog;
+    private final Snapshots snapshots;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param delegate the service serving the requests
+     * @param repository the repository of the delegate, from which snapshots are taken
+     * @param directory where the log and the snapshots are kept
+     * @param segmentSize the size of the log segments, in bytes
+     * @param snapshotPeriodMillis how often a snapshot is written
+     * @param flushPeriodMillis how often the log is forced to the storage device
+     */
+    public DurableTransactionalService(TransactionalService delegate, TransactionalRepository repository, Path directory,
+                                       int segmentSize, long snapshotPeriodMillis, long flushPeriodMillis) throws IOException {
+        this.delegate = delegate;
+        this.repository = repository;
+        this.transactionLog = new TransactionLog(directory.resolve("log"), segmentSize);
+        this.snapshots = new Snapshots(directory.resolve("snapshots"));
+        recover();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "durability");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(transactionLog::flush, flushPeriodMillis, flushPeriodMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, snapshotPeriodMillis, snapshotPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds the transaction to the underlying service and, if accepted, logs it
+     */
+    @Override
+    public void addTransaction(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException, InvalidAmountException {
+        delegate.addTransaction(id, transaction);
+        try {
+            transactionLog.append(id, transaction);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not log transaction " + id, e);
+        }
+    }
+
+    /**
+     * Adds the batch to the underlying service and logs the accepted transactions, parents first. A parent added
+     * concurrently, outside of the batch, may be logged after it: the batch is then held back on replay until it is
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        final Map<Long, InvalidTransaction> rejected = delegate.addTransactions(transactions);
+        try {
+            transactionLog.append(TransactionBatch.accepted(TransactionBatch.parentsFirst(transactions), rejected.keySet()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not log a batch of " + transactions.size() + " transactions", e);
+        }
+        return rejected;
+    }
+
+    @Override
+    public Transaction transaction(Long transactionId) throws TransactionDoesNotExistException {
+        return delegate.transaction(transactionId);
+    }
+
+    @Override
+    public Map<Long, Transaction> transactions(Collection<Long> transactionIds) {
+        return delegate.transactions(transactionIds);
+    }
+
+    @Override
+    public Set<Long> transactionByType(String type) {
+        return delegate.transactionByType(type);
+    }
+
+    @Override
+    public List<Long> transactionByTypes(Collection<String> types, Long after, int limit) {
+        return delegate.transactionByTypes(types, after, limit);
+    }
+
+    @Override
+    public TypeStatistics typeStatistics(String type) {
+        return delegate.typeStatistics(type);
+    }
+
+    @Override
+    public Double transactionSum(Long parentId) throws TransactionDoesNotExistException {
+        return delegate.transactionSum(parentId);
+    }
+
+    @Override
+    public Map<Long, Double> transactionSums(Collection<Long> parentIds) {
+        return delegate.transactionSums(parentIds);
+    }
+
+    @Override
+    public TypeStatistics subTreeStatistics(Long parentId, String type) throws TransactionDoesNotExistException {
+        return delegate.subTreeStatistics(parentId, type);
+    }
+
+    @Override
+    public long typeIndexFootprint() {
+        return delegate.typeIndexFootprint();
+    }
+
+    /**
+     * Writes a snapshot and deletes the log segments no snapshot kept needs
+     * @return the sequence number of the snapshot
+     */
+    public long snapshot() throws IOException {
+        final long start = System.nanoTime();
+        // every record up to this sequence has been added to the repository before being logged
+        final long sequence = transactionLog.lastSequence();
+        final long written = snapshots.write(sequence, repository);
+        transactionLog.deleteUpTo(snapshots.oldestSequence());
+        log.info(String.format("Wrote snapshot %d of %d transactions in %d ms", sequence, written, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return sequence;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        transactionLog.close();
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not write snapshot", e);
+        }
+    }
+
+    private void recover() throws IOException {
+        final long start = System.nanoTime();
+        final long[] counts = new long[2];
+        final Map<Long, List<Map.Entry<Long, Transaction>>> waitingForParent = new HashMap<>();
+        final long sequence = snapshots.load((s, id, transaction) -> counts[0] += replay(id, transaction, waitingForParent));
+        final long snapshotMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        transactionLog.recover(sequence, (s, id, transaction) -> counts[1] += replay(id, transaction, waitingForParent));
+        waitingForParent.forEach((parentId, children) -> children.forEach(child ->
+                log.warn("Skipping transaction " + child.getKey() + " while recovering: parent " + parentId + " does not exist")));
+        log.info(String.format("Recovered %d transactions in %d ms: %d from snapshot %d in %d ms, %d from the log up to record %d",
+                counts[0] + counts[1], TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                counts[0], sequence, snapshotMillis, counts[1], transactionLog.lastSequence()));
+    }
+
+    /**
+     * Replays a transaction, or holds it back until its parent is replayed; then replays the children that were
+     * waiting for it
+     *
+     * @return the number of transactions added
+     */
+    private int replay(Long id, Transaction transaction, Map<Long, List<Map.Entry<Long, Transaction>>> waitingForParent) {
+        final Deque<Map.Entry<Long, Transaction>> pending = new ArrayDeque<>();
+        pending.add(new AbstractMap.SimpleImmutableEntry<>(id, transaction));
+        int added = 0;
+        while (!pending.isEmpty()) {
+            final Map.Entry<Long, Transaction> next = pending.poll();
+            try {
+                delegate.addTransaction(next.getKey(), next.getValue());
+                added++;
+            } catch (TransactionAlreadyExistsException e) {
+                // already in the snapshot
+            } catch (ParentTransactionDoesNotExistException e) {
+                waitingForParent.computeIfAbsent(next.getValue().parentId(), k -> new ArrayList<>()).add(next);
+                continue;
+            } catch (InvalidTransaction e) {
+                log.warn("Skipping invalid transaction " + next.getKey() + " while recovering: " + e.getMessage());
+                continue;
+            }
+            final List<Map.Entry<Long, Transaction>> children = waitingForParent.remove(next.getKey());
+            if (children != null) {
+                pending.addAll(children);
+            }
+        }
+        return added;
+    }
+}
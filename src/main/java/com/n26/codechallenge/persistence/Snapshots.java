@@ -0,0 +1,184 @@
+package com.n26.codechallenge.persistence;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.repository.TransactionalRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshots of the content of a {@link TransactionalRepository}.
+ *
+ * A snapshot is tagged with the sequence number of the last {@link TransactionLog} record it is guaranteed to contain.
+ * Transactions are written tree by tree, parents before children, so that a snapshot can be loaded through the regular,
+ * validating, write path. Snapshots are written to a temporary file which is renamed once complete, and end with the
+ * number of transactions and a CRC32 of the content. The previous snapshot is kept, as a fallback, so the log must be
+ * kept from the {@link #oldestSequence oldest snapshot} on.
+ *
+ * Layout: magic (long), sequence number (long), then for every transaction a marker byte (1), identifier (long),
+ * amount (double), parent marker (byte), parent identifier (long) and type (modified UTF-8); then an end marker (0),
+ * the number of transactions (long) and the CRC32 of everything before it (long).
+ */
+@Slf4j
+public class Snapshots {
+
+    private static final long MAGIC = 0x54584e534e415031L;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+    private static final int KEEP = 2;
+    private static final byte RECORD = 1;
+    private static final byte END = 0;
+
+    private final Path directory;
+
+    public Snapshots(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Writes a snapshot of the given repository.
+     *
+     * Writers may keep adding transactions meanwhile: every transaction added before the call is written, transactions
+     * added during the call may or may not be.
+     *
+     * @param sequence the sequence number of the last log record applied to the repository before the call
+     * @param repository
+     * @return the number of transactions written
+     */
+    public long write(long sequence, TransactionalRepository repository) throws IOException {
+        Files.createDirectories(directory);
+        final Path target = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+        final Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        final CRC32 crc = new CRC32();
+        long count = 0;
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16), crc))) {
+            out.writeLong(MAGIC);
+            out.writeLong(sequence);
+            for (Map.Entry<Long, Transaction> entry : repository.allTransactions().entrySet()) {
+                if (entry.getValue().parentId() == null) {
+                    count += writeTree(out, repository, entry.getKey(), entry.getValue());
+                }
+            }
+            out.writeByte(END);
+            out.writeLong(count);
+            out.flush();
+            final long checksum = crc.getValue();
+            out.writeLong(checksum);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        deleteOlderThan(KEEP);
+        return count;
+    }
+
+    /**
+     * Loads the most recent valid snapshot, falling back to older ones if it is corrupted.
+     *
+     * The snapshot is read twice: once to verify its checksum and once to hand its content over,
+     * so that a corrupted snapshot is never partially loaded.
+     *
+     * @param consumer receives the transactions, parents before children
+     * @return the sequence number of the loaded snapshot, 0 if there is none
+     */
+    public long load(TransactionLog.RecordConsumer consumer) throws IOException {
+        final List<Path> snapshots = snapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            try {
+                read(snapshots.get(i), (sequence, id, transaction) -> { });
+            } catch (IOException e) {
+                log.warn("Ignoring corrupted snapshot " + snapshots.get(i), e);
+                continue;
+            }
+            return read(snapshots.get(i), consumer);
+        }
+        return 0;
+    }
+
+    /**
+     * The sequence number of the oldest snapshot kept, after which the log records are needed to recover from any of
+     * the snapshots
+     *
+     * @return 0 if there is no snapshot
+     */
+    public long oldestSequence() throws IOException {
+        final List<Path> snapshots = snapshots();
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        final String name = snapshots.get(0).getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Writes a tree breadth first, which lists every parent before its children
+     */
+    private static long writeTree(DataOutputStream out, TransactionalRepository repository, Long rootId, Transaction root) throws IOException {
+        final Deque<Map.Entry<Long, Transaction>> pending = new ArrayDeque<>();
+        pending.add(new AbstractMap.SimpleImmutableEntry<>(rootId, root));
+        long count = 0;
+        while (!pending.isEmpty()) {
+            final Map.Entry<Long, Transaction> next = pending.poll();
+            write(out, next.getKey(), next.getValue());
+            count++;
+            pending.addAll(repository.children(next.getKey()).entrySet());
+        }
+        return count;
+    }
+
+    private static void write(DataOutputStream out, Long id, Transaction transaction) throws IOException {
+        out.writeByte(RECORD);
+        out.writeLong(id);
+        out.writeDouble(transaction.amount());
+        out.writeBoolean(transaction.parentId() != null);
+        out.writeLong(transaction.parentId() != null ? transaction.parentId() : 0L);
+        out.writeUTF(transaction.type());
+    }
+
+    private static long read(Path snapshot, TransactionLog.RecordConsumer consumer) throws IOException {
+        final CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16), crc))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("Not a snapshot");
+            }
+            final long sequence = in.readLong();
+            long read = 0;
+            while (in.readByte() == RECORD) {
+                final Long id = in.readLong();
+                final double amount = in.readDouble();
+                final boolean hasParent = in.readBoolean();
+                final long parentId = in.readLong();
+                consumer.accept(sequence, id, new Transaction(amount, in.readUTF(), hasParent ? parentId : null));
+                read++;
+            }
+            final long count = in.readLong();
+            final long checksum = crc.getValue();
+            if (in.readLong() != checksum || count != read) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            return sequence;
+        }
+    }
+
+    private void deleteOlderThan(int keep) throws IOException {
+        final List<Path> snapshots = snapshots();
+        for (int i = 0; i < snapshots.size() - keep; i++) {
+            Files.delete(snapshots.get(i));
+        }
+    }
+
+    private List<Path> snapshots() throws IOException {
+        final List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(snapshots::add);
+        }
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+}
@@ -0,0 +1,277 @@
+package com.n26.codechallenge.persistence;
+
+import com.n26.codechallenge.Transaction;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of added transactions, split in fixed size segments that are memory-mapped.
+ *
+ * Every record has a sequence number, one higher than the previous record. Segment files are named after the
+ * sequence number of their first record, so that segments only holding records covered by a snapshot can be deleted.
+ *
+ * Record layout: payload length (int), CRC32 of the payload (int), payload. The payload holds the sequence number,
+ * the identifier, the amount, the parent identifier (if any) and the UTF-8 encoded type. A zero length marks the end
+ * of the written part of a segment. Reading stops at the first record whose CRC or sequence number does not match,
+ * which discards a record torn by a crash.
+ *
+ * Appends are serialized. Written records survive a crash of the process as soon as they are appended, and a crash
+ * of the machine once {@link #flush()} has been called.
+ */
+@Slf4j
+public class TransactionLog implements AutoCloseable {
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER = 2 * Integer.BYTES;
+    private static final int FIXED_PAYLOAD = 3 * Long.BYTES + Double.BYTES + 1 + Short.BYTES;
+    private static final byte HAS_PARENT = 1;
+
+    /**
+     * Receives the records of the log
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(long sequence, Long id, Transaction transaction);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+
+    private MappedByteBuffer active;
+    private long lastSequence;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * @param directory where the segments are kept
+     * @param segmentSize the size of each segment, in bytes
+     */
+    public TransactionLog(Path directory, int segmentSize) {
+        if (segmentSize < HEADER + FIXED_PAYLOAD + Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Segments must be able to hold a record with the longest type");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Reads every segment, hands the records after the given sequence over to a consumer and
+     * prepares the log for appending after the last valid record.
+     *
+     * @param afterSequence the last sequence number already known to the caller, e.g. from a snapshot
+     * @param consumer receives the records in sequence order
+     * @return the number of records handed to the consumer
+     */
+    public synchronized long recover(long afterSequence, RecordConsumer consumer) throws IOException {
+        Files.createDirectories(directory);
+        lastSequence = afterSequence;
+        long replayed = 0;
+        final List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            final MappedByteBuffer segment = map(segments.get(i));
+            while (true) {
+                final Record record = read(segment);
+                if (record == null) {
+                    break;
+                }
+                if (record.sequence > afterSequence) {
+                    if (record.sequence != lastSequence + 1 && lastSequence != afterSequence) {
+                        log.warn(String.format("Expected log record %d but found %d, ignoring the rest of the log", lastSequence + 1, record.sequence));
+                        break;
+                    }
+                    consumer.accept(record.sequence, record.id, record.transaction);
+                    lastSequence = record.sequence;
+                    replayed++;
+                }
+            }
+            if (i == segments.size() - 1) {
+                active = segment;
+            }
+        }
+        if (active == null) {
+            active = map(create(lastSequence + 1));
+        }
+        return replayed;
+    }
+
+    /**
+     * Appends a record for the given transaction
+     * @param id
+     * @param transaction
+     * @return the sequence number of the record
+     */
+    public long append(Long id, Transaction transaction) throws IOException {
+        final byte[] type = transaction.type().getBytes(StandardCharsets.UTF_8);
+        if (type.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("The type of the transaction is too long to be logged");
+        }
+        synchronized (this) {
+            if (active == null) {
+                throw new IllegalStateException("The log must be recovered before appending");
+            }
+            final int length = FIXED_PAYLOAD + type.length;
+            if (active.remaining() < HEADER + length + HEADER) {
+                roll();
+            }
+            final long sequence = lastSequence + 1;
+            final int start = active.position();
+            active.position(start + HEADER);
+            active.putLong(sequence)
+                    .putLong(id)
+                    .putDouble(transaction.amount())
+                    .put(transaction.parentId() != null ? HAS_PARENT : 0)
+                    .putLong(transaction.parentId() != null ? transaction.parentId() : 0L)
+                    .putShort((short) type.length)
+                    .put(type);
+            crc.reset();
+            final ByteBuffer payload = active.duplicate();
+            payload.position(start + HEADER).limit(start + HEADER + length);
+            crc.update(payload);
+            // the length goes last, so that a half written record is never considered complete
+            active.putInt(start + Integer.BYTES, (int) crc.getValue());
+            active.putInt(start, length);
+            lastSequence = sequence;
+            return sequence;
+        }
+    }
+
+    /**
+     * Appends a record for each of the given transactions, in iteration order, without interleaving other appends
+     * @param transactions
+     * @return the sequence number of the last record
+     */
+    public synchronized long append(Map<Long, Transaction> transactions) throws IOException {
+        for (Map.Entry<Long, Transaction> entry : transactions.entrySet()) {
+            append(entry.getKey(), entry.getValue());
+        }
+        return lastSequence;
+    }
+
+    /**
+     * The sequence number of the last record
+     * @return
+     */
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Forces the active segment to the storage device
+     */
+    public synchronized void flush() {
+        if (active != null) {
+            active.force();
+        }
+    }
+
+    /**
+     * Deletes the segments whose records all have a sequence number lower or equal to the given one.
+     * The active segment is never deleted.
+     *
+     * @param sequence the sequence number up to which records are no longer needed
+     */
+    public synchronized void deleteUpTo(long sequence) throws IOException {
+        final List<Path> segments = segments();
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if (firstSequence(segments.get(i + 1)) <= sequence + 1) {
+                Files.delete(segments.get(i));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        active = null;
+    }
+
+    private void roll() throws IOException {
+        active.force();
+        active = map(create(lastSequence + 1));
+    }
+
+    private Path create(long firstSequence) throws IOException {
+        final Path segment = directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(1), segmentSize - 1);
+        }
+        return segment;
+    }
+
+    private static MappedByteBuffer map(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        final List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long firstSequence(Path segment) {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Reads the record at the position of the buffer, leaving the position after it if valid
+     * @return the record, null if there is no valid record at the current position
+     */
+    private Record read(MappedByteBuffer segment) {
+        final int start = segment.position();
+        if (segment.remaining() < HEADER + FIXED_PAYLOAD) {
+            return null;
+        }
+        final int length = segment.getInt(start);
+        if (length < FIXED_PAYLOAD || length > segment.remaining() - HEADER) {
+            return null;
+        }
+        final ByteBuffer payload = segment.duplicate();
+        payload.position(start + HEADER).limit(start + HEADER + length);
+        crc.reset();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != segment.getInt(start + Integer.BYTES)) {
+            return null;
+        }
+        final long sequence = payload.getLong();
+        final long id = payload.getLong();
+        final double amount = payload.getDouble();
+        final boolean hasParent = payload.get() == HAS_PARENT;
+        final long parentId = payload.getLong();
+        final byte[] type = new byte[payload.getShort()];
+        payload.get(type);
+        segment.position(start + HEADER + length);
+        return new Record(sequence, id, new Transaction(amount, new String(type, StandardCharsets.UTF_8), hasParent ? parentId : null));
+    }
+
+    private static class Record {
+        private final long sequence;
+        private final Long id;
+        private final Transaction transaction;
+
+        Record(long sequence, Long id, Transaction transaction) {
+            this.sequence = sequence;
+            this.id = id;
+            this.transaction = transaction;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.n26.codechallenge.replication;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.n26.codechallenge.Transaction;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Consecutive records of a {@link ChangeLog}, as sent to followers: the identifiers and transactions of the records
+ * numbered from {@link #first()}, along with the last sequence number of the stream when they were read
+ */
+public final class ChangeBatch {
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+            .setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private long epoch;
+    private long first;
+    private long last;
+    private long[] ids;
+    private List<Transaction> transactions;
+
+    private ChangeBatch() {
+    }
+
+    public ChangeBatch(long epoch, long first, long last, long[] ids, List<Transaction> transactions) {
+        this.epoch = epoch;
+        this.first = first;
+        this.last = last;
+        this.ids = ids;
+        this.transactions = transactions;
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * The sequence number of the first record of the batch
+     * @return
+     */
+    public long first() {
+        return first;
+    }
+
+    /**
+     * The last sequence number of the stream when the batch was read
+     * @return
+     */
+    public long last() {
+        return last;
+    }
+
+    public long[] ids() {
+        return ids;
+    }
+
+    public List<Transaction> transactions() {
+        return transactions;
+    }
+
+    public byte[] toJson() throws IOException {
+        return mapper.writeValueAsBytes(this);
+    }
+
+    public static ChangeBatch fromJson(byte[] json) throws IOException {
+        return mapper.readValue(json, ChangeBatch.class);
+    }
+}
@@ -0,0 +1,113 @@
+package com.n26.codechallenge.replication;
+
+import com.n26.codechallenge.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ordered stream of the transactions accepted by a primary, each numbered by a sequence starting at 1.
+ *
+ * Records are kept in memory for the life of the process, in chunks of {@value #CHUNK_SIZE} identifiers and
+ * transactions which are never copied as the stream grows. The transactions are the instances held by the store, so a
+ * record only costs its identifier and a reference. Every process starts a new stream, told apart by its
+ * {@link #epoch()}.
+ *
+ * Appends are serialized on the monitor of the stream, which readers waiting for new records also wait on.
+ */
+public class ChangeLog {
+
+    private static final int CHUNK_BITS = 14;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final long epoch;
+    private long[][] ids = new long[16][];
+    private Transaction[][] transactions = new Transaction[16][];
+    private volatile long lastSequence;
+
+    /**
+     * @param epoch tells this stream apart from the streams of previous processes
+     */
+    public ChangeLog(long epoch) {
+        this.epoch = epoch;
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * The sequence number of the last record, 0 while the stream is empty
+     * @return
+     */
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Appends a record for the given transaction
+     * @return the sequence number of the record
+     */
+    public synchronized long append(Long id, Transaction transaction) {
+        write(id, transaction);
+        notifyAll();
+        return lastSequence;
+    }
+
+    /**
+     * Appends a record for each of the given transactions, in iteration order, without interleaving other appends
+     * @return the sequence number of the last record
+     */
+    public synchronized long append(Map<Long, Transaction> transactions) {
+        transactions.forEach(this::write);
+        notifyAll();
+        return lastSequence;
+    }
+
+    /**
+     * Reads the records following a sequence number, waiting for one to be appended if there is none yet
+     *
+     * @param after the last sequence number known to the reader, 0 to read from the start
+     * @param limit the maximum number of records read
+     * @param waitMillis how long to wait for a record, 0 not to wait
+     * @return the records read, possibly none
+     */
+    public synchronized ChangeBatch read(long after, int limit, long waitMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        long remaining = waitMillis;
+        while (lastSequence <= after && remaining > 0) {
+            wait(remaining);
+            remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        }
+        final long from = Math.min(after, lastSequence);
+        final int count = (int) Math.min(limit, lastSequence - from);
+        final long[] batchIds = new long[count];
+        final List<Transaction> batchTransactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final long slot = from + i;
+            batchIds[i] = ids[(int) (slot >>> CHUNK_BITS)][(int) (slot & CHUNK_MASK)];
+            batchTransactions.add(transactions[(int) (slot >>> CHUNK_BITS)][(int) (slot & CHUNK_MASK)]);
+        }
+        return new ChangeBatch(epoch, from + 1, lastSequence, batchIds, batchTransactions);
+    }
+
+    private void write(Long id, Transaction transaction) {
+        final long slot = lastSequence;
+        final int chunk = (int) (slot >>> CHUNK_BITS);
+        if (chunk == ids.length) {
+            ids = Arrays.copyOf(ids, chunk * 2);
+            transactions = Arrays.copyOf(transactions, chunk * 2);
+        }
+        if (ids[chunk] == null) {
+            ids[chunk] = new long[CHUNK_SIZE];
+            transactions[chunk] = new Transaction[CHUNK_SIZE];
+        }
+        ids[chunk][(int) (slot & CHUNK_MASK)] = id;
+        transactions[chunk][(int) (slot & CHUNK_MASK)] = transaction;
+        lastSequence = slot + 1;
+    }
+}
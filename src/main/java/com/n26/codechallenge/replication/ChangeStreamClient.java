@@ -0,0 +1,19 @@
+package com.n26.codechallenge.replication;
+
+/**
+ * Reads the {@link ChangeLog} of a primary
+ */
+public interface ChangeStreamClient {
+
+    /**
+     * @see ChangeLog#read(long, int, long)
+     * @throws RuntimeException if the primary cannot be reached or fails to answer
+     */
+    ChangeBatch changes(long after, int limit, long waitMillis);
+
+    /**
+     * Where the primary is, for the logs and the status of the follower
+     * @return
+     */
+    String primary();
+}
@@ -0,0 +1,317 @@
+package com.n26.codechallenge.replication;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.ReadOnlyReplicaException;
+import com.n26.codechallenge.exception.ReplicaBehindException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.service.TransactionalService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A read replica: applies the {@link ChangeLog} of a primary to its own {@link TransactionalService}, whose store and
+ * views then serve reads, and refuses writes.
+ *
+ * A background thread polls the primary for the records after the last one received, the primary holding the poll
+ * until a record is appended, and adds each batch of records at once. A record whose parent has not arrived yet, which
+ * happens when concurrent writes of the primary were appended out of order, is kept aside and added again along with
+ * every following batch until its parent is there. The applied sequence, the one reads are consistent with, stops
+ * before the first record kept aside.
+ *
+ * When the primary restarts, its stream starts over under a new epoch, holding the transactions the primary recovered,
+ * if any: the follower replaces its service with an empty one and reads the new stream from the start, reads waiting
+ * for the sequences of the new stream meanwhile. A record whose identifier the follower already holds with another
+ * content means it diverged from its primary: it starts over from an empty service as well.
+ */
+@Slf4j
+public class FollowerTransactionalService implements TransactionalService, Replicated, AutoCloseable {
+
+    private static final long RETRY_MILLIS = 1000;
+
+    private final Supplier<TransactionalService> services;
+    private volatile TransactionalService delegate;
+    private final ChangeStreamClient primary;
+    private final int batchSize;
+    private final long pollWaitMillis;
+    private final long readWaitMillis;
+    private final Thread replicator;
+    private volatile boolean running = true;
+
+    // owned by the replicator thread
+    private Long epoch;
+    private long received;
+    private final Map<Long, Long> waitingSequences = new LinkedHashMap<>();
+    private final Map<Long, Transaction> waiting = new LinkedHashMap<>();
+
+    private final Object progress = new Object();
+    private volatile long applied;
+    private volatile long generation;
+    private volatile long primarySequence;
+    private volatile long caughtUpAt = System.currentTimeMillis();
+    private volatile long contactedAt;
+
+    /**
+     * @param services builds an empty service, which the changes are applied to and which serves the reads, on startup
+     *                 and again whenever the follower starts over
+     * @param primary reads the stream of the primary
+     * @param batchSize the maximum number of records read at once
+     * @param pollWaitMillis how long the primary holds a poll when there is no new record
+     * @param readWaitMillis how long a read waits for the writes it asks for before failing
+     */
+    public FollowerTransactionalService(Supplier<TransactionalService> services, ChangeStreamClient primary, int batchSize, long pollWaitMillis, long readWaitMillis) {
+        this.services = services;
+        this.delegate = services.get();
+        this.primary = primary;
+        this.batchSize = batchSize;
+        this.pollWaitMillis = pollWaitMillis;
+        this.readWaitMillis = readWaitMillis;
+        this.replicator = new Thread(this::replicate, "replication");
+        replicator.setDaemon(true);
+        replicator.start();
+    }
+
+    @Override
+    public void addTransaction(Long id, Transaction transaction) {
+        throw new ReadOnlyReplicaException(primary.primary());
+    }
+
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        throw new ReadOnlyReplicaException(primary.primary());
+    }
+
+    @Override
+    public Transaction transaction(Long transactionId) throws TransactionDoesNotExistException {
+        return delegate.transaction(transactionId);
+    }
+
+    @Override
+    public Map<Long, Transaction> transactions(Collection<Long> transactionIds) {
+        return delegate.transactions(transactionIds);
+    }
+
+    @Override
+    public Set<Long> transactionByType(String type) {
+        return delegate.transactionByType(type);
+    }
+
+    @Override
+    public List<Long> transactionByTypes(Collection<String> types, Long after, int limit) {
+        return delegate.transactionByTypes(types, after, limit);
+    }
+
+    @Override
+    public TypeStatistics typeStatistics(String type) {
+        return delegate.typeStatistics(type);
+    }
+
+    @Override
+    public Double transactionSum(Long parentId) throws TransactionDoesNotExistException {
+        return delegate.transactionSum(parentId);
+    }
+
+    @Override
+    public Map<Long, Double> transactionSums(Collection<Long> parentIds) {
+        return delegate.transactionSums(parentIds);
+    }
+
+    @Override
+    public TypeStatistics subTreeStatistics(Long parentId, String type) throws TransactionDoesNotExistException {
+        return delegate.subTreeStatistics(parentId, type);
+    }
+
+    @Override
+    public long typeIndexFootprint() {
+        return delegate.typeIndexFootprint();
+    }
+
+    /**
+     * The sequence number up to which every record of the primary is applied
+     */
+    @Override
+    public long sequence() {
+        return applied;
+    }
+
+    /**
+     * The number of times the follower started over from an empty service
+     */
+    @Override
+    public long generation() {
+        return generation;
+    }
+
+    @Override
+    public void awaitSequence(long sequence) throws ReplicaBehindException {
+        if (applied >= sequence) {
+            return;
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readWaitMillis);
+        synchronized (progress) {
+            while (applied < sequence) {
+                final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    throw new ReplicaBehindException(sequence, applied);
+                }
+                try {
+                    progress.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ReplicaBehindException(sequence, applied);
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of records of the primary not applied yet, and for how long the follower has been behind
+     * @return
+     */
+    public long lagRecords() {
+        return Math.max(0, primarySequence - applied);
+    }
+
+    public long lagMillis() {
+        return applied >= primarySequence ? 0 : System.currentTimeMillis() - caughtUpAt;
+    }
+
+    @Override
+    public Map<String, Object> replicationStatus() {
+        final Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", "follower");
+        status.put("primary", primary.primary());
+        status.put("epoch", epoch);
+        status.put("sequence", applied);
+        status.put("primary_sequence", primarySequence);
+        status.put("lag_records", lagRecords());
+        status.put("lag_ms", lagMillis());
+        status.put("since_contact_ms", contactedAt == 0 ? null : System.currentTimeMillis() - contactedAt);
+        return status;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        replicator.interrupt();
+        close(delegate, "Could not close the service the follower serves");
+    }
+
+    private void replicate() {
+        boolean failing = false;
+        while (running) {
+            try {
+                apply(primary.changes(received, batchSize, pollWaitMillis));
+                if (failing) {
+                    log.info("Replicating {} again from record {}", primary.primary(), received);
+                    failing = false;
+                }
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                if (!failing) {
+                    log.warn("Could not read the changes of " + primary.primary() + ", retrying", e);
+                    failing = true;
+                }
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the records kept aside and the records of the batch at once, then keeps aside the ones still missing
+     * their parent
+     */
+    void apply(ChangeBatch batch) {
+        contactedAt = System.currentTimeMillis();
+        if (epoch == null || epoch != batch.epoch()) {
+            if (epoch != null) {
+                log.info("The primary {} restarted, reading its changes from the start", primary.primary());
+                startOver();
+            }
+            epoch = batch.epoch();
+            if (batch.first() != 1) {
+                return;
+            }
+        }
+        final long[] ids = batch.ids();
+        for (int i = 0; i < ids.length; i++) {
+            waiting.put(ids[i], batch.transactions().get(i));
+            waitingSequences.put(ids[i], batch.first() + i);
+        }
+        received = batch.first() + ids.length - 1;
+        if (!waiting.isEmpty()) {
+            final Set<Long> missingParent = new HashSet<>();
+            final Set<Long> held = new HashSet<>();
+            delegate.addTransactions(waiting).forEach((id, rejection) -> {
+                if (rejection instanceof ParentTransactionDoesNotExistException) {
+                    missingParent.add(id);
+                } else if (rejection instanceof TransactionAlreadyExistsException) {
+                    held.add(id);
+                } else {
+                    log.warn("Skipping transaction {} of the primary: {}", id, rejection.getMessage());
+                }
+            });
+            if (!held.isEmpty()) {
+                final Map<Long, Transaction> holding = delegate.transactions(held);
+                for (Long id : held) {
+                    if (!waiting.get(id).equals(holding.get(id))) {
+                        log.error("Transaction {} of the primary differs from the one the follower holds, starting over", id);
+                        startOver();
+                        epoch = null;
+                        return;
+                    }
+                }
+            }
+            waiting.keySet().retainAll(missingParent);
+            waitingSequences.keySet().retainAll(missingParent);
+        }
+        final long firstWaiting = waitingSequences.values().stream().mapToLong(Long::longValue).min().orElse(received + 1);
+        primarySequence = batch.last();
+        synchronized (progress) {
+            applied = firstWaiting - 1;
+            progress.notifyAll();
+        }
+        if (applied >= primarySequence) {
+            caughtUpAt = contactedAt;
+        }
+    }
+
+    /**
+     * Replaces the service with an empty one, to apply the stream of the primary from its start
+     */
+    private void startOver() {
+        final TransactionalService previous = delegate;
+        synchronized (progress) {
+            received = 0;
+            applied = 0;
+            waiting.clear();
+            waitingSequences.clear();
+            delegate = services.get();
+            // only moved once the new service serves the reads, so that nothing read from the previous one is kept under it
+            generation++;
+        }
+        close(previous, "Could not close the service the follower replaced");
+    }
+
+    private static void close(TransactionalService service, String failure) {
+        if (service instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) service).close();
+            } catch (Exception e) {
+                log.warn(failure, e);
+            }
+        }
+    }
+}
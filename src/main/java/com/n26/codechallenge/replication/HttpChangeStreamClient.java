@@ -0,0 +1,45 @@
+package com.n26.codechallenge.replication;
+
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Reads the change stream a primary serves under GET /replication/changes
+ */
+public class HttpChangeStreamClient implements ChangeStreamClient {
+
+    private final String primary;
+    private final RestTemplate rest;
+
+    /**
+     * @param primary the base URL of the primary
+     * @param timeoutMs the connection timeout, and the read timeout on top of the time the primary waits for records
+     * @param maxWaitMillis the longest time the primary is asked to wait for records
+     */
+    public HttpChangeStreamClient(String primary, int timeoutMs, long maxWaitMillis) {
+        this.primary = primary;
+        final SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout(timeoutMs);
+        factory.setReadTimeout((int) (timeoutMs + maxWaitMillis));
+        this.rest = new RestTemplate(factory);
+    }
+
+    @Override
+    public ChangeBatch changes(long after, int limit, long waitMillis) {
+        final byte[] json = rest.getForObject(primary + "/replication/changes?after={after}&limit={limit}&wait_ms={wait}", byte[].class,
+                after, limit, waitMillis);
+        try {
+            return ChangeBatch.fromJson(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable changes from " + primary, e);
+        }
+    }
+
+    @Override
+    public String primary() {
+        return primary;
+    }
+}
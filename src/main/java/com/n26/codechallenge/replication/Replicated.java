@@ -0,0 +1,15 @@
+package com.n26.codechallenge.replication;
+
+import java.util.Map;
+
+/**
+ * A service taking part in replication, as a primary or as a follower
+ */
+public interface Replicated {
+
+    /**
+     * The role of the node and how far it is in the change stream, served by GET /replication/status
+     * @return
+     */
+    Map<String, Object> replicationStatus();
+}
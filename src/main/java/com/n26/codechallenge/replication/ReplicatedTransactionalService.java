@@ -0,0 +1,150 @@
+package com.n26.codechallenge.replication;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.repository.TransactionBatch;
+import com.n26.codechallenge.repository.TransactionalRepository;
+import com.n26.codechallenge.service.TransactionalService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Makes a {@link TransactionalService} the primary of read replicas.
+ *
+ * Every transaction accepted by the underlying service is appended to a {@link ChangeLog} before the call returns,
+ * which followers read and apply to their own store and views (see {@link FollowerTransactionalService}). The
+ * transactions the repository already holds when the primary starts, e.g. recovered from disk, open the stream.
+ *
+ * Transactions are appended after being accepted, without holding up other writers, so a child accepted right after
+ * its parent may be appended before it: followers wait for the parent before applying such a child.
+ */
+@Slf4j
+public class ReplicatedTransactionalService implements TransactionalService, Replicated, AutoCloseable {
+
+    private final TransactionalService delegate;
+    private final ChangeLog changes;
+
+    /**
+     * @param delegate the service serving the requests
+     * @param repository the repository of the delegate, whose transactions open the stream
+     * @param changes an empty stream
+     */
+    public ReplicatedTransactionalService(TransactionalService delegate, TransactionalRepository repository, ChangeLog changes) {
+        this.delegate = delegate;
+        this.changes = changes;
+        changes.append(repository.allTransactions());
+    }
+
+    public ChangeLog changes() {
+        return changes;
+    }
+
+    /**
+     * Adds the transaction to the underlying service and, if accepted, appends it to the stream
+     */
+    @Override
+    public void addTransaction(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException, InvalidAmountException {
+        delegate.addTransaction(id, transaction);
+        changes.append(id, transaction);
+    }
+
+    /**
+     * Adds the batch to the underlying service and appends the accepted transactions, parents first
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        final Map<Long, InvalidTransaction> rejected = delegate.addTransactions(transactions);
+        changes.append(TransactionBatch.accepted(TransactionBatch.parentsFirst(transactions), rejected.keySet()));
+        return rejected;
+    }
+
+    @Override
+    public Transaction transaction(Long transactionId) throws TransactionDoesNotExistException {
+        return delegate.transaction(transactionId);
+    }
+
+    @Override
+    public Map<Long, Transaction> transactions(Collection<Long> transactionIds) {
+        return delegate.transactions(transactionIds);
+    }
+
+    @Override
+    public Set<Long> transactionByType(String type) {
+        return delegate.transactionByType(type);
+    }
+
+    @Override
+    public List<Long> transactionByTypes(Collection<String> types, Long after, int limit) {
+        return delegate.transactionByTypes(types, after, limit);
+    }
+
+    @Override
+    public TypeStatistics typeStatistics(String type) {
+        return delegate.typeStatistics(type);
+    }
+
+    @Override
+    public Double transactionSum(Long parentId) throws TransactionDoesNotExistException {
+        return delegate.transactionSum(parentId);
+    }
+
+    @Override
+    public Map<Long, Double> transactionSums(Collection<Long> parentIds) {
+        return delegate.transactionSums(parentIds);
+    }
+
+    @Override
+    public TypeStatistics subTreeStatistics(Long parentId, String type) throws TransactionDoesNotExistException {
+        return delegate.subTreeStatistics(parentId, type);
+    }
+
+    @Override
+    public long typeIndexFootprint() {
+        return delegate.typeIndexFootprint();
+    }
+
+    /**
+     * The sequence number of the last transaction appended, which covers every write that returned before
+     */
+    @Override
+    public long sequence() {
+        return changes.lastSequence();
+    }
+
+    /**
+     * A primary reads its own writes
+     */
+    @Override
+    public void awaitSequence(long sequence) {
+    }
+
+    @Override
+    public Map<String, Object> replicationStatus() {
+        final Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", "primary");
+        status.put("epoch", changes.epoch());
+        status.put("sequence", changes.lastSequence());
+        return status;
+    }
+
+    @Override
+    public void close() {
+        if (delegate instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) delegate).close();
+            } catch (Exception e) {
+                log.warn("Could not close the replicated service", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link SumRepository} that propagates amounts to the ancestors of a transaction in the background.
+ *
+ * Adding an amount only records the amount of the transaction itself and queues an increment for its parent.
+ * A single propagator thread drains the queue in batches, merges the increments that hit the same ancestor
+ * and applies each merged increment once, so a burst of transactions under the same tree costs one update per
+ * ancestor instead of one per transaction and ancestor.
+ *
+ * Every queued increment gets a sequence number. Reads wait until the propagator has applied every increment
+ * queued before the read started, which gives read-your-writes consistency.
+ *
+ * A batch that cannot be applied leaves the sums behind for good: the propagator drops the following increments and
+ * every read waiting for them fails, instead of returning a sum that misses them.
+ */
+@Slf4j
+public class AsyncInMemorySumRepository implements SumRepository, AutoCloseable {
+
+    private static final int MAX_BATCH = 4096;
+
+    private final TransactionTreeTraversal traversal;
+    private final ConcurrentMap<Long, Double> amountPerSubTree = new ConcurrentHashMap<>();
+    private final BlockingQueue<Increment> queue = new LinkedBlockingQueue<>();
+    private final Thread propagator;
+    private final Object appliedMonitor = new Object();
+
+    private long submitted;
+    private volatile long lastSubmitted;
+    private volatile long applied;
+    private volatile boolean running = true;
+    private volatile RuntimeException failure;
+
+    private final AtomicLong propagatedIncrements = new AtomicLong();
+    private final AtomicLong ancestorUpdates = new AtomicLong();
+    private volatile long lastLagNanos;
+    private volatile long maxLagNanos;
+
+    public AsyncInMemorySumRepository(TransactionalRepository transactionalRepository) {
+        this.traversal = new TransactionTreeTraversal(transactionalRepository);
+        this.propagator = new Thread(this::propagate, "sum-propagator");
+        this.propagator.setDaemon(true);
+        this.propagator.start();
+    }
+
+    /**
+     * Add an entry for the given transaction and queue the increment of its ancestors
+     * @param id the identifier of the transaction
+     * @param transaction the transaction to be added
+     */
+    @Override
+    public void addAmount(Long id, Transaction transaction) {
+        // A child added concurrently may already have merged its amount into this entry
+        amountPerSubTree.merge(id, transaction.amount(), Double::sum);
+        if (transaction.parentId() != null) {
+            // Sequence numbers must follow the queue order, so that applying an increment means all previous ones are applied too
+            synchronized (queue) {
+                queue.add(new Increment(++submitted, transaction.parentId(), transaction.amount(), System.nanoTime()));
+                lastSubmitted = submitted;
+            }
+        }
+    }
+
+    /**
+     * Records the amounts of the batch summed up its trees, as far as the batch goes, and queues a single increment
+     * per parent outside of the batch
+     * @param transactions the transactions, parents before children
+     */
+    @Override
+    public void addAmounts(Map<Long, Transaction> transactions) {
+        final Map<Long, Double> outside = new HashMap<>();
+        TransactionBatch.subTreeAmounts(transactions, outside).forEach((id, amount) -> amountPerSubTree.merge(id, amount, Double::sum));
+        if (outside.isEmpty()) {
+            return;
+        }
+        final long now = System.nanoTime();
+        synchronized (queue) {
+            outside.forEach((parentId, amount) -> queue.add(new Increment(++submitted, parentId, amount, now)));
+            lastSubmitted = submitted;
+        }
+    }
+
+    /**
+     * Waits until all the increments queued so far are applied and returns the sum
+     * @param id
+     * @return
+     */
+    @Override
+    public Double transitiveSum(Long id) {
+        awaitPropagation(lastSubmitted);
+        return amountPerSubTree.get(id);
+    }
+
+    /**
+     * Waits once for the increments queued so far, then reads every sum
+     * @param ids
+     * @return
+     */
+    @Override
+    public Map<Long, Double> transitiveSums(Collection<Long> ids) {
+        awaitPropagation(lastSubmitted);
+        final Map<Long, Double> sums = new HashMap<>();
+        for (Long id : ids) {
+            final Double sum = amountPerSubTree.get(id);
+            if (sum != null) {
+                sums.put(id, sum);
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Blocks until the increment with the given sequence number, and all the previous ones, have been applied
+     * @param sequence
+     * @throws IllegalStateException if the increment cannot be applied anymore, or if the thread is interrupted while
+     * waiting, in which case its interrupt status is set again
+     */
+    public void awaitPropagation(long sequence) {
+        try {
+            if (!awaitApplied(sequence) && failure != null) {
+                throw new IllegalStateException("The sums could not be propagated", failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the sums to be propagated", e);
+        }
+    }
+
+    /**
+     * The sequence number of the last queued increment
+     * @return
+     */
+    public long submittedSequence() {
+        return lastSubmitted;
+    }
+
+    /**
+     * The sequence number up to which all increments have been applied
+     * @return
+     */
+    public long appliedSequence() {
+        return applied;
+    }
+
+    /**
+     * The number of queued increments that are not applied yet
+     * @return
+     */
+    public long pendingIncrements() {
+        return lastSubmitted - applied;
+    }
+
+    /**
+     * How long the oldest increment of the last applied batch waited before being applied
+     * @return
+     */
+    public long lastLag(TimeUnit unit) {
+        return unit.convert(lastLagNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The longest time an increment waited before being applied
+     * @return
+     */
+    public long maxLag(TimeUnit unit) {
+        return unit.convert(maxLagNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The number of increments applied so far
+     * @return
+     */
+    public long propagatedIncrements() {
+        return propagatedIncrements.get();
+    }
+
+    /**
+     * The number of ancestor entries rewritten so far, lower than increments times depth thanks to coalescing
+     * @return
+     */
+    public long ancestorUpdates() {
+        return ancestorUpdates.get();
+    }
+
+    /**
+     * Stops the propagator, once the increments queued so far have been applied.
+     * An interrupted caller stops it right away and keeps its interrupt status
+     */
+    @Override
+    public void close() {
+        try {
+            awaitApplied(lastSubmitted);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            propagator.interrupt();
+        }
+        try {
+            propagator.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void propagate() {
+        final List<Increment> batch = new ArrayList<>(MAX_BATCH);
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            if (failure == null) {
+                try {
+                    apply(batch);
+                    publish(batch);
+                } catch (RuntimeException e) {
+                    log.error("Could not propagate a batch of " + batch.size() + " increments, sums are not propagated anymore", e);
+                    fail(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Waits until the increment with the given sequence number is applied, unless it cannot be anymore
+     * @return whether the increment is applied
+     */
+    private boolean awaitApplied(long sequence) throws InterruptedException {
+        if (applied >= sequence) {
+            return true;
+        }
+        synchronized (appliedMonitor) {
+            while (applied < sequence && running && failure == null) {
+                appliedMonitor.wait(100);
+            }
+            return applied >= sequence;
+        }
+    }
+
+    /**
+     * Sums every increment up per ancestor before updating any sum, so that a failure leaves them untouched
+     */
+    private void apply(List<Increment> batch) {
+        final Map<Long, Double> perParent = new HashMap<>();
+        for (Increment increment : batch) {
+            perParent.merge(increment.parentId, increment.amount, Double::sum);
+        }
+        final Map<Long, Double> perAncestor = new HashMap<>();
+        perParent.forEach((parentId, amount) ->
+                traversal.forEachAncestor(parentId, ancestorId -> perAncestor.merge(ancestorId, amount, Double::sum)));
+        perAncestor.forEach((ancestorId, amount) -> amountPerSubTree.merge(ancestorId, amount, Double::sum));
+        propagatedIncrements.addAndGet(batch.size());
+        ancestorUpdates.addAndGet(perAncestor.size());
+    }
+
+    private void fail(RuntimeException e) {
+        synchronized (appliedMonitor) {
+            failure = e;
+            appliedMonitor.notifyAll();
+        }
+    }
+
+    private void publish(List<Increment> batch) {
+        final long lag = System.nanoTime() - batch.get(0).queuedAt;
+        lastLagNanos = lag;
+        if (lag > maxLagNanos) {
+            maxLagNanos = lag;
+        }
+        synchronized (appliedMonitor) {
+            applied = batch.get(batch.size() - 1).sequence;
+            appliedMonitor.notifyAll();
+        }
+    }
+
+    private static class Increment {
+        private final long sequence;
+        private final Long parentId;
+        private final double amount;
+        private final long queuedAt;
+
+        Increment(long sequence, Long parentId, double amount, long queuedAt) {
+            this.sequence = sequence;
+            this.parentId = parentId;
+            this.amount = amount;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
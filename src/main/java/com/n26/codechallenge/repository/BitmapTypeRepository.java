@@ -0,0 +1,229 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.TypeDictionary;
+
+import org.roaringbitmap.longlong.PeekableLongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * A {@link TypeRepository} keeping the identifiers of each type in a compressed {@link Roaring64Bitmap}.
+ *
+ * Identifiers handed out by the service are mostly dense, which bitmaps store in a few bits per identifier instead
+ * of the tens of bytes of a boxed entry in a hash set. Bitmaps are not thread safe: each type has its own read write
+ * lock, which readers only hold for a page of identifiers at a time. Bitmaps are keyed by the {@link TypeDictionary}
+ * code of their type.
+ *
+ * Bitmaps order identifiers as unsigned numbers, so identifiers are stored with their sign bit flipped, which keeps
+ * them in ascending signed order.
+ */
+public class BitmapTypeRepository implements TypeRepository {
+
+    /**
+     * Number of identifiers read under a single acquisition of the lock of a type while iterating
+     */
+    private static final int PAGE_SIZE = 1024;
+
+    private final ConcurrentMap<Integer, TypeIndex> indexes = new ConcurrentHashMap<>();
+
+    @Override
+    public void addTransaction(int typeCode, Long id) {
+        indexes.computeIfAbsent(typeCode, k -> new TypeIndex()).add(id);
+    }
+
+    @Override
+    public void addTransactions(int typeCode, Collection<Long> ids) {
+        indexes.computeIfAbsent(typeCode, k -> new TypeIndex()).addAll(ids);
+    }
+
+    /**
+     * Returns a read only view over the identifiers of the given type, in ascending order.
+     *
+     * Nothing is copied: the view reads the bitmap a page at a time while it is iterated, and may or may not
+     * reflect transactions added in the meantime.
+     *
+     * @param type
+     * @return
+     */
+    @Override
+    public Set<Long> getTransactionIdsByType(String type) {
+        final TypeIndex index = indexes.get(TypeDictionary.lookup(type));
+        return index == null ? Collections.emptySet() : new IdsView(index);
+    }
+
+    /**
+     * Reads a page of each type, then merges them
+     */
+    @Override
+    public List<Long> getTransactionIdsByTypes(Collection<String> types, Long after, int limit) {
+        LongStream merged = LongStream.empty();
+        final Set<Integer> typeCodes = new HashSet<>();
+        for (String type : types) {
+            typeCodes.add(TypeDictionary.lookup(type));
+        }
+        for (Integer typeCode : typeCodes) {
+            final TypeIndex index = indexes.get(typeCode);
+            if (index != null) {
+                merged = LongStream.concat(merged, LongStream.of(index.page(after, limit)));
+            }
+        }
+        return merged.sorted().distinct().limit(limit).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * The number of bytes held by the bitmaps
+     * @return
+     */
+    @Override
+    public long footprint() {
+        long footprint = 0;
+        for (TypeIndex index : indexes.values()) {
+            footprint += index.footprint();
+        }
+        return footprint;
+    }
+
+    private static long encode(long id) {
+        return id ^ Long.MIN_VALUE;
+    }
+
+    private static long decode(long value) {
+        return value ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * The bitmap of a single type along with its lock
+     */
+    private static class TypeIndex {
+
+        private final Roaring64Bitmap bitmap = new Roaring64Bitmap();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        void add(long id) {
+            lock.writeLock().lock();
+            try {
+                bitmap.addLong(encode(id));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void addAll(Collection<Long> ids) {
+            lock.writeLock().lock();
+            try {
+                for (Long id : ids) {
+                    bitmap.addLong(encode(id));
+                }
+                bitmap.runOptimize();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        boolean contains(long id) {
+            lock.readLock().lock();
+            try {
+                return bitmap.contains(encode(id));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long cardinality() {
+            lock.readLock().lock();
+            try {
+                return bitmap.getLongCardinality();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long footprint() {
+            lock.readLock().lock();
+            try {
+                return bitmap.getLongSizeInBytes();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Reads the identifiers following a cursor
+         * @param after only identifiers strictly greater are read, null to start from the lowest
+         * @param limit the maximum number of identifiers read
+         * @return the identifiers, in ascending order
+         */
+        long[] page(Long after, int limit) {
+            if (after != null && after == Long.MAX_VALUE) {
+                return new long[0];
+            }
+            final long from = after == null ? encode(Long.MIN_VALUE) : encode(after + 1);
+            final long[] page = new long[limit];
+            int size = 0;
+            lock.readLock().lock();
+            try {
+                final PeekableLongIterator iterator = bitmap.getLongIteratorFrom(from);
+                while (size < limit && iterator.hasNext()) {
+                    page[size++] = decode(iterator.next());
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return size == limit ? page : Arrays.copyOf(page, size);
+        }
+    }
+
+    /**
+     * A read only set over a bitmap, iterated a page at a time
+     */
+    private static class IdsView extends AbstractSet<Long> {
+
+        private final TypeIndex index;
+
+        IdsView(TypeIndex index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Long && index.contains((Long) o);
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(index.cardinality(), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public Iterator<Long> iterator() {
+            return new Iterator<Long>() {
+                private long[] page = index.page(null, PAGE_SIZE);
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    if (next == page.length && page.length == PAGE_SIZE) {
+                        page = index.page(page[PAGE_SIZE - 1], PAGE_SIZE);
+                        next = 0;
+                    }
+                    return next < page.length;
+                }
+
+                @Override
+                public Long next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return page[next++];
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeDictionary;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * A in-memory thread safe implementation of {@link TransactionalRepository} storing transactions in columns.
+ *
+ * Every transaction is assigned a dense ordinal, in insertion order. The fields of the transaction are spread over
+ * primitive columns, split into chunks of {@link #CHUNK_SIZE} ordinals which are allocated as the repository grows
+ * and never copied nor moved:
+ *
+ * - identifier, as a long
+ * - amount, as a double
+ * - parent, as the ordinal of the parent transaction ({@link #NONE} for roots)
+ * - type, as its {@link TypeDictionary} code
+ * - first child and next sibling ordinals, which link the children of a transaction
+ *
+ * Writes are serialized by a read write lock, whose read side protects the identifier to ordinal association and
+ * the child links. Every other column is written once, before the ordinal is published, so {@link #forEachIdOfTypes}
+ * and the snapshots returned by {@link #allTransactions()} read them without any lock.
+ *
+ * {@link Transaction} instances are only built when a caller asks for them.
+ */
+public class ColumnarTransactionalRepository implements TransactionalRepository, TransactionColumns, LockStatistics {
+
+    private static final int NONE = -1;
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LockWaits lockWaits = new LockWaits();
+    private final LongIntHashMap ordinalsById = new LongIntHashMap(CHUNK_SIZE);
+
+    /**
+     * Written before {@link #size}, so that any reader of the size sees the chunks holding the published ordinals
+     */
+    private volatile Chunk[] chunks = new Chunk[16];
+    private volatile int size;
+
+    /**
+     * Add a transaction, if valid
+     *
+     * @param id the unique identifies used to refer to a {@link Transaction}
+     * @param transaction the transaction to be added
+     * @throws TransactionAlreadyExistsException if there is already another transaction associated with this identifier
+     * @throws ParentTransactionDoesNotExistException if the transaction is linked to an inexistent transaction
+     */
+    @Override
+    public void addTransaction(Long id, Transaction transaction) throws ParentTransactionDoesNotExistException, TransactionAlreadyExistsException {
+        lockWaits.lock(lock.writeLock());
+        try {
+            append(id, transaction);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the transactions under a single acquisition of the lock
+     *
+     * @param transactions the transactions to be stored, parents first
+     * @return the transactions that were not added, along with the reason
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        final Map<Long, InvalidTransaction> rejected = new HashMap<>();
+        lockWaits.lock(lock.writeLock());
+        try {
+            for (Map.Entry<Long, Transaction> entry : transactions.entrySet()) {
+                try {
+                    append(entry.getKey(), entry.getValue());
+                } catch (InvalidTransaction e) {
+                    rejected.put(entry.getKey(), e);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return rejected;
+    }
+
+    /**
+     * Builds the transaction stored under the given identifier
+     *
+     * If a transaction does not exist with the given identifier, null is returned.
+     *
+     * @param id The unique identified for a transaction
+     * @return
+     */
+    @Override
+    public Transaction transaction(Long id) {
+        final int ordinal = ordinal(id);
+        return ordinal == LongIntHashMap.NO_VALUE ? null : transactionAt(chunks, ordinal);
+    }
+
+    /**
+     * Builds the transactions stored under the given identifiers, resolving their ordinals under a single
+     * acquisition of the read lock
+     *
+     * @param ids the identifiers, possibly repeated
+     * @return the transactions found, by identifier
+     */
+    @Override
+    public Map<Long, Transaction> transactions(Collection<Long> ids) {
+        final Map<Long, Transaction> found = new HashMap<>();
+        lockWaits.lock(lock.readLock());
+        try {
+            final Chunk[] chunks = this.chunks;
+            for (Long id : ids) {
+                final int ordinal = ordinalsById.get(id);
+                if (ordinal != LongIntHashMap.NO_VALUE) {
+                    found.put(id, transactionAt(chunks, ordinal));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found;
+    }
+
+    /**
+     * Follows the first child / next sibling links of the given transaction
+     *
+     * @param parentId
+     * @return
+     */
+    @Override
+    public Map<Long, Transaction> children(Long parentId) {
+        lockWaits.lock(lock.readLock());
+        try {
+            final int parent = ordinalsById.get(parentId);
+            if (parent == LongIntHashMap.NO_VALUE) {
+                return Collections.emptyMap();
+            }
+            final Chunk[] chunks = this.chunks;
+            Map<Long, Transaction> children = new HashMap<>();
+            for (int child = chunks[parent >>> CHUNK_BITS].firstChildren[parent & CHUNK_MASK]; child != NONE;
+                 child = chunks[child >>> CHUNK_BITS].nextSiblings[child & CHUNK_MASK]) {
+                children.put(chunks[child >>> CHUNK_BITS].ids[child & CHUNK_MASK], transactionAt(chunks, child));
+            }
+            return children;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the transactions stored at the moment of the call.
+     *
+     * Transactions are built lazily while the snapshot is iterated, so the whole store is never materialized
+     *
+     * @return
+     */
+    @Override
+    public TransactionSnapshot allTransactions() {
+        return new OrdinalsView(size);
+    }
+
+    @Override
+    public int ordinals() {
+        return size;
+    }
+
+    /**
+     * Compares the type column of each chunk of the range, reading the identifier column only for matches
+     */
+    @Override
+    public void forEachIdOfTypes(BitSet typeCodes, int from, int to, LongConsumer action) {
+        if (to > size) {
+            throw new IllegalArgumentException("Ordinal " + to + " is not published yet");
+        }
+        final Chunk[] chunks = this.chunks;
+        final int single = typeCodes.cardinality() == 1 ? typeCodes.nextSetBit(0) : NONE;
+        for (int start = from; start < to; ) {
+            final Chunk chunk = chunks[start >>> CHUNK_BITS];
+            final int[] types = chunk.types;
+            final long[] ids = chunk.ids;
+            final int end = Math.min(to - (start & ~CHUNK_MASK), CHUNK_SIZE);
+            if (single != NONE) {
+                for (int i = start & CHUNK_MASK; i < end; i++) {
+                    if (types[i] == single) {
+                        action.accept(ids[i]);
+                    }
+                }
+            } else {
+                for (int i = start & CHUNK_MASK; i < end; i++) {
+                    if (types[i] >= 0 && typeCodes.get(types[i])) {
+                        action.accept(ids[i]);
+                    }
+                }
+            }
+            start = (start & ~CHUNK_MASK) + end;
+        }
+    }
+
+    /**
+     * Walks the child links with an explicit stack of ordinals, and a parallel stack of depths, under the read lock
+     */
+    @Override
+    public Double subTreeAmount(Long rootId, SubTreeListener listener) {
+        final double sum;
+        final int[] shape = new int[2];
+        lockWaits.lock(lock.readLock());
+        try {
+            final int root = ordinalsById.get(rootId);
+            if (root == LongIntHashMap.NO_VALUE) {
+                return null;
+            }
+            sum = walk(chunks, root, null, shape);
+        } finally {
+            lock.readLock().unlock();
+        }
+        listener.subTreeVisited(shape[0], shape[1]);
+        return sum;
+    }
+
+    /**
+     * Walks the subtrees deepest root first, under a single acquisition of the read lock: by the time a subtree is
+     * walked, the sums of the roots it encloses are known and their subtrees are skipped
+     */
+    @Override
+    public Map<Long, Double> subTreeAmounts(Collection<Long> rootIds, SubTreeListener listener) {
+        final Map<Long, Double> sums = new HashMap<>();
+        final List<int[]> shapes = new ArrayList<>();
+        lockWaits.lock(lock.readLock());
+        try {
+            final Chunk[] chunks = this.chunks;
+            final Map<Integer, Integer> depths = new HashMap<>();
+            for (Long rootId : rootIds) {
+                final int root = ordinalsById.get(rootId);
+                if (root != LongIntHashMap.NO_VALUE && !depths.containsKey(root)) {
+                    int depth = 0;
+                    for (int parent = chunks[root >>> CHUNK_BITS].parents[root & CHUNK_MASK]; parent != NONE;
+                         parent = chunks[parent >>> CHUNK_BITS].parents[parent & CHUNK_MASK]) {
+                        depth++;
+                    }
+                    depths.put(root, depth);
+                }
+            }
+            final List<Integer> deepestFirst = new ArrayList<>(depths.keySet());
+            deepestFirst.sort(Comparator.comparing(depths::get, Comparator.reverseOrder()));
+            final Map<Integer, Double> summed = new HashMap<>();
+            for (Integer root : deepestFirst) {
+                final int[] shape = new int[2];
+                final double sum = walk(chunks, root, summed.isEmpty() ? null : summed, shape);
+                summed.put(root, sum);
+                sums.put(chunks[root >>> CHUNK_BITS].ids[root & CHUNK_MASK], sum);
+                shapes.add(shape);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (int[] shape : shapes) {
+            listener.subTreeVisited(shape[0], shape[1]);
+        }
+        return sums;
+    }
+
+    /**
+     * The number of stored transactions
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of bytes held by the columns and the identifier to ordinal association
+     * @return
+     */
+    @Override
+    public long footprint() {
+        lockWaits.lock(lock.readLock());
+        try {
+            final long perOrdinal = Long.BYTES + Double.BYTES + 4L * Integer.BYTES;
+            final long allocated = (long) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS) * CHUNK_SIZE;
+            return ordinalsById.footprint() + perOrdinal * allocated;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long lockAcquisitions() {
+        return lockWaits.lockAcquisitions();
+    }
+
+    @Override
+    public long lockWaitNanos() {
+        return lockWaits.lockWaitNanos();
+    }
+
+    private int ordinal(Long id) {
+        lockWaits.lock(lock.readLock());
+        try {
+            return ordinalsById.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes every column of the next ordinal, links it to its parent and only then publishes it
+     */
+    private void append(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException {
+        if (ordinalsById.containsKey(id)) {
+            throw new TransactionAlreadyExistsException(id);
+        }
+        final int parent = parentOrdinal(transaction);
+        final int ordinal = size;
+        final Chunk chunk = chunkFor(ordinal);
+        final int index = ordinal & CHUNK_MASK;
+        chunk.ids[index] = id;
+        chunk.amounts[index] = transaction.amount();
+        chunk.types[index] = transaction.typeCode();
+        chunk.parents[index] = parent;
+        chunk.firstChildren[index] = NONE;
+        chunk.nextSiblings[index] = NONE;
+        if (parent != NONE) {
+            final Chunk parentChunk = chunks[parent >>> CHUNK_BITS];
+            chunk.nextSiblings[index] = parentChunk.firstChildren[parent & CHUNK_MASK];
+            parentChunk.firstChildren[parent & CHUNK_MASK] = ordinal;
+        }
+        ordinalsById.putIfAbsent(id, ordinal);
+        size = ordinal + 1;
+    }
+
+    private Chunk chunkFor(int ordinal) {
+        final int index = ordinal >>> CHUNK_BITS;
+        Chunk[] current = chunks;
+        if (index == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[index] == null) {
+            current[index] = new Chunk();
+            chunks = current;
+        }
+        return current[index];
+    }
+
+    private int parentOrdinal(Transaction transaction) throws ParentTransactionDoesNotExistException {
+        final Long parentId = transaction.parentId();
+        if (parentId == null) {
+            return NONE;
+        }
+        final int parent = ordinalsById.get(parentId);
+        if (parent == LongIntHashMap.NO_VALUE) {
+            throw new ParentTransactionDoesNotExistException(parentId);
+        }
+        return parent;
+    }
+
+    /**
+     * Sums up the subtree of an ordinal, to be called under the read lock
+     *
+     * @param summed the sums of ordinals whose subtrees are added as a whole instead of being walked, null if none
+     * @param shape receives the number of visited ordinals and the depth of the deepest one
+     */
+    private static double walk(Chunk[] chunks, int root, Map<Integer, Double> summed, int[] shape) {
+        double acc = 0;
+        int[] pending = new int[64];
+        int[] depths = new int[64];
+        int top = 0;
+        int visited = 0;
+        int deepest = 0;
+        pending[top] = root;
+        depths[top++] = 0;
+        while (top > 0) {
+            final int ordinal = pending[--top];
+            final int depth = depths[top];
+            final Chunk chunk = chunks[ordinal >>> CHUNK_BITS];
+            acc += chunk.amounts[ordinal & CHUNK_MASK];
+            visited++;
+            deepest = Math.max(deepest, depth);
+            for (int child = chunk.firstChildren[ordinal & CHUNK_MASK]; child != NONE;
+                 child = chunks[child >>> CHUNK_BITS].nextSiblings[child & CHUNK_MASK]) {
+                final Double known = summed == null ? null : summed.get(child);
+                if (known != null) {
+                    acc += known;
+                    continue;
+                }
+                if (top == pending.length) {
+                    pending = Arrays.copyOf(pending, top * 2);
+                    depths = Arrays.copyOf(depths, top * 2);
+                }
+                pending[top] = child;
+                depths[top++] = depth + 1;
+            }
+        }
+        shape[0] = visited;
+        shape[1] = deepest;
+        return acc;
+    }
+
+    private static Transaction transactionAt(Chunk[] chunks, int ordinal) {
+        final Chunk chunk = chunks[ordinal >>> CHUNK_BITS];
+        final int index = ordinal & CHUNK_MASK;
+        final int parent = chunk.parents[index];
+        return new Transaction(chunk.amounts[index], chunk.types[index],
+                parent == NONE ? null : chunks[parent >>> CHUNK_BITS].ids[parent & CHUNK_MASK]);
+    }
+
+    /**
+     * The columns of {@link #CHUNK_SIZE} consecutive ordinals
+     */
+    private static class Chunk {
+        final long[] ids = new long[CHUNK_SIZE];
+        final double[] amounts = new double[CHUNK_SIZE];
+        final int[] parents = new int[CHUNK_SIZE];
+        final int[] types = new int[CHUNK_SIZE];
+        final int[] firstChildren = new int[CHUNK_SIZE];
+        final int[] nextSiblings = new int[CHUNK_SIZE];
+    }
+
+    /**
+     * A snapshot of the first ordinals of the repository. Ordinals are never reused nor changed, so the snapshot is
+     * immutable.
+     */
+    private class OrdinalsView extends TransactionSnapshot {
+
+        private final Chunk[] chunks;
+
+        OrdinalsView(int ordinals) {
+            super(ordinals, ordinals);
+            this.chunks = ColumnarTransactionalRepository.this.chunks;
+        }
+
+        @Override
+        protected long idAt(int ordinal) {
+            return chunks[ordinal >>> CHUNK_BITS].ids[ordinal & CHUNK_MASK];
+        }
+
+        @Override
+        protected Transaction transactionAt(int ordinal) {
+            return ColumnarTransactionalRepository.transactionAt(chunks, ordinal);
+        }
+
+        @Override
+        protected int ordinalOf(Long id) {
+            return ordinal(id);
+        }
+    }
+}
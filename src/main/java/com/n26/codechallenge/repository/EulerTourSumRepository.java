@@ -0,0 +1,210 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeDictionary;
+import com.n26.codechallenge.TypeStatistics;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntToLongFunction;
+
+/**
+ * A {@link SumRepository} answering subtree sums from an index of the trees in Euler tour order, instead of adding
+ * every amount to each of its ancestors.
+ *
+ * Every transaction opens and closes an interval of the tour, its subtree being what the interval encloses: a new
+ * transaction is inserted right after the opening of its parent, or at the end of the tour for a root. The tour is an
+ * {@link ImplicitTreap} whose nodes aggregate the amounts below them, so that the count, sum, lowest and highest amount
+ * of a subtree are read from a logarithmic number of nodes, and an insert is logarithmic whatever the depth of the tree.
+ *
+ * The transactions of each type are also kept in a treap of their own, in tour order, so the statistics of a type
+ * within a subtree only take a logarithmic number of steps, each finding the position of a node in the tour.
+ *
+ * Writes are serialized by a read write lock. A child may be registered before its parent when both are added
+ * concurrently: it then waits, out of the index, until its parent is registered.
+ */
+public class EulerTourSumRepository implements SumRepository, LockStatistics {
+
+    private static final int NIL = ImplicitTreap.NIL;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LockWaits lockWaits = new LockWaits();
+    private final LongIntHashMap slotsById = new LongIntHashMap(1 << 14);
+    private final Map<Long, List<Map.Entry<Long, Transaction>>> waitingForParent = new HashMap<>();
+    private final ImplicitTreap tour = new ImplicitTreap();
+    private final ImplicitTreap byType = new ImplicitTreap();
+    private final IntToLongFunction tourPosition = slot -> tour.rank(open(slot));
+    private int tourRoot = NIL;
+    private int[] typeRoots = new int[0];
+    private int size;
+
+    @Override
+    public void addAmount(Long id, Transaction transaction) {
+        lockWaits.lock(lock.writeLock());
+        try {
+            register(id, transaction);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers the batch under a single acquisition of the write lock
+     *
+     * @param transactions the transactions, parents before children
+     */
+    @Override
+    public void addAmounts(Map<Long, Transaction> transactions) {
+        lockWaits.lock(lock.writeLock());
+        try {
+            transactions.forEach(this::register);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Double transitiveSum(Long id) {
+        final TypeStatistics statistics = subTreeStatistics(id, null);
+        return statistics == null ? null : statistics.sum();
+    }
+
+    /**
+     * Reads every sum under a single acquisition of the read lock
+     */
+    @Override
+    public Map<Long, Double> transitiveSums(Collection<Long> ids) {
+        final Map<Long, Double> found = new HashMap<>();
+        lockWaits.lock(lock.readLock());
+        try {
+            for (Long id : ids) {
+                final TypeStatistics statistics = statistics(id, TypeDictionary.NONE, false);
+                if (statistics != null) {
+                    found.put(id, statistics.sum());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found;
+    }
+
+    /**
+     * Reads the statistics from the tour, without walking the subtree
+     */
+    @Override
+    public TypeStatistics subTreeStatistics(Long id, String type, TransactionTreeTraversal traversal) {
+        return subTreeStatistics(id, type);
+    }
+
+    /**
+     * The count, total, lowest and highest amount of the transactions of a subtree
+     *
+     * @param id the root of the subtree, itself included
+     * @param type only the transactions of this type are included, all of them if null
+     * @return null if there is no such transaction
+     */
+    public TypeStatistics subTreeStatistics(Long id, String type) {
+        final int typeCode = TypeDictionary.lookup(type);
+        lockWaits.lock(lock.readLock());
+        try {
+            return statistics(id, typeCode, type != null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long lockAcquisitions() {
+        return lockWaits.lockAcquisitions();
+    }
+
+    @Override
+    public long lockWaitNanos() {
+        return lockWaits.lockWaitNanos();
+    }
+
+    private TypeStatistics statistics(Long id, int typeCode, boolean byTypeOnly) {
+        final int slot = slotsById.get(id);
+        if (slot == LongIntHashMap.NO_VALUE) {
+            return null;
+        }
+        final long from = tour.rank(open(slot));
+        final long to = tour.rank(close(slot));
+        final ImplicitTreap.Aggregate aggregate = new ImplicitTreap.Aggregate();
+        if (!byTypeOnly) {
+            tour.aggregate(tourRoot, from, to, aggregate);
+        } else if (typeCode != TypeDictionary.NONE && typeCode < typeRoots.length) {
+            final int root = typeRoots[typeCode];
+            byType.aggregate(root, byType.countBelow(root, tourPosition, from), byType.countBelow(root, tourPosition, to), aggregate);
+        }
+        return aggregate.count == 0 ? TypeStatistics.EMPTY : new TypeStatistics(aggregate.count, aggregate.sum, aggregate.min, aggregate.max);
+    }
+
+    /**
+     * Inserts the interval of a transaction in the tour, right after the opening of its parent, and the transaction in
+     * the treap of its type; then registers the children that were waiting for it
+     */
+    private void register(Long id, Transaction transaction) {
+        final Deque<Map.Entry<Long, Transaction>> pending = new ArrayDeque<>();
+        pending.add(new AbstractMap.SimpleImmutableEntry<>(id, transaction));
+        while (!pending.isEmpty()) {
+            final Map.Entry<Long, Transaction> next = pending.poll();
+            final Long parentId = next.getValue().parentId();
+            final int parent = parentId == null ? NIL : slotsById.get(parentId);
+            if (parentId != null && parent == LongIntHashMap.NO_VALUE) {
+                waitingForParent.computeIfAbsent(parentId, k -> new ArrayList<>()).add(next);
+                continue;
+            }
+            insert(next.getKey(), next.getValue(), parent);
+            final List<Map.Entry<Long, Transaction>> children = waitingForParent.remove(next.getKey());
+            if (children != null) {
+                pending.addAll(children);
+            }
+        }
+    }
+
+    /**
+     * @param parent the slot of the parent, {@link #NIL} for a root
+     */
+    private void insert(long id, Transaction transaction, int parent) {
+        if (slotsById.get(id) != LongIntHashMap.NO_VALUE) {
+            throw new IllegalStateException(String.format("The amount of transaction %d is already registered", id));
+        }
+        final int slot = size++;
+        slotsById.putIfAbsent(id, slot);
+        final double amount = transaction.amount();
+        final int interval = tour.concat(tour.create(open(slot), true, amount), tour.create(close(slot), false, 0));
+        final long position = parent == NIL ? tour.size(tourRoot) : tour.rank(open(parent)) + 1;
+        tourRoot = tour.insert(tourRoot, position, interval);
+
+        final int typeCode = transaction.typeCode();
+        if (typeCode == TypeDictionary.NONE) {
+            return;
+        }
+        if (typeCode >= typeRoots.length) {
+            final int length = typeRoots.length;
+            typeRoots = Arrays.copyOf(typeRoots, Math.max(typeCode + 1, length * 2));
+            Arrays.fill(typeRoots, length, typeRoots.length, NIL);
+        }
+        final int root = typeRoots[typeCode];
+        typeRoots[typeCode] = byType.insert(root, byType.countBelow(root, tourPosition, position), byType.create(slot, true, amount));
+    }
+
+    private static int open(int slot) {
+        return 2 * slot;
+    }
+
+    private static int close(int slot) {
+        return 2 * slot + 1;
+    }
+}
@@ -0,0 +1,460 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link SumRepository} keeping sums as exact fixed point numbers: longs counting minor units (cents for a scale
+ * of 2), so that sums never drift however many amounts are added up.
+ *
+ * Amounts are converted once, when registered, and sums are only turned back into decimals when read. Amounts having
+ * more decimals than the scale are refused, as are amounts whose addition would overflow a sum.
+ *
+ * The repository keeps the parent link of every transaction next to its sum, in chunked primitive columns indexed by
+ * a dense slot, so that propagating an amount to the ancestors is a loop over ints and longs which allocates nothing
+ * and never queries the {@link TransactionalRepository}. Writes are serialized by a read write lock; every sum is
+ * checked for overflow before any of them is updated, so an amount is either added to all of its ancestors or to none.
+ * Transactions added through {@link #addTransaction(Long, Transaction, TransactionalRepository)} are checked, stored
+ * and registered under the write lock, so no concurrent write can take the room left in the sums of their ancestors
+ * once they are checked, and their amount never overflows once they are stored. A parent is thus always registered
+ * before its children, and an amount whose parent is not registered is refused.
+ */
+public class FixedPointSumRepository implements SumRepository, LockStatistics {
+
+    public static final int DEFAULT_SCALE = 2;
+
+    private static final int NONE = -1;
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final double LONG_RANGE = 0x1p63;
+
+    private final int scale;
+    private final long unitsPerAmount;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LockWaits lockWaits = new LockWaits();
+    private final LongIntHashMap slotsById = new LongIntHashMap(CHUNK_SIZE);
+    private long[][] sums = new long[16][];
+    private int[][] parents = new int[16][];
+    private int size;
+
+    /**
+     * @param scale the number of decimals kept, between 0 and 18
+     */
+    public FixedPointSumRepository(int scale) {
+        if (scale < 0 || scale > 18) {
+            throw new IllegalArgumentException("The scale must be between 0 and 18");
+        }
+        this.scale = scale;
+        long unitsPerAmount = 1;
+        for (int i = 0; i < scale; i++) {
+            unitsPerAmount *= 10;
+        }
+        this.unitsPerAmount = unitsPerAmount;
+    }
+
+    public FixedPointSumRepository() {
+        this(DEFAULT_SCALE);
+    }
+
+    /**
+     * Checks that the amount has no more decimals than the scale and that, as of now, adding it to its ancestors
+     * would not overflow any of their sums
+     */
+    @Override
+    public void validate(Long id, Transaction transaction) throws InvalidAmountException {
+        final long units = units(transaction.amount());
+        lockWaits.lock(lock.readLock());
+        try {
+            ensureFits(id, transaction, units);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks the amount, stores the transaction and registers the amount under the write lock, so that the amount
+     * fits in the sums of the ancestors when it is registered
+     */
+    @Override
+    public void addTransaction(Long id, Transaction transaction, TransactionalRepository transactionalRepository)
+            throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException, InvalidAmountException {
+        final long units = units(transaction.amount());
+        lockWaits.lock(lock.writeLock());
+        try {
+            ensureFits(id, transaction, units);
+            transactionalRepository.addTransaction(id, transaction);
+            register(id, transaction.parentId(), units, false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Refuses the amounts which have too many decimals or could overflow a sum, then stores the other transactions
+     * and registers the amounts of those accepted under the write lock.
+     *
+     * Which transactions the repository accepts is only known once they are stored, so an amount could overflow a sum
+     * when adding either the positive or the negative amounts of its subtree in the batch would
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions, TransactionalRepository transactionalRepository) {
+        final Map<Long, InvalidTransaction> rejected = new HashMap<>();
+        lockWaits.lock(lock.writeLock());
+        try {
+            refuseOverflows(transactions, rejected);
+            final Map<Long, Transaction> fitting = TransactionBatch.accepted(transactions, rejected.keySet());
+            final Map<Long, InvalidTransaction> refused = transactionalRepository.addTransactions(fitting);
+            register(new Batch(TransactionBatch.accepted(fitting, refused.keySet())));
+            rejected.putAll(refused);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return rejected;
+    }
+
+    /**
+     * Adds the amount to the sum of the transaction and of each of its registered ancestors
+     * @param id the identifier of the transaction
+     * @param transaction the transaction to be added
+     * @throws IllegalArgumentException if the amount has more decimals than the scale
+     * @throws IllegalStateException if the transaction is already registered or its parent is not
+     * @throws ArithmeticException if a sum would overflow, in which case no sum is updated
+     */
+    @Override
+    public void addAmount(Long id, Transaction transaction) {
+        final long units = unitsOrFail(transaction.amount());
+        lockWaits.lock(lock.writeLock());
+        try {
+            register(id, transaction.parentId(), units, false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sums the units of the batch up its trees first, so that every ancestor outside of the batch is updated once
+     * per child in the batch instead of once per descendant
+     *
+     * @param transactions the transactions, parents before children
+     * @throws IllegalArgumentException if an amount has more decimals than the scale, in which case no sum is updated
+     * @throws IllegalStateException if a transaction is already registered or its parent is not, in which case the
+     *                               following transactions are not registered
+     * @throws ArithmeticException if a sum would overflow, in which case the following transactions are not registered
+     */
+    @Override
+    public void addAmounts(Map<Long, Transaction> transactions) {
+        final Batch batch = new Batch(transactions);
+        lockWaits.lock(lock.writeLock());
+        try {
+            register(batch);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Double transitiveSum(Long id) {
+        lockWaits.lock(lock.readLock());
+        try {
+            final int slot = slotsById.get(id);
+            return slot == LongIntHashMap.NO_VALUE ? null : (double) sums[slot >>> CHUNK_BITS][slot & CHUNK_MASK] / unitsPerAmount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads every sum under a single acquisition of the read lock
+     */
+    @Override
+    public Map<Long, Double> transitiveSums(Collection<Long> ids) {
+        final Map<Long, Double> found = new HashMap<>();
+        lockWaits.lock(lock.readLock());
+        try {
+            for (Long id : ids) {
+                final int slot = slotsById.get(id);
+                if (slot != LongIntHashMap.NO_VALUE) {
+                    found.put(id, (double) sums[slot >>> CHUNK_BITS][slot & CHUNK_MASK] / unitsPerAmount);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found;
+    }
+
+    /**
+     * Returns the exact sum associated transitively with a transaction
+     * @param id
+     * @return the sum in minor units, or null if there is no such transaction
+     */
+    public Long transitiveUnits(Long id) {
+        lockWaits.lock(lock.readLock());
+        try {
+            final int slot = slotsById.get(id);
+            return slot == LongIntHashMap.NO_VALUE ? null : sums[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long lockAcquisitions() {
+        return lockWaits.lockAcquisitions();
+    }
+
+    @Override
+    public long lockWaitNanos() {
+        return lockWaits.lockWaitNanos();
+    }
+
+    /**
+     * Converts an amount to minor units
+     * @param amount
+     * @return
+     * @throws InvalidAmountException if the amount has more decimals than the scale or does not fit in a long
+     */
+    public long units(Double amount) throws InvalidAmountException {
+        final double scaled = amount * unitsPerAmount;
+        if (Double.isNaN(scaled) || Math.abs(scaled) >= LONG_RANGE) {
+            throw new InvalidAmountException(amount, "is out of range");
+        }
+        final long units = Math.round(scaled);
+        if ((double) units / unitsPerAmount != amount) {
+            throw new InvalidAmountException(amount, String.format("has more than %d decimals", scale));
+        }
+        return units;
+    }
+
+    private long unitsOrFail(Double amount) {
+        try {
+            return units(amount);
+        } catch (InvalidAmountException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Registers a transaction with the total of its subtree known so far, and propagates it to its ancestors.
+     *
+     * @param subTree the units of the transaction, plus those of its descendants registered along with it
+     * @param parentAccountedFor whether the parent already accounts for the subtree, as part of the same batch
+     */
+    private void register(long id, Long parentId, long subTree, boolean parentAccountedFor) {
+        if (slotsById.get(id) != LongIntHashMap.NO_VALUE) {
+            throw new IllegalStateException(String.format("The amount of transaction %d is already registered", id));
+        }
+        final int parent = parentId == null ? NONE : slotsById.get(parentId);
+        if (parentId != null && parent == LongIntHashMap.NO_VALUE) {
+            throw new IllegalStateException(String.format("The parent %d of transaction %d is not registered", parentId, id));
+        }
+        final long increment = parentAccountedFor ? 0 : subTree;
+        if (parent >= 0 && !fitsUpFrom(parent, increment)) {
+            throw new ArithmeticException(String.format("Adding transaction %d would overflow the sum of its ancestors", id));
+        }
+        final int slot = newSlot(id);
+        sums[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = subTree;
+        parents[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = parent;
+        if (increment != 0) {
+            for (int ancestor = parent; ancestor >= 0; ancestor = parentOf(ancestor)) {
+                sums[ancestor >>> CHUNK_BITS][ancestor & CHUNK_MASK] += increment;
+            }
+        }
+    }
+
+    private void register(Batch batch) {
+        for (int i = 0; i < batch.ids.length; i++) {
+            register(batch.ids[i], batch.roots[i] ? null : batch.parentIds[i], batch.subTrees[i], batch.parentInBatch[i]);
+        }
+    }
+
+    /**
+     * Checks that the amount of a transaction fits in the sums of its ancestors
+     */
+    private void ensureFits(Long id, Transaction transaction, long units) throws InvalidAmountException {
+        final Long parentId = transaction.parentId();
+        final int parent = parentId == null ? NONE : slotsById.get(parentId);
+        if (parent >= 0 && !fitsUpFrom(parent, units)) {
+            throw new InvalidAmountException(transaction.amount(), "would overflow the sum of its ancestors");
+        }
+    }
+
+    /**
+     * Refuses the transactions of a batch whose amount has too many decimals, or whose subtree in the batch could
+     * overflow a sum, along with the descendants of the latter.
+     *
+     * The positive and the negative amounts of every subtree are summed up separately, so that whichever of its
+     * transactions are accepted, its total lies between the two. Subtrees hanging from the same ancestor outside of
+     * the batch take their share of its room in turn.
+     *
+     * @param transactions the transactions, parents before children
+     * @param rejected where the refused transactions are put, along with the reason
+     */
+    private void refuseOverflows(Map<Long, Transaction> transactions, Map<Long, InvalidTransaction> rejected) {
+        final int count = transactions.size();
+        final long[] ids = new long[count];
+        final Transaction[] batch = new Transaction[count];
+        final int[] parents = new int[count];
+        final long[] ups = new long[count];
+        final long[] downs = new long[count];
+        final boolean[] overflowing = new boolean[count];
+        final LongIntHashMap positions = new LongIntHashMap(count);
+        int position = 0;
+        for (Map.Entry<Long, Transaction> entry : transactions.entrySet()) {
+            ids[position] = entry.getKey();
+            batch[position] = entry.getValue();
+            try {
+                final long units = units(entry.getValue().amount());
+                ups[position] = Math.max(units, 0);
+                downs[position] = Math.min(units, 0);
+            } catch (InvalidAmountException e) {
+                rejected.put(entry.getKey(), e);
+            }
+            positions.putIfAbsent(ids[position], position);
+            position++;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            final Long parentId = batch[i].parentId();
+            final int parent = parentId == null ? LongIntHashMap.NO_VALUE : positions.get(parentId);
+            parents[i] = parent < i ? parent : LongIntHashMap.NO_VALUE;
+            if (parents[i] != LongIntHashMap.NO_VALUE) {
+                try {
+                    ups[parent] = Math.addExact(ups[parent], ups[i]);
+                    downs[parent] = Math.addExact(downs[parent], downs[i]);
+                } catch (ArithmeticException e) {
+                    overflowing[parent] = true;
+                }
+                overflowing[parent] |= overflowing[i];
+            }
+        }
+        final Map<Integer, long[]> taken = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            final int parent = parents[i];
+            if (overflowing[i] || (parent != LongIntHashMap.NO_VALUE && overflowing[parent]) || !fits(batch[i], ids[i], ups[i], downs[i], parent, taken)) {
+                overflowing[i] = true;
+                rejected.put(ids[i], new InvalidAmountException(batch[i].amount(), "would overflow the sum of its ancestors"));
+            }
+        }
+    }
+
+    /**
+     * Whether every total of a subtree of the batch fits in the sum of its root, and in the sums of the ancestors
+     * outside of the batch along with what the previous subtrees took from them
+     *
+     * @param up the total of the positive amounts of the subtree
+     * @param down the total of the negative amounts of the subtree
+     * @param parent the position of the parent in the batch, if any
+     * @param taken the room taken so far in the sums outside of the batch, by slot
+     */
+    private boolean fits(Transaction transaction, long id, long up, long down, int parent, Map<Integer, long[]> taken) {
+        // a transaction already registered is refused by the main repository, but its children in the batch are not
+        final int slot = slotsById.get(id);
+        final Long parentId = transaction.parentId();
+        final int from = slot != LongIntHashMap.NO_VALUE ? slot
+                : parent != LongIntHashMap.NO_VALUE || parentId == null ? NONE : slotsById.get(parentId);
+        try {
+            for (int ancestor = from; ancestor >= 0; ancestor = parentOf(ancestor)) {
+                final long sum = sums[ancestor >>> CHUNK_BITS][ancestor & CHUNK_MASK];
+                final long[] room = taken.getOrDefault(ancestor, new long[2]);
+                Math.addExact(sum, Math.addExact(room[0], up));
+                Math.addExact(sum, Math.addExact(room[1], down));
+            }
+        } catch (ArithmeticException e) {
+            return false;
+        }
+        for (int ancestor = from; ancestor >= 0; ancestor = parentOf(ancestor)) {
+            final long[] room = taken.computeIfAbsent(ancestor, k -> new long[2]);
+            room[0] += up;
+            room[1] += down;
+        }
+        return true;
+    }
+
+    /**
+     * Whether an increment can be added to the sums of a transaction and its ancestors
+     */
+    private boolean fitsUpFrom(int slot, long increment) {
+        for (int ancestor = slot; ancestor >= 0; ancestor = parentOf(ancestor)) {
+            final long sum = sums[ancestor >>> CHUNK_BITS][ancestor & CHUNK_MASK];
+            final long result = sum + increment;
+            if (((sum ^ result) & (increment ^ result)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int parentOf(int slot) {
+        return parents[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    private int newSlot(long id) {
+        final int slot = size;
+        final int chunk = slot >>> CHUNK_BITS;
+        if (chunk == sums.length) {
+            sums = Arrays.copyOf(sums, chunk * 2);
+            parents = Arrays.copyOf(parents, chunk * 2);
+        }
+        if (sums[chunk] == null) {
+            sums[chunk] = new long[CHUNK_SIZE];
+            parents[chunk] = new int[CHUNK_SIZE];
+        }
+        slotsById.putIfAbsent(id, slot);
+        size++;
+        return slot;
+    }
+
+    /**
+     * A batch in columns, with the units of every transaction summed up with those of its descendants in the batch
+     */
+    private final class Batch {
+        final long[] ids;
+        final long[] parentIds;
+        final boolean[] roots;
+        final long[] subTrees;
+        final boolean[] parentInBatch;
+
+        /**
+         * @param transactions the transactions, parents before children
+         * @throws IllegalArgumentException if an amount has more decimals than the scale
+         * @throws ArithmeticException if the total of a subtree overflows
+         */
+        Batch(Map<Long, Transaction> transactions) {
+            final int count = transactions.size();
+            ids = new long[count];
+            parentIds = new long[count];
+            roots = new boolean[count];
+            subTrees = new long[count];
+            parentInBatch = new boolean[count];
+            final LongIntHashMap positions = new LongIntHashMap(count);
+            int position = 0;
+            for (Map.Entry<Long, Transaction> entry : transactions.entrySet()) {
+                final Long parentId = entry.getValue().parentId();
+                ids[position] = entry.getKey();
+                roots[position] = parentId == null;
+                parentIds[position] = roots[position] ? 0 : parentId;
+                subTrees[position] = unitsOrFail(entry.getValue().amount());
+                positions.putIfAbsent(ids[position], position);
+                position++;
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                final int parent = roots[i] ? LongIntHashMap.NO_VALUE : positions.get(parentIds[i]);
+                if (parent != LongIntHashMap.NO_VALUE && parent < i) {
+                    parentInBatch[i] = true;
+                    subTrees[parent] = Math.addExact(subTrees[parent], subTrees[i]);
+                }
+            }
+        }
+    }
+}
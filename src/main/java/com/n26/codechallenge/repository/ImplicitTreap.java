@@ -0,0 +1,266 @@
+package com.n26.codechallenge.repository;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * A forest of treaps ordered by position rather than by key, each node aggregating the count, total, lowest and highest
+ * amount of the counted nodes of its subtree.
+ *
+ * Nodes are dense ints chosen by the caller and their links are kept in primitive arrays, along with a parent link so
+ * that the position of a node is found by walking up to its root. Priorities are derived from the node number by a
+ * hash, which keeps the trees balanced in expectation without storing them. Inserting at a position and aggregating a
+ * range of positions take a logarithmic number of steps in expectation.
+ *
+ * Not thread safe.
+ */
+final class ImplicitTreap {
+
+    static final int NIL = -1;
+
+    private int[] left = new int[0];
+    private int[] right = new int[0];
+    private int[] up = new int[0];
+    private int[] size = new int[0];
+    private boolean[] counted = new boolean[0];
+    private long[] count = new long[0];
+    private double[] amount = new double[0];
+    private double[] sum = new double[0];
+    private double[] min = new double[0];
+    private double[] max = new double[0];
+
+    // results of split
+    private int lower;
+    private int upper;
+
+    /**
+     * Makes a single node tree
+     *
+     * @param node a node number, which must not belong to any tree
+     * @param isCounted whether the amount of the node is aggregated
+     * @param nodeAmount
+     * @return the node, as the root of its tree
+     */
+    int create(int node, boolean isCounted, double nodeAmount) {
+        if (node >= left.length) {
+            grow(Math.max(node + 1, left.length * 2));
+        }
+        left[node] = NIL;
+        right[node] = NIL;
+        up[node] = NIL;
+        counted[node] = isCounted;
+        amount[node] = nodeAmount;
+        update(node);
+        return node;
+    }
+
+    /**
+     * The number of nodes of a tree
+     */
+    int size(int root) {
+        return root == NIL ? 0 : size[root];
+    }
+
+    /**
+     * The position of a node within its tree, from 0
+     */
+    long rank(int node) {
+        long rank = size(left[node]);
+        for (int child = node, parent = up[node]; parent != NIL; child = parent, parent = up[parent]) {
+            if (right[parent] == child) {
+                rank += size(left[parent]) + 1;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Inserts a tree at a position of another one
+     *
+     * @param root the root of the tree inserted into, {@link #NIL} if empty
+     * @param position the number of nodes of the tree left before the inserted ones
+     * @param inserted the root of the inserted tree
+     * @return the root of the resulting tree
+     */
+    int insert(int root, long position, int inserted) {
+        split(root, position);
+        final int before = lower;
+        final int after = upper;
+        return detach(merge(merge(before, inserted), after));
+    }
+
+    /**
+     * Concatenates two trees
+     * @return the root of the resulting tree
+     */
+    int concat(int first, int second) {
+        return detach(merge(first, second));
+    }
+
+    /**
+     * The number of leading nodes of a tree whose key is lower than a bound, the keys of the nodes growing with
+     * their position
+     *
+     * @param key the key of a node, computed as the tree is walked down
+     */
+    long countBelow(int root, IntToLongFunction key, long bound) {
+        long below = 0;
+        int node = root;
+        while (node != NIL) {
+            if (key.applyAsLong(node) < bound) {
+                below += size(left[node]) + 1;
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        return below;
+    }
+
+    /**
+     * Adds the counted nodes between two positions of a tree to an aggregate
+     *
+     * @param from the first position, included
+     * @param to the last position, excluded
+     */
+    void aggregate(int root, long from, long to, Aggregate aggregate) {
+        if (root == NIL || from >= to) {
+            return;
+        }
+        if (from <= 0 && to >= size[root]) {
+            aggregate.add(count[root], sum[root], min[root], max[root]);
+            return;
+        }
+        final long leftSize = size(left[root]);
+        if (from < leftSize) {
+            aggregate(left[root], from, Math.min(to, leftSize), aggregate);
+        }
+        if (from <= leftSize && leftSize < to && counted[root]) {
+            aggregate.add(1, amount[root], amount[root], amount[root]);
+        }
+        if (to > leftSize + 1) {
+            aggregate(right[root], Math.max(0, from - leftSize - 1), to - leftSize - 1, aggregate);
+        }
+    }
+
+    /**
+     * Splits a tree into the nodes before a position, left in {@link #lower}, and the others, left in {@link #upper}
+     */
+    private void split(int root, long position) {
+        if (root == NIL) {
+            lower = NIL;
+            upper = NIL;
+            return;
+        }
+        final long leftSize = size(left[root]);
+        if (leftSize < position) {
+            split(right[root], position - leftSize - 1);
+            link(root, lower, false);
+            lower = root;
+        } else {
+            split(left[root], position);
+            link(root, upper, true);
+            upper = root;
+        }
+        update(root);
+        up[root] = NIL;
+    }
+
+    private int merge(int first, int second) {
+        if (first == NIL) {
+            return second;
+        }
+        if (second == NIL) {
+            return first;
+        }
+        if (priority(first) > priority(second)) {
+            link(first, merge(right[first], second), false);
+            update(first);
+            return first;
+        }
+        link(second, merge(first, left[second]), true);
+        update(second);
+        return second;
+    }
+
+    private void link(int parent, int child, boolean asLeft) {
+        if (asLeft) {
+            left[parent] = child;
+        } else {
+            right[parent] = child;
+        }
+        if (child != NIL) {
+            up[child] = parent;
+        }
+    }
+
+    private int detach(int root) {
+        if (root != NIL) {
+            up[root] = NIL;
+        }
+        return root;
+    }
+
+    private void update(int node) {
+        final int l = left[node];
+        final int r = right[node];
+        size[node] = 1 + size(l) + size(r);
+        long nodeCount = counted[node] ? 1 : 0;
+        double nodeSum = counted[node] ? amount[node] : 0;
+        double nodeMin = counted[node] ? amount[node] : Double.POSITIVE_INFINITY;
+        double nodeMax = counted[node] ? amount[node] : Double.NEGATIVE_INFINITY;
+        if (l != NIL) {
+            nodeCount += count[l];
+            nodeSum += sum[l];
+            nodeMin = Math.min(nodeMin, min[l]);
+            nodeMax = Math.max(nodeMax, max[l]);
+        }
+        if (r != NIL) {
+            nodeCount += count[r];
+            nodeSum += sum[r];
+            nodeMin = Math.min(nodeMin, min[r]);
+            nodeMax = Math.max(nodeMax, max[r]);
+        }
+        count[node] = nodeCount;
+        sum[node] = nodeSum;
+        min[node] = nodeMin;
+        max[node] = nodeMax;
+    }
+
+    private static int priority(int node) {
+        int hash = node * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        return hash ^ (hash >>> 13);
+    }
+
+    private void grow(int capacity) {
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        up = Arrays.copyOf(up, capacity);
+        size = Arrays.copyOf(size, capacity);
+        counted = Arrays.copyOf(counted, capacity);
+        count = Arrays.copyOf(count, capacity);
+        amount = Arrays.copyOf(amount, capacity);
+        sum = Arrays.copyOf(sum, capacity);
+        min = Arrays.copyOf(min, capacity);
+        max = Arrays.copyOf(max, capacity);
+    }
+
+    /**
+     * The count, total, lowest and highest amount of the nodes aggregated so far
+     */
+    static final class Aggregate {
+        long count;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        void add(long otherCount, double otherSum, double otherMin, double otherMax) {
+            count += otherCount;
+            sum += otherSum;
+            min = Math.min(min, otherMin);
+            max = Math.max(max, otherMax);
+        }
+    }
+}
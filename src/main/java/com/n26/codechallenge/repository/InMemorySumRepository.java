@@ -4,19 +4,42 @@ import com.n26.codechallenge.Transaction;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Keeps a map between a {@link com.n26.codechallenge.Transaction } identifier and the sum of all amounts related to this {@link com.n26.codechallenge.Transaction }.
  *
  * Performs all the work on the write operation, which means that on every update, it needs to ensure all parents are updated
+ *
+ * Sums are updated with atomic merges on a {@link ConcurrentHashMap}, so reads never block and updates of unrelated
+ * trees do not contend. Since additions commute, the amounts of a transaction and of its children may be merged in any order.
  */
 public class InMemorySumRepository implements SumRepository {
 
-    private final TransactionalRepository transactionalRepository;
-    private final Map<Long, Double> amountPerSubTree = new HashMap<>();
+    private final TransactionTreeTraversal traversal;
+    private final ConcurrentMap<Long, Double> amountPerSubTree = new ConcurrentHashMap<>();
 
     public InMemorySumRepository(TransactionalRepository transactionalRepository) {
-        this.transactionalRepository = transactionalRepository;
+        this.traversal = new TransactionTreeTraversal(transactionalRepository);
+    }
+
+    /**
+     * Builds a sum view over the transactions already stored in a repository, visiting each transaction once.
+     *
+     * The repository must not be modified while the view is built.
+     *
+     * @param transactionalRepository the repository to build the view for, and to keep it up to date with
+     * @return
+     */
+    public static InMemorySumRepository buildFrom(TransactionalRepository transactionalRepository) {
+        InMemorySumRepository sumRepository = new InMemorySumRepository(transactionalRepository);
+        for (Map.Entry<Long, Transaction> entry : transactionalRepository.allTransactions().entrySet()) {
+            if (entry.getValue().parentId() == null) {
+                sumRepository.traversal.forEachSubTreeAmount(entry.getKey(), sumRepository.amountPerSubTree::put);
+            }
+        }
+        return sumRepository;
     }
 
     /**
@@ -26,27 +49,28 @@ public class InMemorySumRepository implements SumRepository {
      * @param transaction the transaction to be added
      */
     @Override
-    public synchronized void addAmount(Long id, Transaction transaction) {
-        // For the new transaction, there should not entry so we can just put it
-        amountPerSubTree.put(id, transaction.amount());
-        addToParents(transaction.parentId(), transaction.amount());
+    public void addAmount(Long id, Transaction transaction) {
+        // A child added concurrently may already have merged its amount into this entry
+        amountPerSubTree.merge(id, transaction.amount(), Double::sum);
+        final Double increment = transaction.amount();
+        traversal.forEachAncestor(transaction.parentId(), ancestorId -> amountPerSubTree.merge(ancestorId, increment, Double::sum));
     }
 
-    private void addToParents(Long transactionId, Double increment){
-        if(transactionId == null){
-            //end of tree
-            return;
-        }
-        Double currentValue = amountPerSubTree.get(transactionId);
-        if(currentValue == null){
-            throw new IllegalStateException("A transaction has no sum");
-        }
-        amountPerSubTree.put(transactionId, currentValue + increment);
-        addToParents(transactionalRepository.transaction(transactionId).parentId(), increment);
+    /**
+     * Sums the amounts of the batch up its trees first, so that every ancestor is updated once for the whole batch
+     * @param transactions the transactions, parents before children
+     */
+    @Override
+    public void addAmounts(Map<Long, Transaction> transactions) {
+        final Map<Long, Double> outside = new HashMap<>();
+        final Map<Long, Double> increments = TransactionBatch.subTreeAmounts(transactions, outside);
+        outside.forEach((parentId, amount) ->
+                traversal.forEachAncestor(parentId, ancestorId -> increments.merge(ancestorId, amount, Double::sum)));
+        increments.forEach((id, amount) -> amountPerSubTree.merge(id, amount, Double::sum));
     }
 
     @Override
-    public synchronized Double transitiveSum(Long id) {
+    public Double transitiveSum(Long id) {
         return amountPerSubTree.get(id);
     }
 }
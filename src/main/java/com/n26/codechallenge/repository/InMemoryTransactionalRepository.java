@@ -1,47 +1,133 @@
 package com.n26.codechallenge.repository;
 
 import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.InvalidTransaction;
 import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
 import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A in-memory thread safe (synchronized) implementation of {@link TransactionalRepository}
+ * A in-memory thread safe (lock free) implementation of {@link TransactionalRepository}
+ *
+ * Every transaction is assigned a dense ordinal, in the order writers reserve them. Transactions are stored by
+ * ordinal in chunks of {@link #CHUNK_SIZE}, which are allocated as the repository grows and never copied nor moved,
+ * and the identifier to ordinal association is kept in a {@link ConcurrentHashMap}, so reads never block and writes
+ * only contend with writes hashed to the same bin. Transactions are never removed, therefore a parent that has been
+ * validated once remains valid until the transaction is inserted.
+ *
+ * Every writer flags its ordinal as committed, then moves a watermark past the committed ordinals following it, up to
+ * the first one still being written, so no writer waits for the others to commit: {@link #allTransactions()} pins the
+ * watermark and returns a {@link TransactionSnapshot} of the ordinals below it, which concurrent writers never change.
+ * A writer only returns once the watermark has passed its ordinal, so that every snapshot taken afterwards holds its
+ * transaction.
  */
 @Slf4j
 public class InMemoryTransactionalRepository implements TransactionalRepository {
 
-    private final Map<Long, Transaction> transactionMap;
+    /**
+     * Heap held per transaction, including its children index entry and its slot in the chunks, as measured on 2M
+     * random forest transactions
+     */
+    private static final long ESTIMATED_BYTES_PER_TRANSACTION = 320;
 
-    InMemoryTransactionalRepository(Map<Long, Transaction> transactionMap){
-        this.transactionMap = transactionMap;
-    }
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
 
-    public InMemoryTransactionalRepository(){
-        this(new HashMap<>());
-    }
+    // commit states of an ordinal
+    private static final int PENDING = 0;
+    private static final int ADDED = 1;
+    private static final int WASTED = 2;
+
+    private final ConcurrentMap<Long, Integer> ordinalsById = new ConcurrentHashMap<>();
+
+    /**
+     * Parent id to the ids of its direct children, kept in sync with {@link #ordinalsById}
+     * so that children lookups do not have to scan every stored transaction
+     */
+    private final ConcurrentMap<Long, Set<Long>> childrenIndex = new ConcurrentHashMap<>();
+
+    /**
+     * Only replaced under the monitor of the repository, by a copy of the latest array
+     */
+    private volatile Chunk[] chunks = new Chunk[16];
+
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    /**
+     * The number of ordinals below which every ordinal is committed in the high half and the number of transactions
+     * they hold in the low half, which differ by the ordinals wasted on identifiers concurrently added twice
+     */
+    private final AtomicLong watermark = new AtomicLong();
 
     /**
      * Add a transaction, if valid
      *
+     * The transaction is written at a newly reserved ordinal, then the uniqueness of the identifier is guaranteed
+     * by an atomic put-if-absent and the children index is updated afterwards, so every indexed child can always be
+     * read. The ordinal is committed last, and the watermark only passes it once the ones below it are committed too,
+     * which the call waits for before returning. A parent is visible before its child validates it, so it always has a
+     * lower ordinal and is committed first.
+     *
      * @param id the unique identifies used to refer to a {@link Transaction}
      * @param transaction the transaction to be added
      * @throws TransactionAlreadyExistsException if there is already another transaction associated with this identifier
      * @throws ParentTransactionDoesNotExistException if the transaction is linked to an inexistent transaction
      */
     @Override
-    public synchronized void addTransaction(Long id, Transaction transaction) throws ParentTransactionDoesNotExistException, TransactionAlreadyExistsException {
+    public void addTransaction(Long id, Transaction transaction) throws ParentTransactionDoesNotExistException, TransactionAlreadyExistsException {
         ensureIdIsNotUsed(id);
         validateParent(transaction);
-        transactionMap.put(id, transaction);
+        final Transaction stored = transaction.encoded();
+        final int ordinal = reserved.getAndIncrement();
+        boolean added = false;
+        try {
+            final Chunk chunk = chunk(ordinal);
+            chunk.ids[ordinal & CHUNK_MASK] = id;
+            chunk.transactions[ordinal & CHUNK_MASK] = stored;
+            added = ordinalsById.putIfAbsent(id, ordinal) == null;
+            if (added) {
+                indexChild(id, stored);
+            } else {
+                chunk.transactions[ordinal & CHUNK_MASK] = null;
+            }
+        } finally {
+            commit(ordinal, added);
+        }
+        if (!added) {
+            throw new TransactionAlreadyExistsException(id);
+        }
+        awaitWatermark(ordinal);
     }
 
     /**
-     * Get the value from the map, given its identifier
+     * Adds the transactions one by one, none of them waits for the others
+     *
+     * @param transactions the transactions to be stored, parents first
+     * @return the transactions that were not added, along with the reason
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        final Map<Long, InvalidTransaction> rejected = new HashMap<>();
+        transactions.forEach((id, transaction) -> {
+            try {
+                addTransaction(id, transaction);
+            } catch (InvalidTransaction e) {
+                rejected.put(id, e);
+            }
+        });
+        return rejected;
+    }
+
+    /**
+     * Get the value from the store, given its identifier
      *
      * If a transaction does not exist with the given identifier, null is returned.
      *
@@ -49,35 +135,65 @@ public class InMemoryTransactionalRepository implements TransactionalRepository
      * @return
      */
     @Override
-    public synchronized Transaction transaction(Long id) {
-        return transactionMap.get(id);
+    public Transaction transaction(Long id) {
+        final Integer ordinal = ordinalsById.get(id);
+        return ordinal == null ? null : transactionAt(chunks, ordinal);
     }
 
     /**
-     * Iterates through all existing {@link Transaction}, keeping only those that
-     * are children of given transaction ID
+     * Looks up the direct children of given transaction ID in the children index,
+     * so the cost is proportional to the number of children and not to the size of the repository
      *
      * @param parentId
      * @return
      */
     @Override
     public Map<Long, Transaction> children(Long parentId) {
-        return transactionMap
-                .entrySet()
-                .stream()
-                .filter(e -> e.getValue().isChild(parentId))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        Set<Long> childrenIds = childrenIndex.get(parentId);
+        if(childrenIds == null){
+            return Collections.emptyMap();
+        }
+        Map<Long, Transaction> children = new HashMap<>(childrenIds.size() * 2);
+        for (Long childId : childrenIds){
+            children.put(childId, transaction(childId));
+        }
+        return children;
     }
 
 
     /**
-     * Simply returns the collection of values of the internal map
+     * Returns a snapshot of the committed transactions.
+     *
+     * Taking it costs two volatile reads: it shares the chunks with the repository and never sees the transactions
+     * committed afterwards, however long it is iterated
      *
      * @return
      */
     @Override
-    public synchronized Map<Long, Transaction> allTransactions() {
-        return transactionMap;
+    public TransactionSnapshot allTransactions() {
+        final long committed = watermark.get();
+        return new OrdinalsSnapshot((int) (committed >>> 32), (int) committed, chunks);
+    }
+
+    /**
+     * Estimated from the number of transactions, since walking the maps would cost as much as the estimate is worth
+     * @return
+     */
+    @Override
+    public long footprint() {
+        return ordinalsById.size() * ESTIMATED_BYTES_PER_TRANSACTION;
+    }
+
+    /**
+     * Registers a transaction as child of its parent, if it has one
+     * @param id the identifier of the transaction
+     * @param transaction the transaction to be indexed
+     */
+    private void indexChild(Long id, Transaction transaction) {
+        final Long parentId = transaction.parentId();
+        if(parentId != null){
+            childrenIndex.computeIfAbsent(parentId, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
     }
 
     /**
@@ -86,7 +202,7 @@ public class InMemoryTransactionalRepository implements TransactionalRepository
      * @throws TransactionAlreadyExistsException if id refers to a transaction
      */
     private void ensureIdIsNotUsed(Long id) throws TransactionAlreadyExistsException {
-        if(transactionMap.get(id) != null){
+        if(ordinalsById.containsKey(id)){
             throw new TransactionAlreadyExistsException(id);
         }
     }
@@ -103,10 +219,132 @@ public class InMemoryTransactionalRepository implements TransactionalRepository
     private void validateParent(Transaction transaction) throws ParentTransactionDoesNotExistException {
         final Long parentId = transaction.parentId();
         if(parentId != null){
-            log.info(String.format("A parent id %s has been provided and is now subject to further validation", parentId));
-            if(!transactionMap.containsKey(parentId)){
+            log.debug("A parent id {} has been provided and is now subject to further validation", parentId);
+            if(!ordinalsById.containsKey(parentId)){
                 throw new ParentTransactionDoesNotExistException(parentId);
             }
         }
     }
+
+    /**
+     * The chunk holding an ordinal, allocated if needed
+     * @param ordinal a reserved ordinal
+     * @return
+     */
+    private Chunk chunk(int ordinal) {
+        final int index = ordinal >>> CHUNK_BITS;
+        Chunk[] current = chunks;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        synchronized (this) {
+            current = chunks;
+            if (index >= current.length) {
+                current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+            }
+            if (current[index] == null) {
+                current[index] = new Chunk();
+            }
+            chunks = current;
+            return current[index];
+        }
+    }
+
+    /**
+     * Flags an ordinal as committed, then moves the watermark past it if the ordinals below it are committed too
+     *
+     * @param ordinal the reserved ordinal
+     * @param added whether the ordinal holds a transaction
+     */
+    private void commit(int ordinal, boolean added) {
+        chunk(ordinal).states.set(ordinal & CHUNK_MASK, added ? ADDED : WASTED);
+        advance();
+    }
+
+    /**
+     * Moves the watermark past the committed ordinals following it, up to the first one still being written.
+     *
+     * Every writer calls it once its ordinal is flagged, so the writer of the first ordinal still being written moves
+     * the watermark past the ordinals committed meanwhile. A writer whose compare and set fails scans again from where
+     * another writer moved the watermark, so none of them waits for a writer still writing
+     */
+    private void advance() {
+        long current = watermark.get();
+        while (true) {
+            final Chunk[] chunks = this.chunks;
+            int next = (int) (current >>> 32);
+            long size = current & 0xFFFFFFFFL;
+            int state;
+            while ((state = stateAt(chunks, next)) != PENDING) {
+                size += state == ADDED ? 1 : 0;
+                next++;
+            }
+            if (next == (int) (current >>> 32) || watermark.compareAndSet(current, ((long) next << 32) | size)) {
+                return;
+            }
+            current = watermark.get();
+        }
+    }
+
+    /**
+     * Waits until the watermark has passed a committed ordinal, which only a writer still writing a lower ordinal
+     * holds up
+     */
+    private void awaitWatermark(int ordinal) {
+        while ((int) (watermark.get() >>> 32) <= ordinal) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Whether an ordinal is still being written, holds a transaction or was wasted
+     */
+    private static int stateAt(Chunk[] chunks, int ordinal) {
+        final int index = ordinal >>> CHUNK_BITS;
+        if (index >= chunks.length || chunks[index] == null) {
+            return PENDING;
+        }
+        return chunks[index].states.get(ordinal & CHUNK_MASK);
+    }
+
+    private static Transaction transactionAt(Chunk[] chunks, int ordinal) {
+        return chunks[ordinal >>> CHUNK_BITS].transactions[ordinal & CHUNK_MASK];
+    }
+
+    /**
+     * The identifiers, transactions and commit states of {@link #CHUNK_SIZE} consecutive ordinals
+     */
+    private static class Chunk {
+        final long[] ids = new long[CHUNK_SIZE];
+        final Transaction[] transactions = new Transaction[CHUNK_SIZE];
+        final AtomicIntegerArray states = new AtomicIntegerArray(CHUNK_SIZE);
+    }
+
+    /**
+     * A snapshot of the ordinals committed when it was taken, along with the chunks holding them
+     */
+    private class OrdinalsSnapshot extends TransactionSnapshot {
+
+        private final Chunk[] chunks;
+
+        OrdinalsSnapshot(int epoch, int size, Chunk[] chunks) {
+            super(epoch, size);
+            this.chunks = chunks;
+        }
+
+        @Override
+        protected long idAt(int ordinal) {
+            return chunks[ordinal >>> CHUNK_BITS].ids[ordinal & CHUNK_MASK];
+        }
+
+        @Override
+        protected Transaction transactionAt(int ordinal) {
+            return InMemoryTransactionalRepository.transactionAt(chunks, ordinal);
+        }
+
+        @Override
+        protected int ordinalOf(Long id) {
+            return ordinalsById.getOrDefault(id, -1);
+        }
+    }
 }
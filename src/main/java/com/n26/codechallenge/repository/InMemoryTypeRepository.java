@@ -1,37 +1,81 @@
 package com.n26.codechallenge.repository;
 
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
+import com.n26.codechallenge.TypeDictionary;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
 
 /**
- * A implementation based on a {@link MultiValueMap}
+ * A implementation based on a {@link ConcurrentHashMap} of concurrent sets, so that neither reads nor writes
+ * of different types block each other. Sets are keyed by the {@link TypeDictionary} code of their type.
  */
 public class InMemoryTypeRepository implements TypeRepository {
 
-    private final MultiValueMap<String, Long> map = new LinkedMultiValueMap<>();
+    /**
+     * Heap held by an identifier in a concurrent set: the boxed long, the node and its share of the table
+     */
+    private static final long ESTIMATED_BYTES_PER_ID = 64;
+
+    private final ConcurrentMap<Integer, Set<Long>> map = new ConcurrentHashMap<>();
 
     @Override
-    public synchronized void addTransaction(String type, Long id) {
-        map.add(type, id);
+    public void addTransaction(int typeCode, Long id) {
+        map.computeIfAbsent(typeCode, k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    @Override
+    public void addTransactions(int typeCode, Collection<Long> ids) {
+        map.computeIfAbsent(typeCode, k -> ConcurrentHashMap.newKeySet()).addAll(ids);
     }
 
     /**
-     * Ensure no duplicates are returned by wrapping the result with a {@link HashSet}
+     * Returns a copy of the identifiers, so that the result is not affected by later writes
      * @param type
      * @return
      */
     @Override
-    public synchronized Set<Long> getTransactionIdsByType(String type) {
-        List<Long> allEntries = map.get(type);
+    public Set<Long> getTransactionIdsByType(String type) {
+        Set<Long> allEntries = map.get(TypeDictionary.lookup(type));
         if(allEntries != null) {
             return new HashSet<>(allEntries);
         } else {
             return Collections.emptySet();
         }
     }
+
+    /**
+     * Sets are not ordered, so every matching identifier after the cursor is sorted to build the page
+     */
+    @Override
+    public List<Long> getTransactionIdsByTypes(Collection<String> types, Long after, int limit) {
+        return types.stream()
+                .map(TypeDictionary::lookup)
+                .distinct()
+                .map(map::get)
+                .filter(ids -> ids != null)
+                .flatMap(Set::stream)
+                .filter(id -> after == null || id > after)
+                .distinct()
+                .sorted()
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Estimated from the number of identifiers
+     */
+    @Override
+    public long footprint() {
+        long ids = 0;
+        for (Set<Long> set : map.values()) {
+            ids += set.size();
+        }
+        return ids * ESTIMATED_BYTES_PER_ID;
+    }
 }
@@ -0,0 +1,19 @@
+package com.n26.codechallenge.repository;
+
+/**
+ * Exposes how much a lock guarding a repository is contended
+ */
+public interface LockStatistics {
+
+    /**
+     * The number of times the lock was acquired so far
+     * @return
+     */
+    long lockAcquisitions();
+
+    /**
+     * The total time spent waiting for the lock so far, uncontended acquisitions counting for nothing
+     * @return
+     */
+    long lockWaitNanos();
+}
@@ -0,0 +1,34 @@
+package com.n26.codechallenge.repository;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Acquires locks while accounting for the time spent waiting for them.
+ *
+ * A lock is first tried without waiting, so that the clock is only read when the lock is contended.
+ */
+class LockWaits implements LockStatistics {
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    void lock(Lock lock) {
+        if (!lock.tryLock()) {
+            final long start = System.nanoTime();
+            lock.lock();
+            waitNanos.add(System.nanoTime() - start);
+        }
+        acquisitions.increment();
+    }
+
+    @Override
+    public long lockAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    @Override
+    public long lockWaitNanos() {
+        return waitNanos.sum();
+    }
+}
@@ -0,0 +1,127 @@
+package com.n26.codechallenge.repository;
+
+/**
+ * An open addressing (linear probing) hash map from primitive long keys to non negative int values.
+ *
+ * Keys and values are kept in two parallel arrays, so no boxed {@link Long} nor map entry is allocated per mapping.
+ * Values are stored shifted by one, which leaves zero free to mark an empty bucket and allows any long to be used as key.
+ *
+ * Not thread safe, callers are expected to guard it.
+ */
+class LongIntHashMap {
+
+    static final int NO_VALUE = -1;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int resizeThreshold;
+
+    LongIntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    LongIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * Returns the value associated with the given key, or {@link #NO_VALUE} if there is none
+     * @param key
+     * @return
+     */
+    int get(long key) {
+        final int mask = keys.length - 1;
+        for (int bucket = bucket(key, mask); values[bucket] != 0; bucket = (bucket + 1) & mask) {
+            if (keys[bucket] == key) {
+                return values[bucket] - 1;
+            }
+        }
+        return NO_VALUE;
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != NO_VALUE;
+    }
+
+    /**
+     * Associates a value with a key, if the key is not mapped yet
+     * @param key
+     * @param value a non negative value
+     * @return the value already associated with the key, or {@link #NO_VALUE} if the mapping was added
+     */
+    int putIfAbsent(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Only non negative values are supported");
+        }
+        final int mask = keys.length - 1;
+        int bucket = bucket(key, mask);
+        for (; values[bucket] != 0; bucket = (bucket + 1) & mask) {
+            if (keys[bucket] == key) {
+                return values[bucket] - 1;
+            }
+        }
+        keys[bucket] = key;
+        values[bucket] = value + 1;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return NO_VALUE;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * The number of bytes held by the backing arrays
+     * @return
+     */
+    long footprint() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        allocate(capacity);
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != 0) {
+                int bucket = bucket(oldKeys[i], mask);
+                while (values[bucket] != 0) {
+                    bucket = (bucket + 1) & mask;
+                }
+                keys[bucket] = oldKeys[i];
+                values[bucket] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Spreads sequential identifiers across the table (murmur3 finalizer)
+     */
+    private static int bucket(long key, int mask) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        final int minimum = (int) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR);
+        return Integer.highestOneBit(minimum - 1) << 1;
+    }
+
+}
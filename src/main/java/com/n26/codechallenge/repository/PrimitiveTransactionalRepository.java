@@ -0,0 +1,295 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeDictionary;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A in-memory thread safe (locked) implementation of {@link TransactionalRepository} that does not box.
+ *
+ * Every transaction is assigned a dense slot, in insertion order. The identifier to slot association is kept in
+ * an open addressing {@link LongIntHashMap} and the fields of the transaction are spread over parallel primitive arrays
+ * indexed by slot:
+ *
+ * - amount, as a double
+ * - parent, as the slot of the parent transaction ({@link #NONE} for roots)
+ * - type, as its {@link TypeDictionary} code
+ * - first child and next sibling slots, which link the children of a transaction without any additional collection
+ *
+ * {@link Transaction} instances are only built when a caller asks for them.
+ */
+public class PrimitiveTransactionalRepository implements TransactionalRepository, LockStatistics {
+
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LockWaits lockWaits = new LockWaits();
+    private final LongIntHashMap slotsById = new LongIntHashMap(INITIAL_CAPACITY);
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private double[] amounts = new double[INITIAL_CAPACITY];
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] types = new int[INITIAL_CAPACITY];
+    private int[] firstChildren = new int[INITIAL_CAPACITY];
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Add a transaction, if valid
+     *
+     * @param id the unique identifies used to refer to a {@link Transaction}
+     * @param transaction the transaction to be added
+     * @throws TransactionAlreadyExistsException if there is already another transaction associated with this identifier
+     * @throws ParentTransactionDoesNotExistException if the transaction is linked to an inexistent transaction
+     */
+    @Override
+    public void addTransaction(Long id, Transaction transaction) throws ParentTransactionDoesNotExistException, TransactionAlreadyExistsException {
+        lockWaits.lock(lock);
+        try {
+            append(id, transaction);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the transactions under a single acquisition of the lock, growing the arrays at most once
+     *
+     * @param transactions the transactions to be stored, parents first
+     * @return the transactions that were not added, along with the reason
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        lockWaits.lock(lock);
+        try {
+            ensureCapacity(size + transactions.size());
+            final Map<Long, InvalidTransaction> rejected = new HashMap<>();
+            for (Map.Entry<Long, Transaction> entry : transactions.entrySet()) {
+                try {
+                    append(entry.getKey(), entry.getValue());
+                } catch (InvalidTransaction e) {
+                    rejected.put(entry.getKey(), e);
+                }
+            }
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Builds the transaction stored under the given identifier
+     *
+     * If a transaction does not exist with the given identifier, null is returned.
+     *
+     * @param id The unique identified for a transaction
+     * @return
+     */
+    @Override
+    public Transaction transaction(Long id) {
+        lockWaits.lock(lock);
+        try {
+            final int slot = slotsById.get(id);
+            return slot == LongIntHashMap.NO_VALUE ? null : transactionAt(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Builds the transactions stored under the given identifiers, under a single acquisition of the lock
+     *
+     * @param ids the identifiers, possibly repeated
+     * @return the transactions found, by identifier
+     */
+    @Override
+    public Map<Long, Transaction> transactions(Collection<Long> ids) {
+        final Map<Long, Transaction> found = new HashMap<>();
+        lockWaits.lock(lock);
+        try {
+            for (Long id : ids) {
+                final int slot = slotsById.get(id);
+                if (slot != LongIntHashMap.NO_VALUE) {
+                    found.put(id, transactionAt(slot));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return found;
+    }
+
+    /**
+     * Follows the first child / next sibling links of the given transaction
+     *
+     * @param parentId
+     * @return
+     */
+    @Override
+    public Map<Long, Transaction> children(Long parentId) {
+        lockWaits.lock(lock);
+        try {
+            final int parent = slotsById.get(parentId);
+            if (parent == LongIntHashMap.NO_VALUE || firstChildren[parent] == NONE) {
+                return Collections.emptyMap();
+            }
+            Map<Long, Transaction> children = new HashMap<>();
+            for (int child = firstChildren[parent]; child != NONE; child = nextSiblings[child]) {
+                children.put(ids[child], transactionAt(child));
+            }
+            return children;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the transactions stored at the moment of the call.
+     *
+     * Transactions are built lazily while the snapshot is iterated, so the whole store is never materialized
+     *
+     * @return
+     */
+    @Override
+    public TransactionSnapshot allTransactions() {
+        lockWaits.lock(lock);
+        try {
+            return new SlotsView(size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of stored transactions
+     * @return
+     */
+    public int size() {
+        lockWaits.lock(lock);
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of bytes held by the arrays backing this repository
+     * @return
+     */
+    @Override
+    public long footprint() {
+        lockWaits.lock(lock);
+        try {
+            final long perSlot = Long.BYTES + Double.BYTES + 4L * Integer.BYTES;
+            return slotsById.footprint() + perSlot * ids.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long lockAcquisitions() {
+        return lockWaits.lockAcquisitions();
+    }
+
+    @Override
+    public long lockWaitNanos() {
+        return lockWaits.lockWaitNanos();
+    }
+
+    private void append(Long id, Transaction transaction) throws ParentTransactionDoesNotExistException, TransactionAlreadyExistsException {
+        if (slotsById.containsKey(id)) {
+            throw new TransactionAlreadyExistsException(id);
+        }
+        final int parent = parentSlot(transaction);
+        ensureCapacity(size + 1);
+
+        final int slot = size;
+        slotsById.putIfAbsent(id, slot);
+        ids[slot] = id;
+        amounts[slot] = transaction.amount();
+        types[slot] = transaction.typeCode();
+        parents[slot] = parent;
+        firstChildren[slot] = NONE;
+        nextSiblings[slot] = NONE;
+        if (parent != NONE) {
+            nextSiblings[slot] = firstChildren[parent];
+            firstChildren[parent] = slot;
+        }
+        size++;
+    }
+
+    private Transaction transactionAt(int slot) {
+        final int parent = parents[slot];
+        return new Transaction(amounts[slot], types[slot], parent == NONE ? null : ids[parent]);
+    }
+
+    private int parentSlot(Transaction transaction) throws ParentTransactionDoesNotExistException {
+        final Long parentId = transaction.parentId();
+        if (parentId == null) {
+            return NONE;
+        }
+        final int parent = slotsById.get(parentId);
+        if (parent == LongIntHashMap.NO_VALUE) {
+            throw new ParentTransactionDoesNotExistException(parentId);
+        }
+        return parent;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        final int capacity = Math.max(required, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        types = Arrays.copyOf(types, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+    }
+
+    /**
+     * A snapshot of the first slots of the repository. Slots are never reused nor changed and the arrays are only ever
+     * replaced by larger copies, so the arrays captured when the snapshot is taken are read without the lock.
+     */
+    private class SlotsView extends TransactionSnapshot {
+
+        private final long[] ids = PrimitiveTransactionalRepository.this.ids;
+        private final double[] amounts = PrimitiveTransactionalRepository.this.amounts;
+        private final int[] parents = PrimitiveTransactionalRepository.this.parents;
+        private final int[] types = PrimitiveTransactionalRepository.this.types;
+
+        SlotsView(int slots) {
+            super(slots, slots);
+        }
+
+        @Override
+        protected long idAt(int slot) {
+            return ids[slot];
+        }
+
+        @Override
+        protected Transaction transactionAt(int slot) {
+            final int parent = parents[slot];
+            return new Transaction(amounts[slot], types[slot], parent == NONE ? null : ids[parent]);
+        }
+
+        @Override
+        protected int ordinalOf(Long id) {
+            lockWaits.lock(lock);
+            try {
+                return slotsById.get(id);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
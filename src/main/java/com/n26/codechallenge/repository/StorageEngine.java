@@ -0,0 +1,43 @@
+package com.n26.codechallenge.repository;
+
+/**
+ * The available implementations of {@link TransactionalRepository}
+ */
+public enum StorageEngine {
+
+    /**
+     * {@link InMemoryTransactionalRepository}, backed by a {@link java.util.HashMap} of {@link com.n26.codechallenge.Transaction}
+     */
+    MAP {
+        @Override
+        public TransactionalRepository create() {
+            return new InMemoryTransactionalRepository();
+        }
+    },
+
+    /**
+     * {@link PrimitiveTransactionalRepository}, backed by primitive arrays
+     */
+    PRIMITIVE {
+        @Override
+        public TransactionalRepository create() {
+            return new PrimitiveTransactionalRepository();
+        }
+    },
+
+    /**
+     * {@link ColumnarTransactionalRepository}, backed by chunked primitive columns scanned as array loops
+     */
+    COLUMNAR {
+        @Override
+        public TransactionalRepository create() {
+            return new ColumnarTransactionalRepository();
+        }
+    };
+
+    /**
+     * Builds a new, empty, repository
+     * @return
+     */
+    public abstract TransactionalRepository create();
+}
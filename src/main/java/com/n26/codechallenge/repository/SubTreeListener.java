@@ -0,0 +1,19 @@
+package com.n26.codechallenge.repository;
+
+/**
+ * Notified of the shape of every subtree walked to compute a sum
+ */
+@FunctionalInterface
+public interface SubTreeListener {
+
+    /**
+     * A listener ignoring every subtree
+     */
+    SubTreeListener IGNORE = (size, depth) -> { };
+
+    /**
+     * @param size the number of transactions of the subtree, including its root
+     * @param depth the length of the longest path from the root of the subtree down to a leaf
+     */
+    void subTreeVisited(int size, int depth);
+}
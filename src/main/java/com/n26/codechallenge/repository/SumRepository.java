@@ -2,12 +2,70 @@ package com.n26.codechallenge.repository;
 
 
 import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * A repository to manipulate the sum of amounts related to a {@link com.n26.codechallenge.Transaction }
  */
 public interface SumRepository {
 
+    /**
+     * Checks whether the amount of a transaction can be registered, before the transaction is stored anywhere.
+     * Any amount can be registered unless stated otherwise.
+     * @param id
+     * @param transaction
+     * @throws InvalidAmountException if the amount cannot be registered
+     */
+    default void validate(Long id, Transaction transaction) throws InvalidAmountException {
+    }
+
+    /**
+     * Stores a transaction in the main repository and registers its amount, so that an amount is only ever refused
+     * before its transaction is stored. Validates, stores and registers one after the other, unless stated otherwise.
+     * @param id
+     * @param transaction
+     * @param transactionalRepository the main repository
+     * @throws InvalidAmountException if the amount cannot be registered, in which case nothing is stored
+     */
+    default void addTransaction(Long id, Transaction transaction, TransactionalRepository transactionalRepository)
+            throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException, InvalidAmountException {
+        validate(id, transaction);
+        transactionalRepository.addTransaction(id, transaction);
+        addAmount(id, transaction);
+    }
+
+    /**
+     * Stores a batch in the main repository and registers the amounts of the accepted transactions, refusing the
+     * amounts that cannot be registered before anything is stored. Validates, stores and registers one after the
+     * other, unless stated otherwise.
+     * @param transactions the transactions, parents before children
+     * @param transactionalRepository the main repository
+     * @return the rejected transactions, along with the reason
+     */
+    default Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions, TransactionalRepository transactionalRepository) {
+        final Map<Long, InvalidTransaction> invalid = new HashMap<>();
+        for (Map.Entry<Long, Transaction> entry : transactions.entrySet()) {
+            try {
+                validate(entry.getKey(), entry.getValue());
+            } catch (InvalidAmountException e) {
+                invalid.put(entry.getKey(), e);
+            }
+        }
+        final Map<Long, Transaction> valid = TransactionBatch.accepted(transactions, invalid.keySet());
+        final Map<Long, InvalidTransaction> rejected = transactionalRepository.addTransactions(valid);
+        addAmounts(TransactionBatch.accepted(valid, rejected.keySet()));
+        rejected.putAll(invalid);
+        return rejected;
+    }
+
     /**
      * Register an transaction amount
      * @param id
@@ -15,6 +73,12 @@ public interface SumRepository {
      */
     void addAmount(Long id, Transaction transaction);
 
+    /**
+     * Register the amounts of a batch of transactions, updating every ancestor once for the whole batch
+     * @param transactions the transactions, parents before children
+     */
+    void addAmounts(Map<Long, Transaction> transactions);
+
 
     /**
      * Get the amount associated transitively with a transaction
@@ -23,4 +87,32 @@ public interface SumRepository {
      */
     Double transitiveSum(Long id);
 
+    /**
+     * Get the amounts associated transitively with a batch of transactions
+     * @param ids the identifiers, possibly repeated
+     * @return the sums, by identifier. Identifiers without a transaction are left out
+     */
+    default Map<Long, Double> transitiveSums(Collection<Long> ids) {
+        final Map<Long, Double> sums = new HashMap<>();
+        for (Long id : ids) {
+            final Double sum = transitiveSum(id);
+            if (sum != null) {
+                sums.put(id, sum);
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * The count, total, lowest and highest amount of the transactions of a subtree. Walks the whole subtree with the
+     * traversal, unless stated otherwise
+     * @param id the root of the subtree, itself included
+     * @param type only the transactions of this type are included, all of them if null
+     * @param traversal the traversal of the main repository
+     * @return null if there is no such transaction
+     */
+    default TypeStatistics subTreeStatistics(Long id, String type, TransactionTreeTraversal traversal) {
+        return traversal.subTreeStatistics(id, type);
+    }
+
 }
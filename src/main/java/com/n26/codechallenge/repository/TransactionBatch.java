@@ -0,0 +1,111 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+
+import java.util.*;
+
+/**
+ * Helpers to apply a batch of transactions, given as identifier to transaction maps, in grouped operations
+ */
+public final class TransactionBatch {
+
+    private TransactionBatch() {
+    }
+
+    /**
+     * Orders a batch so that every transaction whose parent is part of the batch comes after that parent.
+     *
+     * Transactions whose parent is not in the batch keep their relative order and come first. Transactions caught
+     * in a cycle of parents cannot be ordered and are left at the end, where they fail the parent validation.
+     *
+     * @param batch the transactions, in any order
+     * @return the same transactions, parents first
+     */
+    public static Map<Long, Transaction> parentsFirst(Map<Long, Transaction> batch) {
+        final Map<Long, Transaction> ordered = new LinkedHashMap<>(batch.size() * 2);
+        final Map<Long, List<Long>> waiting = new HashMap<>();
+        for (Map.Entry<Long, Transaction> entry : batch.entrySet()) {
+            final Long parentId = entry.getValue().parentId();
+            if (parentId != null && batch.containsKey(parentId) && !parentId.equals(entry.getKey())) {
+                waiting.computeIfAbsent(parentId, k -> new ArrayList<>()).add(entry.getKey());
+            } else {
+                ordered.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (waiting.isEmpty()) {
+            return ordered;
+        }
+        // Every transaction appended to the ordered map releases the children waiting for it
+        final Deque<Long> released = new ArrayDeque<>(ordered.keySet());
+        while (!released.isEmpty()) {
+            final List<Long> children = waiting.remove(released.poll());
+            if (children != null) {
+                for (Long childId : children) {
+                    ordered.put(childId, batch.get(childId));
+                    released.add(childId);
+                }
+            }
+        }
+        for (List<Long> cycle : waiting.values()) {
+            for (Long id : cycle) {
+                ordered.put(id, batch.get(id));
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * The transactions of a batch that were not rejected, in the order of the batch
+     * @param batch
+     * @param rejected the identifiers of the rejected transactions
+     * @return
+     */
+    public static Map<Long, Transaction> accepted(Map<Long, Transaction> batch, Set<Long> rejected) {
+        if (rejected.isEmpty()) {
+            return batch;
+        }
+        final Map<Long, Transaction> accepted = new LinkedHashMap<>(batch.size() * 2);
+        batch.forEach((id, transaction) -> {
+            if (!rejected.contains(id)) {
+                accepted.put(id, transaction);
+            }
+        });
+        return accepted;
+    }
+
+    /**
+     * Groups the identifiers of a batch by the type of their transaction
+     * @param batch
+     * @return the identifiers, keyed by the {@link com.n26.codechallenge.TypeDictionary} code of their type
+     */
+    public static Map<Integer, List<Long>> idsPerType(Map<Long, Transaction> batch) {
+        final Map<Integer, List<Long>> idsPerType = new HashMap<>();
+        batch.forEach((id, transaction) -> idsPerType.computeIfAbsent(transaction.typeCode(), k -> new ArrayList<>()).add(id));
+        return idsPerType;
+    }
+
+    /**
+     * Sums the amounts of a batch up its trees, as far as the batch goes.
+     *
+     * The batch is walked backwards, children before parents, so that every transaction is visited once however deep
+     * the trees of the batch are.
+     *
+     * @param batch the transactions, parents first
+     * @param outside receives, for every parent outside of the batch, the total amount of its descendants in the batch
+     * @return the amount of every transaction of the batch plus the amount of its descendants in the batch
+     */
+    static Map<Long, Double> subTreeAmounts(Map<Long, Transaction> batch, Map<Long, Double> outside) {
+        final List<Map.Entry<Long, Transaction>> entries = new ArrayList<>(batch.entrySet());
+        final Map<Long, Double> sums = new HashMap<>(entries.size() * 2);
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            final Long id = entries.get(i).getKey();
+            final Transaction transaction = entries.get(i).getValue();
+            final Double sum = sums.merge(id, transaction.amount(), Double::sum);
+            final Long parentId = transaction.parentId();
+            if (parentId != null) {
+                (batch.containsKey(parentId) ? sums : outside).merge(parentId, sum, Double::sum);
+            }
+        }
+        return sums;
+    }
+}
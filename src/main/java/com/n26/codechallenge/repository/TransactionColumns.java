@@ -0,0 +1,53 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.TypeDictionary;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * The capability of a {@link TransactionalRepository} keeping its transactions in columns, so that scans and
+ * aggregations run as loops over primitive arrays instead of walking {@link com.n26.codechallenge.Transaction} instances.
+ *
+ * Transactions are numbered by dense ordinals, in insertion order. Ordinals are internal to the repository and
+ * only serve to split scans into ranges.
+ */
+public interface TransactionColumns {
+
+    /**
+     * The number of ordinals taken so far. Scanning up to this number sees every transaction added before the call
+     * @return
+     */
+    int ordinals();
+
+    /**
+     * Passes the identifier of every transaction of a range of ordinals having one of the given types, in ordinal order
+     *
+     * @param typeCodes the {@link TypeDictionary} codes of the types
+     * @param from the first ordinal of the range
+     * @param to the ordinal following the range, at most {@link #ordinals()}
+     * @param action receives the identifiers
+     */
+    void forEachIdOfTypes(BitSet typeCodes, int from, int to, LongConsumer action);
+
+    /**
+     * Sums up the amount of the given transaction with the amount of all its descendants
+     *
+     * @param rootId the identifier of the transaction at the top of the subtree
+     * @param listener notified of the size and depth of the subtree, if it exists
+     * @return the sum, or null if there is no transaction with the given identifier
+     */
+    Double subTreeAmount(Long rootId, SubTreeListener listener);
+
+    /**
+     * Sums up the subtrees of a batch of transactions. A subtree nested in the subtree of another transaction of the
+     * batch is walked once, and its sum added to the enclosing one
+     *
+     * @param rootIds the identifiers of the transactions at the top of the subtrees, possibly repeated
+     * @param listener notified of the size and depth of the part of every subtree actually walked
+     * @return the sums, by identifier. Identifiers without a transaction are left out
+     */
+    Map<Long, Double> subTreeAmounts(Collection<Long> rootIds, SubTreeListener listener);
+}
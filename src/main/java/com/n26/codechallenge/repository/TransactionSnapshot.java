@@ -0,0 +1,174 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A consistent, point-in-time view over the transactions of a repository, as returned by
+ * {@link TransactionalRepository#allTransactions()}.
+ *
+ * Repositories number their transactions by dense ordinals, in commit order, and never change nor remove them. A
+ * snapshot pins an epoch, the number of ordinals committed when it was taken, and only ever sees the transactions
+ * below it: writers keep appending without waiting for the snapshot and the snapshot never sees what they append.
+ * A parent is always committed before its children, so a snapshot never holds a transaction without its parent.
+ *
+ * Iteration walks the ordinals in order. The spliterator of {@link #entrySet()} hands out ranges of ordinals, so that
+ * a parallel stream splits a scan of the snapshot across threads.
+ */
+public abstract class TransactionSnapshot extends AbstractMap<Long, Transaction> {
+
+    /**
+     * The smallest range of ordinals the spliterator splits
+     */
+    private static final int MIN_SPLIT = 1024;
+
+    private final int epoch;
+    private final int size;
+
+    /**
+     * @param epoch the number of ordinals the snapshot covers
+     * @param size the number of transactions stored below the epoch
+     */
+    protected TransactionSnapshot(int epoch, int size) {
+        this.epoch = epoch;
+        this.size = size;
+    }
+
+    /**
+     * The number of ordinals committed when the snapshot was taken. Snapshots of the same repository with the same
+     * epoch hold the same transactions, and a snapshot with a greater epoch holds them all
+     * @return
+     */
+    public int epoch() {
+        return epoch;
+    }
+
+    /**
+     * The identifier stored at an ordinal below the epoch
+     */
+    protected abstract long idAt(int ordinal);
+
+    /**
+     * The transaction stored at an ordinal below the epoch
+     * @return null if the ordinal holds no transaction, when a repository lost it to a concurrent duplicate
+     */
+    protected abstract Transaction transactionAt(int ordinal);
+
+    /**
+     * The ordinal of a transaction, whether or not it is below the epoch
+     * @return a negative value if there is no such transaction
+     */
+    protected abstract int ordinalOf(Long id);
+
+    @Override
+    public Transaction get(Object key) {
+        if (!(key instanceof Long)) {
+            return null;
+        }
+        final int ordinal = ordinalOf((Long) key);
+        return ordinal < 0 || ordinal >= epoch ? null : transactionAt(ordinal);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<Long, Transaction>> entrySet() {
+        return new AbstractSet<Entry<Long, Transaction>>() {
+            @Override
+            public Iterator<Entry<Long, Transaction>> iterator() {
+                return new Iterator<Entry<Long, Transaction>>() {
+                    private final Ordinals ordinals = new Ordinals(0, epoch);
+                    private Entry<Long, Transaction> next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null || ordinals.tryAdvance(entry -> next = entry);
+                    }
+
+                    @Override
+                    public Entry<Long, Transaction> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        final Entry<Long, Transaction> current = next;
+                        next = null;
+                        return current;
+                    }
+                };
+            }
+
+            @Override
+            public Spliterator<Entry<Long, Transaction>> spliterator() {
+                return new Ordinals(0, epoch);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Walks a range of ordinals, skipping those without transaction, and splits it in halves
+     */
+    private class Ordinals implements Spliterator<Entry<Long, Transaction>> {
+
+        private int from;
+        private final int to;
+
+        Ordinals(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Entry<Long, Transaction>> action) {
+            while (from < to) {
+                final int ordinal = from++;
+                final Transaction transaction = transactionAt(ordinal);
+                if (transaction != null) {
+                    action.accept(new SimpleImmutableEntry<>(idAt(ordinal), transaction));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<Entry<Long, Transaction>> trySplit() {
+            if (to - from < 2 * MIN_SPLIT) {
+                return null;
+            }
+            final int middle = (from + to) >>> 1;
+            final Ordinals prefix = new Ordinals(from, middle);
+            from = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeDictionary;
+import com.n26.codechallenge.TypeStatistics;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Walks the trees formed by the transactions of a {@link TransactionalRepository}.
+ *
+ * No traversal is recursive: pending nodes are kept on an explicit stack, so arbitrarily deep chains of
+ * transactions cannot overflow the thread stack.
+ *
+ * Subtree sums start on the calling thread. Once more than {@link #parallelThreshold} nodes have been visited,
+ * the remaining work is handed over to a {@link ForkJoinPool}, whose tasks keep splitting their pending nodes
+ * while there are idle workers to steal them. Repositories keeping {@link TransactionColumns} sum their subtrees
+ * themselves, over their columns.
+ */
+public class TransactionTreeTraversal {
+
+    /**
+     * Number of visited nodes after which a subtree sum goes parallel
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * Minimum number of nodes a fork/join task visits before splitting its pending nodes again
+     */
+    private static final int SPLIT_GRANULARITY = 256;
+
+    private final TransactionalRepository repository;
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private final SubTreeListener listener;
+
+    /**
+     * @param repository the repository holding the transactions
+     * @param pool the pool large subtree sums are handed over to
+     * @param parallelThreshold the number of visited transactions after which a sum goes parallel
+     * @param listener notified of the size and depth of every subtree summed up
+     */
+    public TransactionTreeTraversal(TransactionalRepository repository, ForkJoinPool pool, int parallelThreshold, SubTreeListener listener) {
+        if (parallelThreshold < 0) {
+            throw new IllegalArgumentException("The parallel threshold cannot be negative");
+        }
+        this.repository = repository;
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+        this.listener = listener;
+    }
+
+    public TransactionTreeTraversal(TransactionalRepository repository, ForkJoinPool pool, int parallelThreshold) {
+        this(repository, pool, parallelThreshold, SubTreeListener.IGNORE);
+    }
+
+    public TransactionTreeTraversal(TransactionalRepository repository, int parallelThreshold, SubTreeListener listener) {
+        this(repository, ForkJoinPool.commonPool(), parallelThreshold, listener);
+    }
+
+    public TransactionTreeTraversal(TransactionalRepository repository, int parallelThreshold) {
+        this(repository, parallelThreshold, SubTreeListener.IGNORE);
+    }
+
+    public TransactionTreeTraversal(TransactionalRepository repository) {
+        this(repository, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Sums up the amount of the given transaction with the amount of all its descendants
+     *
+     * @param rootId the identifier of the transaction at the top of the subtree
+     * @return the sum, or null if there is no transaction with the given identifier
+     */
+    public Double subTreeAmount(Long rootId) {
+        if (repository instanceof TransactionColumns) {
+            return ((TransactionColumns) repository).subTreeAmount(rootId, listener);
+        }
+        final Transaction root = repository.transaction(rootId);
+        return root == null ? null : subTreeAmount(rootId, root, Collections.emptyMap());
+    }
+
+    /**
+     * Sums up the subtrees of a batch of transactions, deepest root first: by the time a subtree is walked, the sums
+     * of the roots it encloses are known and their subtrees are not walked again
+     *
+     * @param rootIds the identifiers of the transactions at the top of the subtrees, possibly repeated
+     * @return the sums, by identifier. Identifiers without a transaction are left out
+     */
+    public Map<Long, Double> subTreeAmounts(Collection<Long> rootIds) {
+        if (repository instanceof TransactionColumns) {
+            return ((TransactionColumns) repository).subTreeAmounts(rootIds, listener);
+        }
+        final Map<Long, Transaction> roots = repository.transactions(rootIds);
+        final Map<Long, Integer> depths = new HashMap<>();
+        for (Map.Entry<Long, Transaction> root : roots.entrySet()) {
+            int depth = 0;
+            for (Long parentId = root.getValue().parentId(); parentId != null; parentId = repository.transaction(parentId).parentId()) {
+                depth++;
+            }
+            depths.put(root.getKey(), depth);
+        }
+        final List<Long> deepestFirst = new ArrayList<>(roots.keySet());
+        deepestFirst.sort(Comparator.comparing(depths::get, Comparator.reverseOrder()));
+        final Map<Long, Double> sums = new HashMap<>();
+        for (Long rootId : deepestFirst) {
+            sums.put(rootId, subTreeAmount(rootId, roots.get(rootId), sums));
+        }
+        return sums;
+    }
+
+    /**
+     * @param summed the sums of transactions whose subtrees are added as a whole instead of being walked
+     */
+    private Double subTreeAmount(Long rootId, Transaction root, Map<Long, Double> summed) {
+        final Deque<Node> pending = new ArrayDeque<>();
+        pending.push(new Node(rootId, 0));
+        final Partial partial = new Partial(root.amount(), summed);
+        while (!pending.isEmpty()) {
+            if (partial.visited >= parallelThreshold) {
+                partial.add(pool.invoke(new SubTreeAmountTask(pending, summed)));
+                break;
+            }
+            partial.expand(pending.pop(), pending);
+        }
+        listener.subTreeVisited(partial.visited, partial.depth);
+        return partial.amount;
+    }
+
+    /**
+     * Applies an action to a transaction and then to each of its ancestors, walking up to the root of its tree
+     *
+     * @param id the identifier of the first transaction to visit, usually the parent of a new transaction. Nothing is visited if null
+     * @param action the action to apply to each identifier
+     */
+    public void forEachAncestor(Long id, Consumer<Long> action) {
+        Long current = id;
+        while (current != null) {
+            action.accept(current);
+            current = repository.transaction(current).parentId();
+        }
+    }
+
+    /**
+     * Computes the count, total, lowest and highest amount of the transactions of a subtree, walking all of it
+     *
+     * @param rootId the root of the subtree, itself included
+     * @param type only the transactions of this type are included, all of them if null
+     * @return null if there is no such transaction
+     */
+    public TypeStatistics subTreeStatistics(Long rootId, String type) {
+        final Transaction root = repository.transaction(rootId);
+        if (root == null) {
+            return null;
+        }
+        final int typeCode = TypeDictionary.lookup(type);
+        TypeStatistics statistics = TypeStatistics.EMPTY;
+        final Deque<Map.Entry<Long, Transaction>> pending = new ArrayDeque<>();
+        pending.push(new AbstractMap.SimpleImmutableEntry<>(rootId, root));
+        while (!pending.isEmpty()) {
+            final Map.Entry<Long, Transaction> next = pending.pop();
+            final Transaction transaction = next.getValue();
+            if (type == null || transaction.hasType(typeCode)) {
+                statistics = statistics.merge(new TypeStatistics(1, transaction.amount(), transaction.amount(), transaction.amount()));
+            }
+            repository.children(next.getKey()).entrySet().forEach(pending::push);
+        }
+        return statistics;
+    }
+
+    /**
+     * Computes the subtree sum of every transaction of the tree rooted at the given transaction, in a single pass.
+     *
+     * Transactions are first listed in depth-first order along with the position of their parent, the list is then
+     * walked backwards so that every subtree is complete before it is added to its parent.
+     *
+     * @param rootId the identifier of the root of the tree. Nothing is visited if there is no such transaction
+     * @param action receives every identifier along with its subtree sum, children before parents
+     */
+    public void forEachSubTreeAmount(Long rootId, BiConsumer<Long, Double> action) {
+        final Transaction root = repository.transaction(rootId);
+        if (root == null) {
+            return;
+        }
+        final List<Long> ids = new ArrayList<>();
+        final List<Integer> parents = new ArrayList<>();
+        final List<Double> sums = new ArrayList<>();
+        ids.add(rootId);
+        parents.add(-1);
+        sums.add(root.amount());
+        for (int next = 0; next < ids.size(); next++) {
+            for (Map.Entry<Long, Transaction> child : repository.children(ids.get(next)).entrySet()) {
+                ids.add(child.getKey());
+                parents.add(next);
+                sums.add(child.getValue().amount());
+            }
+        }
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            final Double sum = sums.get(i);
+            action.accept(ids.get(i), sum);
+            if (parents.get(i) >= 0) {
+                sums.set(parents.get(i), sums.get(parents.get(i)) + sum);
+            }
+        }
+    }
+
+    /**
+     * A transaction waiting to be expanded, along with its distance to the root of the subtree
+     */
+    private static class Node {
+        final Long id;
+        final int depth;
+
+        Node(Long id, int depth) {
+            this.id = id;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * The amount, number of visited transactions and depth of part of a subtree
+     */
+    private class Partial {
+        final Map<Long, Double> summed;
+        double amount;
+        int visited;
+        int depth;
+
+        Partial(double amount, Map<Long, Double> summed) {
+            this.amount = amount;
+            this.summed = summed;
+        }
+
+        /**
+         * Visits a transaction, whose own amount is already accounted for, and pushes its children to the pending
+         * stack, but for the already summed ones whose whole subtree is accounted for at once
+         */
+        void expand(Node node, Deque<Node> pending) {
+            for (Map.Entry<Long, Transaction> child : repository.children(node.id).entrySet()) {
+                final Double known = summed.get(child.getKey());
+                if (known != null) {
+                    amount += known;
+                } else {
+                    amount += child.getValue().amount();
+                    pending.push(new Node(child.getKey(), node.depth + 1));
+                }
+            }
+            visited++;
+            depth = Math.max(depth, node.depth);
+        }
+
+        void add(Partial other) {
+            amount += other.amount;
+            visited += other.visited;
+            depth = Math.max(depth, other.depth);
+        }
+    }
+
+    /**
+     * Sums the amount of all the descendants of a set of pending nodes, whose own amount is already accounted for
+     */
+    private class SubTreeAmountTask extends RecursiveTask<Partial> {
+
+        private final Deque<Node> pending;
+        private final Map<Long, Double> summed;
+
+        SubTreeAmountTask(Deque<Node> pending, Map<Long, Double> summed) {
+            this.pending = pending;
+            this.summed = summed;
+        }
+
+        @Override
+        protected Partial compute() {
+            final List<SubTreeAmountTask> forks = new ArrayList<>();
+            final Partial partial = new Partial(0, summed);
+            int sinceLastSplit = 0;
+            while (!pending.isEmpty()) {
+                if (sinceLastSplit >= SPLIT_GRANULARITY && pending.size() > 1 && getSurplusQueuedTaskCount() <= 0) {
+                    forks.add(split());
+                    sinceLastSplit = 0;
+                }
+                partial.expand(pending.pop(), pending);
+                sinceLastSplit++;
+            }
+            for (SubTreeAmountTask fork : forks) {
+                partial.add(fork.join());
+            }
+            return partial;
+        }
+
+        /**
+         * Hands the bottom half of the stack, the shallowest and therefore usually largest subtrees, over to a new task
+         */
+        private SubTreeAmountTask split() {
+            final Deque<Node> stolen = new ArrayDeque<>();
+            for (int i = pending.size() / 2; i > 0; i--) {
+                stolen.push(pending.pollLast());
+            }
+            final SubTreeAmountTask task = new SubTreeAmountTask(stolen, summed);
+            task.fork();
+            return task;
+        }
+    }
+}
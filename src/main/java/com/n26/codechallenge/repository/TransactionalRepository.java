@@ -1,9 +1,12 @@
 package com.n26.codechallenge.repository;
 
 import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.InvalidTransaction;
 import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
 import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -27,6 +30,16 @@ public interface TransactionalRepository {
      */
      void addTransaction(Long id, Transaction transaction) throws ParentTransactionDoesNotExistException, TransactionAlreadyExistsException;
 
+    /**
+     * Add a batch of transactions, one after the other in iteration order, so parents must come before their children.
+     *
+     * A transaction that cannot be added does not prevent the following ones from being added.
+     *
+     * @param transactions the transactions to be stored, by identifier
+     * @return the transactions that were not added, along with the reason
+     */
+    Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions);
+
     /**
      * Obtain a transaction given a unique identifier.
      *
@@ -35,6 +48,23 @@ public interface TransactionalRepository {
      */
      Transaction transaction(Long id);
 
+    /**
+     * Obtain the transactions stored under a batch of identifiers.
+     *
+     * @param ids the identifiers, possibly repeated
+     * @return the transactions found, by identifier. Identifiers without a transaction are left out
+     */
+    default Map<Long, Transaction> transactions(Collection<Long> ids) {
+        final Map<Long, Transaction> found = new HashMap<>();
+        for (Long id : ids) {
+            final Transaction transaction = transaction(id);
+            if (transaction != null) {
+                found.put(id, transaction);
+            }
+        }
+        return found;
+    }
+
 
     /**
      * Return the set of children transactions of a given transaction id
@@ -44,8 +74,17 @@ public interface TransactionalRepository {
     Map<Long, Transaction> children(Long parentId);
 
     /**
-     * Return all transactions
+     * Return all transactions, as a consistent snapshot of the repository at the moment of the call.
+     *
+     * The snapshot is never affected by later writes and never blocks them, however long it is iterated, and it
+     * holds the parent of every transaction it holds, see {@link TransactionSnapshot}
      * @return
      */
     Map<Long, Transaction> allTransactions();
+
+    /**
+     * The number of bytes of heap held by the stored transactions, measured or estimated
+     * @return
+     */
+    long footprint();
 }
@@ -0,0 +1,105 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeDictionary;
+import com.n26.codechallenge.TypeStatistics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the count, total, lowest and highest amount of the transactions of every type, updated as transactions are
+ * added, so that the {@link TypeStatistics} of a type are read in constant time instead of scanning its transactions.
+ *
+ * Aggregates are indexed by {@link TypeDictionary} code. Every figure is a striped accumulator, so that concurrent
+ * writers of a popular type update separate cells instead of contending on a single one. The count is updated last
+ * and read first: statistics read while transactions are added may account for a new amount in the total but not yet
+ * in the count, never the other way round.
+ */
+public class TypeAggregates {
+
+    private volatile Aggregate[] aggregates = new Aggregate[64];
+
+    /**
+     * Accounts for the amount of a transaction in the aggregates of its type
+     * @param transaction
+     */
+    public void add(Transaction transaction) {
+        if (transaction.typeCode() != TypeDictionary.NONE) {
+            aggregate(transaction.typeCode()).add(transaction.amount());
+        }
+    }
+
+    /**
+     * Accounts for the amounts of several transactions
+     * @param transactions
+     */
+    public void addAll(Iterable<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            add(transaction);
+        }
+    }
+
+    /**
+     * The statistics of the transactions of a type
+     * @param type
+     * @return {@link TypeStatistics#EMPTY} if no transaction of the type was added
+     */
+    public TypeStatistics statistics(String type) {
+        final int typeCode = TypeDictionary.lookup(type);
+        final Aggregate[] current = aggregates;
+        if (typeCode == TypeDictionary.NONE || typeCode >= current.length || current[typeCode] == null) {
+            return TypeStatistics.EMPTY;
+        }
+        return current[typeCode].statistics();
+    }
+
+    /**
+     * Returns the aggregate of a type without any lock once it exists. Aggregates are only created and the array only
+     * grown under the lock, always in the latest array, so no aggregate is ever lost to a concurrent growth
+     */
+    private Aggregate aggregate(int typeCode) {
+        final Aggregate[] current = aggregates;
+        if (typeCode < current.length && current[typeCode] != null) {
+            return current[typeCode];
+        }
+        synchronized (this) {
+            Aggregate[] latest = aggregates;
+            if (typeCode >= latest.length) {
+                latest = Arrays.copyOf(latest, Math.max(typeCode + 1, latest.length * 2));
+            }
+            if (latest[typeCode] == null) {
+                latest[typeCode] = new Aggregate();
+            }
+            aggregates = latest;
+            return latest[typeCode];
+        }
+    }
+
+    /**
+     * The accumulators of a type
+     */
+    private static class Aggregate {
+        final DoubleAdder sum = new DoubleAdder();
+        final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+        final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+        final LongAdder count = new LongAdder();
+
+        void add(double amount) {
+            sum.add(amount);
+            min.accumulate(amount);
+            max.accumulate(amount);
+            count.increment();
+        }
+
+        TypeStatistics statistics() {
+            final long count = this.count.sum();
+            if (count == 0) {
+                return TypeStatistics.EMPTY;
+            }
+            return new TypeStatistics(count, sum.sum(), min.get(), max.get());
+        }
+    }
+}
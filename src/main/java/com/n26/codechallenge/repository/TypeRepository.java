@@ -1,19 +1,50 @@
 package com.n26.codechallenge.repository;
 
 
+import com.n26.codechallenge.TypeDictionary;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 /**
  * Keeps an association between transaction type and transaction identifiers
+ *
+ * Types are stored by their {@link TypeDictionary} code; names are only resolved when querying.
  */
 public interface TypeRepository {
 
     /**
      * Associate a identifier to a transaction type
+     * @param typeCode the {@link TypeDictionary} code of the type of the transaction
+     * @param id the identifier associated with a transaction
+     */
+    void addTransaction(int typeCode, Long id);
+
+    /**
+     * Associate several identifiers to a transaction type at once
+     * @param typeCode the {@link TypeDictionary} code of the type of the transactions
+     * @param ids the identifiers associated with the transactions
+     */
+    void addTransactions(int typeCode, Collection<Long> ids);
+
+    /**
+     * Associate a identifier to a transaction type, given its name
      * @param type the type of the transaction
      * @param id the identifier associated with a transaction
      */
-    void addTransaction(String type, Long id);
+    default void addTransaction(String type, Long id) {
+        addTransaction(TypeDictionary.encode(type), id);
+    }
+
+    /**
+     * Associate several identifiers to a transaction type at once, given its name
+     * @param type the type of the transactions
+     * @param ids the identifiers associated with the transactions
+     */
+    default void addTransactions(String type, Collection<Long> ids) {
+        addTransactions(TypeDictionary.encode(type), ids);
+    }
 
     /**
      * Returns the set of identifiers associated to transactions of a given type
@@ -22,4 +53,19 @@ public interface TypeRepository {
      */
     Set<Long> getTransactionIdsByType(String type);
 
+    /**
+     * Returns a page of the identifiers associated to transactions of any of the given types, in ascending order
+     * @param types
+     * @param after only identifiers strictly greater are returned, null to start from the lowest
+     * @param limit the maximum number of identifiers returned
+     * @return
+     */
+    List<Long> getTransactionIdsByTypes(Collection<String> types, Long after, int limit);
+
+    /**
+     * The number of bytes of heap held by the index, measured or estimated
+     * @return
+     */
+    long footprint();
+
 }
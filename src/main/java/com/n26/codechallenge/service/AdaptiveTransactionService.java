@@ -0,0 +1,341 @@
+package com.n26.codechallenge.service;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.repository.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An implementation that switches between the read optimized and the write optimized approaches
+ * depending on the observed traffic.
+ *
+ * Transactions are always stored in a single {@link TransactionalRepository}. When reads dominate, the type and sum
+ * views of {@link ReadOptimizedTransactionService} are built from that repository and kept up to date on every write.
+ * When writes dominate again, the views are dropped and reads are computed on the fly, as {@link WriteOptimizedTransactionService} does.
+ *
+ * The ratio of reads to writes is evaluated periodically in the background. Building the views blocks writers
+ * (never readers, which keep being served on the fly) for the time needed to visit every stored transaction once.
+ */
+@Slf4j
+public class AdaptiveTransactionService implements TransactionalService, SumCacheStatistics, AutoCloseable {
+
+    public enum Strategy {
+        READ_OPTIMIZED, WRITE_OPTIMIZED
+    }
+
+    /**
+     * When to switch from one strategy to the other
+     */
+    public static class SwitchPolicy {
+
+        public static final SwitchPolicy DEFAULT = new SwitchPolicy(4d, 1d, 1000, TimeUnit.SECONDS.toMillis(10));
+
+        private final double readOptimizeAbove;
+        private final double writeOptimizeBelow;
+        private final long minOperations;
+        private final long evaluationPeriodMillis;
+
+        /**
+         * @param readOptimizeAbove the ratio of reads per write above which the views are built
+         * @param writeOptimizeBelow the ratio of reads per write below which the views are dropped, lower than readOptimizeAbove
+         * @param minOperations the minimum number of operations in an evaluation period for the ratio to be considered
+         * @param evaluationPeriodMillis how often the ratio is evaluated
+         */
+        public SwitchPolicy(double readOptimizeAbove, double writeOptimizeBelow, long minOperations, long evaluationPeriodMillis) {
+            if (writeOptimizeBelow > readOptimizeAbove) {
+                throw new IllegalArgumentException("The ratio to drop the views must be lower than the ratio to build them");
+            }
+            this.readOptimizeAbove = readOptimizeAbove;
+            this.writeOptimizeBelow = writeOptimizeBelow;
+            this.minOperations = minOperations;
+            this.evaluationPeriodMillis = evaluationPeriodMillis;
+        }
+    }
+
+    private final TransactionalRepository transactionalRepository;
+    private final WriteOptimizedTransactionService onTheFly;
+    private final SwitchPolicy policy;
+    private final ReadWriteLock viewsLock = new ReentrantReadWriteLock();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final ScheduledExecutorService evaluator;
+
+    private volatile Views views;
+    private volatile Instant lastSwitch;
+
+    /**
+     * @param transactionalRepository the repository holding the transactions
+     * @param parallelThreshold the number of visited transactions after which an on the fly sum goes parallel
+     * @param policy when to switch strategies
+     * @param sumCacheSize the number of sums computed on the fly memoized at most, 0 to compute every sum
+     * @param subTreeListener notified of the size and depth of every subtree summed up on the fly
+     */
+    public AdaptiveTransactionService(TransactionalRepository transactionalRepository, int parallelThreshold, SwitchPolicy policy,
+                                      int sumCacheSize, SubTreeListener subTreeListener) {
+        this.transactionalRepository = transactionalRepository;
+        this.onTheFly = new WriteOptimizedTransactionService(transactionalRepository, parallelThreshold, sumCacheSize, subTreeListener);
+        this.policy = policy;
+        this.evaluator = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "strategy-evaluator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.evaluator.scheduleWithFixedDelay(this::evaluate, policy.evaluationPeriodMillis, policy.evaluationPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public AdaptiveTransactionService(TransactionalRepository transactionalRepository, int parallelThreshold, SwitchPolicy policy) {
+        this(transactionalRepository, parallelThreshold, policy, 0, SubTreeListener.IGNORE);
+    }
+
+    public AdaptiveTransactionService() {
+        this(new InMemoryTransactionalRepository(), TransactionTreeTraversal.DEFAULT_PARALLEL_THRESHOLD, SwitchPolicy.DEFAULT);
+    }
+
+    /**
+     * Add a transaction to the main repository, through the on the fly service so that it invalidates its memoized
+     * sums, and, if active, to the views
+     *
+     * @param id
+     * @param transaction
+     * @throws TransactionAlreadyExistsException
+     * @throws ParentTransactionDoesNotExistException
+     */
+    @Override
+    public void addTransaction(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException {
+        writes.increment();
+        viewsLock.readLock().lock();
+        try {
+            onTheFly.addTransaction(id, transaction);
+            final Views current = views;
+            if (current != null) {
+                current.types.addTransaction(transaction.typeCode(), id);
+                current.sums.addAmount(id, transaction);
+            }
+        } finally {
+            viewsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add a batch to the main repository and, if active, update each view once for the accepted transactions
+     *
+     * @param transactions the transactions, by identifier
+     * @return the rejected transactions, along with the reason
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        writes.add(transactions.size());
+        final Map<Long, Transaction> ordered = TransactionBatch.parentsFirst(transactions);
+        viewsLock.readLock().lock();
+        try {
+            final Map<Long, InvalidTransaction> rejected = onTheFly.addParentsFirst(ordered);
+            final Views current = views;
+            if (current != null) {
+                final Map<Long, Transaction> accepted = TransactionBatch.accepted(ordered, rejected.keySet());
+                for (Map.Entry<Integer, List<Long>> type : TransactionBatch.idsPerType(accepted).entrySet()) {
+                    current.types.addTransactions(type.getKey(), type.getValue());
+                }
+                current.sums.addAmounts(accepted);
+            }
+            return rejected;
+        } finally {
+            viewsLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Transaction transaction(Long transactionId) throws TransactionDoesNotExistException {
+        reads.increment();
+        return onTheFly.transaction(transactionId);
+    }
+
+    @Override
+    public Map<Long, Transaction> transactions(Collection<Long> transactionIds) {
+        reads.add(transactionIds.size());
+        return onTheFly.transactions(transactionIds);
+    }
+
+    @Override
+    public Set<Long> transactionByType(String type) {
+        reads.increment();
+        final Views current = views;
+        return current != null ? current.types.getTransactionIdsByType(type) : onTheFly.transactionByType(type);
+    }
+
+    @Override
+    public List<Long> transactionByTypes(Collection<String> types, Long after, int limit) {
+        reads.increment();
+        final Views current = views;
+        return current != null ? current.types.getTransactionIdsByTypes(types, after, limit) : onTheFly.transactionByTypes(types, after, limit);
+    }
+
+    /**
+     * Reads the aggregates of the on the fly service, which every write goes through whatever the strategy
+     */
+    @Override
+    public TypeStatistics typeStatistics(String type) {
+        reads.increment();
+        return onTheFly.typeStatistics(type);
+    }
+
+    @Override
+    public Double transactionSum(Long parentId) throws TransactionDoesNotExistException {
+        reads.increment();
+        final Views current = views;
+        if (current == null) {
+            return onTheFly.transactionSum(parentId);
+        }
+        final Double sum = current.sums.transitiveSum(parentId);
+        if (sum == null) {
+            throw new TransactionDoesNotExistException(parentId);
+        }
+        return sum;
+    }
+
+    @Override
+    public Map<Long, Double> transactionSums(Collection<Long> parentIds) {
+        reads.add(parentIds.size());
+        final Views current = views;
+        return current != null ? current.sums.transitiveSums(parentIds) : onTheFly.transactionSums(parentIds);
+    }
+
+    @Override
+    public long sumCacheHits() {
+        return onTheFly.sumCacheHits();
+    }
+
+    @Override
+    public long sumCacheMisses() {
+        return onTheFly.sumCacheMisses();
+    }
+
+    @Override
+    public long sumCacheEvictions() {
+        return onTheFly.sumCacheEvictions();
+    }
+
+    @Override
+    public long sumCacheSize() {
+        return onTheFly.sumCacheSize();
+    }
+
+    @Override
+    public TypeStatistics subTreeStatistics(Long parentId, String type) throws TransactionDoesNotExistException {
+        reads.increment();
+        return onTheFly.subTreeStatistics(parentId, type);
+    }
+
+    /**
+     * The footprint of the type view, when it is active
+     */
+    @Override
+    public long typeIndexFootprint() {
+        final Views current = views;
+        return current != null ? current.types.footprint() : 0;
+    }
+
+    /**
+     * The strategy currently used to serve reads
+     * @return
+     */
+    public Strategy activeStrategy() {
+        return views != null ? Strategy.READ_OPTIMIZED : Strategy.WRITE_OPTIMIZED;
+    }
+
+    /**
+     * When the strategy last changed, null if it never did
+     * @return
+     */
+    public Instant lastSwitch() {
+        return lastSwitch;
+    }
+
+    /**
+     * Switches to the given strategy, building or dropping the views as required
+     * @param strategy
+     */
+    public synchronized void switchTo(Strategy strategy) {
+        if (strategy == activeStrategy()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        if (strategy == Strategy.READ_OPTIMIZED) {
+            viewsLock.writeLock().lock();
+            try {
+                views = Views.buildFrom(transactionalRepository);
+            } finally {
+                viewsLock.writeLock().unlock();
+            }
+            // the views answer sums from now on: every write still goes through the on the fly service, which
+            // would keep invalidating the memo, so drop it rather than pay for sums nobody reads
+            onTheFly.clearSumCache();
+        } else {
+            views = null;
+        }
+        lastSwitch = Instant.now();
+        log.info(String.format("Switched to %s in %d ms", strategy, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    @Override
+    public void close() {
+        evaluator.shutdownNow();
+    }
+
+    /**
+     * Compares the reads and writes of the last period against the {@link SwitchPolicy}
+     */
+    void evaluate() {
+        final long periodReads = reads.sumThenReset();
+        final long periodWrites = writes.sumThenReset();
+        if (periodReads + periodWrites < policy.minOperations) {
+            return;
+        }
+        final double ratio = (double) periodReads / Math.max(periodWrites, 1);
+        try {
+            if (ratio > policy.readOptimizeAbove) {
+                switchTo(Strategy.READ_OPTIMIZED);
+            } else if (ratio < policy.writeOptimizeBelow) {
+                switchTo(Strategy.WRITE_OPTIMIZED);
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not switch strategy", e);
+        }
+    }
+
+    /**
+     * The views maintained while read optimized
+     */
+    private static class Views {
+        private final TypeRepository types;
+        private final SumRepository sums;
+
+        private Views(TypeRepository types, SumRepository sums) {
+            this.types = types;
+            this.sums = sums;
+        }
+
+        static Views buildFrom(TransactionalRepository repository) {
+            final TypeRepository types = new BitmapTypeRepository();
+            for (Map.Entry<Long, Transaction> entry : repository.allTransactions().entrySet()) {
+                types.addTransaction(entry.getValue().typeCode(), entry.getKey());
+            }
+            return new Views(types, InMemorySumRepository.buildFrom(repository));
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package com.n26.codechallenge.service;
 
 import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
 import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
 import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
 import com.n26.codechallenge.exception.TransactionDoesNotExistException;
 import com.n26.codechallenge.repository.*;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -13,28 +19,75 @@ import java.util.Set;
  * An implementation optimized for read operations.
  *
  * All the hard work is done during adding a transaction, while read operations are fast
+ *
+ * Every repository is thread safe on its own and the views only ever grow, so transactions are added
+ * concurrently: the views may briefly lag behind the main repository, but never diverge from it.
  */
 public class ReadOptimizedTransactionService implements TransactionalService {
 
-    private final TransactionalRepository transactionalRepository = new InMemoryTransactionalRepository();
-    private final TypeRepository typeRepository = new InMemoryTypeRepository();
-    private final SumRepository sumRepository = new InMemorySumRepository(transactionalRepository);
+    private final TransactionalRepository transactionalRepository;
+    private final TypeRepository typeRepository;
+    private final SumRepository sumRepository;
+    private final TypeAggregates typeAggregates = new TypeAggregates();
+    private final TransactionTreeTraversal traversal;
+
+    public ReadOptimizedTransactionService(TransactionalRepository transactionalRepository, TypeRepository typeRepository, SumRepository sumRepository) {
+        this.transactionalRepository = transactionalRepository;
+        this.typeRepository = typeRepository;
+        this.sumRepository = sumRepository;
+        this.traversal = new TransactionTreeTraversal(transactionalRepository);
+    }
+
+    /**
+     * @param transactionalRepository the repository holding the transactions
+     * @param asyncPropagation whether sums are propagated to ancestors in the background, see {@link AsyncInMemorySumRepository}
+     */
+    public ReadOptimizedTransactionService(TransactionalRepository transactionalRepository, boolean asyncPropagation) {
+        this(transactionalRepository, new BitmapTypeRepository(),
+                asyncPropagation ? new AsyncInMemorySumRepository(transactionalRepository) : new InMemorySumRepository(transactionalRepository));
+    }
+
+    public ReadOptimizedTransactionService() {
+        this(new InMemoryTransactionalRepository(), false);
+    }
 
     /**
-     * Add a transaction to main repository and update two additional views:
-     * 1. transactions IDs per type
-     * 2. sum of all amounts related to a single transaction
+     * Add a transaction to main repository and update three additional views:
+     * 1. sum of all amounts related to a single transaction, which stores the transaction along with its amount
+     * 2. transactions IDs per type
+     * 3. statistics of the amounts per type
      *
      * @param id
      * @param transaction
      * @throws TransactionAlreadyExistsException
      * @throws ParentTransactionDoesNotExistException
+     * @throws InvalidAmountException if the sum view cannot register the amount, in which case nothing is stored
      */
     @Override
-    public synchronized void addTransaction(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException {
-        transactionalRepository.addTransaction(id, transaction);
-        typeRepository.addTransaction(transaction.type(), id);
-        sumRepository.addAmount(id, transaction);
+    public void addTransaction(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException, InvalidAmountException {
+        sumRepository.addTransaction(id, transaction, transactionalRepository);
+        typeRepository.addTransaction(transaction.typeCode(), id);
+        typeAggregates.add(transaction);
+    }
+
+    /**
+     * Add a batch to the main repository through the sum view, then update the other views once for the accepted
+     * transactions: the type view once per type and the aggregates once. Transactions whose amount the sum view cannot
+     * register are rejected before anything is stored.
+     *
+     * @param transactions the transactions, by identifier
+     * @return the rejected transactions, along with the reason
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        final Map<Long, Transaction> ordered = TransactionBatch.parentsFirst(transactions);
+        final Map<Long, InvalidTransaction> rejected = sumRepository.addTransactions(ordered, transactionalRepository);
+        final Map<Long, Transaction> accepted = TransactionBatch.accepted(ordered, rejected.keySet());
+        for (Map.Entry<Integer, List<Long>> type : TransactionBatch.idsPerType(accepted).entrySet()) {
+            typeRepository.addTransactions(type.getKey(), type.getValue());
+        }
+        typeAggregates.addAll(accepted.values());
+        return rejected;
     }
 
     /**
@@ -52,6 +105,14 @@ public class ReadOptimizedTransactionService implements TransactionalService {
         return transaction;
     }
 
+    /**
+     * Returns the transactions from the repository, read at once
+     */
+    @Override
+    public Map<Long, Transaction> transactions(Collection<Long> transactionIds) {
+        return transactionalRepository.transactions(transactionIds);
+    }
+
     /**
      * Returns the set of IDs directly from the repository
      * @param type
@@ -62,6 +123,22 @@ public class ReadOptimizedTransactionService implements TransactionalService {
         return typeRepository.getTransactionIdsByType(type);
     }
 
+    /**
+     * Returns the page directly from the repository
+     */
+    @Override
+    public List<Long> transactionByTypes(Collection<String> types, Long after, int limit) {
+        return typeRepository.getTransactionIdsByTypes(types, after, limit);
+    }
+
+    /**
+     * Returns the statistics directly from the aggregates
+     */
+    @Override
+    public TypeStatistics typeStatistics(String type) {
+        return typeAggregates.statistics(type);
+    }
+
     /**
      * Returns the amount directly from the repository
      * @param parentId
@@ -70,6 +147,35 @@ public class ReadOptimizedTransactionService implements TransactionalService {
      */
     @Override
     public Double transactionSum(Long parentId) throws TransactionDoesNotExistException {
-        return sumRepository.transitiveSum(parentId);
+        final Double sum = sumRepository.transitiveSum(parentId);
+        if (sum == null) {
+            throw new TransactionDoesNotExistException(parentId);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the amounts directly from the repository
+     */
+    @Override
+    public Map<Long, Double> transactionSums(Collection<Long> parentIds) {
+        return sumRepository.transitiveSums(parentIds);
+    }
+
+    /**
+     * Reads the statistics from the sum view, which walks the whole subtree unless it keeps them
+     */
+    @Override
+    public TypeStatistics subTreeStatistics(Long parentId, String type) throws TransactionDoesNotExistException {
+        final TypeStatistics statistics = sumRepository.subTreeStatistics(parentId, type, traversal);
+        if (statistics == null) {
+            throw new TransactionDoesNotExistException(parentId);
+        }
+        return statistics;
+    }
+
+    @Override
+    public long typeIndexFootprint() {
+        return typeRepository.footprint();
     }
 }
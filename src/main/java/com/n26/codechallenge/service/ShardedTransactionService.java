@@ -0,0 +1,271 @@
+package com.n26.codechallenge.service;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.repository.TransactionBatch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.IntStream;
+
+/**
+ * Spreads the transactions over independent services, the shards, every tree living whole in one of them.
+ *
+ * Transactions only refer to their parent, so a tree never spans shards: a root is assigned to a shard by a hash
+ * of its identifier and every other transaction goes to the shard of its parent. Each shard has its own store, type
+ * index and sum view, so writes and sums of trees living in different shards never contend.
+ *
+ * The shard of every transaction is kept in a {@link ConcurrentHashMap}, whose atomic put-if-absent also keeps
+ * identifiers unique across shards. An identifier is reserved there before its shard stores the transaction and
+ * released if the shard rejects it, or if the shard fails without storing it. Type queries ask every shard and merge
+ * their answers.
+ */
+@Slf4j
+public class ShardedTransactionService implements TransactionalService {
+
+    private final List<TransactionalService> shards;
+    private final ConcurrentMap<Long, Integer> shardsById = new ConcurrentHashMap<>();
+
+    /**
+     * @param shards the services the trees are spread over, none of them holding any transaction yet
+     */
+    public ShardedTransactionService(List<? extends TransactionalService> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = new ArrayList<>(shards);
+    }
+
+    /**
+     * The number of shards
+     * @return
+     */
+    public int shards() {
+        return shards.size();
+    }
+
+    /**
+     * Routes the transaction to the shard of its tree and adds it there
+     *
+     * @param id
+     * @param transaction
+     * @throws TransactionAlreadyExistsException
+     * @throws ParentTransactionDoesNotExistException
+     * @throws InvalidAmountException
+     */
+    @Override
+    public void addTransaction(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException, InvalidAmountException {
+        final int shard = shardOf(id, transaction);
+        if (shardsById.putIfAbsent(id, shard) != null) {
+            throw new TransactionAlreadyExistsException(id);
+        }
+        boolean added = false;
+        try {
+            shards.get(shard).addTransaction(id, transaction);
+            added = true;
+        } finally {
+            if (!added) {
+                shardsById.remove(id, shard);
+            }
+        }
+    }
+
+    /**
+     * Routes the batch parents first, so that transactions whose parent is in the batch follow it to its shard, then
+     * adds the part of the batch of each shard, the shards working in parallel
+     *
+     * @param transactions the transactions, by identifier
+     * @return the rejected transactions, along with the reason
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        final Map<Long, InvalidTransaction> rejected = new HashMap<>();
+        final List<Map<Long, Transaction>> batches = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            batches.add(new LinkedHashMap<>());
+        }
+        for (Map.Entry<Long, Transaction> entry : TransactionBatch.parentsFirst(transactions).entrySet()) {
+            try {
+                final int shard = shardOf(entry.getKey(), entry.getValue());
+                if (shardsById.putIfAbsent(entry.getKey(), shard) != null) {
+                    throw new TransactionAlreadyExistsException(entry.getKey());
+                }
+                batches.get(shard).put(entry.getKey(), entry.getValue());
+            } catch (InvalidTransaction e) {
+                rejected.put(entry.getKey(), e);
+            }
+        }
+        IntStream.range(0, shards.size()).parallel()
+                .filter(shard -> !batches.get(shard).isEmpty())
+                .mapToObj(shard -> addTransactions(shard, batches.get(shard)))
+                .forEach(shardRejected -> {
+                    synchronized (rejected) {
+                        rejected.putAll(shardRejected);
+                    }
+                });
+        return rejected;
+    }
+
+    @Override
+    public Transaction transaction(Long transactionId) throws TransactionDoesNotExistException {
+        final Integer shard = shardsById.get(transactionId);
+        if (shard == null) {
+            throw new TransactionDoesNotExistException(transactionId);
+        }
+        return shards.get(shard).transaction(transactionId);
+    }
+
+    /**
+     * Reads the identifiers of each shard at once
+     */
+    @Override
+    public Map<Long, Transaction> transactions(Collection<Long> transactionIds) {
+        final Map<Long, Transaction> found = new HashMap<>();
+        idsPerShard(transactionIds).forEach((shard, ids) -> found.putAll(shards.get(shard).transactions(ids)));
+        return found;
+    }
+
+    @Override
+    public Set<Long> transactionByType(String type) {
+        final Set<Long> ids = new HashSet<>();
+        for (TransactionalService shard : shards) {
+            ids.addAll(shard.transactionByType(type));
+        }
+        return ids;
+    }
+
+    /**
+     * Merges the pages of every shard, each holding the lowest identifiers of its shard, into the page of the lowest
+     * identifiers overall
+     */
+    @Override
+    public List<Long> transactionByTypes(Collection<String> types, Long after, int limit) {
+        final List<Long> ids = new ArrayList<>();
+        for (TransactionalService shard : shards) {
+            ids.addAll(shard.transactionByTypes(types, after, limit));
+        }
+        Collections.sort(ids);
+        return ids.size() > limit ? new ArrayList<>(ids.subList(0, limit)) : ids;
+    }
+
+    @Override
+    public TypeStatistics typeStatistics(String type) {
+        TypeStatistics statistics = TypeStatistics.EMPTY;
+        for (TransactionalService shard : shards) {
+            statistics = statistics.merge(shard.typeStatistics(type));
+        }
+        return statistics;
+    }
+
+    @Override
+    public Double transactionSum(Long parentId) throws TransactionDoesNotExistException {
+        final Integer shard = shardsById.get(parentId);
+        if (shard == null) {
+            throw new TransactionDoesNotExistException(parentId);
+        }
+        return shards.get(shard).transactionSum(parentId);
+    }
+
+    /**
+     * Sums the identifiers of each shard at once
+     */
+    @Override
+    public Map<Long, Double> transactionSums(Collection<Long> parentIds) {
+        final Map<Long, Double> sums = new HashMap<>();
+        idsPerShard(parentIds).forEach((shard, ids) -> sums.putAll(shards.get(shard).transactionSums(ids)));
+        return sums;
+    }
+
+    @Override
+    public TypeStatistics subTreeStatistics(Long parentId, String type) throws TransactionDoesNotExistException {
+        final Integer shard = shardsById.get(parentId);
+        if (shard == null) {
+            throw new TransactionDoesNotExistException(parentId);
+        }
+        return shards.get(shard).subTreeStatistics(parentId, type);
+    }
+
+    @Override
+    public long typeIndexFootprint() {
+        return shards.stream().mapToLong(TransactionalService::typeIndexFootprint).sum();
+    }
+
+    /**
+     * The shard a transaction belongs to: the shard of its parent, or the home shard of its identifier for a root
+     * @throws ParentTransactionDoesNotExistException if the parent is not in any shard
+     */
+    private int shardOf(Long id, Transaction transaction) throws ParentTransactionDoesNotExistException {
+        final Long parentId = transaction.parentId();
+        if (parentId == null) {
+            return Math.floorMod(Long.hashCode(id * 0x9E3779B97F4A7C15L), shards.size());
+        }
+        final Integer shard = shardsById.get(parentId);
+        if (shard == null) {
+            throw new ParentTransactionDoesNotExistException(parentId);
+        }
+        return shard;
+    }
+
+    /**
+     * Adds a part of a batch to its shard, releasing the identifiers the shard did not store, whether it rejected
+     * them or failed
+     * @return the rejected transactions
+     */
+    private Map<Long, InvalidTransaction> addTransactions(int shard, Map<Long, Transaction> batch) {
+        boolean added = false;
+        try {
+            final Map<Long, InvalidTransaction> rejected = release(shard, shards.get(shard).addTransactions(batch));
+            added = true;
+            return rejected;
+        } finally {
+            if (!added) {
+                releaseUnstored(shard, batch.keySet());
+            }
+        }
+    }
+
+    /**
+     * Releases the identifiers a shard failing in the middle of a batch did not store. They are all kept reserved if
+     * the shard cannot tell which ones it stored, since releasing a stored one would let another shard store it too
+     */
+    private void releaseUnstored(int shard, Set<Long> ids) {
+        final Set<Long> unstored = new HashSet<>(ids);
+        try {
+            unstored.removeAll(shards.get(shard).transactions(ids).keySet());
+        } catch (RuntimeException e) {
+            log.warn(String.format("Keeping %d identifiers reserved, shard %d cannot tell which ones it stored", ids.size(), shard), e);
+            return;
+        }
+        unstored.forEach(id -> shardsById.remove(id, shard));
+    }
+
+    /**
+     * Releases the identifiers a shard rejected, so that they can be used again
+     * @return the rejected transactions
+     */
+    private Map<Long, InvalidTransaction> release(int shard, Map<Long, InvalidTransaction> rejected) {
+        rejected.keySet().forEach(id -> shardsById.remove(id, shard));
+        return rejected;
+    }
+
+    /**
+     * Groups identifiers by shard, leaving out the ones without a transaction
+     */
+    private Map<Integer, List<Long>> idsPerShard(Collection<Long> ids) {
+        final Map<Integer, List<Long>> idsPerShard = new HashMap<>();
+        for (Long id : ids) {
+            final Integer shard = shardsById.get(id);
+            if (shard != null) {
+                idsPerShard.computeIfAbsent(shard, k -> new ArrayList<>()).add(id);
+            }
+        }
+        return idsPerShard;
+    }
+}
@@ -0,0 +1,171 @@
+package com.n26.codechallenge.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded memo of subtree sums, evicting the least recently read ones.
+ *
+ * The memo is split in stripes, each one an access ordered map with its own lock and an equal share of the bound.
+ * The sum of a transaction must be invalidated whenever a descendant is added. A sum may be computed while a
+ * descendant is being added though, so every stripe carries a stamp bumped by each invalidation, and a sum is only
+ * memoized if no invalidation hit its stripe while it was computed. Otherwise the memo could keep a sum missing the
+ * new descendant for good.
+ *
+ * Invalidating means walking up the ancestors of every new transaction, so the memo stays inactive, and writers do
+ * not walk, until the first sum is requested. Clearing the memo deactivates it and bumps every stamp, while reading a
+ * stamp activates it again: a sum computed across a clear is either dropped or computed while writers invalidate.
+ */
+class SubTreeSumCache implements SumCacheStatistics {
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile boolean active;
+
+    /**
+     * @param maxEntries the number of sums memoized at most, 0 to memoize nothing
+     */
+    SubTreeSumCache(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("The size of the sum cache cannot be negative");
+        }
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe((maxEntries + STRIPES - 1) / STRIPES);
+        }
+    }
+
+    /**
+     * Returns a memoized sum, activating the memo
+     * @param id
+     * @return the sum, or null if it is not memoized
+     */
+    Double get(Long id) {
+        active = true;
+        final Stripe stripe = stripe(id);
+        final Double sum;
+        synchronized (stripe) {
+            sum = stripe.get(id);
+        }
+        (sum != null ? hits : misses).increment();
+        return sum;
+    }
+
+    /**
+     * The stamp to hand over to {@link #put} once the sum is computed. It must be read before computing the sum.
+     *
+     * The memo is activated once the stamp is read: a {@link #clear()} deactivating it before then bumps the stamp
+     * before the sum can be memoized, so the sum is dropped, and one deactivating it afterwards bumps the stamp too
+     */
+    long stamp(Long id) {
+        final Stripe stripe = stripe(id);
+        final long stamp;
+        synchronized (stripe) {
+            stamp = stripe.stamp;
+        }
+        active = true;
+        return stamp;
+    }
+
+    /**
+     * Memoizes a sum, unless a transaction of the same stripe was invalidated since the stamp was read
+     */
+    void put(Long id, Double sum, long stamp) {
+        final Stripe stripe = stripe(id);
+        synchronized (stripe) {
+            if (stripe.stamp == stamp && stripe.maxEntries > 0) {
+                stripe.put(id, sum);
+            }
+        }
+    }
+
+    /**
+     * Whether a sum may be memoized, in which case the ancestors of new transactions must be invalidated. The
+     * memo is activated before any sum is computed, so a writer finding it inactive added its transaction before
+     * any sum that could be memoized was computed
+     */
+    boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Drops the memoized sum of a transaction, if any, and fails the pending memoizations of its stripe
+     */
+    void invalidate(Long id) {
+        final Stripe stripe = stripe(id);
+        synchronized (stripe) {
+            stripe.remove(id);
+            stripe.stamp++;
+        }
+    }
+
+    /**
+     * Drops every memoized sum and deactivates the memo until the next sum is requested. The memo is deactivated
+     * before the stamps are bumped, so that the sums being computed meanwhile, which writers may not invalidate
+     * anymore, are not memoized
+     */
+    void clear() {
+        active = false;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+                stripe.stamp++;
+            }
+        }
+    }
+
+    @Override
+    public long sumCacheHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long sumCacheMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long sumCacheEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long sumCacheSize() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripe(Long id) {
+        final long hash = id * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (hash >>> 60)];
+    }
+
+    private class Stripe extends LinkedHashMap<Long, Double> {
+
+        private final int maxEntries;
+        private long stamp;
+
+        Stripe(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Double> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.n26.codechallenge.service;
+
+/**
+ * Exposes how well a memo of subtree sums performs
+ */
+public interface SumCacheStatistics {
+
+    /**
+     * The number of sums served from the memo so far
+     * @return
+     */
+    long sumCacheHits();
+
+    /**
+     * The number of sums computed because they were not memoized, so far
+     * @return
+     */
+    long sumCacheMisses();
+
+    /**
+     * The number of sums dropped so far to keep the memo within its bound, invalidations not counting
+     * @return
+     */
+    long sumCacheEvictions();
+
+    /**
+     * The number of sums currently memoized
+     * @return
+     */
+    long sumCacheSize();
+}
@@ -1,10 +1,18 @@
 package com.n26.codechallenge.service;
 
 import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
 import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.ReplicaBehindException;
 import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
 import com.n26.codechallenge.exception.TransactionDoesNotExistException;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface TransactionalService {
@@ -19,8 +27,21 @@ public interface TransactionalService {
      * @param transaction
      * @throws TransactionAlreadyExistsException
      * @throws ParentTransactionDoesNotExistException
+     * @throws InvalidAmountException if the service cannot account for the amount exactly
      */
-    void addTransaction(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException;
+    void addTransaction(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException, InvalidAmountException;
+
+    /**
+     * Register a batch of transactions.
+     *
+     * A transaction may refer to a parent registered before or to a parent of the same batch, wherever the parent
+     * appears in the batch. A transaction that is rejected does not prevent the others from being registered, but
+     * its descendants in the batch are rejected too.
+     *
+     * @param transactions the transactions, by identifier
+     * @return the rejected transactions, along with the reason
+     */
+    Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions);
 
     /**
      * Recover a single transaction by its unique identifier.
@@ -33,6 +54,25 @@ public interface TransactionalService {
      */
     Transaction transaction(Long transactionId) throws TransactionDoesNotExistException;
 
+    /**
+     * Recover the transactions of a batch of identifiers.
+     *
+     * Identifiers without a transaction are left out of the result instead of failing the whole batch
+     * @param transactionIds the identifiers, possibly repeated
+     * @return the transactions found, by identifier
+     */
+    default Map<Long, Transaction> transactions(Collection<Long> transactionIds) {
+        final Map<Long, Transaction> found = new HashMap<>();
+        for (Long transactionId : transactionIds) {
+            try {
+                found.put(transactionId, transaction(transactionId));
+            } catch (TransactionDoesNotExistException e) {
+                // left out
+            }
+        }
+        return found;
+    }
+
     /**
      * Return a set of transactions that share a given type.
      *
@@ -42,6 +82,39 @@ public interface TransactionalService {
      */
     Set<Long> transactionByType(String type);
 
+    /**
+     * Return a page of the transactions having any of the given types, in ascending order of identifier.
+     *
+     * The next page starts after the last identifier of the current one.
+     *
+     * @param types
+     * @param after only identifiers strictly greater are returned, null to start from the lowest
+     * @param limit the maximum number of identifiers returned
+     * @return
+     */
+    List<Long> transactionByTypes(Collection<String> types, Long after, int limit);
+
+    /**
+     * The count, total, lowest, highest and average amount of the transactions of a type.
+     *
+     * Unless overridden, the statistics are computed by reading every transaction of the type
+     * @param type
+     * @return {@link TypeStatistics#EMPTY} if there is no transaction with the given type
+     */
+    default TypeStatistics typeStatistics(String type) {
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (Transaction transaction : transactions(transactionByType(type)).values()) {
+            count++;
+            sum += transaction.amount();
+            min = Math.min(min, transaction.amount());
+            max = Math.max(max, transaction.amount());
+        }
+        return count == 0 ? TypeStatistics.EMPTY : new TypeStatistics(count, sum, min, max);
+    }
+
     /**
      * The sum of transactions amount linked to a particular transaction
      *
@@ -51,4 +124,72 @@ public interface TransactionalService {
      * @return
      */
     Double transactionSum(Long parentId) throws TransactionDoesNotExistException;
+
+    /**
+     * The sums of a batch of transactions.
+     *
+     * Identifiers without a transaction are left out of the result instead of failing the whole batch
+     * @param parentIds the identifiers, possibly repeated
+     * @return the sums, by identifier
+     */
+    default Map<Long, Double> transactionSums(Collection<Long> parentIds) {
+        final Map<Long, Double> sums = new HashMap<>();
+        for (Long parentId : parentIds) {
+            try {
+                sums.put(parentId, transactionSum(parentId));
+            } catch (TransactionDoesNotExistException e) {
+                // left out
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * The count, total, lowest, highest and average amount of the transactions linked to a particular transaction,
+     * itself included, optionally only counting the transactions of a type (e.g. every "cars" under a transaction)
+     *
+     * @param parentId
+     * @param type the type of the transactions counted, all of them if null
+     * @return {@link TypeStatistics#EMPTY} if no transaction of the subtree has the type
+     * @throws TransactionDoesNotExistException
+     */
+    TypeStatistics subTreeStatistics(Long parentId, String type) throws TransactionDoesNotExistException;
+
+    /**
+     * The estimated heap footprint of the type index kept by the service, in bytes
+     *
+     * @return 0 if types are not indexed but scanned on the fly
+     */
+    default long typeIndexFootprint() {
+        return 0;
+    }
+
+    /**
+     * Grows whenever transactions the service returned may have been removed or replaced, as when a follower starts
+     * over from an empty service, so that callers keeping what they derived from them know to drop it
+     *
+     * @return 0 if transactions are never removed nor replaced
+     */
+    default long generation() {
+        return 0;
+    }
+
+    /**
+     * The position of the service in the stream of accepted writes it is replicated by: the sequence number of the
+     * last accepted write on a primary, the sequence number up to which writes are applied on a follower
+     *
+     * @return 0 if the service is not replicated
+     */
+    default long sequence() {
+        return 0;
+    }
+
+    /**
+     * Waits until the reads of the service see every write up to a sequence number returned by the primary
+     *
+     * @param sequence
+     * @throws ReplicaBehindException if the writes are still not applied once the wait of the service is over
+     */
+    default void awaitSequence(long sequence) throws ReplicaBehindException {
+    }
 }
@@ -1,15 +1,24 @@
 package com.n26.codechallenge.service;
 
 import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeDictionary;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidTransaction;
 import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
 import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
 import com.n26.codechallenge.exception.TransactionDoesNotExistException;
 import com.n26.codechallenge.repository.InMemoryTransactionalRepository;
+import com.n26.codechallenge.repository.SubTreeListener;
+import com.n26.codechallenge.repository.TransactionBatch;
+import com.n26.codechallenge.repository.TransactionColumns;
+import com.n26.codechallenge.repository.TransactionSnapshot;
+import com.n26.codechallenge.repository.TransactionTreeTraversal;
 import com.n26.codechallenge.repository.TransactionalRepository;
+import com.n26.codechallenge.repository.TypeAggregates;
 
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
 
 /**
  * An implementation of transactional service that is optimized for write operations.
@@ -17,13 +26,42 @@ import java.util.stream.Collectors;
  * All calculation for read operations are done on the fly.
  *
  * The task of saving and retrieving individual transactions is delegated to a @link {@link TransactionalRepository}
+ * and subtree sums are computed by a {@link TransactionTreeTraversal}. Sums may be memoized by a bounded
+ * {@link SubTreeSumCache}, in which case adding a transaction invalidates the sums of its ancestors. The statistics of
+ * every type are kept in {@link TypeAggregates}, updated by every write.
  */
-public class WriteOptimizedTransactionService implements TransactionalService {
+public class WriteOptimizedTransactionService implements TransactionalService, SumCacheStatistics {
+
+    /**
+     * Number of ordinals scanned at once while iterating the transactions of a type over {@link TransactionColumns}
+     */
+    private static final int SCAN_RANGE = 16384;
 
     private final TransactionalRepository transactionalRepository;
+    private final TransactionColumns columns;
+    private final TransactionTreeTraversal traversal;
+    private final SubTreeSumCache sumCache;
+    private final TypeAggregates typeAggregates = new TypeAggregates();
 
-    WriteOptimizedTransactionService(TransactionalRepository transactionalRepository) {
+    /**
+     * @param transactionalRepository the repository holding the transactions
+     * @param parallelThreshold the number of visited transactions after which a sum is split across the common {@link java.util.concurrent.ForkJoinPool}
+     * @param sumCacheSize the number of subtree sums memoized at most, 0 to compute every sum
+     * @param subTreeListener notified of the size and depth of every subtree summed up
+     */
+    public WriteOptimizedTransactionService(TransactionalRepository transactionalRepository, int parallelThreshold, int sumCacheSize, SubTreeListener subTreeListener) {
         this.transactionalRepository = transactionalRepository;
+        this.columns = transactionalRepository instanceof TransactionColumns ? (TransactionColumns) transactionalRepository : null;
+        this.traversal = new TransactionTreeTraversal(transactionalRepository, parallelThreshold, subTreeListener);
+        this.sumCache = new SubTreeSumCache(sumCacheSize);
+    }
+
+    public WriteOptimizedTransactionService(TransactionalRepository transactionalRepository, int parallelThreshold) {
+        this(transactionalRepository, parallelThreshold, 0, SubTreeListener.IGNORE);
+    }
+
+    public WriteOptimizedTransactionService(TransactionalRepository transactionalRepository) {
+        this(transactionalRepository, TransactionTreeTraversal.DEFAULT_PARALLEL_THRESHOLD);
     }
 
     public WriteOptimizedTransactionService(){
@@ -41,6 +79,42 @@ public class WriteOptimizedTransactionService implements TransactionalService {
     @Override
     public void addTransaction(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException {
         transactionalRepository.addTransaction(id, transaction);
+        typeAggregates.add(transaction);
+        if (sumCache.isActive()) {
+            traversal.forEachAncestor(transaction.parentId(), sumCache::invalidate);
+        }
+    }
+
+    /**
+     * Orders the batch parents first and hands it over to the repository as a whole
+     *
+     * @param transactions the transactions, by identifier
+     * @return the rejected transactions, along with the reason
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        return addParentsFirst(TransactionBatch.parentsFirst(transactions));
+    }
+
+    /**
+     * Hands a batch already ordered parents first over to the repository, updates the type aggregates and then
+     * invalidates the memoized sums of the ancestors of the accepted transactions, visiting every ancestor once per batch
+     */
+    Map<Long, InvalidTransaction> addParentsFirst(Map<Long, Transaction> ordered) {
+        final Map<Long, InvalidTransaction> rejected = transactionalRepository.addTransactions(ordered);
+        final Map<Long, Transaction> accepted = TransactionBatch.accepted(ordered, rejected.keySet());
+        typeAggregates.addAll(accepted.values());
+        if (sumCache.isActive()) {
+            final Set<Long> invalidated = new HashSet<>();
+            for (Transaction transaction : accepted.values()) {
+                Long ancestor = transaction.parentId();
+                while (ancestor != null && invalidated.add(ancestor)) {
+                    sumCache.invalidate(ancestor);
+                    ancestor = transactionalRepository.transaction(ancestor).parentId();
+                }
+            }
+        }
+        return rejected;
     }
 
     /**
@@ -60,13 +134,79 @@ public class WriteOptimizedTransactionService implements TransactionalService {
     }
 
     /**
-     * Completely delegates its behaviour to the underlying {@link TransactionalRepository}
+     * Reads the whole batch from the repository at once
+     */
+    @Override
+    public Map<Long, Transaction> transactions(Collection<Long> transactionIds) {
+        return transactionalRepository.transactions(transactionIds);
+    }
+
+    /**
+     * Returns a read only view over the transactions of the underlying {@link TransactionalRepository} having the given type.
+     *
+     * Nothing is collected: the view pins the snapshot of the repository taken by the call, and every iteration scans
+     * it in ordinal order, skipping transactions of other types, so the view never changes once returned. The type is
+     * resolved to its {@link TypeDictionary} code once, so the scan only compares ints, and runs over the type column,
+     * {@link #SCAN_RANGE} ordinals at a time, when the repository keeps {@link TransactionColumns}.
      * @param type
      * @return
      */
     @Override
     public Set<Long> transactionByType(final String type) {
-        return transactionalRepository.allTransactions().entrySet().stream().filter(t -> t.getValue().hasType(type)).map(Map.Entry::getKey).collect(Collectors.toSet());
+        final int typeCode = TypeDictionary.lookup(type);
+        if (typeCode == TypeDictionary.NONE) {
+            return Collections.emptySet();
+        }
+        return new TypeView(typeCode, transactionalRepository.allTransactions());
+    }
+
+    /**
+     * Scans the repository keeping the lowest matching identifiers after the cursor in a bounded heap,
+     * so that no more than a page of identifiers is ever held. Types are matched by their {@link TypeDictionary} code,
+     * over the type column when the repository keeps {@link TransactionColumns}.
+     */
+    @Override
+    public List<Long> transactionByTypes(Collection<String> types, Long after, int limit) {
+        final BitSet wanted = new BitSet();
+        for (String type : types) {
+            final int typeCode = TypeDictionary.lookup(type);
+            if (typeCode != TypeDictionary.NONE) {
+                wanted.set(typeCode);
+            }
+        }
+        if (wanted.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final PriorityQueue<Long> lowest = new PriorityQueue<>(Math.min(limit, 1024), Comparator.reverseOrder());
+        final LongConsumer offer = id -> {
+            if ((after == null || id > after) && (lowest.size() < limit || id < lowest.peek())) {
+                lowest.add(id);
+                if (lowest.size() > limit) {
+                    lowest.poll();
+                }
+            }
+        };
+        if (columns != null) {
+            columns.forEachIdOfTypes(wanted, 0, columns.ordinals(), offer);
+        } else {
+            for (Map.Entry<Long, Transaction> entry : transactionalRepository.allTransactions().entrySet()) {
+                final int typeCode = entry.getValue().typeCode();
+                if (typeCode != TypeDictionary.NONE && wanted.get(typeCode)) {
+                    offer.accept(entry.getKey());
+                }
+            }
+        }
+        final List<Long> page = new ArrayList<>(lowest);
+        Collections.sort(page);
+        return page;
+    }
+
+    /**
+     * Reads the aggregates of the type, kept up to date by every write
+     */
+    @Override
+    public TypeStatistics typeStatistics(String type) {
+        return typeAggregates.statistics(type);
     }
 
     /**
@@ -78,22 +218,188 @@ public class WriteOptimizedTransactionService implements TransactionalService {
      */
     @Override
     public Double transactionSum(Long parentId) throws TransactionDoesNotExistException {
-        return subTreeAmount(parentId);
+        Double sum = sumCache.get(parentId);
+        if (sum != null) {
+            return sum;
+        }
+        final long stamp = sumCache.stamp(parentId);
+        sum = traversal.subTreeAmount(parentId);
+        if(sum == null){
+            throw new TransactionDoesNotExistException(parentId);
+        }
+        sumCache.put(parentId, sum, stamp);
+        return sum;
     }
 
     /**
-     * Recursive depth-first read from a tree stored in a HashMap
-     * @param parentId
-     * @return
-     * @throws TransactionDoesNotExistException
+     * Serves the memoized sums and computes the others as one batch, so that a subtree nested in the subtree of
+     * another transaction of the batch is walked once
+     *
+     * @param parentIds the identifiers, possibly repeated
+     * @return the sums, by identifier
      */
-    private Double subTreeAmount(Long parentId) throws TransactionDoesNotExistException {
-        Map<Long, Transaction> children = transactionalRepository.children(parentId);
-        Double acc = transaction(parentId).amount();
-        for (Long id: children.keySet()){
-            acc = acc + subTreeAmount(id);
+    @Override
+    public Map<Long, Double> transactionSums(Collection<Long> parentIds) {
+        final Map<Long, Double> sums = new HashMap<>();
+        final Map<Long, Long> stamps = new LinkedHashMap<>();
+        for (Long parentId : parentIds) {
+            if (sums.containsKey(parentId) || stamps.containsKey(parentId)) {
+                continue;
+            }
+            final Double sum = sumCache.get(parentId);
+            if (sum != null) {
+                sums.put(parentId, sum);
+            } else {
+                stamps.put(parentId, sumCache.stamp(parentId));
+            }
         }
-        return acc;
+        if (!stamps.isEmpty()) {
+            final Map<Long, Double> computed = traversal.subTreeAmounts(stamps.keySet());
+            computed.forEach((parentId, sum) -> sumCache.put(parentId, sum, stamps.get(parentId)));
+            sums.putAll(computed);
+        }
+        return sums;
+    }
+
+    /**
+     * Walks the whole subtree
+     */
+    @Override
+    public TypeStatistics subTreeStatistics(Long parentId, String type) throws TransactionDoesNotExistException {
+        final TypeStatistics statistics = traversal.subTreeStatistics(parentId, type);
+        if (statistics == null) {
+            throw new TransactionDoesNotExistException(parentId);
+        }
+        return statistics;
+    }
+
+    /**
+     * Drops every memoized sum, so that writes stop invalidating them until sums are requested again
+     */
+    public void clearSumCache() {
+        sumCache.clear();
+    }
+
+    @Override
+    public long sumCacheHits() {
+        return sumCache.sumCacheHits();
+    }
+
+    @Override
+    public long sumCacheMisses() {
+        return sumCache.sumCacheMisses();
+    }
+
+    @Override
+    public long sumCacheEvictions() {
+        return sumCache.sumCacheEvictions();
+    }
+
+    @Override
+    public long sumCacheSize() {
+        return sumCache.sumCacheSize();
     }
 
+    /**
+     * The identifiers of the transactions of a type, found by scanning a snapshot of the repository
+     */
+    private class TypeView extends AbstractSet<Long> {
+
+        private final int typeCode;
+        private final Map<Long, Transaction> snapshot;
+        private final int end;
+        private int size = -1;
+
+        TypeView(int typeCode, Map<Long, Transaction> snapshot) {
+            this.typeCode = typeCode;
+            this.snapshot = snapshot;
+            // the columns below the epoch of the snapshot are never written again
+            this.end = columns != null && snapshot instanceof TransactionSnapshot ? ((TransactionSnapshot) snapshot).epoch() : -1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            final Transaction transaction = snapshot.get(o);
+            return transaction != null && transaction.hasType(typeCode);
+        }
+
+        /**
+         * Counted by the first call only, since the view never changes
+         */
+        @Override
+        public int size() {
+            if (size < 0) {
+                int count = 0;
+                for (Iterator<Long> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+                    count++;
+                }
+                size = count;
+            }
+            return size;
+        }
+
+        @Override
+        public Iterator<Long> iterator() {
+            if (end >= 0) {
+                return columnIterator();
+            }
+            final Iterator<Map.Entry<Long, Transaction>> entries = snapshot.entrySet().iterator();
+            return new Iterator<Long>() {
+                private Long next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && entries.hasNext()) {
+                        final Map.Entry<Long, Transaction> entry = entries.next();
+                        if (entry.getValue().hasType(typeCode)) {
+                            next = entry.getKey();
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public Long next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    final Long current = next;
+                    next = null;
+                    return current;
+                }
+            };
+        }
+
+        /**
+         * Collects the matching identifiers of a range of ordinals at a time
+         */
+        private Iterator<Long> columnIterator() {
+            final BitSet typeCodes = new BitSet();
+            typeCodes.set(typeCode);
+            return new Iterator<Long>() {
+                private PrimitiveIterator.OfLong range = LongStream.empty().iterator();
+                private int from;
+
+                @Override
+                public boolean hasNext() {
+                    while (!range.hasNext() && from < end) {
+                        final int to = Math.min(end, from + SCAN_RANGE);
+                        final LongStream.Builder ids = LongStream.builder();
+                        columns.forEachIdOfTypes(typeCodes, from, to, ids);
+                        range = ids.build().iterator();
+                        from = to;
+                    }
+                    return range.hasNext();
+                }
+
+                @Override
+                public Long next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return range.nextLong();
+                }
+            };
+        }
+    }
 }
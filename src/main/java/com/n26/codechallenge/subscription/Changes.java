@@ -0,0 +1,53 @@
+package com.n26.codechallenge.subscription;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.n26.codechallenge.Transaction;
+
+import java.util.Map;
+
+/**
+ * The changes a subscriber is sent at once: the new transactions of the types it watches, the latest sums of the
+ * transactions it watches, and the number of transactions left out because it did not keep up
+ */
+public final class Changes {
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+            .setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE)
+            .setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+
+    private final Map<Long, Transaction> transactions;
+    private final Map<Long, Double> sums;
+    private final Long dropped;
+
+    public Changes(Map<Long, Transaction> transactions, Map<Long, Double> sums, long dropped) {
+        this.transactions = transactions;
+        this.sums = sums;
+        this.dropped = dropped == 0 ? null : dropped;
+    }
+
+    public Map<Long, Transaction> transactions() {
+        return transactions;
+    }
+
+    public Map<Long, Double> sums() {
+        return sums;
+    }
+
+    public long dropped() {
+        return dropped == null ? 0 : dropped;
+    }
+
+    /**
+     * Empty maps and a zero dropped count are left out
+     * @return
+     */
+    public String toJson() throws JsonProcessingException {
+        return mapper.writeValueAsString(this);
+    }
+}
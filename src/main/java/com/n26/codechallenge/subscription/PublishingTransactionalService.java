@@ -0,0 +1,146 @@
+package com.n26.codechallenge.subscription;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.service.TransactionalService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the transactions accepted by a {@link TransactionalService} to the clients of a {@link SubscriptionHub}.
+ *
+ * Every accepted transaction is handed to the clients watching its type and, while any client watches a sum, recorded
+ * for the watched sums among its own and its ancestors' to be marked as changed. The hub is flushed in the background
+ * every period, the ancestors being looked up and the changed sums read from the underlying service on the flushing
+ * thread, so that writers never walk up a tree.
+ */
+@Slf4j
+public class PublishingTransactionalService implements TransactionalService, AutoCloseable {
+
+    private final TransactionalService delegate;
+    private final SubscriptionHub hub;
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * @param delegate the service serving the requests
+     * @param hub the subscriptions the accepted transactions are published to
+     * @param flushPeriodMillis how often the pending changes are sent to the clients
+     */
+    public PublishingTransactionalService(TransactionalService delegate, SubscriptionHub hub, long flushPeriodMillis) {
+        this.delegate = delegate;
+        this.hub = hub;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "subscriptions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushPeriodMillis, flushPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds the transaction to the underlying service and, if accepted, publishes it
+     */
+    @Override
+    public void addTransaction(Long id, Transaction transaction) throws TransactionAlreadyExistsException, ParentTransactionDoesNotExistException, InvalidAmountException {
+        delegate.addTransaction(id, transaction);
+        hub.transactionAdded(id, transaction);
+    }
+
+    /**
+     * Adds the batch to the underlying service and publishes the accepted transactions
+     */
+    @Override
+    public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+        final Map<Long, InvalidTransaction> rejected = delegate.addTransactions(transactions);
+        transactions.forEach((id, transaction) -> {
+            if (!rejected.containsKey(id)) {
+                hub.transactionAdded(id, transaction);
+            }
+        });
+        return rejected;
+    }
+
+    @Override
+    public Transaction transaction(Long transactionId) throws TransactionDoesNotExistException {
+        return delegate.transaction(transactionId);
+    }
+
+    @Override
+    public Map<Long, Transaction> transactions(Collection<Long> transactionIds) {
+        return delegate.transactions(transactionIds);
+    }
+
+    @Override
+    public Set<Long> transactionByType(String type) {
+        return delegate.transactionByType(type);
+    }
+
+    @Override
+    public List<Long> transactionByTypes(Collection<String> types, Long after, int limit) {
+        return delegate.transactionByTypes(types, after, limit);
+    }
+
+    @Override
+    public TypeStatistics typeStatistics(String type) {
+        return delegate.typeStatistics(type);
+    }
+
+    @Override
+    public Double transactionSum(Long parentId) throws TransactionDoesNotExistException {
+        return delegate.transactionSum(parentId);
+    }
+
+    @Override
+    public Map<Long, Double> transactionSums(Collection<Long> parentIds) {
+        return delegate.transactionSums(parentIds);
+    }
+
+    @Override
+    public TypeStatistics subTreeStatistics(Long parentId, String type) throws TransactionDoesNotExistException {
+        return delegate.subTreeStatistics(parentId, type);
+    }
+
+    @Override
+    public long typeIndexFootprint() {
+        return delegate.typeIndexFootprint();
+    }
+
+    /**
+     * Sends the pending changes to the clients right away
+     */
+    public void flush() {
+        hub.flush(delegate);
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdownNow();
+        if (delegate instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) delegate).close();
+            } catch (Exception e) {
+                log.warn("Could not close the published service", e);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Could not send the changes to the subscribers", e);
+        }
+    }
+}
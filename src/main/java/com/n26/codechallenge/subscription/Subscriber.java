@@ -0,0 +1,18 @@
+package com.n26.codechallenge.subscription;
+
+import java.io.IOException;
+
+/**
+ * The client end of a {@link Subscription}, such as a server-sent event stream
+ */
+@FunctionalInterface
+public interface Subscriber {
+
+    /**
+     * Sends a batch of changes to the client, blocking while the client does not keep up
+     *
+     * @param changes
+     * @throws IOException if the client is gone, which ends the subscription
+     */
+    void send(Changes changes) throws IOException;
+}
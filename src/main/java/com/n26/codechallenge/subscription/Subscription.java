@@ -0,0 +1,93 @@
+package com.n26.codechallenge.subscription;
+
+import com.n26.codechallenge.Transaction;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * The transactions and types a client watches, along with the changes not sent to it yet.
+ *
+ * Changes are sent one batch at a time: while a batch is being sent, the following changes pile up, a sum replacing
+ * the previous value of the same transaction and new transactions being kept up to a bound past which they are only
+ * counted. A slow client thus gets fewer, larger batches and never holds up the writers or the other clients.
+ */
+public final class Subscription {
+
+    private final SubscriptionHub hub;
+    private final Set<Long> ids;
+    private final Set<String> types;
+    private final Subscriber subscriber;
+    private final int maxPending;
+
+    private Map<Long, Transaction> transactions = new LinkedHashMap<>();
+    private Map<Long, Double> sums = new LinkedHashMap<>();
+    private long dropped;
+    private boolean sending;
+
+    Subscription(SubscriptionHub hub, Set<Long> ids, Set<String> types, Subscriber subscriber, int maxPending) {
+        this.hub = hub;
+        this.ids = ids;
+        this.types = types;
+        this.subscriber = subscriber;
+        this.maxPending = maxPending;
+    }
+
+    public Set<Long> ids() {
+        return Collections.unmodifiableSet(ids);
+    }
+
+    public Set<String> types() {
+        return Collections.unmodifiableSet(types);
+    }
+
+    synchronized void offer(Long id, Transaction transaction) {
+        if (transactions.size() < maxPending) {
+            transactions.put(id, transaction);
+        } else {
+            dropped++;
+            hub.dropped();
+        }
+    }
+
+    synchronized void offer(Long id, Double sum) {
+        sums.put(id, sum);
+    }
+
+    /**
+     * Hands the pending changes to a sender, unless there is none or the previous batch is still being sent, in which
+     * case the changes piled up meanwhile are handed over as soon as it is sent
+     */
+    void deliver(Executor senders) {
+        final Changes changes;
+        synchronized (this) {
+            if (sending || (transactions.isEmpty() && sums.isEmpty() && dropped == 0)) {
+                return;
+            }
+            changes = new Changes(transactions, sums, dropped);
+            transactions = new LinkedHashMap<>();
+            sums = new LinkedHashMap<>();
+            dropped = 0;
+            sending = true;
+        }
+        senders.execute(() -> {
+            boolean sent = false;
+            try {
+                subscriber.send(changes);
+                sent = true;
+            } catch (Exception e) {
+                hub.unsubscribe(this);
+            } finally {
+                synchronized (this) {
+                    sending = false;
+                }
+            }
+            if (sent && hub.isOpen()) {
+                deliver(senders);
+            }
+        });
+    }
+}
@@ -0,0 +1,196 @@
+package com.n26.codechallenge.subscription;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.service.TransactionalService;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the {@link Subscription}s of the clients watching the sums of transactions or the new transactions of
+ * types, and sends them what changed.
+ *
+ * New transactions are handed to the subscriptions of their type as they are added. A sum is only marked as changed:
+ * a writer records the parent of its transaction, and every {@link #flush} walks up from the recorded parents, each
+ * tree once a level at a time, marking the watched sums above them. Each changed sum is then read once, whatever the
+ * number of writes that changed it and of clients watching it, and every subscription is handed its pending changes. Sending happens on a pool of sender threads, at
+ * most one per subscription at a time, so that a client that does not keep up only delays itself.
+ */
+public class SubscriptionHub implements AutoCloseable {
+
+    private final int maxPending;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<Long, Set<Subscription>> bySum = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<Subscription>> byType = new ConcurrentHashMap<>();
+    private final Set<Long> changedSums = ConcurrentHashMap.newKeySet();
+    private final Set<Long> changedParents = ConcurrentHashMap.newKeySet();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ExecutorService senders;
+
+    /**
+     * @param maxPending the number of new transactions kept for a subscription between two batches, past which they are
+     *                   only counted
+     */
+    public SubscriptionHub(int maxPending) {
+        this.maxPending = maxPending;
+        this.senders = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "subscription-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers a client, whose first batch holds the current sums of the transactions it watches
+     *
+     * @param ids the transactions whose sums are watched
+     * @param types the types whose new transactions are watched
+     * @param subscriber sends the changes to the client
+     */
+    public Subscription subscribe(Collection<Long> ids, Collection<String> types, Subscriber subscriber) {
+        final Subscription subscription = new Subscription(this, new LinkedHashSet<>(ids), new LinkedHashSet<>(types), subscriber, maxPending);
+        subscriptions.add(subscription);
+        subscription.ids().forEach(id -> register(bySum, id, subscription));
+        subscription.types().forEach(type -> register(byType, type, subscription));
+        changedSums.addAll(subscription.ids());
+        return subscription;
+    }
+
+    /**
+     * Stops sending changes to a client, which can be called more than once
+     */
+    public void unsubscribe(Subscription subscription) {
+        if (subscriptions.remove(subscription)) {
+            subscription.ids().forEach(id -> unregister(bySum, id, subscription));
+            subscription.types().forEach(type -> unregister(byType, type, subscription));
+        }
+    }
+
+    /**
+     * Whether any client watches a sum, without which the ancestors of new transactions need not be looked up
+     */
+    public boolean watchesSums() {
+        return !bySum.isEmpty();
+    }
+
+    /**
+     * Whether any client watches the sum of a transaction
+     */
+    public boolean watchesSum(Long id) {
+        return bySum.containsKey(id);
+    }
+
+    /**
+     * Hands a new transaction to the clients watching its type and, while any client watches a sum, records it for its
+     * own and its ancestors' sums to be marked as changed on the next flush
+     */
+    public void transactionAdded(Long id, Transaction transaction) {
+        final Set<Subscription> watching = byType.get(transaction.type());
+        if (watching != null) {
+            watching.forEach(subscription -> subscription.offer(id, transaction));
+        }
+        if (watchesSums()) {
+            if (watchesSum(id)) {
+                changedSums.add(id);
+            }
+            if (transaction.parentId() != null) {
+                changedParents.add(transaction.parentId());
+            }
+        }
+    }
+
+    /**
+     * Reads the sums changed since the last flush and hands every subscription its pending changes
+     *
+     * @param service the service the sums are read from
+     */
+    public void flush(TransactionalService service) {
+        final Set<Long> changed = drain(changedSums);
+        markAncestors(service, drain(changedParents), changed);
+        if (!changed.isEmpty()) {
+            service.transactionSums(changed).forEach((id, sum) -> {
+                final Set<Subscription> watching = bySum.get(id);
+                if (watching != null) {
+                    watching.forEach(subscription -> subscription.offer(id, sum));
+                }
+            });
+        }
+        subscriptions.forEach(subscription -> subscription.deliver(senders));
+    }
+
+    public int subscriptions() {
+        return subscriptions.size();
+    }
+
+    /**
+     * The number of new transactions left out of the batches of clients that did not keep up
+     */
+    public long droppedTransactions() {
+        return dropped.get();
+    }
+
+    void dropped() {
+        dropped.incrementAndGet();
+    }
+
+    boolean isOpen() {
+        return !senders.isShutdown();
+    }
+
+    @Override
+    public void close() {
+        senders.shutdownNow();
+    }
+
+    /**
+     * Adds the watched sums among the given transactions and their ancestors to the changed ones, reading a level of
+     * parents at a time and never going past an ancestor already seen
+     */
+    private void markAncestors(TransactionalService service, Set<Long> parents, Set<Long> changed) {
+        final Set<Long> seen = new HashSet<>();
+        Set<Long> level = parents;
+        while (!level.isEmpty() && watchesSums()) {
+            seen.addAll(level);
+            level.stream().filter(this::watchesSum).forEach(changed::add);
+            final Set<Long> above = new HashSet<>();
+            service.transactions(level).values().forEach(transaction -> {
+                if (transaction.parentId() != null && !seen.contains(transaction.parentId())) {
+                    above.add(transaction.parentId());
+                }
+            });
+            level = above;
+        }
+    }
+
+    private static Set<Long> drain(Set<Long> ids) {
+        final Set<Long> drained = new HashSet<>();
+        for (Iterator<Long> iterator = ids.iterator(); iterator.hasNext(); ) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+
+    private static <K> void register(ConcurrentMap<K, Set<Subscription>> index, K key, Subscription subscription) {
+        index.compute(key, (k, watching) -> {
+            final Set<Subscription> updated = watching == null ? ConcurrentHashMap.newKeySet() : watching;
+            updated.add(subscription);
+            return updated;
+        });
+    }
+
+    private static <K> void unregister(ConcurrentMap<K, Set<Subscription>> index, K key, Subscription subscription) {
+        index.computeIfPresent(key, (k, watching) -> {
+            watching.remove(subscription);
+            return watching.isEmpty() ? null : watching;
+        });
+    }
+}
@@ -76,4 +76,35 @@ public class TransactionTest {
         assertEquals(new Transaction(23d, "type", 2l).toJson(), "{\"amount\":23.0,\"type\":\"type\",\"parent_id\":2}");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void
+    has_type_compares_codes() throws Exception {
+        Transaction transaction = new Transaction(324d, "any_type");
+        assertEquals(transaction.typeCode(), TypeDictionary.encode("any_type"));
+        assertTrue(transaction.hasType(TypeDictionary.encode("any_type")));
+        assertFalse(transaction.hasType(TypeDictionary.encode("another_type")));
+        assertEquals(new Transaction(324d, transaction.typeCode(), null), transaction);
+        assertFalse(transaction.hasType("never_seen_type"));
+    }
+
+    @Test
+    public void
+    json_does_not_expose_the_type_code() throws Exception {
+        assertFalse(new Transaction(23d, "type").toJson().contains("code"));
+    }
+
+    @Test
+    public void
+    types_read_from_requests_are_registered_once_accepted() throws Exception {
+        Transaction transaction = new Transaction(1d, "transaction_not_registered_yet");
+        assertEquals(TypeDictionary.lookup("transaction_not_registered_yet"), TypeDictionary.NONE);
+        assertTrue(transaction.hasType("transaction_not_registered_yet"));
+
+        Transaction encoded = transaction.encoded();
+        assertEquals(encoded, transaction);
+        assertEquals(encoded.typeCode(), TypeDictionary.lookup("transaction_not_registered_yet"));
+        assertNotEquals(encoded.typeCode(), TypeDictionary.NONE);
+        assertSame(encoded.encoded(), encoded);
+    }
+
+}
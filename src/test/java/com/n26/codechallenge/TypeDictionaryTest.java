@@ -0,0 +1,62 @@
+package com.n26.codechallenge;
+
+import org.testng.annotations.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link TypeDictionary}
+ *
+ */
+public class TypeDictionaryTest {
+
+    @Test
+    public void
+    encode_returns_the_same_code_for_the_same_type() throws Exception {
+        int code = TypeDictionary.encode("dictionary_cars");
+        assertEquals(TypeDictionary.encode(new String("dictionary_cars")), code);
+        assertEquals(TypeDictionary.lookup("dictionary_cars"), code);
+        assertEquals(TypeDictionary.decode(code), "dictionary_cars");
+        assertNotEquals(TypeDictionary.encode("dictionary_shopping"), code);
+    }
+
+    @Test
+    public void
+    lookup_does_not_assign_codes() throws Exception {
+        assertEquals(TypeDictionary.lookup("dictionary_never_encoded"), TypeDictionary.NONE);
+        assertEquals(TypeDictionary.lookup("dictionary_never_encoded"), TypeDictionary.NONE);
+    }
+
+    @Test
+    public void
+    null_type_has_no_code() throws Exception {
+        assertEquals(TypeDictionary.encode(null), TypeDictionary.NONE);
+        assertNull(TypeDictionary.decode(TypeDictionary.NONE));
+    }
+
+    @Test
+    public void
+    concurrent_encoding_assigns_a_single_code_per_type() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        Set<String> pairs = ConcurrentHashMap.newKeySet();
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 500; i++) {
+                    String type = "dictionary_concurrent_" + i;
+                    int code = TypeDictionary.encode(type);
+                    assertEquals(TypeDictionary.decode(code), type);
+                    pairs.add(type + "=" + code);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(pairs.size(), 500);
+    }
+}
@@ -0,0 +1,95 @@
+package com.n26.codechallenge.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.n26.codechallenge.ApiApplication;
+import com.n26.codechallenge.Transaction;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.*;
+import org.springframework.web.client.RestTemplate;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Integration test to ensure instances of the application started on localhost form a cluster, which serves the API
+ * from any node and can be grown while keeping every transaction
+ */
+public class ClusterIT {
+
+    private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+    private final RestTemplate rest = new RestTemplate();
+
+    @AfterClass
+    public void stop() {
+        instances.forEach(ConfigurableApplicationContext::close);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private void start(String self, List<String> nodes) {
+        instances.add(new SpringApplicationBuilder(ApiApplication.class).properties(
+                "server.port=" + self.substring(self.lastIndexOf(':') + 1),
+                "spring.jmx.enabled=false",
+                "transactionservice.cluster.self=" + self,
+                "transactionservice.cluster.nodes=" + String.join(",", nodes)).run());
+    }
+
+    private void put(String node, long id, Transaction transaction) throws JsonProcessingException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        ResponseEntity<Map> put = rest.exchange(node + "/transactionservice/transaction/" + id, HttpMethod.PUT, new HttpEntity<>(transaction.toJson(), headers), Map.class);
+        assertEquals(put.getStatusCode(), HttpStatus.CREATED);
+    }
+
+    private double sum(String node, long id) {
+        return ((Number) rest.getForObject(node + "/transactionservice/sum/" + id, Map.class).get("sum")).doubleValue();
+    }
+
+    @Test public void
+    nodes_serve_every_tree_before_and_after_the_cluster_grows() throws Exception {
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add("http://localhost:" + freePort());
+        }
+        List<String> initial = nodes.subList(0, 3);
+        for (String node : initial) {
+            start(node, initial);
+        }
+
+        for (long root = 0; root < 30; root++) {
+            put(nodes.get((int) (root % 3)), root, new Transaction(1d, "cluster_it"));
+            put(nodes.get((int) ((root + 1) % 3)), 100 + root, new Transaction(2d, "cluster_it", root));
+        }
+        for (String node : initial) {
+            assertEquals(sum(node, 7), 3d);
+            assertEquals(rest.getForObject(node + "/transactionservice/types/cluster_it", List.class).size(), 60);
+        }
+
+        start(nodes.get(3), initial);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        ResponseEntity<Map> membership = rest.exchange(nodes.get(3) + "/cluster/nodes", HttpMethod.PUT, new HttpEntity<>(nodes, headers), Map.class);
+        assertEquals(membership.getBody().get("current"), nodes);
+
+        put(nodes.get(3), 200, new Transaction(4d, "cluster_it", 107l));
+        for (String node : nodes) {
+            for (long root = 0; root < 30; root++) {
+                assertEquals(sum(node, root), root == 7 ? 7d : 3d);
+            }
+            assertEquals(rest.getForObject(node + "/transactionservice/types/cluster_it", List.class).size(), 61);
+            assertEquals(rest.getForObject(node + "/cluster/nodes", Map.class).get("current"), nodes);
+        }
+    }
+}
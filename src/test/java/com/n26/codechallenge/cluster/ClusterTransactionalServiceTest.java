@@ -0,0 +1,412 @@
+package com.n26.codechallenge.cluster;
+
+import com.google.common.collect.Sets;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.cluster.ClusterProtocol.Batch;
+import com.n26.codechallenge.exception.ClusterUnavailableException;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.repository.FixedPointSumRepository;
+import com.n26.codechallenge.repository.InMemoryTransactionalRepository;
+import com.n26.codechallenge.repository.InMemoryTypeRepository;
+import com.n26.codechallenge.service.ReadOptimizedTransactionService;
+import com.n26.codechallenge.service.WriteOptimizedTransactionService;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Set of unit tests to ensure the expected behaviour of {@link ClusterTransactionalService}, the nodes of a cluster
+ * calling each other in process with the bodies of the {@link ClusterProtocol}
+ */
+public class ClusterTransactionalServiceTest {
+
+    /**
+     * Calls the nodes registered in a map, every body going through its JSON
+     */
+    private static class InProcessClient implements ClusterClient {
+
+        private final Map<String, ClusterTransactionalService> nodes = new HashMap<>();
+        private final Set<String> failingWrites = new HashSet<>();
+        private int handOversBeforeFailure = Integer.MAX_VALUE;
+
+        private ClusterTransactionalService node(String node) {
+            final ClusterTransactionalService service = nodes.get(node);
+            if (service == null) {
+                throw new ClusterUnavailableException(node, new IllegalStateException("not started"));
+            }
+            return service;
+        }
+
+        private static <T> T json(Object body, com.fasterxml.jackson.core.type.TypeReference<T> type) {
+            return ClusterProtocol.read(ClusterProtocol.write(body), type);
+        }
+
+        @Override
+        public Map<Long, Long> roots(String node, Collection<Long> ids, Hop hop) {
+            return json(node(node).roots(json(ids, ClusterProtocol.IDS), hop), ClusterProtocol.ROOTS);
+        }
+
+        @Override
+        public Set<Long> reserve(String node, Map<Long, Long> roots, Hop hop) {
+            return json(node(node).reserve(json(roots, ClusterProtocol.ROOTS), hop), ClusterProtocol.ID_SET);
+        }
+
+        @Override
+        public void release(String node, Map<Long, Long> roots, Hop hop) {
+            node(node).release(json(roots, ClusterProtocol.ROOTS), hop);
+        }
+
+        @Override
+        public Map<Long, InvalidTransaction> addTransactions(String node, Map<Long, Transaction> transactions, Map<Long, Long> roots, Hop hop) {
+            if (failingWrites.contains(node) || (hop == Hop.FORWARDED && handOversBeforeFailure-- <= 0)) {
+                throw new ClusterUnavailableException(node, new IllegalStateException("timed out"));
+            }
+            final Batch batch = ClusterProtocol.read(ClusterProtocol.write(new Batch(transactions, roots)), Batch.class);
+            final Map<Long, InvalidTransaction> rejected = node(node).addTransactions(batch.transactions, batch.roots, hop);
+            return ClusterProtocol.decode(json(ClusterProtocol.encode(rejected), ClusterProtocol.REJECTIONS), transactions);
+        }
+
+        @Override
+        public Map<Long, Transaction> transactions(String node, Map<Long, Long> roots, Hop hop) {
+            return json(node(node).transactions(json(roots, ClusterProtocol.ROOTS), hop), ClusterProtocol.TRANSACTIONS);
+        }
+
+        @Override
+        public Map<Long, Double> transactionSums(String node, Map<Long, Long> roots, Hop hop) {
+            return json(node(node).transactionSums(json(roots, ClusterProtocol.ROOTS), hop), ClusterProtocol.SUMS);
+        }
+
+        @Override
+        public TypeStatistics subTreeStatistics(String node, Long parentId, Long root, String type, Hop hop) {
+            TypeStatistics statistics = node(node).subTreeStatistics(parentId, root, type, hop);
+            return ClusterProtocol.readStatistics(ClusterProtocol.write(statistics == null ? null : ClusterProtocol.fields(statistics)));
+        }
+
+        @Override
+        public Set<Long> localTransactionByType(String node, String type) {
+            return json(node(node).localTransactionByType(type), ClusterProtocol.ID_SET);
+        }
+
+        @Override
+        public List<Long> localTransactionByTypes(String node, Collection<String> types, Long after, int limit) {
+            return json(node(node).localTransactionByTypes(types, after, limit), ClusterProtocol.IDS);
+        }
+
+        @Override
+        public TypeStatistics localTypeStatistics(String node, String type) {
+            return ClusterProtocol.readStatistics(ClusterProtocol.write(ClusterProtocol.fields(node(node).localTypeStatistics(type))));
+        }
+
+        @Override
+        public void prepare(String node, List<String> current, List<String> pending) {
+            node(node).prepare(current, pending);
+        }
+
+        @Override
+        public void migrate(String node) {
+            node(node).migrate();
+        }
+
+        @Override
+        public void commit(String node, List<String> nodes) {
+            node(node).commit(nodes);
+        }
+    }
+
+    private static LocalNode writeOptimized() {
+        InMemoryTransactionalRepository repository = new InMemoryTransactionalRepository();
+        return new LocalNode(new WriteOptimizedTransactionService(repository), repository);
+    }
+
+    private static List<String> urls(int from, int to) {
+        List<String> urls = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            urls.add("http://node" + i);
+        }
+        return urls;
+    }
+
+    /**
+     * Starts nodes knowing the given ring, without being part of it if they are not listed there
+     */
+    private static List<ClusterTransactionalService> start(InProcessClient client, List<String> urls, List<String> ring) {
+        List<ClusterTransactionalService> started = new ArrayList<>();
+        for (String url : urls) {
+            ClusterTransactionalService node = new ClusterTransactionalService(url, ring, 16, ClusterTransactionalServiceTest::writeOptimized, client);
+            client.nodes.put(url, node);
+            started.add(node);
+        }
+        return started;
+    }
+
+    @Test public void
+    example_in_the_description_works_from_any_node() throws Exception {
+        InProcessClient client = new InProcessClient();
+        List<ClusterTransactionalService> nodes = start(client, urls(0, 3), urls(0, 3));
+        nodes.get(0).addTransaction(10l, new Transaction(5000d, "cluster_cars"));
+        nodes.get(1).addTransaction(11l, new Transaction(10000d, "cluster_shopping", 10l));
+        nodes.get(2).addTransaction(12l, new Transaction(5000d, "cluster_shopping", 11l));
+
+        for (ClusterTransactionalService node : nodes) {
+            assertEquals(node.transaction(11l), new Transaction(10000d, "cluster_shopping", 10l));
+            assertEquals(node.transactionByType("cluster_cars"), Collections.singleton(10l));
+            assertEquals(node.transactionSum(10l), 20000d);
+            assertEquals(node.transactionSum(11l), 15000d);
+        }
+    }
+
+    @Test public void
+    subtree_statistics_are_computed_by_the_owner_of_the_tree() throws Exception {
+        InProcessClient client = new InProcessClient();
+        List<ClusterTransactionalService> nodes = start(client, urls(0, 3), urls(0, 3));
+        nodes.get(0).addTransaction(0l, new Transaction(1d, "cluster_subtree"));
+        nodes.get(1).addTransaction(1l, new Transaction(2d, "cluster_other", 0l));
+        nodes.get(2).addTransaction(2l, new Transaction(4d, "cluster_subtree", 1l));
+
+        for (ClusterTransactionalService node : nodes) {
+            assertEquals(node.subTreeStatistics(0l, "cluster_subtree"), new TypeStatistics(2, 5d, 1d, 4d));
+            assertEquals(node.subTreeStatistics(1l, null), new TypeStatistics(2, 6d, 2d, 4d));
+        }
+    }
+
+    @Test public void
+    trees_live_on_the_node_owning_their_root() throws Exception {
+        InProcessClient client = new InProcessClient();
+        List<ClusterTransactionalService> nodes = start(client, urls(0, 3), urls(0, 3));
+        for (long root = 0; root < 60; root++) {
+            nodes.get((int) (root % 3)).addTransaction(root, new Transaction(1d, "cluster_spread"));
+            nodes.get((int) ((root + 1) % 3)).addTransaction(1000 + root, new Transaction(2d, "cluster_spread", root));
+            nodes.get((int) ((root + 2) % 3)).addTransaction(2000 + root, new Transaction(3d, "cluster_spread", 1000 + root));
+        }
+
+        HashRing ring = new HashRing(urls(0, 3), 16);
+        int total = 0;
+        for (ClusterTransactionalService node : nodes) {
+            Set<Long> local = node.localTransactionByType("cluster_spread");
+            assertTrue(!local.isEmpty(), "every node holds some trees");
+            for (long id : local) {
+                assertEquals(ring.owner(id % 1000), node.self());
+            }
+            total += local.size();
+        }
+        assertEquals(total, 180);
+        assertEquals(nodes.get(1).transactionSums(Arrays.asList(0l, 1001l, 2002l, 3000l)), new HashMap<Long, Double>() {{
+            put(0l, 6d);
+            put(1001l, 5d);
+            put(2002l, 3d);
+        }});
+    }
+
+    @Test public void
+    identifiers_are_unique_across_the_cluster() throws Exception {
+        InProcessClient client = new InProcessClient();
+        List<ClusterTransactionalService> nodes = start(client, urls(0, 3), urls(0, 3));
+        nodes.get(0).addTransaction(1l, new Transaction(1d, "cluster_unique"));
+        for (long id = 2; id < 20; id++) {
+            nodes.get((int) (id % 3)).addTransaction(id, new Transaction(1d, "cluster_unique", 1l));
+        }
+        for (long id = 1; id < 20; id++) {
+            try {
+                nodes.get((int) (id % 2)).addTransaction(id, new Transaction(1d, "cluster_unique"));
+                fail("identifier " + id + " was added twice");
+            } catch (TransactionAlreadyExistsException e) {
+                // expected
+            }
+        }
+        assertEquals(nodes.get(2).transactionSum(1l), 19d);
+    }
+
+    @Test public void
+    rejections_of_the_owner_travel_back_and_free_the_identifier() throws Exception {
+        InProcessClient client = new InProcessClient();
+        List<String> urls = urls(0, 2);
+        List<ClusterTransactionalService> nodes = new ArrayList<>();
+        for (String url : urls) {
+            // fixed point sums reject amounts with too many decimals
+            ClusterTransactionalService node = new ClusterTransactionalService(url, urls, 16, () -> {
+                InMemoryTransactionalRepository repository = new InMemoryTransactionalRepository();
+                return new LocalNode(new ReadOptimizedTransactionService(repository, new InMemoryTypeRepository(), new FixedPointSumRepository(2)), repository);
+            }, client);
+            client.nodes.put(url, node);
+            nodes.add(node);
+        }
+        for (long id = 0; id < 10; id++) {
+            try {
+                nodes.get(0).addTransaction(id, new Transaction(1.001d, "cluster_rejected"));
+                fail();
+            } catch (InvalidAmountException e) {
+                assertEquals(e.getMessage(), new InvalidAmountException(1.001d, "has more than 2 decimals").getMessage());
+            }
+        }
+        try {
+            nodes.get(1).addTransaction(20l, new Transaction(1d, "cluster_rejected", 7l));
+            fail();
+        } catch (ParentTransactionDoesNotExistException e) {
+            // expected
+        }
+        for (long id = 0; id < 10; id++) {
+            nodes.get(1).addTransaction(id, new Transaction(1d, "cluster_rejected"));
+        }
+        assertEquals(nodes.get(0).typeStatistics("cluster_rejected"), new TypeStatistics(10, 10d, 1d, 1d));
+    }
+
+    @Test public void
+    batches_are_routed_parents_first_and_report_every_rejection() throws Exception {
+        InProcessClient client = new InProcessClient();
+        List<ClusterTransactionalService> nodes = start(client, urls(0, 3), urls(0, 3));
+        nodes.get(0).addTransaction(1l, new Transaction(1d, "cluster_batch"));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(12l, new Transaction(4d, "cluster_batch", 11l));
+        batch.put(11l, new Transaction(2d, "cluster_batch", 10l));
+        batch.put(10l, new Transaction(1d, "cluster_batch"));
+        batch.put(1l, new Transaction(5d, "cluster_batch"));
+        batch.put(2l, new Transaction(6d, "cluster_batch", 1l));
+        batch.put(3l, new Transaction(7d, "cluster_batch", 99l));
+        batch.put(4l, new Transaction(8d, "cluster_batch", 3l));
+
+        Map<Long, InvalidTransaction> rejected = nodes.get(1).addTransactions(batch);
+
+        assertEquals(rejected.keySet(), Sets.newHashSet(1l, 3l, 4l));
+        assertTrue(rejected.get(1l) instanceof TransactionAlreadyExistsException);
+        assertTrue(rejected.get(3l) instanceof ParentTransactionDoesNotExistException);
+        assertTrue(rejected.get(4l) instanceof ParentTransactionDoesNotExistException);
+        assertEquals(nodes.get(2).transactionSum(10l), 7d);
+        assertEquals(nodes.get(2).transactionSum(1l), 7d);
+        assertEquals(nodes.get(0).transactions(Arrays.asList(11l, 2l, 4l)).keySet(), Sets.newHashSet(11l, 2l));
+    }
+
+    @Test public void
+    type_queries_merge_the_nodes() throws Exception {
+        InProcessClient client = new InProcessClient();
+        List<ClusterTransactionalService> nodes = start(client, urls(0, 3), urls(0, 3));
+        for (long id = 0; id < 50; id++) {
+            nodes.get((int) (id % 3)).addTransaction(id, new Transaction((double) id, id % 2 == 0 ? "cluster_even" : "cluster_odd"));
+        }
+
+        assertEquals(nodes.get(0).transactionByType("cluster_even").size(), 25);
+        assertEquals(nodes.get(1).transactionByTypes(Arrays.asList("cluster_even", "cluster_odd"), null, 5), Arrays.asList(0l, 1l, 2l, 3l, 4l));
+        assertEquals(nodes.get(2).transactionByTypes(Collections.singleton("cluster_odd"), 40l, 10), Arrays.asList(41l, 43l, 45l, 47l, 49l));
+        assertEquals(nodes.get(0).typeStatistics("cluster_even"), new TypeStatistics(25, 600d, 0d, 48d));
+        assertEquals(nodes.get(0).typeStatistics("cluster_none"), TypeStatistics.EMPTY);
+    }
+
+    @Test public void
+    unreachable_nodes_fail_the_requests_they_take_part_in() throws Exception {
+        InProcessClient client = new InProcessClient();
+        List<ClusterTransactionalService> nodes = start(client, urls(0, 1), urls(0, 2));
+        try {
+            nodes.get(0).transactionByType("cluster_unreachable");
+            fail();
+        } catch (ClusterUnavailableException e) {
+            assertTrue(e.getMessage().contains("http://node1"));
+        }
+    }
+
+    @Test public void
+    identifiers_of_a_write_failing_on_a_node_are_released() throws Exception {
+        InProcessClient client = new InProcessClient();
+        List<ClusterTransactionalService> nodes = start(client, urls(0, 2), urls(0, 2));
+        HashRing ring = new HashRing(urls(0, 2), 16);
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        for (long root = 0; root < 20; root++) {
+            batch.put(root, new Transaction(1d, "cluster_failing"));
+        }
+        client.failingWrites.add("http://node1");
+        try {
+            nodes.get(0).addTransactions(batch);
+            fail();
+        } catch (ClusterUnavailableException e) {
+            assertTrue(e.getMessage().contains("http://node1"));
+        }
+        client.failingWrites.clear();
+
+        Map<Long, InvalidTransaction> rejected = nodes.get(1).addTransactions(batch);
+        for (long root = 0; root < 20; root++) {
+            boolean stored = ring.owner(root).equals("http://node0");
+            assertEquals(rejected.get(root) instanceof TransactionAlreadyExistsException, stored, "transaction " + root);
+            assertEquals(nodes.get(1).transactionSum(root), 1d);
+        }
+    }
+
+    @Test public void
+    growing_and_shrinking_the_cluster_moves_the_trees() throws Exception {
+        InProcessClient client = new InProcessClient();
+        List<ClusterTransactionalService> nodes = start(client, urls(0, 2), urls(0, 2));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        for (long root = 0; root < 200; root++) {
+            batch.put(root, new Transaction(1d, "cluster_moved"));
+            batch.put(1000 + root, new Transaction(2d, "cluster_moved", root));
+            batch.put(2000 + root, new Transaction(3d, "cluster_moved", 1000 + root));
+        }
+        assertEquals(nodes.get(0).addTransactions(batch), Collections.emptyMap());
+
+        nodes.addAll(start(client, urls(2, 4), urls(0, 2)));
+        nodes.get(3).reconfigure(urls(0, 4));
+        assertMoved(nodes, urls(0, 4), 200);
+
+        nodes.get(1).reconfigure(urls(1, 3));
+        assertMoved(nodes, urls(1, 3), 200);
+        for (ClusterTransactionalService node : Arrays.asList(nodes.get(0), nodes.get(3))) {
+            assertEquals(node.local().repository().allTransactions().size(), 0);
+        }
+
+        // the nodes that left the cluster still serve requests, which they route to its nodes
+        nodes.get(0).addTransaction(5000l, new Transaction(4d, "cluster_moved", 2000l));
+        assertEquals(nodes.get(3).transactionSum(0l), 10d);
+    }
+
+    @Test public void
+    reconfiguring_again_resumes_a_failed_migration() throws Exception {
+        InProcessClient client = new InProcessClient();
+        List<ClusterTransactionalService> nodes = start(client, urls(0, 1), urls(0, 1));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        for (long root = 0; root < 200; root++) {
+            batch.put(root, new Transaction(1d, "cluster_moved"));
+            batch.put(1000 + root, new Transaction(2d, "cluster_moved", root));
+            batch.put(2000 + root, new Transaction(3d, "cluster_moved", 1000 + root));
+        }
+        assertEquals(nodes.get(0).addTransactions(batch), Collections.emptyMap());
+        nodes.addAll(start(client, urls(1, 3), urls(0, 1)));
+
+        client.handOversBeforeFailure = 1;
+        try {
+            nodes.get(0).reconfigure(urls(0, 3));
+            fail();
+        } catch (ClusterUnavailableException e) {
+            assertEquals(nodes.get(0).membership().get("pending"), urls(0, 3));
+        }
+        client.handOversBeforeFailure = Integer.MAX_VALUE;
+
+        nodes.get(0).reconfigure(urls(0, 3));
+        assertMoved(nodes, urls(0, 3), 200);
+    }
+
+    private static void assertMoved(List<ClusterTransactionalService> nodes, List<String> ring, int trees) throws TransactionDoesNotExistException {
+        HashRing owners = new HashRing(ring, 16);
+        int stored = 0;
+        for (ClusterTransactionalService node : nodes) {
+            assertEquals(node.membership().get("current"), ring);
+            for (Map.Entry<Long, Transaction> entry : node.local().repository().allTransactions().entrySet()) {
+                assertEquals(owners.owner(entry.getKey() % 1000), node.self());
+                stored++;
+            }
+        }
+        assertEquals(stored, 3 * trees);
+        for (ClusterTransactionalService node : nodes) {
+            for (long root = 0; root < trees; root += 37) {
+                assertEquals(node.transactionSum(root), 6d);
+                assertEquals(node.transaction(2000 + root), new Transaction(3d, "cluster_moved", 1000 + root));
+            }
+            assertEquals(node.transactionByType("cluster_moved").size(), 3 * trees);
+        }
+    }
+}
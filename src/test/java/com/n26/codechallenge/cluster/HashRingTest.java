@@ -0,0 +1,69 @@
+package com.n26.codechallenge.cluster;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Set of unit tests to ensure the expected behaviour of {@link HashRing}
+ */
+public class HashRingTest {
+
+    private static final List<String> NODES = Arrays.asList("http://a:8080", "http://b:8080", "http://c:8080");
+
+    @Test public void
+    owners_only_depend_on_the_nodes() {
+        HashRing ring = new HashRing(NODES, HashRing.DEFAULT_VIRTUAL_NODES);
+        HashRing same = new HashRing(Arrays.asList("http://a:8080", "http://b:8080", "http://c:8080", "http://a:8080"), HashRing.DEFAULT_VIRTUAL_NODES);
+        for (long key = 0; key < 1000; key++) {
+            assertEquals(same.owner(key), ring.owner(key));
+        }
+        assertEquals(same.nodes(), NODES);
+    }
+
+    @Test public void
+    a_single_node_owns_every_key() {
+        HashRing ring = new HashRing(Collections.singleton("http://a:8080"), 1);
+        assertEquals(ring.owner(Long.MIN_VALUE), "http://a:8080");
+        assertEquals(ring.owner(0), "http://a:8080");
+        assertEquals(ring.owner(Long.MAX_VALUE), "http://a:8080");
+    }
+
+    @Test public void
+    consecutive_keys_are_spread_evenly() {
+        HashRing ring = new HashRing(NODES, HashRing.DEFAULT_VIRTUAL_NODES);
+        Map<String, Integer> keys = new HashMap<>();
+        for (long key = 0; key < 30_000; key++) {
+            keys.merge(ring.owner(key), 1, Integer::sum);
+        }
+        for (String node : NODES) {
+            assertTrue(keys.get(node) > 7_000 && keys.get(node) < 13_000, node + " owns " + keys.get(node) + " keys");
+        }
+    }
+
+    @Test public void
+    adding_a_node_only_moves_keys_to_it() {
+        HashRing ring = new HashRing(NODES, HashRing.DEFAULT_VIRTUAL_NODES);
+        HashRing grown = new HashRing(Arrays.asList("http://a:8080", "http://b:8080", "http://c:8080", "http://d:8080"), HashRing.DEFAULT_VIRTUAL_NODES);
+        int moved = 0;
+        for (long key = 0; key < 40_000; key++) {
+            if (!ring.owner(key).equals(grown.owner(key))) {
+                assertEquals(grown.owner(key), "http://d:8080");
+                moved++;
+            }
+        }
+        assertTrue(moved > 6_000 && moved < 14_000, moved + " keys moved");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class) public void
+    a_ring_needs_a_node() {
+        new HashRing(Collections.emptyList(), 1);
+    }
+}
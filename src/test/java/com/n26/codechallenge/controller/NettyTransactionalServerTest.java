@@ -0,0 +1,225 @@
+package com.n26.codechallenge.controller;
+
+import com.codahale.metrics.MetricRegistry;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.service.TransactionalService;
+import com.n26.codechallenge.service.WriteOptimizedTransactionService;
+import org.mockito.Mockito;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link NettyTransactionalServer}, over real connections
+ */
+public class NettyTransactionalServerTest {
+
+    private NettyTransactionalServer server;
+
+    @AfterMethod
+    public void close() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void
+    example_in_the_description_works() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        server = new NettyTransactionalServer(new WriteOptimizedTransactionService(), metrics, 0, 1, 1, 16, 1 << 20);
+
+        assertEquals(call("PUT", "/transactionservice/transaction/10", "{\"amount\":5000,\"type\":\"cars\"}"), "201 {\"status\":\"ok\"}");
+        assertEquals(call("PUT", "/transactionservice/transaction/11", "{\"amount\":10000,\"type\":\"shopping\",\"parent_id\":10}"), "201 {\"status\":\"ok\"}");
+        assertEquals(call("PUT", "/transactionservice/transaction/12", "{\"amount\":5000,\"type\":\"shopping\",\"parent_id\":11}"), "201 {\"status\":\"ok\"}");
+        assertEquals(call("GET", "/transactionservice/transaction/11", null), "200 {\"amount\":10000.0,\"type\":\"shopping\",\"parent_id\":10}");
+        assertEquals(call("GET", "/transactionservice/types/cars", null), "200 [10]");
+        assertEquals(call("GET", "/transactionservice/types?type=cars&type=shopping&limit=2", null), "200 {\"ids\":[10,11],\"next\":11}");
+        assertEquals(call("GET", "/transactionservice/sum/10", null), "200 {\"sum\":20000.0}");
+        assertEquals(call("GET", "/transactionservice/sum/11", null), "200 {\"sum\":15000.0}");
+        assertEquals(call("GET", "/transactionservice/types/shopping/stats", null),
+                "200 {\"count\":2,\"sum\":15000.0,\"min\":5000.0,\"max\":10000.0,\"average\":7500.0}");
+        assertEquals(call("GET", "/transactionservice/types/stats", null), "200 []");
+        assertEquals(metrics.timer("http.GET./transactionservice/sum/{parentId}").getCount(), 2);
+    }
+
+    @Test
+    public void
+    requests_are_timed_like_the_servlet_front_end() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        server = new NettyTransactionalServer(new WriteOptimizedTransactionService(), metrics, 0, 1, 1, 16, 1 << 20);
+
+        call("PUT", "/transactionservice/transaction/10", "{\"amount\":5000,\"type\":\"cars\"}");
+        call("GET", "/transactionservice/sum/10", null);
+        call("GET", "/transactionservice/sum/11", null);
+        call("GET", "/elsewhere", null);
+
+        assertEquals(metrics.timer("http.PUT./transactionservice/transaction/{id}").getCount(), 1);
+        assertEquals(metrics.timer("http.GET./transactionservice/sum/{parentId}").getCount(), 2);
+        assertEquals(metrics.meter("http.GET./transactionservice/sum/{parentId}.4xx").getCount(), 1);
+        assertEquals(metrics.meter("http.GET.unmapped.4xx").getCount(), 1);
+    }
+
+    @Test
+    public void
+    batches_report_every_item() throws Exception {
+        server = new NettyTransactionalServer(new WriteOptimizedTransactionService(), new MetricRegistry(), 0, 1, 1, 16, 1 << 20);
+
+        assertEquals(call("POST", "/transactionservice/transactions", "{\"id\":1,\"amount\":1,\"type\":\"a\"}\n{\"id\":1,\"amount\":2,\"type\":\"a\"}"),
+                "200 [{\"id\":1,\"status\":\"ok\"},{\"id\":1,\"status\":\"error\",\"error\":\"The transaction is invalid because The identifier: 1 is already used\"}]");
+    }
+
+    @Test
+    public void
+    lookups_answer_like_the_servlet_front_end() throws Exception {
+        server = new NettyTransactionalServer(new WriteOptimizedTransactionService(), new MetricRegistry(), 0, 1, 1, 16, 1 << 20);
+        call("PUT", "/transactionservice/transaction/10", "{\"amount\":5000,\"type\":\"cars\"}");
+        call("PUT", "/transactionservice/transaction/11", "{\"amount\":10000,\"type\":\"shopping\",\"parent_id\":10}");
+
+        assertEquals(call("POST", "/transactionservice/lookup/transactions", "[11,12]"),
+                "200 [{\"id\":11,\"status\":\"ok\",\"transaction\":{\"amount\":10000.0,\"type\":\"shopping\",\"parent_id\":10}},"
+                        + "{\"id\":12,\"status\":\"error\",\"error\":\"There is no transaction with id: 12\"}]");
+        assertEquals(call("POST", "/transactionservice/lookup/sums", "[10,11,12]"),
+                "200 [{\"id\":10,\"status\":\"ok\",\"sum\":15000.0},{\"id\":11,\"status\":\"ok\",\"sum\":10000.0},"
+                        + "{\"id\":12,\"status\":\"error\",\"error\":\"There is no transaction with id: 12\"}]");
+        assertTrue(call("POST", "/transactionservice/lookup/sums", "[1,").startsWith("400 "));
+        assertTrue(call("GET", "/transactionservice/lookup/sums", null).startsWith("405 "));
+    }
+
+    @Test
+    public void
+    errors_have_the_status_of_the_servlet_front_end() throws Exception {
+        server = new NettyTransactionalServer(new WriteOptimizedTransactionService(), new MetricRegistry(), 0, 1, 1, 16, 1 << 20);
+
+        assertTrue(call("GET", "/transactionservice/transaction/1", null).startsWith("404 "));
+        assertTrue(call("GET", "/transactionservice/sum/1", null).startsWith("404 "));
+        assertTrue(call("PUT", "/transactionservice/transaction/1", "{\"type\":\"cars\"}").startsWith("400 "));
+        assertTrue(call("PUT", "/transactionservice/transaction/1", "{\"amount\":").startsWith("400 "));
+        assertTrue(call("PUT", "/transactionservice/transaction/1", "{\"amount\":1,\"type\":\"a\",\"parent_id\":7}").startsWith("400 "));
+        assertTrue(call("GET", "/transactionservice/sum/abc", null).startsWith("400 "));
+        assertTrue(call("GET", "/transactionservice/sum/stats", null).startsWith("400 "));
+        assertTrue(call("DELETE", "/transactionservice/sum/1", null).startsWith("405 "));
+        assertTrue(call("GET", "/elsewhere", null).startsWith("404 "));
+    }
+
+    @Test(timeOut = 10_000)
+    public void
+    slow_queries_do_not_hold_up_cheap_requests_and_are_refused_beyond_the_queue() throws Exception {
+        TransactionalService service = Mockito.mock(TransactionalService.class);
+        CountDownLatch release = new CountDownLatch(1);
+        when(service.transactionSum(1l)).thenAnswer(invocation -> {
+            release.await();
+            return 1d;
+        });
+        when(service.transaction(2l)).thenReturn(new Transaction(2d, "type"));
+        server = new NettyTransactionalServer(service, new MetricRegistry(), 0, 1, 1, 1, 1 << 20);
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> running = clients.submit(() -> call("GET", "/transactionservice/sum/1", null));
+            Future<String> queued = clients.submit(() -> call("GET", "/transactionservice/sum/1", null));
+            Mockito.verify(service, Mockito.timeout(5000)).transactionSum(1l);
+            Thread.sleep(100);
+
+            assertEquals(call("GET", "/transactionservice/transaction/2", null), "200 {\"amount\":2.0,\"type\":\"type\"}");
+            assertTrue(call("GET", "/transactionservice/sum/1", null).startsWith("503 "));
+            release.countDown();
+            assertEquals(running.get(5, TimeUnit.SECONDS), "200 {\"sum\":1.0}");
+            assertEquals(queued.get(5, TimeUnit.SECONDS), "200 {\"sum\":1.0}");
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+        }
+    }
+
+    @Test(timeOut = 30_000)
+    public void
+    pipelined_responses_keep_the_order_of_their_requests() throws Exception {
+        TransactionalService service = Mockito.mock(TransactionalService.class);
+        when(service.transactionSum(Mockito.anyLong())).thenAnswer(invocation -> ((Long) invocation.getArguments()[0]).doubleValue());
+        when(service.transaction(Mockito.anyLong())).thenAnswer(invocation -> new Transaction(((Long) invocation.getArguments()[0]).doubleValue(), "type"));
+        server = new NettyTransactionalServer(service, new MetricRegistry(), 0, 1, 4, 4096, 1 << 20);
+        final int pairs = 500;
+        StringBuilder requests = new StringBuilder();
+        for (int id = 0; id < pairs; id++) {
+            requests.append("GET /transactionservice/sum/").append(id).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            requests.append("GET /transactionservice/transaction/").append(id).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        }
+        try (Socket socket = new Socket("localhost", server.port())) {
+            socket.getOutputStream().write(requests.toString().getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            for (int id = 0; id < pairs; id++) {
+                assertEquals(readBody(in), "{\"sum\":" + id + ".0}");
+                assertEquals(readBody(in), "{\"amount\":" + id + ".0,\"type\":\"type\"}");
+            }
+        }
+    }
+
+    /**
+     * Reads a response off a keep alive connection and returns its body
+     */
+    private static String readBody(DataInputStream in) throws IOException {
+        int length = 0;
+        for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                length = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static String readLine(DataInputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private String call(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.port() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                content.write(buffer, 0, read);
+            }
+            return status + " " + content.toString("UTF-8");
+        }
+    }
+}
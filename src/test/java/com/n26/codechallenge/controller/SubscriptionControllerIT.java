@@ -0,0 +1,75 @@
+package com.n26.codechallenge.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.n26.codechallenge.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Integration test to ensure a client subscribed with a real web application server is streamed the new transactions
+ * and sums it watches
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class SubscriptionControllerIT extends AbstractTestNGSpringContextTests {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @LocalServerPort
+    private int port;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test(timeOut = 30_000)
+    public void
+    subscriber_is_streamed_watched_transactions_and_sums() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port
+                + "/transactionservice/subscribe?id=500&type=subscription_it").openConnection();
+        connection.setRequestProperty("Accept", "text/event-stream");
+        connection.setReadTimeout(10_000);
+        assertEquals(connection.getResponseCode(), 200);
+
+        put(500, new Transaction(1d, "subscription_it"));
+        put(501, new Transaction(2d, "other", 500l));
+
+        Map<String, Object> transactions = new HashMap<>();
+        Object sum = null;
+        try (BufferedReader events = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (!Double.valueOf(3d).equals(sum) && (line = events.readLine()) != null) {
+                if (line.startsWith("data:")) {
+                    Map<String, Map<String, Object>> changes = mapper.readValue(line.substring("data:".length()), Map.class);
+                    transactions.putAll(changes.getOrDefault("transactions", new HashMap<>()));
+                    sum = changes.getOrDefault("sums", new HashMap<>()).getOrDefault("500", sum);
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+
+        assertEquals(sum, 3d);
+        assertEquals(transactions.keySet().toString(), "[500]");
+    }
+
+    private void put(long id, Transaction transaction) throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        ResponseEntity<Map> put = restTemplate.exchange("/transactionservice/transaction/" + id, HttpMethod.PUT, new HttpEntity<>(transaction.toJson(), headers), Map.class);
+        assertEquals(put.getStatusCode(), HttpStatus.CREATED);
+    }
+}
@@ -0,0 +1,116 @@
+package com.n26.codechallenge.controller;
+
+import com.google.common.collect.Sets;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.service.TransactionalService;
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link TransactionJsonCache}
+ */
+public class TransactionJsonCacheTest {
+
+    @Test public void
+    cached_json_is_returned() throws Exception {
+        TransactionJsonCache cache = new TransactionJsonCache();
+        byte[] json = "{\"amount\":1.0}".getBytes("UTF-8");
+        cache.put(1l, json);
+
+        assertEquals(cache.get(1l), json);
+        assertNull(cache.get(2l));
+        assertEquals(cache.bytes(), json.length + TransactionJsonCache.ENTRY_OVERHEAD);
+    }
+
+    @Test public void
+    batches_read_the_missing_transactions_at_once() throws Exception {
+        TransactionJsonCache cache = new TransactionJsonCache();
+        byte[] json = "{\"amount\":1.0}".getBytes("UTF-8");
+        cache.put(1l, json);
+        TransactionalService service = Mockito.mock(TransactionalService.class);
+        when(service.transactions(Sets.newHashSet(2l, 3l))).thenReturn(Collections.singletonMap(2l, new Transaction(2d, "type")));
+
+        Map<Long, byte[]> found = cache.json(Arrays.asList(1l, 2l, 3l, 2l), service);
+        assertEquals(found.keySet(), Sets.newHashSet(1l, 2l));
+        assertEquals(found.get(1l), json);
+        assertEquals(new String(found.get(2l), "UTF-8"), "{\"amount\":2.0,\"type\":\"type\"}");
+        assertEquals(cache.get(2l), found.get(2l));
+        verify(service, times(1)).transactions(any());
+    }
+
+    @Test public void
+    least_recently_used_json_is_evicted_beyond_the_bound() throws Exception {
+        TransactionJsonCache cache = new TransactionJsonCache(1 << 20);
+        for (long id = 0; id < 100_000; id++) {
+            if (id % 1000 == 1) {
+                cache.get(0l);
+            }
+            cache.put(id, new byte[32]);
+        }
+
+        assertTrue(cache.bytes() <= 1 << 20);
+        assertTrue(cache.bytes() > 1 << 19);
+        assertEquals(cache.get(0l).length, 32);
+        assertNull(cache.get(1l));
+        assertEquals(cache.get(99_999l).length, 32);
+    }
+
+    @Test public void
+    cached_json_is_dropped_once_the_service_drops_its_transactions() throws Exception {
+        TransactionJsonCache cache = new TransactionJsonCache();
+        TransactionalService service = Mockito.mock(TransactionalService.class);
+        when(service.transaction(1l)).thenReturn(new Transaction(1d, "type"));
+        cache.json(1l, service);
+
+        when(service.generation()).thenReturn(1l);
+        when(service.transaction(1l)).thenThrow(new TransactionDoesNotExistException(1l));
+        when(service.transactions(any())).thenReturn(Collections.emptyMap());
+
+        assertEquals(cache.json(Collections.singletonList(1l), service), Collections.emptyMap());
+        assertNull(cache.get(1l));
+        try {
+            cache.json(1l, service);
+            fail("served a transaction the service dropped");
+        } catch (TransactionDoesNotExistException e) {
+            // expected
+        }
+    }
+
+    @Test public void
+    json_read_under_an_older_generation_is_not_cached() throws Exception {
+        TransactionJsonCache cache = new TransactionJsonCache();
+        TransactionalService service = Mockito.mock(TransactionalService.class);
+        when(service.generation()).thenReturn(2l);
+        cache.json(Collections.singletonList(2l), service);
+
+        TransactionalService previous = Mockito.mock(TransactionalService.class);
+        when(previous.generation()).thenReturn(1l);
+        when(previous.transaction(1l)).thenReturn(new Transaction(1d, "type"));
+
+        assertEquals(new String(cache.json(1l, previous), "UTF-8"), "{\"amount\":1.0,\"type\":\"type\"}");
+        assertNull(cache.get(1l));
+    }
+
+    @Test public void
+    empty_cache_keeps_nothing() throws Exception {
+        TransactionJsonCache cache = new TransactionJsonCache(0);
+        cache.put(1l, new byte[8]);
+
+        assertNull(cache.get(1l));
+        assertEquals(cache.bytes(), 0);
+    }
+}
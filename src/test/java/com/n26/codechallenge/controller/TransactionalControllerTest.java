@@ -1,6 +1,8 @@
 package com.n26.codechallenge.controller;
 
 import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
 import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
 import com.n26.codechallenge.service.TransactionalService;
 import org.mockito.Mockito;
@@ -15,8 +17,15 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.hamcrest.Matchers.*;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
 
 /**
  * Set of unit tests to ensure expected behaviour of {@link TransactionalController}
@@ -43,6 +52,20 @@ public class TransactionalControllerTest {
                 .andExpect(jsonPath("$.parent_id", is(2)));
     }
 
+    @Test
+    public void
+    get_transaction_is_encoded_once() throws Exception {
+        TransactionalService mockService = Mockito.mock(TransactionalService.class);
+        when(mockService.transaction(32l)).thenReturn(new Transaction(32d, "type"));
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new TransactionalController(mockService)).build();
+        for (int i = 0; i < 2; i++) {
+            mvc.perform(get("/transactionservice/transaction/32"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string("{\"amount\":32.0,\"type\":\"type\"}"));
+        }
+        verify(mockService, times(1)).transaction(32l);
+    }
+
     @Test
     public void
     get_transaction_per_type() throws Exception {
@@ -56,6 +79,58 @@ public class TransactionalControllerTest {
                 .andExpect(content().string("[10]"));
     }
 
+    @Test
+    public void
+    get_transaction_page_for_several_types() throws Exception {
+        TransactionalService mockService = Mockito.mock(TransactionalService.class);
+        when(mockService.transactionByTypes(Arrays.asList("cars", "shopping"), 10l, 2)).thenReturn(Arrays.asList(11l, 12l));
+        when(mockService.transactionByTypes(Arrays.asList("cars", "shopping"), 12l, 2)).thenReturn(Collections.singletonList(13l));
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new TransactionalController(mockService)).build();
+
+        mockMvc.perform(get("/transactionservice/types?type=cars&type=shopping&after=10&limit=2"))
+                .andExpect(status().isOk()).andDo(print())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+                .andExpect(content().string("{\"ids\":[11,12],\"next\":12}"));
+        mockMvc.perform(get("/transactionservice/types?type=cars&type=shopping&after=12&limit=2"))
+                .andExpect(status().isOk()).andDo(print())
+                .andExpect(jsonPath("$.ids", hasSize(1)))
+                .andExpect(jsonPath("$.next", nullValue()));
+    }
+
+    @Test
+    public void
+    get_type_statistics() throws Exception {
+        TransactionalService mockService = Mockito.mock(TransactionalService.class);
+        when(mockService.typeStatistics("cars")).thenReturn(new TypeStatistics(2, 15000d, 5000d, 10000d));
+        when(mockService.typeStatistics("boats")).thenReturn(TypeStatistics.EMPTY);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new TransactionalController(mockService)).build();
+
+        mvc.perform(get("/transactionservice/types/cars/stats"))
+                .andExpect(status().isOk()).andDo(print())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+                .andExpect(content().string("{\"count\":2,\"sum\":15000.0,\"min\":5000.0,\"max\":10000.0,\"average\":7500.0}"));
+        mvc.perform(get("/transactionservice/types/boats/stats"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"count\":0,\"sum\":0.0,\"min\":null,\"max\":null,\"average\":null}"));
+    }
+
+    @Test
+    public void
+    get_subtree_statistics() throws Exception {
+        TransactionalService mockService = Mockito.mock(TransactionalService.class);
+        when(mockService.subTreeStatistics(10l, null)).thenReturn(new TypeStatistics(2, 15000d, 5000d, 10000d));
+        when(mockService.subTreeStatistics(10l, "boats")).thenReturn(TypeStatistics.EMPTY);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new TransactionalController(mockService)).build();
+
+        mvc.perform(get("/transactionservice/sum/10/stats"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+                .andExpect(content().string("{\"count\":2,\"sum\":15000.0,\"min\":5000.0,\"max\":10000.0,\"average\":7500.0}"));
+        mvc.perform(get("/transactionservice/sum/10/stats").param("type", "boats"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"count\":0,\"sum\":0.0,\"min\":null,\"max\":null,\"average\":null}"));
+    }
+
     @Test
     public void
     get_sum_transaction_simply_works() throws Exception {
@@ -160,4 +235,123 @@ public class TransactionalControllerTest {
                 .andExpect(jsonPath("$.sum", is(10000.0)));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void
+    post_ndjson_batch_reports_every_item() throws Exception {
+        TransactionalService mockService = Mockito.mock(TransactionalService.class);
+        when(mockService.addTransactions(any())).thenReturn(Collections.singletonMap(11l, new ParentTransactionDoesNotExistException(99l)));
+        String body = "{\"id\":10,\"amount\":5000,\"type\":\"cars\"}\n"
+                + "{\"id\":11,\"amount\":10000,\"type\":\"shopping\",\"parent_id\":99}\n"
+                + "{\"id\":12,\"amount\":-1,\"type\":\"shopping\"}\n"
+                + "{\"amount\":1,\"type\":\"shopping\"}\n";
+
+        MockMvcBuilders.standaloneSetup(new TransactionalController(mockService))
+                .build()
+                .perform(post("/transactionservice/transactions").content(body).contentType(TransactionalController.NDJSON_VALUE))
+                .andExpect(status().isOk()).andDo(print())
+                .andExpect(jsonPath("$", hasSize(4)))
+                .andExpect(jsonPath("$[0].id", is(10)))
+                .andExpect(jsonPath("$[0].status", is("ok")))
+                .andExpect(jsonPath("$[1].status", is("error")))
+                .andExpect(jsonPath("$[1].error", containsString("99")))
+                .andExpect(jsonPath("$[2].error", containsString("amount cannot be negative")))
+                .andExpect(jsonPath("$[3].error", containsString("id cannot be null")));
+
+        Map<Long, Transaction> expected = new LinkedHashMap<>();
+        expected.put(10l, new Transaction(5000d, "cars"));
+        expected.put(11l, new Transaction(10000d, "shopping", 99l));
+        verify(mockService).addTransactions(expected);
+    }
+
+    @Test
+    public void
+    post_json_array_batch_flags_duplicated_ids() throws Exception {
+        TransactionalService mockService = Mockito.mock(TransactionalService.class);
+        when(mockService.addTransactions(any())).thenReturn(Collections.emptyMap());
+        String body = "[{\"id\":10,\"amount\":5000,\"type\":\"cars\",\"unknown\":{\"a\":[1]}},"
+                + "{\"id\":10,\"amount\":1,\"type\":\"cars\"}]";
+
+        MockMvcBuilders.standaloneSetup(new TransactionalController(mockService))
+                .build()
+                .perform(post("/transactionservice/transactions").content(body).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andDo(print())
+                .andExpect(jsonPath("$[0].status", is("ok")))
+                .andExpect(jsonPath("$[1].status", is("error")))
+                .andExpect(jsonPath("$[1].error", containsString("already used")));
+    }
+
+    @Test
+    public void
+    post_malformed_batch_fails_as_a_whole() throws Exception {
+        TransactionalService mockService = Mockito.mock(TransactionalService.class);
+
+        MockMvcBuilders.standaloneSetup(new TransactionalController(mockService))
+                .build()
+                .perform(post("/transactionservice/transactions").content("[{\"id\":10,").contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest()).andDo(print());
+        verify(mockService, never()).addTransactions(any());
+    }
+
+    @Test
+    public void
+    lookup_transactions_reports_missing_ones_inline() throws Exception {
+        TransactionalService mockService = Mockito.mock(TransactionalService.class);
+        when(mockService.transactions(any())).thenReturn(Collections.singletonMap(10l, new Transaction(5000d, "cars")));
+
+        MockMvcBuilders.standaloneSetup(new TransactionalController(mockService))
+                .build()
+                .perform(post("/transactionservice/lookup/transactions").content("[10,99,10]").contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andDo(print())
+                .andExpect(content().string("[{\"id\":10,\"status\":\"ok\",\"transaction\":{\"amount\":5000.0,\"type\":\"cars\"}},"
+                        + "{\"id\":99,\"status\":\"error\",\"error\":\"There is no transaction with id: 99\"},"
+                        + "{\"id\":10,\"status\":\"ok\",\"transaction\":{\"amount\":5000.0,\"type\":\"cars\"}}]"));
+        verify(mockService, times(1)).transactions(any());
+    }
+
+    @Test
+    public void
+    lookup_transactions_copies_the_cached_json_as_is() throws Exception {
+        TransactionalService mockService = Mockito.mock(TransactionalService.class);
+        TransactionJsonCache cache = new TransactionJsonCache();
+        cache.put(10l, "{\"amount\":1.0,\"type\":\"caf\u00e9\"}".getBytes("UTF-8"));
+
+        byte[] body = MockMvcBuilders.standaloneSetup(new TransactionalController(mockService, cache))
+                .build()
+                .perform(post("/transactionservice/lookup/transactions").content("[10,10]").contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(new String(body, "UTF-8"), "[{\"id\":10,\"status\":\"ok\",\"transaction\":{\"amount\":1.0,\"type\":\"caf\u00e9\"}},"
+                + "{\"id\":10,\"status\":\"ok\",\"transaction\":{\"amount\":1.0,\"type\":\"caf\u00e9\"}}]");
+        verify(mockService, never()).transactions(any());
+    }
+
+    @Test
+    public void
+    lookup_sums_reports_missing_ones_inline() throws Exception {
+        TransactionalService mockService = Mockito.mock(TransactionalService.class);
+        when(mockService.transactionSums(Arrays.asList(10l, 99l))).thenReturn(Collections.singletonMap(10l, 15000d));
+
+        MockMvcBuilders.standaloneSetup(new TransactionalController(mockService))
+                .build()
+                .perform(post("/transactionservice/lookup/sums").content("[10,99]").contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk()).andDo(print())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].sum", is(15000.0)))
+                .andExpect(jsonPath("$[1].id", is(99)))
+                .andExpect(jsonPath("$[1].status", is("error")));
+    }
+
+    @Test
+    public void
+    lookup_of_anything_but_an_array_of_identifiers_fails() throws Exception {
+        TransactionalService mockService = Mockito.mock(TransactionalService.class);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new TransactionalController(mockService)).build();
+
+        for (String body : Arrays.asList("[1,\"a\"]", "{\"id\":1}", "[1,", "[1.5]")) {
+            mvc.perform(post("/transactionservice/lookup/sums").content(body).contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isBadRequest());
+        }
+        verify(mockService, never()).transactionSums(any());
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.n26.codechallenge.metrics;
+
+import com.n26.codechallenge.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Integration test to ensure requests are timed per endpoint and served along with the other metrics
+ */
+@SpringBootTest(webEnvironment= SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class MetricsControllerIT extends AbstractTestNGSpringContextTests {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void
+    endpoints_are_timed_per_mapped_path() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Type", MediaType.APPLICATION_JSON_UTF8_VALUE);
+        restTemplate.exchange("/transactionservice/transaction/1001", HttpMethod.PUT, new HttpEntity<>(new Transaction(5d, "metered").toJson(), headers), Map.class);
+        restTemplate.getForEntity("/transactionservice/sum/1001", Map.class);
+        restTemplate.getForEntity("/transactionservice/sum/1002", Map.class);
+
+        ResponseEntity<Map> metrics = restTemplate.getForEntity("/transactionservice/metrics", Map.class);
+        assertEquals(metrics.getStatusCode(), HttpStatus.OK);
+
+        Map<String, Map<String, Object>> timers = (Map<String, Map<String, Object>>) metrics.getBody().get("timers");
+        Map<String, Object> sum = timers.get("http.GET./transactionservice/sum/{parentId}");
+        assertTrue(((Number) sum.get("count")).longValue() >= 2);
+        assertTrue(sum.containsKey("p99"));
+        assertTrue(sum.containsKey("p999"));
+        assertTrue(timers.containsKey("http.PUT./transactionservice/transaction/{id}"));
+
+        Map<String, Object> meters = (Map<String, Object>) metrics.getBody().get("meters");
+        assertTrue(meters.containsKey("http.GET./transactionservice/sum/{parentId}.4xx"));
+        Map<String, Object> gauges = (Map<String, Object>) metrics.getBody().get("gauges");
+        assertTrue(gauges.containsKey("store.size"));
+        assertTrue(gauges.containsKey("types.index.bytes"));
+    }
+}
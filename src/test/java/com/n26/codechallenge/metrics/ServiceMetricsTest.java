@@ -0,0 +1,71 @@
+package com.n26.codechallenge.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.repository.AsyncInMemorySumRepository;
+import com.n26.codechallenge.repository.BitmapTypeRepository;
+import com.n26.codechallenge.repository.PrimitiveTransactionalRepository;
+import com.n26.codechallenge.service.ReadOptimizedTransactionService;
+import com.n26.codechallenge.service.WriteOptimizedTransactionService;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link ServiceMetrics}
+ */
+public class ServiceMetricsTest {
+
+    @Test public void
+    traversed_sums_record_the_size_and_depth_of_the_subtree() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        WriteOptimizedTransactionService service = new WriteOptimizedTransactionService(new PrimitiveTransactionalRepository(), 0, 0, new ServiceMetrics(registry));
+        service.addTransaction(1l, new Transaction(1d, "type"));
+        service.addTransaction(2l, new Transaction(1d, "type", 1l));
+        service.addTransaction(3l, new Transaction(1d, "type", 2l));
+        service.transactionSum(1l);
+        service.transactionSum(3l);
+
+        assertEquals(registry.histogram("sum.subtree.size").getSnapshot().getValues(), new long[]{1, 3});
+        assertEquals(registry.histogram("sum.subtree.depth").getSnapshot().getValues(), new long[]{0, 2});
+    }
+
+    @Test public void
+    gauges_follow_the_store_and_its_lock() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        PrimitiveTransactionalRepository repository = new PrimitiveTransactionalRepository();
+        ServiceMetrics metrics = new ServiceMetrics(registry);
+        metrics.register(repository);
+        metrics.register(new ReadOptimizedTransactionService(repository, false));
+
+        assertEquals(registry.getGauges().get("store.size").getValue(), 0);
+        repository.addTransaction(1l, new Transaction(1d, "type"));
+        repository.transaction(1l);
+
+        assertEquals(registry.getGauges().get("store.size").getValue(), 1);
+        assertTrue((Long) registry.getGauges().get("store.bytes").getValue() > 0);
+        assertTrue((Long) registry.getGauges().get("store.lock.acquisitions").getValue() >= 2);
+        assertEquals(registry.getGauges().get("store.lock.wait-ms").getValue(), 0d);
+        assertTrue((Integer) registry.getGauges().get("types.count").getValue() >= 1);
+    }
+
+    @Test public void
+    gauges_follow_the_asynchronous_propagation_of_sums() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        PrimitiveTransactionalRepository repository = new PrimitiveTransactionalRepository();
+        try (AsyncInMemorySumRepository sums = new AsyncInMemorySumRepository(repository)) {
+            new ServiceMetrics(registry).register("sums", sums);
+            ReadOptimizedTransactionService service = new ReadOptimizedTransactionService(repository, new BitmapTypeRepository(), sums);
+            service.addTransaction(1l, new Transaction(1d, "type"));
+            service.addTransaction(2l, new Transaction(1d, "type", 1l));
+
+            assertEquals(service.transactionSum(1l), 2d);
+            assertEquals(registry.getGauges().get("sums.propagation.pending").getValue(), 0l);
+            assertEquals(registry.getGauges().get("sums.propagation.increments").getValue(), 1l);
+            assertTrue((Long) registry.getGauges().get("sums.propagation.ancestor-updates").getValue() >= 1);
+            assertTrue((Double) registry.getGauges().get("sums.propagation.max-lag-ms").getValue() >= 0);
+            assertTrue(registry.getGauges().containsKey("sums.propagation.lag-ms"));
+        }
+    }
+}
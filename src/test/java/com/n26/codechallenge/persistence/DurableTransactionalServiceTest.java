@@ -0,0 +1,209 @@
+package com.n26.codechallenge.persistence;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.repository.InMemoryTransactionalRepository;
+import com.n26.codechallenge.repository.TransactionalRepository;
+import com.n26.codechallenge.service.ReadOptimizedTransactionService;
+import com.n26.codechallenge.service.TransactionalService;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link DurableTransactionalService}
+ */
+public class DurableTransactionalServiceTest {
+
+    private static final long NEVER = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void
+    transactions_and_views_survive_a_restart() throws Exception {
+        Path directory = Files.createTempDirectory("durable");
+        try (DurableTransactionalService service = open(directory)) {
+            service.addTransaction(10l, new Transaction(5000d, "cars"));
+            service.addTransaction(11l, new Transaction(10000d, "shopping", 10l));
+        }
+        try (DurableTransactionalService service = open(directory)) {
+            assertEquals(service.transaction(11l), new Transaction(10000d, "shopping", 10l));
+            assertEquals(service.transactionSum(10l), 15000d);
+            assertEquals(service.transactionByType("cars").size(), 1);
+        }
+    }
+
+    @Test
+    public void
+    accepted_part_of_a_batch_survives_a_restart() throws Exception {
+        Path directory = Files.createTempDirectory("durable");
+        try (DurableTransactionalService service = open(directory)) {
+            Map<Long, Transaction> batch = new LinkedHashMap<>();
+            batch.put(11l, new Transaction(10000d, "shopping", 10l));
+            batch.put(10l, new Transaction(5000d, "cars"));
+            batch.put(12l, new Transaction(1d, "orphan", 99l));
+            assertEquals(service.addTransactions(batch).keySet().iterator().next(), Long.valueOf(12l));
+        }
+        try (DurableTransactionalService service = open(directory)) {
+            assertEquals(service.transactionSum(10l), 15000d);
+            assertEquals(service.transactionByType("orphan").size(), 0);
+        }
+    }
+
+    @Test
+    public void
+    recovery_combines_snapshot_and_log_tail() throws Exception {
+        Path directory = Files.createTempDirectory("durable");
+        try (DurableTransactionalService service = open(directory)) {
+            service.addTransaction(0l, new Transaction(1d, "chain"));
+            for (long id = 1; id < 1000; id++) {
+                service.addTransaction(id, new Transaction(1d, "chain", id - 1));
+            }
+            assertEquals(service.snapshot(), 1000l);
+            for (long id = 1000; id < 1500; id++) {
+                service.addTransaction(id, new Transaction(1d, "chain", id - 1));
+            }
+        }
+        try (DurableTransactionalService service = open(directory)) {
+            assertEquals(service.transactionSum(0l), 1500d);
+            service.addTransaction(1500l, new Transaction(1d, "chain", 1499l));
+        }
+        try (DurableTransactionalService service = open(directory)) {
+            assertEquals(service.transactionSum(0l), 1501d);
+        }
+    }
+
+    @Test
+    public void
+    child_logged_before_its_parent_survives_a_restart() throws Exception {
+        Path directory = Files.createTempDirectory("durable");
+        try (TransactionLog transactionLog = new TransactionLog(directory.resolve("log"), 1 << 20)) {
+            transactionLog.recover(0, (sequence, id, transaction) -> { });
+            transactionLog.append(12l, new Transaction(1d, "leaf", 11l));
+            transactionLog.append(11l, new Transaction(10000d, "shopping", 10l));
+            transactionLog.append(10l, new Transaction(5000d, "cars"));
+        }
+        try (DurableTransactionalService service = open(directory)) {
+            assertEquals(service.transactionSum(10l), 15001d);
+            assertEquals(service.transaction(12l), new Transaction(1d, "leaf", 11l));
+        }
+    }
+
+    @Test
+    public void
+    batch_logged_before_the_parent_of_its_transactions_survives_a_restart() throws Exception {
+        Path directory = Files.createTempDirectory("durable");
+        try (TransactionLog transactionLog = new TransactionLog(directory.resolve("log"), 1 << 20)) {
+            transactionLog.recover(0, (sequence, id, transaction) -> { });
+            Map<Long, Transaction> batch = new LinkedHashMap<>();
+            batch.put(11l, new Transaction(10000d, "shopping", 10l));
+            batch.put(12l, new Transaction(1d, "leaf", 11l));
+            transactionLog.append(batch);
+            transactionLog.append(10l, new Transaction(5000d, "cars"));
+            transactionLog.append(13l, new Transaction(2d, "leaf", 12l));
+        }
+        try (DurableTransactionalService service = open(directory)) {
+            assertEquals(service.transactionSum(10l), 15003d);
+            assertEquals(service.transactionByType("leaf").size(), 2);
+        }
+    }
+
+    @Test
+    public void
+    recovery_falls_back_to_the_previous_snapshot_and_its_log() throws Exception {
+        Path directory = Files.createTempDirectory("durable");
+        try (DurableTransactionalService service = open(directory, 1 << 16)) {
+            service.addTransaction(0l, new Transaction(1d, "chain"));
+            for (long id = 1; id < 2000; id++) {
+                service.addTransaction(id, new Transaction(1d, "chain", id - 1));
+            }
+            service.snapshot();
+            for (long id = 2000; id < 4000; id++) {
+                service.addTransaction(id, new Transaction(1d, "chain", id - 1));
+            }
+            assertEquals(service.snapshot(), 4000l);
+            service.addTransaction(4000l, new Transaction(1d, "chain", 3999l));
+        }
+        Path latest = directory.resolve("snapshots").resolve(String.format("snapshot-%020d.bin", 4000));
+        byte[] content = Files.readAllBytes(latest);
+        content[content.length / 2] ^= 1;
+        Files.write(latest, content);
+
+        try (DurableTransactionalService service = open(directory, 1 << 16)) {
+            assertEquals(service.transactionSum(0l), 4001d);
+        }
+    }
+
+    @Test
+    public void
+    snapshot_holds_every_write_acknowledged_while_another_writer_is_stalled() throws Exception {
+        Path directory = Files.createTempDirectory("durable");
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (DurableTransactionalService service = open(directory)) {
+            service.addTransaction(1l, new Transaction(1d, "cars"));
+            Future<?> slow = executor.submit(() -> {
+                service.addTransaction(2l, new Transaction(1d, "cars") {
+                    @Override
+                    public Long parentId() {
+                        // stalls the writer once its ordinal is reserved, while it indexes the transaction
+                        if (Arrays.stream(Thread.currentThread().getStackTrace()).anyMatch(frame -> frame.getMethodName().equals("indexChild"))) {
+                            stalled.countDown();
+                            Uninterruptibles.awaitUninterruptibly(release);
+                        }
+                        return super.parentId();
+                    }
+                });
+                return null;
+            });
+            assertTrue(stalled.await(5, TimeUnit.SECONDS));
+            Future<?> root = executor.submit(() -> {
+                service.addTransaction(3l, new Transaction(1d, "cars"));
+                return null;
+            });
+            Thread.sleep(200);
+            boolean acknowledged = root.isDone();
+            service.snapshot();
+            assertTrue(!acknowledged || snapshotIds(directory).contains(3l), "write acknowledged but missing from the snapshot");
+
+            release.countDown();
+            slow.get(5, TimeUnit.SECONDS);
+            root.get(5, TimeUnit.SECONDS);
+            service.snapshot();
+            assertEquals(snapshotIds(directory), new HashSet<>(Arrays.asList(1l, 2l, 3l)));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static Set<Long> snapshotIds(Path directory) throws Exception {
+        Set<Long> ids = new HashSet<>();
+        new Snapshots(directory.resolve("snapshots")).load((sequence, id, transaction) -> ids.add(id));
+        return ids;
+    }
+
+    private static DurableTransactionalService open(Path directory) throws Exception {
+        return open(directory, 1 << 20);
+    }
+
+    private static DurableTransactionalService open(Path directory, int segmentSize) throws Exception {
+        TransactionalRepository repository = new InMemoryTransactionalRepository();
+        TransactionalService service = new ReadOptimizedTransactionService(repository, false);
+        return new DurableTransactionalService(service, repository, directory, segmentSize, NEVER, NEVER);
+    }
+}
@@ -0,0 +1,93 @@
+package com.n26.codechallenge.persistence;
+
+import com.n26.codechallenge.Transaction;
+import org.testng.annotations.Test;
+
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link TransactionLog}
+ */
+public class TransactionLogTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @Test
+    public void
+    appended_records_are_recovered_in_order() throws Exception {
+        Path directory = Files.createTempDirectory("log");
+        try (TransactionLog log = new TransactionLog(directory, SEGMENT_SIZE)) {
+            log.recover(0, (sequence, id, transaction) -> { });
+            assertEquals(log.append(1l, new Transaction(1.5d, "cars")), 1l);
+            assertEquals(log.append(2l, new Transaction(2d, "shopping", 1l)), 2l);
+        }
+        List<Transaction> recovered = new ArrayList<>();
+        try (TransactionLog log = new TransactionLog(directory, SEGMENT_SIZE)) {
+            assertEquals(log.recover(0, (sequence, id, transaction) -> recovered.add(transaction)), 2l);
+            assertEquals(log.append(3l, new Transaction(3d, "cars")), 3l);
+        }
+        assertEquals(recovered.get(0), new Transaction(1.5d, "cars"));
+        assertEquals(recovered.get(1), new Transaction(2d, "shopping", 1l));
+    }
+
+    @Test
+    public void
+    records_roll_over_segments_and_covered_segments_are_deleted() throws Exception {
+        Path directory = Files.createTempDirectory("log");
+        try (TransactionLog log = new TransactionLog(directory, SEGMENT_SIZE)) {
+            log.recover(0, (sequence, id, transaction) -> { });
+            for (long id = 1; id <= 10_000; id++) {
+                log.append(id, new Transaction(1d, "type"));
+            }
+            int segments = count(directory);
+            log.deleteUpTo(9_000);
+            assertEquals(count(directory) < segments, true);
+        }
+        List<Long> recovered = new ArrayList<>();
+        try (TransactionLog log = new TransactionLog(directory, SEGMENT_SIZE)) {
+            log.recover(9_000, (sequence, id, transaction) -> recovered.add(id));
+        }
+        assertEquals(recovered.size(), 1_000);
+        assertEquals(recovered.get(0), (Long) 9_001l);
+    }
+
+    @Test
+    public void
+    torn_record_is_discarded() throws Exception {
+        Path directory = Files.createTempDirectory("log");
+        try (TransactionLog log = new TransactionLog(directory, SEGMENT_SIZE)) {
+            log.recover(0, (sequence, id, transaction) -> { });
+            log.append(1l, new Transaction(1d, "type"));
+            log.append(2l, new Transaction(1d, "type"));
+        }
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory);
+             RandomAccessFile file = new RandomAccessFile(segments.iterator().next().toFile(), "rw")) {
+            // corrupt the amount of the second record
+            file.seek(40 + 8 + 8 + 8 + 8);
+            file.writeLong(42l);
+        }
+        List<Long> recovered = new ArrayList<>();
+        try (TransactionLog log = new TransactionLog(directory, SEGMENT_SIZE)) {
+            log.recover(0, (sequence, id, transaction) -> recovered.add(id));
+            assertEquals(log.append(3l, new Transaction(1d, "type")), 2l);
+        }
+        assertEquals(recovered.size(), 1);
+    }
+
+    private static int count(Path directory) throws Exception {
+        int count = 0;
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory)) {
+            for (Path ignored : segments) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,93 @@
+package com.n26.codechallenge.replication;
+
+import com.n26.codechallenge.Transaction;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link ChangeLog}
+ */
+public class ChangeLogTest {
+
+    @Test
+    public void
+    records_are_numbered_in_append_order() {
+        ChangeLog changes = new ChangeLog(7);
+        assertEquals(changes.append(10l, new Transaction(1d, "cars")), 1);
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(11l, new Transaction(2d, "cars", 10l));
+        batch.put(12l, new Transaction(3d, "cars", 11l));
+        assertEquals(changes.append(batch), 3);
+        assertEquals(changes.lastSequence(), 3);
+    }
+
+    @Test
+    public void
+    reads_the_records_following_a_sequence_up_to_the_limit() throws Exception {
+        ChangeLog changes = new ChangeLog(7);
+        for (long id = 0; id < ChangeLog.CHUNK_SIZE + 10; id++) {
+            changes.append(id, new Transaction((double) id, "cars"));
+        }
+
+        ChangeBatch batch = changes.read(ChangeLog.CHUNK_SIZE - 2, 5, 0);
+
+        assertEquals(batch.epoch(), 7);
+        assertEquals(batch.first(), ChangeLog.CHUNK_SIZE - 1);
+        assertEquals(batch.last(), ChangeLog.CHUNK_SIZE + 10);
+        assertEquals(batch.ids(), new long[]{ChangeLog.CHUNK_SIZE - 2, ChangeLog.CHUNK_SIZE - 1, ChangeLog.CHUNK_SIZE, ChangeLog.CHUNK_SIZE + 1, ChangeLog.CHUNK_SIZE + 2});
+        assertEquals(batch.transactions().get(2), new Transaction((double) ChangeLog.CHUNK_SIZE, "cars"));
+    }
+
+    @Test
+    public void
+    reading_past_the_end_returns_no_record() throws Exception {
+        ChangeLog changes = new ChangeLog(7);
+        changes.append(10l, new Transaction(1d, "cars"));
+
+        ChangeBatch batch = changes.read(1, 10, 0);
+
+        assertEquals(batch.ids().length, 0);
+        assertEquals(batch.first(), 2);
+        assertEquals(batch.last(), 1);
+    }
+
+    @Test(timeOut = 10_000)
+    public void
+    a_waiting_read_returns_as_soon_as_a_record_is_appended() throws Exception {
+        ChangeLog changes = new ChangeLog(7);
+        CompletableFuture<ChangeBatch> read = CompletableFuture.supplyAsync(() -> {
+            try {
+                return changes.read(0, 10, TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+
+        changes.append(10l, new Transaction(1d, "cars"));
+
+        assertEquals(read.get().ids(), new long[]{10l});
+    }
+
+    @Test
+    public void
+    batches_survive_the_wire() throws Exception {
+        ChangeBatch batch = new ChangeBatch(7, 3, 4, new long[]{10l, 11l},
+                Arrays.asList(new Transaction(1d, "cars"), new Transaction(2d, "cars", 10l)));
+
+        ChangeBatch read = ChangeBatch.fromJson(batch.toJson());
+
+        assertEquals(read.epoch(), 7);
+        assertEquals(read.first(), 3);
+        assertEquals(read.last(), 4);
+        assertEquals(read.ids(), batch.ids());
+        assertEquals(read.transactions(), batch.transactions());
+    }
+}
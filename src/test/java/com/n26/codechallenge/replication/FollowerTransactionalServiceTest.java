@@ -0,0 +1,196 @@
+package com.n26.codechallenge.replication;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.ReadOnlyReplicaException;
+import com.n26.codechallenge.exception.ReplicaBehindException;
+import com.n26.codechallenge.repository.InMemoryTransactionalRepository;
+import com.n26.codechallenge.repository.TransactionalRepository;
+import com.n26.codechallenge.service.ReadOptimizedTransactionService;
+import com.n26.codechallenge.service.TransactionalService;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link FollowerTransactionalService} fed by a
+ * {@link ReplicatedTransactionalService}
+ */
+public class FollowerTransactionalServiceTest {
+
+    private static final long WAIT = 5_000;
+
+    @Test(timeOut = 10_000)
+    public void
+    follower_serves_the_writes_of_the_primary() throws Exception {
+        ReplicatedTransactionalService primary = primary(1);
+        try (FollowerTransactionalService follower = new FollowerTransactionalService(FollowerTransactionalServiceTest::service, new InProcessClient(primary), 100, 100, WAIT)) {
+            primary.addTransaction(10l, new Transaction(5000d, "cars"));
+            Map<Long, Transaction> batch = new LinkedHashMap<>();
+            batch.put(12l, new Transaction(1d, "shopping", 11l));
+            batch.put(11l, new Transaction(10000d, "shopping", 10l));
+            assertTrue(primary.addTransactions(batch).isEmpty());
+
+            follower.awaitSequence(primary.sequence());
+
+            assertEquals(follower.sequence(), 3);
+            assertEquals(follower.transactionSum(10l), 15001d);
+            assertEquals(follower.transactionByType("shopping").size(), 2);
+            assertEquals(follower.lagRecords(), 0);
+        }
+    }
+
+    @Test
+    public void
+    transactions_held_before_the_primary_started_open_the_stream() throws Exception {
+        TransactionalRepository repository = new InMemoryTransactionalRepository();
+        TransactionalService service = new ReadOptimizedTransactionService(repository, false);
+        service.addTransaction(10l, new Transaction(5000d, "cars"));
+
+        ReplicatedTransactionalService primary = new ReplicatedTransactionalService(service, repository, new ChangeLog(1));
+
+        assertEquals(primary.sequence(), 1);
+        assertEquals(primary.changes().read(0, 10, 0).ids(), new long[]{10l});
+    }
+
+    @Test
+    public void
+    a_child_appended_before_its_parent_waits_for_it() throws Exception {
+        try (FollowerTransactionalService follower = new FollowerTransactionalService(FollowerTransactionalServiceTest::service, new StalledClient(), 100, 100, 0)) {
+            follower.apply(new ChangeBatch(1, 1, 2, new long[]{10l, 11l},
+                    Arrays.asList(new Transaction(1d, "cars"), new Transaction(2d, "cars", 9l))));
+
+            assertEquals(follower.sequence(), 1);
+            assertEquals(follower.lagRecords(), 1);
+            assertEquals(follower.transactionSum(10l), 1d);
+
+            follower.apply(new ChangeBatch(1, 3, 3, new long[]{9l}, Collections.singletonList(new Transaction(4d, "cars"))));
+
+            assertEquals(follower.sequence(), 3);
+            assertEquals(follower.transactionSum(9l), 6d);
+        }
+    }
+
+    @Test
+    public void
+    a_restarted_primary_is_read_from_the_start() throws Exception {
+        try (FollowerTransactionalService follower = new FollowerTransactionalService(FollowerTransactionalServiceTest::service, new StalledClient(), 100, 100, 0)) {
+            follower.apply(new ChangeBatch(1, 1, 2, new long[]{10l, 11l},
+                    Arrays.asList(new Transaction(1d, "cars"), new Transaction(2d, "cars", 10l))));
+            assertEquals(follower.sequence(), 2);
+
+            assertEquals(follower.generation(), 0);
+            follower.apply(new ChangeBatch(2, 1, 1, new long[]{10l}, Collections.singletonList(new Transaction(1d, "cars"))));
+
+            assertEquals(follower.sequence(), 1);
+            assertEquals(follower.transactionSum(10l), 1d);
+            assertEquals(follower.transactions(Arrays.asList(10l, 11l)).keySet(), Collections.singleton(10l));
+            assertEquals(follower.replicationStatus().get("epoch"), 2l);
+            assertEquals(follower.generation(), 1);
+        }
+    }
+
+    @Test
+    public void
+    a_follower_diverging_from_its_primary_starts_over() throws Exception {
+        try (FollowerTransactionalService follower = new FollowerTransactionalService(FollowerTransactionalServiceTest::service, new StalledClient(), 100, 100, 0)) {
+            follower.apply(new ChangeBatch(1, 1, 2, new long[]{10l, 11l},
+                    Arrays.asList(new Transaction(1d, "cars"), new Transaction(2d, "cars", 10l))));
+            follower.apply(new ChangeBatch(1, 3, 3, new long[]{10l}, Collections.singletonList(new Transaction(1d, "cars"))));
+            assertEquals(follower.sequence(), 3);
+
+            follower.apply(new ChangeBatch(1, 4, 4, new long[]{11l}, Collections.singletonList(new Transaction(5d, "cars", 10l))));
+
+            assertEquals(follower.sequence(), 0);
+            assertEquals(follower.transactions(Arrays.asList(10l, 11l)), Collections.emptyMap());
+            assertEquals(follower.replicationStatus().get("epoch"), null);
+            assertEquals(follower.generation(), 1);
+
+            follower.apply(new ChangeBatch(1, 1, 1, new long[]{10l}, Collections.singletonList(new Transaction(1d, "cars"))));
+            assertEquals(follower.sequence(), 1);
+            assertEquals(follower.transactionSum(10l), 1d);
+        }
+    }
+
+    @Test(expectedExceptions = ReplicaBehindException.class)
+    public void
+    reading_a_write_not_applied_yet_fails_after_the_wait() throws Exception {
+        try (FollowerTransactionalService follower = new FollowerTransactionalService(FollowerTransactionalServiceTest::service, new StalledClient(), 100, 100, 50)) {
+            follower.awaitSequence(1);
+        }
+    }
+
+    @Test(expectedExceptions = ReadOnlyReplicaException.class)
+    public void
+    follower_refuses_writes() throws Exception {
+        try (FollowerTransactionalService follower = new FollowerTransactionalService(FollowerTransactionalServiceTest::service, new StalledClient(), 100, 100, 0)) {
+            follower.addTransaction(10l, new Transaction(1d, "cars"));
+        }
+    }
+
+    private static TransactionalService service() {
+        return new ReadOptimizedTransactionService(new InMemoryTransactionalRepository(), false);
+    }
+
+    private static ReplicatedTransactionalService primary(long epoch) {
+        TransactionalRepository repository = new InMemoryTransactionalRepository();
+        return new ReplicatedTransactionalService(new ReadOptimizedTransactionService(repository, false), repository, new ChangeLog(epoch));
+    }
+
+    /**
+     * Reads the stream of a primary in the same process, through its wire format
+     */
+    private static class InProcessClient implements ChangeStreamClient {
+
+        private final ReplicatedTransactionalService primary;
+
+        InProcessClient(ReplicatedTransactionalService primary) {
+            this.primary = primary;
+        }
+
+        @Override
+        public ChangeBatch changes(long after, int limit, long waitMillis) {
+            try {
+                return ChangeBatch.fromJson(primary.changes().read(after, limit, waitMillis).toJson());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public String primary() {
+            return "in-process";
+        }
+    }
+
+    /**
+     * A primary which never answers, leaving the test to apply batches itself
+     */
+    private static class StalledClient implements ChangeStreamClient {
+
+        @Override
+        public ChangeBatch changes(long after, int limit, long waitMillis) {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("stopped");
+        }
+
+        @Override
+        public String primary() {
+            return "stalled";
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.n26.codechallenge.replication;
+
+import com.n26.codechallenge.ApiApplication;
+import com.n26.codechallenge.Transaction;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.*;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+/**
+ * Integration test to ensure a follower started on localhost serves the writes of its primary, and reads its own
+ * writes when given the sequence returned by the primary
+ */
+public class ReplicationIT {
+
+    private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+    private final RestTemplate rest = new RestTemplate();
+
+    @AfterClass
+    public void stop() {
+        instances.forEach(ConfigurableApplicationContext::close);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private String start(String... properties) throws IOException {
+        final int port = freePort();
+        instances.add(new SpringApplicationBuilder(ApiApplication.class)
+                .properties("server.port=" + port, "spring.jmx.enabled=false")
+                .properties(properties).run());
+        return "http://localhost:" + port;
+    }
+
+    private long put(String node, long id, Transaction transaction) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        ResponseEntity<Map> put = rest.exchange(node + "/transactionservice/transaction/" + id, HttpMethod.PUT, new HttpEntity<>(transaction.toJson(), headers), Map.class);
+        assertEquals(put.getStatusCode(), HttpStatus.CREATED);
+        return Long.parseLong(put.getHeaders().getFirst("X-Sequence"));
+    }
+
+    private double sum(String node, long id, long minSequence) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Min-Sequence", Long.toString(minSequence));
+        return ((Number) rest.exchange(node + "/transactionservice/sum/" + id, HttpMethod.GET, new HttpEntity<>(headers), Map.class)
+                .getBody().get("sum")).doubleValue();
+    }
+
+    @Test public void
+    follower_reads_the_writes_of_its_primary() throws Exception {
+        String primary = start("transactionservice.replication.role=primary");
+        String follower = start("transactionservice.replication.role=follower", "transactionservice.replication.primary=" + primary);
+
+        long sequence = 0;
+        for (long root = 0; root < 20; root++) {
+            put(primary, root, new Transaction(1d, "replication_it"));
+            sequence = put(primary, 100 + root, new Transaction(2d, "replication_it", root));
+        }
+
+        assertEquals(sequence, 40);
+        assertEquals(sum(follower, 7, sequence), 3d);
+        assertEquals(rest.getForObject(follower + "/transactionservice/types/replication_it", List.class).size(), 40);
+        Map status = rest.getForObject(follower + "/replication/status", Map.class);
+        assertEquals(status.get("role"), "follower");
+        assertEquals(((Number) status.get("sequence")).longValue(), 40l);
+    }
+
+    @Test public void
+    follower_refuses_writes() throws Exception {
+        String primary = start("transactionservice.replication.role=primary");
+        String follower = start("transactionservice.replication.role=follower", "transactionservice.replication.primary=" + primary);
+
+        try {
+            put(follower, 1, new Transaction(1d, "replication_it"));
+            fail();
+        } catch (HttpClientErrorException e) {
+            assertEquals(e.getStatusCode(), HttpStatus.METHOD_NOT_ALLOWED);
+        }
+    }
+}
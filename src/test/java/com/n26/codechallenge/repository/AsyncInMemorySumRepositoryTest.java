@@ -0,0 +1,123 @@
+package com.n26.codechallenge.repository;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.n26.codechallenge.Transaction;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link AsyncInMemorySumRepository}
+ */
+public class AsyncInMemorySumRepositoryTest {
+
+    @Test
+    public void
+    no_parent_simply_works() throws Exception {
+        TransactionalRepository repository = new InMemoryTransactionalRepository();
+        try (AsyncInMemorySumRepository sumRepository = new AsyncInMemorySumRepository(repository)) {
+            add(repository, sumRepository, 1l, new Transaction(32d, "type"));
+            assertEquals(sumRepository.transitiveSum(1l), 32d);
+            assertEquals(sumRepository.submittedSequence(), 0l);
+        }
+    }
+
+    @Test
+    public void
+    reads_see_all_previous_writes() throws Exception {
+        TransactionalRepository repository = new InMemoryTransactionalRepository();
+        try (AsyncInMemorySumRepository sumRepository = new AsyncInMemorySumRepository(repository)) {
+            add(repository, sumRepository, 0l, new Transaction(1d, "type"));
+            for (long id = 1; id < 10_000; id++) {
+                add(repository, sumRepository, id, new Transaction(1d, "type", (id - 1) / 10));
+                if (id % 1000 == 0) {
+                    assertEquals(sumRepository.transitiveSum(0l), id + 1d);
+                }
+            }
+            assertEquals(sumRepository.transitiveSum(0l), 10_000d);
+            assertEquals(sumRepository.pendingIncrements(), 0l);
+            assertEquals(sumRepository.appliedSequence(), 9_999l);
+        }
+    }
+
+    @Test
+    public void
+    increments_to_the_same_ancestors_are_coalesced() throws Exception {
+        TransactionalRepository repository = new InMemoryTransactionalRepository();
+        try (AsyncInMemorySumRepository sumRepository = new AsyncInMemorySumRepository(repository)) {
+            add(repository, sumRepository, 0l, new Transaction(1d, "type"));
+            for (long id = 1; id < 100; id++) {
+                add(repository, sumRepository, id, new Transaction(1d, "type", id - 1));
+            }
+            sumRepository.awaitPropagation(sumRepository.submittedSequence());
+            for (long id = 100; id < 20_000; id++) {
+                add(repository, sumRepository, id, new Transaction(1d, "type", 99l));
+            }
+            assertEquals(sumRepository.transitiveSum(0l), 20_000d);
+            assertEquals(sumRepository.transitiveSum(99l), 19_901d);
+            assertEquals(sumRepository.propagatedIncrements(), 19_999l);
+            // without coalescing every one of the leaves would rewrite its 100 ancestors
+            assertTrue(sumRepository.ancestorUpdates() < 19_900l * 100);
+            assertTrue(sumRepository.maxLag(TimeUnit.NANOSECONDS) >= sumRepository.lastLag(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    @Test
+    public void
+    reads_fail_once_a_batch_cannot_be_propagated() throws Exception {
+        TransactionalRepository repository = new InMemoryTransactionalRepository();
+        try (AsyncInMemorySumRepository sumRepository = new AsyncInMemorySumRepository(repository)) {
+            add(repository, sumRepository, 1l, new Transaction(1d, "type"));
+            // the parent is missing from the repository, so its ancestors cannot be walked
+            sumRepository.addAmount(3l, new Transaction(2d, "type", 2l));
+            try {
+                sumRepository.transitiveSum(1l);
+                fail("The increment of transaction 3 was not applied");
+            } catch (IllegalStateException e) {
+                assertEquals(sumRepository.appliedSequence(), 0l);
+            }
+            add(repository, sumRepository, 4l, new Transaction(4d, "type", 1l));
+            try {
+                sumRepository.transitiveSum(1l);
+                fail("The sums are behind for good");
+            } catch (IllegalStateException e) {
+                assertEquals(sumRepository.appliedSequence(), 0l);
+            }
+        }
+    }
+
+    @Test
+    public void
+    interrupted_reads_fail_and_keep_the_interrupt() throws Exception {
+        final CountDownLatch propagating = new CountDownLatch(1);
+        TransactionalRepository repository = new InMemoryTransactionalRepository() {
+            @Override
+            public Transaction transaction(Long id) {
+                Uninterruptibles.awaitUninterruptibly(propagating);
+                return super.transaction(id);
+            }
+        };
+        try (AsyncInMemorySumRepository sumRepository = new AsyncInMemorySumRepository(repository)) {
+            add(repository, sumRepository, 1l, new Transaction(1d, "type"));
+            add(repository, sumRepository, 2l, new Transaction(2d, "type", 1l));
+            Thread.currentThread().interrupt();
+            try {
+                sumRepository.transitiveSum(1l);
+                fail("The increment of transaction 2 is not applied yet");
+            } catch (IllegalStateException e) {
+                assertTrue(Thread.interrupted());
+            } finally {
+                propagating.countDown();
+            }
+            assertEquals(sumRepository.transitiveSum(1l), 3d);
+        }
+    }
+
+    private static void add(TransactionalRepository repository, SumRepository sumRepository, Long id, Transaction transaction) throws Exception {
+        repository.addTransaction(id, transaction);
+        sumRepository.addAmount(id, transaction);
+    }
+}
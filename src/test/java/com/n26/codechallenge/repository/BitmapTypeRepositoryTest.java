@@ -0,0 +1,81 @@
+package com.n26.codechallenge.repository;
+
+import com.google.common.collect.Sets;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link BitmapTypeRepository}
+ */
+public class BitmapTypeRepositoryTest {
+
+    @Test
+    public void
+    no_transaction_added_return_empty() throws Exception {
+        TypeRepository typeRepository = new BitmapTypeRepository();
+        assertEquals(typeRepository.getTransactionIdsByType("type"), Collections.emptySet());
+        assertEquals(typeRepository.getTransactionIdsByTypes(Collections.singleton("type"), null, 10), Collections.emptyList());
+    }
+
+    @Test
+    public void
+    add_multiple_transactions_with_same_id_exclude_duplicates() throws Exception {
+        TypeRepository typeRepository = new BitmapTypeRepository();
+        typeRepository.addTransaction("type", 3l);
+        typeRepository.addTransaction("type", 3l);
+        typeRepository.addTransaction("type", 4l);
+        assertEquals(typeRepository.getTransactionIdsByType("type"), Sets.newHashSet(3l, 4l));
+        assertTrue(typeRepository.getTransactionIdsByType("type").contains(4l));
+        assertFalse(typeRepository.getTransactionIdsByType("type").contains(5l));
+    }
+
+    @Test
+    public void
+    identifiers_are_iterated_in_signed_order_across_pages() throws Exception {
+        TypeRepository typeRepository = new BitmapTypeRepository();
+        List<Long> expected = new ArrayList<>();
+        expected.add(Long.MIN_VALUE);
+        for (long id = -1500; id < 1500; id++) {
+            expected.add(id);
+        }
+        expected.add(Long.MAX_VALUE);
+        List<Long> shuffled = new ArrayList<>(expected);
+        Collections.shuffle(shuffled);
+        typeRepository.addTransactions("type", shuffled);
+
+        assertEquals(typeRepository.getTransactionIdsByType("type").size(), expected.size());
+        assertEquals(new ArrayList<>(typeRepository.getTransactionIdsByType("type")), expected);
+    }
+
+    @Test
+    public void
+    pages_of_several_types_are_merged_without_duplicates() throws Exception {
+        TypeRepository typeRepository = new BitmapTypeRepository();
+        typeRepository.addTransactions("cars", Arrays.asList(1l, 3l, 5l, 7l));
+        typeRepository.addTransactions("shopping", Arrays.asList(2l, 3l, 6l));
+        typeRepository.addTransaction("other", 4l);
+
+        List<String> types = Arrays.asList("cars", "shopping", "unknown");
+        assertEquals(typeRepository.getTransactionIdsByTypes(types, null, 3), Arrays.asList(1l, 2l, 3l));
+        assertEquals(typeRepository.getTransactionIdsByTypes(types, 3l, 3), Arrays.asList(5l, 6l, 7l));
+        assertEquals(typeRepository.getTransactionIdsByTypes(types, 7l, 3), Collections.emptyList());
+    }
+
+    @Test
+    public void
+    dense_identifiers_take_a_few_bits_each() throws Exception {
+        BitmapTypeRepository typeRepository = new BitmapTypeRepository();
+        List<Long> ids = new ArrayList<>();
+        for (long id = 0; id < 1_000_000; id++) {
+            ids.add(id);
+        }
+        typeRepository.addTransactions("type", ids);
+        assertTrue(typeRepository.footprint() < 1_000_000 / 4, "footprint: " + typeRepository.footprint());
+    }
+}
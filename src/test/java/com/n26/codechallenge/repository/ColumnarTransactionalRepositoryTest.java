@@ -0,0 +1,182 @@
+package com.n26.codechallenge.repository;
+
+import com.google.common.collect.Sets;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeDictionary;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link ColumnarTransactionalRepository}
+ */
+public class ColumnarTransactionalRepositoryTest {
+
+    @Test(expectedExceptions = TransactionAlreadyExistsException.class) public void
+    add_existing_transaction_does_not_work() throws Exception {
+        TransactionalRepository repository = new ColumnarTransactionalRepository();
+        repository.addTransaction(10l, new Transaction(2d, "any_type"));
+        repository.addTransaction(10l, new Transaction(25d, "another_type"));
+    }
+
+    @Test(expectedExceptions = ParentTransactionDoesNotExistException.class) public void
+    add_transaction_with_inexsting_parent_fails() throws Exception {
+        TransactionalRepository repository = new ColumnarTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type", 8l));
+    }
+
+    @Test public void
+    inexisting_transaction_return_null() throws Exception {
+        assertNull(new ColumnarTransactionalRepository().transaction(32l));
+    }
+
+    @Test public void
+    existing_transaction_returns_succesfully() throws Exception {
+        TransactionalRepository repository = new ColumnarTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        repository.addTransaction(2l, new Transaction(4.5d, "another_type", 1l));
+        assertEquals(repository.transaction(1l), new Transaction(3d, "some_type"));
+        assertEquals(repository.transaction(2l), new Transaction(4.5d, "another_type", 1l));
+    }
+
+    @Test public void
+    children_returns_only_direct_children() throws Exception {
+        TransactionalRepository repository = new ColumnarTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        repository.addTransaction(2l, new Transaction(4d, "some_type", 1l));
+        repository.addTransaction(3l, new Transaction(5d, "some_type", 1l));
+        repository.addTransaction(4l, new Transaction(6d, "some_type", 2l));
+
+        assertEquals(repository.children(1l).keySet(), Sets.newHashSet(2l, 3l));
+        assertEquals(repository.children(2l), Collections.singletonMap(4l, new Transaction(6d, "some_type", 2l)));
+        assertEquals(repository.children(4l), Collections.emptyMap());
+    }
+
+    @Test public void
+    all_transactions_is_a_view_of_the_transactions_at_call_time() throws Exception {
+        TransactionalRepository repository = new ColumnarTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        Map<Long, Transaction> all = repository.allTransactions();
+        repository.addTransaction(2l, new Transaction(4d, "some_type", 1l));
+
+        assertEquals(all, Collections.singletonMap(1l, new Transaction(3d, "some_type")));
+        assertEquals(repository.allTransactions().size(), 2);
+    }
+
+    @Test public void
+    storage_grows_over_several_chunks() throws Exception {
+        TransactionalRepository repository = new ColumnarTransactionalRepository();
+        repository.addTransaction(0l, new Transaction(1d, "type"));
+        for (long id = 1; id < 50000; id++) {
+            repository.addTransaction(id, new Transaction(1d, "type" + (id % 7), id - 1));
+        }
+        assertEquals(repository.allTransactions().size(), 50000);
+        assertEquals(repository.allTransactions().values().parallelStream().mapToDouble(Transaction::amount).sum(), 50000d);
+        assertEquals(repository.transaction(49999l), new Transaction(1d, "type" + (49999 % 7), 49998l));
+        assertEquals(repository.children(49998l).keySet(), Collections.singleton(49999l));
+    }
+
+    @Test public void
+    scans_only_pass_the_identifiers_of_the_given_types() throws Exception {
+        ColumnarTransactionalRepository repository = new ColumnarTransactionalRepository();
+        for (long id = 0; id < 40000; id++) {
+            repository.addTransaction(id, new Transaction(1d, "scan_type" + (id % 4)));
+        }
+        BitSet typeCodes = new BitSet();
+        typeCodes.set(TypeDictionary.encode("scan_type1"));
+        List<Long> ids = new ArrayList<>();
+        repository.forEachIdOfTypes(typeCodes, 0, repository.ordinals(), ids::add);
+        assertEquals(ids.size(), 10000);
+        assertEquals(ids.get(0), (Long) 1l);
+        assertEquals(ids.get(9999), (Long) 39997l);
+
+        typeCodes.set(TypeDictionary.encode("scan_type2"));
+        ids.clear();
+        repository.forEachIdOfTypes(typeCodes, 16380, 16390, ids::add);
+        assertEquals(ids, Arrays.asList(16381l, 16382l, 16385l, 16386l, 16389l));
+    }
+
+    @Test public void
+    sub_tree_amount_sums_every_descendant() throws Exception {
+        ColumnarTransactionalRepository repository = new ColumnarTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        repository.addTransaction(2l, new Transaction(4d, "some_type", 1l));
+        repository.addTransaction(3l, new Transaction(5d, "some_type", 1l));
+        repository.addTransaction(4l, new Transaction(6d, "some_type", 2l));
+        repository.addTransaction(5l, new Transaction(7d, "some_type"));
+
+        assertEquals(repository.subTreeAmount(1l, SubTreeListener.IGNORE), 18d);
+        assertEquals(repository.subTreeAmount(2l, SubTreeListener.IGNORE), 10d);
+        assertEquals(repository.subTreeAmount(5l, SubTreeListener.IGNORE), 7d);
+        assertNull(repository.subTreeAmount(6l, SubTreeListener.IGNORE));
+    }
+
+    @Test public void
+    sub_tree_amount_reports_the_size_and_depth_of_the_subtree() throws Exception {
+        ColumnarTransactionalRepository repository = new ColumnarTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        repository.addTransaction(2l, new Transaction(4d, "some_type", 1l));
+        repository.addTransaction(3l, new Transaction(5d, "some_type", 1l));
+        repository.addTransaction(4l, new Transaction(6d, "some_type", 2l));
+        List<Integer> visited = new ArrayList<>();
+
+        repository.subTreeAmount(1l, (size, depth) -> visited.addAll(Arrays.asList(size, depth)));
+        assertEquals(visited, Arrays.asList(4, 2));
+    }
+
+    @Test public void
+    sub_tree_amounts_walk_nested_subtrees_once() throws Exception {
+        ColumnarTransactionalRepository repository = new ColumnarTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        repository.addTransaction(2l, new Transaction(4d, "some_type", 1l));
+        repository.addTransaction(3l, new Transaction(5d, "some_type", 1l));
+        repository.addTransaction(4l, new Transaction(6d, "some_type", 2l));
+        repository.addTransaction(5l, new Transaction(7d, "some_type"));
+        List<Integer> sizes = new ArrayList<>();
+        long acquisitions = repository.lockAcquisitions();
+
+        Map<Long, Double> sums = repository.subTreeAmounts(Arrays.asList(1l, 2l, 6l, 5l, 2l), (size, depth) -> sizes.add(size));
+        assertEquals(sums.keySet(), Sets.newHashSet(1l, 2l, 5l));
+        assertEquals(sums.get(1l), 18d);
+        assertEquals(sums.get(2l), 10d);
+        assertEquals(sums.get(5l), 7d);
+        Collections.sort(sizes);
+        assertEquals(sizes, Arrays.asList(1, 2, 2));
+        assertEquals(repository.lockAcquisitions() - acquisitions, 1);
+    }
+
+    @Test public void
+    transactions_are_read_at_once() throws Exception {
+        ColumnarTransactionalRepository repository = new ColumnarTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        repository.addTransaction(2l, new Transaction(4d, "other_type", 1l));
+        long acquisitions = repository.lockAcquisitions();
+
+        Map<Long, Transaction> transactions = repository.transactions(Arrays.asList(2l, 3l, 1l));
+        assertEquals(transactions.keySet(), Sets.newHashSet(1l, 2l));
+        assertEquals(transactions.get(2l), new Transaction(4d, "other_type", 1l));
+        assertEquals(repository.lockAcquisitions() - acquisitions, 1);
+    }
+
+    @Test public void
+    batches_keep_the_valid_transactions() throws Exception {
+        ColumnarTransactionalRepository repository = new ColumnarTransactionalRepository();
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(1l, new Transaction(3d, "some_type"));
+        batch.put(2l, new Transaction(4d, "some_type", 1l));
+        batch.put(3l, new Transaction(5d, "some_type", 9l));
+        Map<Long, InvalidTransaction> rejected = repository.addTransactions(batch);
+
+        assertEquals(rejected.keySet(), Collections.singleton(3l));
+        assertTrue(rejected.get(3l) instanceof ParentTransactionDoesNotExistException);
+        assertEquals(repository.size(), 2);
+        assertEquals(repository.subTreeAmount(1l, SubTreeListener.IGNORE), 7d);
+    }
+}
@@ -0,0 +1,139 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link EulerTourSumRepository}
+ */
+public class EulerTourSumRepositoryTest {
+
+    @Test
+    public void
+    one_parent_simply_works() throws Exception {
+        SumRepository sumRepository = new EulerTourSumRepository();
+        sumRepository.addAmount(1l, new Transaction(12d, "type"));
+        sumRepository.addAmount(2l, new Transaction(11d, "type", 1l));
+        sumRepository.addAmount(3l, new Transaction(0.5d, "type", 2l));
+        assertEquals(sumRepository.transitiveSum(1l), 23.5d);
+        assertEquals(sumRepository.transitiveSum(2l), 11.5d);
+        assertEquals(sumRepository.transitiveSum(3l), 0.5d);
+        assertNull(sumRepository.transitiveSum(4l));
+    }
+
+    @Test
+    public void
+    subtree_statistics_are_read_from_the_tour_instead_of_walking_the_subtree() throws Exception {
+        SumRepository sumRepository = new EulerTourSumRepository();
+        sumRepository.addAmount(1l, new Transaction(5d, "type"));
+        sumRepository.addAmount(2l, new Transaction(10d, "type", 1l));
+        TransactionTreeTraversal emptyTraversal = new TransactionTreeTraversal(new InMemoryTransactionalRepository());
+
+        assertEquals(sumRepository.subTreeStatistics(1l, null, emptyTraversal), new TypeStatistics(2, 15d, 5d, 10d));
+        assertNull(new InMemorySumRepository(new InMemoryTransactionalRepository()).subTreeStatistics(1l, null, emptyTraversal));
+    }
+
+    @Test
+    public void
+    subtree_statistics_cover_every_descendant() throws Exception {
+        EulerTourSumRepository sumRepository = new EulerTourSumRepository();
+        sumRepository.addAmount(1l, new Transaction(5d, "euler_car"));
+        sumRepository.addAmount(2l, new Transaction(10d, "euler_boat", 1l));
+        sumRepository.addAmount(3l, new Transaction(2d, "euler_car", 2l));
+        sumRepository.addAmount(4l, new Transaction(7d, "euler_car", 1l));
+        sumRepository.addAmount(5l, new Transaction(100d, "euler_car"));
+
+        assertEquals(sumRepository.subTreeStatistics(1l, null), new TypeStatistics(4, 24d, 2d, 10d));
+        assertEquals(sumRepository.subTreeStatistics(2l, null), new TypeStatistics(2, 12d, 2d, 10d));
+        assertEquals(sumRepository.subTreeStatistics(1l, "euler_car"), new TypeStatistics(3, 14d, 2d, 7d));
+        assertEquals(sumRepository.subTreeStatistics(2l, "euler_car"), new TypeStatistics(1, 2d, 2d, 2d));
+        assertEquals(sumRepository.subTreeStatistics(5l, "euler_boat"), TypeStatistics.EMPTY);
+        assertEquals(sumRepository.subTreeStatistics(1l, "euler_unknown"), TypeStatistics.EMPTY);
+        assertNull(sumRepository.subTreeStatistics(6l, null));
+    }
+
+    @Test
+    public void
+    sums_of_a_batch_are_read_at_once() throws Exception {
+        EulerTourSumRepository sumRepository = new EulerTourSumRepository();
+        sumRepository.addAmount(1l, new Transaction(12d, "type"));
+        sumRepository.addAmount(2l, new Transaction(11d, "type", 1l));
+        long acquisitions = sumRepository.lockAcquisitions();
+
+        Map<Long, Double> sums = sumRepository.transitiveSums(Arrays.asList(2l, 4l, 1l));
+        assertEquals(sums.size(), 2);
+        assertEquals(sums.get(1l), 23d);
+        assertEquals(sums.get(2l), 11d);
+        assertEquals(sumRepository.lockAcquisitions() - acquisitions, 1);
+    }
+
+    @Test
+    public void
+    children_registered_before_their_parent_are_indexed_with_it() throws Exception {
+        SumRepository sumRepository = new EulerTourSumRepository();
+        sumRepository.addAmount(1l, new Transaction(1d, "type"));
+        sumRepository.addAmount(3l, new Transaction(4d, "type", 2l));
+        sumRepository.addAmount(4l, new Transaction(8d, "type", 3l));
+        assertEquals(sumRepository.transitiveSum(1l), 1d);
+        assertNull(sumRepository.transitiveSum(3l));
+        sumRepository.addAmount(2l, new Transaction(2d, "type", 1l));
+        assertEquals(sumRepository.transitiveSum(1l), 15d);
+        assertEquals(sumRepository.transitiveSum(2l), 14d);
+        assertEquals(sumRepository.transitiveSum(3l), 12d);
+    }
+
+    @Test
+    public void
+    batch_is_indexed_whatever_its_order() throws Exception {
+        SumRepository sumRepository = new EulerTourSumRepository();
+        sumRepository.addAmount(1l, new Transaction(1d, "type"));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(4l, new Transaction(8d, "type", 3l));
+        batch.put(3l, new Transaction(4d, "type", 2l));
+        batch.put(2l, new Transaction(2d, "type", 1l));
+        sumRepository.addAmounts(batch);
+        assertEquals(sumRepository.transitiveSum(1l), 15d);
+        assertEquals(sumRepository.transitiveSum(3l), 12d);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void
+    registering_an_amount_twice_fails() throws Exception {
+        SumRepository sumRepository = new EulerTourSumRepository();
+        sumRepository.addAmount(1l, new Transaction(1d, "type"));
+        sumRepository.addAmount(1l, new Transaction(1d, "type"));
+    }
+
+    @Test
+    public void
+    statistics_match_a_traversal_of_random_forests() throws Exception {
+        final Random random = new Random(42);
+        final String[] types = {"euler_a", "euler_b", "euler_c"};
+        final InMemoryTransactionalRepository transactions = new InMemoryTransactionalRepository();
+        final TransactionTreeTraversal traversal = new TransactionTreeTraversal(transactions);
+        final EulerTourSumRepository sumRepository = new EulerTourSumRepository();
+        final List<Long> ids = new ArrayList<>();
+        for (long id = 0; id < 2000; id++) {
+            final Long parentId = ids.isEmpty() || random.nextInt(20) == 0 ? null : ids.get(random.nextInt(ids.size()));
+            final Transaction transaction = new Transaction((double) random.nextInt(1000), types[random.nextInt(types.length)], parentId);
+            transactions.addTransaction(id, transaction);
+            sumRepository.addAmount(id, transaction);
+            ids.add(id);
+        }
+        for (int i = 0; i < 300; i++) {
+            final Long id = ids.get(random.nextInt(ids.size()));
+            final String type = random.nextBoolean() ? null : types[random.nextInt(types.length)];
+            assertEquals(sumRepository.subTreeStatistics(id, type), traversal.subTreeStatistics(id, type), "subtree of " + id);
+        }
+    }
+}
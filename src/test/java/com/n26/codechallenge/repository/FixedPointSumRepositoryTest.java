@@ -0,0 +1,137 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link FixedPointSumRepository}
+ */
+public class FixedPointSumRepositoryTest {
+
+    @Test
+    public void
+    one_parent_simply_works() throws Exception {
+        SumRepository sumRepository = new FixedPointSumRepository();
+        sumRepository.addAmount(1l, new Transaction(12d, "type"));
+        sumRepository.addAmount(2l, new Transaction(11d, "type", 1l));
+        sumRepository.addAmount(3l, new Transaction(0.5d, "type", 2l));
+        assertEquals(sumRepository.transitiveSum(1l), 23.5d);
+        assertEquals(sumRepository.transitiveSum(2l), 11.5d);
+        assertEquals(sumRepository.transitiveSum(3l), 0.5d);
+        assertNull(sumRepository.transitiveSum(4l));
+    }
+
+    @Test
+    public void
+    sums_of_a_batch_are_read_at_once() throws Exception {
+        FixedPointSumRepository sumRepository = new FixedPointSumRepository();
+        sumRepository.addAmount(1l, new Transaction(12d, "type"));
+        sumRepository.addAmount(2l, new Transaction(11d, "type", 1l));
+        long acquisitions = sumRepository.lockAcquisitions();
+
+        Map<Long, Double> sums = sumRepository.transitiveSums(Arrays.asList(2l, 4l, 1l));
+        assertEquals(sums.size(), 2);
+        assertEquals(sums.get(1l), 23d);
+        assertEquals(sums.get(2l), 11d);
+        assertEquals(sumRepository.lockAcquisitions() - acquisitions, 1);
+    }
+
+    @Test
+    public void
+    sums_do_not_drift() throws Exception {
+        FixedPointSumRepository sumRepository = new FixedPointSumRepository();
+        sumRepository.addAmount(0l, new Transaction(0d, "type"));
+        double floating = 0;
+        for (long id = 1; id <= 1000; id++) {
+            sumRepository.addAmount(id, new Transaction(0.1d, "type", id - 1));
+            floating += 0.1d;
+        }
+        assertNotEquals(floating, 100d);
+        assertEquals(sumRepository.transitiveSum(0l), 100d);
+        assertEquals(sumRepository.transitiveUnits(0l), (Long) 10_000l);
+        assertEquals(sumRepository.transitiveSum(501l), 50d);
+    }
+
+    @Test
+    public void
+    amount_registered_before_its_parent_is_refused() throws Exception {
+        SumRepository sumRepository = new FixedPointSumRepository();
+        sumRepository.addAmount(1l, new Transaction(1d, "type"));
+        try {
+            sumRepository.addAmount(3l, new Transaction(4d, "type", 2l));
+            fail("registered an amount before its parent");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        sumRepository.addAmount(2l, new Transaction(2d, "type", 1l));
+        sumRepository.addAmount(3l, new Transaction(4d, "type", 2l));
+        assertEquals(sumRepository.transitiveSum(1l), 7d);
+        assertEquals(sumRepository.transitiveSum(2l), 6d);
+        assertEquals(sumRepository.transitiveSum(3l), 4d);
+    }
+
+    @Test
+    public void
+    batch_updates_ancestors_outside_of_it() throws Exception {
+        SumRepository sumRepository = new FixedPointSumRepository();
+        sumRepository.addAmount(1l, new Transaction(1d, "type"));
+        sumRepository.addAmount(2l, new Transaction(2d, "type", 1l));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(3l, new Transaction(4d, "type", 2l));
+        batch.put(4l, new Transaction(8d, "type", 3l));
+        batch.put(5l, new Transaction(16d, "type", 3l));
+        batch.put(6l, new Transaction(32d, "type", 1l));
+        batch.put(7l, new Transaction(64d, "type"));
+        sumRepository.addAmounts(batch);
+        assertEquals(sumRepository.transitiveSum(1l), 127d - 64d);
+        assertEquals(sumRepository.transitiveSum(2l), 30d);
+        assertEquals(sumRepository.transitiveSum(3l), 28d);
+        assertEquals(sumRepository.transitiveSum(5l), 16d);
+        assertEquals(sumRepository.transitiveSum(7l), 64d);
+    }
+
+    @Test(expectedExceptions = InvalidAmountException.class)
+    public void
+    amounts_with_more_decimals_than_the_scale_are_invalid() throws Exception {
+        new FixedPointSumRepository(2).validate(1l, new Transaction(10.125d, "type"));
+    }
+
+    @Test
+    public void
+    amounts_within_the_scale_are_converted_exactly() throws Exception {
+        FixedPointSumRepository sumRepository = new FixedPointSumRepository(2);
+        assertEquals(sumRepository.units(10.35d), 1035l);
+        assertEquals(sumRepository.units(0.07d), 7l);
+        assertEquals(new FixedPointSumRepository(0).units(5000d), 5000l);
+    }
+
+    @Test
+    public void
+    overflows_are_detected_before_any_sum_is_updated() throws Exception {
+        FixedPointSumRepository sumRepository = new FixedPointSumRepository(0);
+        sumRepository.addAmount(1l, new Transaction(0x1p62, "type"));
+        sumRepository.addAmount(2l, new Transaction(0x1p61, "type", 1l));
+        Transaction overflowing = new Transaction(0x1p61, "type", 2l);
+        try {
+            sumRepository.validate(3l, overflowing);
+            fail("The sum of transaction 1 would overflow");
+        } catch (InvalidAmountException e) {
+            assertTrue(e.getMessage().contains("overflow"));
+        }
+        try {
+            sumRepository.addAmount(3l, overflowing);
+            fail("The sum of transaction 1 would overflow");
+        } catch (ArithmeticException e) {
+            assertEquals(sumRepository.transitiveUnits(1l), (Long) (long) (0x1p62 + 0x1p61));
+            assertEquals(sumRepository.transitiveUnits(2l), (Long) (long) 0x1p61);
+            assertNull(sumRepository.transitiveUnits(3l));
+        }
+    }
+}
@@ -4,6 +4,9 @@ import com.n26.codechallenge.Transaction;
 import org.mockito.Mockito;
 import org.testng.annotations.Test;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.*;
 
@@ -30,4 +33,45 @@ public class InMemorySumRepositoryTest {
         sumRepository.addAmount(2l, new Transaction(11d, "type", 1l));
         assertEquals(sumRepository.transitiveSum(1l), 23d);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void
+    build_from_existing_repository_sums_every_subtree() throws Exception {
+        TransactionalRepository repo = new InMemoryTransactionalRepository();
+        repo.addTransaction(1l, new Transaction(1d, "type"));
+        repo.addTransaction(2l, new Transaction(2d, "type", 1l));
+        repo.addTransaction(3l, new Transaction(4d, "type", 1l));
+        repo.addTransaction(4l, new Transaction(8d, "type", 3l));
+        repo.addTransaction(5l, new Transaction(16d, "type"));
+        SumRepository sumRepository = InMemorySumRepository.buildFrom(repo);
+        assertEquals(sumRepository.transitiveSum(1l), 15d);
+        assertEquals(sumRepository.transitiveSum(3l), 12d);
+        assertEquals(sumRepository.transitiveSum(5l), 16d);
+
+        Transaction newLeaf = new Transaction(32d, "type", 4l);
+        repo.addTransaction(6l, newLeaf);
+        sumRepository.addAmount(6l, newLeaf);
+        assertEquals(sumRepository.transitiveSum(1l), 47d);
+    }
+
+    @Test
+    public void
+    batch_updates_ancestors_outside_and_inside_the_batch() throws Exception {
+        TransactionalRepository repo = new InMemoryTransactionalRepository();
+        repo.addTransaction(1l, new Transaction(1d, "type"));
+        repo.addTransaction(2l, new Transaction(2d, "type", 1l));
+        SumRepository sumRepository = InMemorySumRepository.buildFrom(repo);
+
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(3l, new Transaction(4d, "type", 2l));
+        batch.put(4l, new Transaction(8d, "type", 3l));
+        batch.put(5l, new Transaction(16d, "type", 1l));
+        repo.addTransactions(batch);
+        sumRepository.addAmounts(batch);
+
+        assertEquals(sumRepository.transitiveSum(1l), 31d);
+        assertEquals(sumRepository.transitiveSum(2l), 14d);
+        assertEquals(sumRepository.transitiveSum(3l), 12d);
+        assertEquals(sumRepository.transitiveSum(5l), 16d);
+    }
+}
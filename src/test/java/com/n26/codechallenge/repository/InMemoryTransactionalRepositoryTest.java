@@ -6,8 +6,18 @@ import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
 import org.testng.annotations.Test;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
 
 public class InMemoryTransactionalRepositoryTest {
 
@@ -58,4 +68,164 @@ public class InMemoryTransactionalRepositoryTest {
         assertEquals(newTransaction, returnedTransaction);
     }
 
-}
\ No newline at end of file
+    @Test public void
+    children_of_transaction_without_children_is_empty() throws Exception {
+        final TransactionalRepository repository = new InMemoryTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        assertEquals(Collections.emptyMap(), repository.children(1l));
+        assertEquals(Collections.emptyMap(), repository.children(2l));
+    }
+
+    @Test public void
+    children_returns_only_direct_children() throws Exception {
+        final TransactionalRepository repository = new InMemoryTransactionalRepository();
+        Transaction root = new Transaction(3d, "some_type");
+        Transaction child = new Transaction(4d, "some_type", 1l);
+        Transaction anotherChild = new Transaction(5d, "another_type", 1l);
+        Transaction grandChild = new Transaction(6d, "some_type", 2l);
+        repository.addTransaction(1l, root);
+        repository.addTransaction(2l, child);
+        repository.addTransaction(3l, anotherChild);
+        repository.addTransaction(4l, grandChild);
+
+        assertEquals(2, repository.children(1l).size());
+        assertEquals(child, repository.children(1l).get(2l));
+        assertEquals(anotherChild, repository.children(1l).get(3l));
+        assertEquals(Collections.singletonMap(4l, grandChild), repository.children(2l));
+    }
+
+    @Test public void
+    concurrent_adds_with_same_id_only_one_succeeds() throws Exception {
+        final TransactionalRepository repository = new InMemoryTransactionalRepository();
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger conflicts = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final double amount = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (long id = 0; id < 1000; id++) {
+                    try {
+                        repository.addTransaction(id, new Transaction(amount, "type", id == 0 ? null : id - 1));
+                    } catch (TransactionAlreadyExistsException e) {
+                        conflicts.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals((threads - 1) * 1000, conflicts.get());
+        assertEquals(1000, repository.allTransactions().size());
+        for (long id = 1; id < 1000; id++) {
+            assertEquals(Collections.singleton(id), repository.children(id - 1).keySet());
+        }
+    }
+
+    @Test public void
+    all_transactions_is_a_snapshot_unaffected_by_later_writes() throws Exception {
+        final InMemoryTransactionalRepository repository = new InMemoryTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        TransactionSnapshot snapshot = repository.allTransactions();
+        repository.addTransaction(2l, new Transaction(4d, "some_type", 1l));
+
+        assertEquals(1, snapshot.epoch());
+        assertEquals(Collections.singletonMap(1l, new Transaction(3d, "some_type")), snapshot);
+        assertNull(snapshot.get(2l));
+        assertEquals(2, repository.allTransactions().epoch());
+        assertEquals(2, repository.allTransactions().size());
+    }
+
+    @Test public void
+    parallel_scans_of_a_snapshot_see_every_transaction_once() throws Exception {
+        final InMemoryTransactionalRepository repository = new InMemoryTransactionalRepository();
+        repository.addTransaction(0l, new Transaction(1d, "type"));
+        for (long id = 1; id < 50000; id++) {
+            repository.addTransaction(id, new Transaction(1d, "type", id - 1));
+        }
+        TransactionSnapshot snapshot = repository.allTransactions();
+
+        assertEquals(50000, snapshot.entrySet().parallelStream().mapToLong(Map.Entry::getKey).distinct().count());
+        assertEquals(50000d, snapshot.values().parallelStream().mapToDouble(Transaction::amount).sum());
+        assertNotNull(snapshot.entrySet().spliterator().trySplit());
+    }
+
+    @Test public void
+    snapshots_taken_during_concurrent_writes_hold_the_parents_of_their_transactions() throws Exception {
+        final InMemoryTransactionalRepository repository = new InMemoryTransactionalRepository();
+        final int threads = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final AtomicLong nextId = new AtomicLong();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    final long id = nextId.getAndIncrement();
+                    try {
+                        repository.addTransaction(id, new Transaction(1d, "type", id == 0 ? null : ThreadLocalRandom.current().nextLong(id)));
+                    } catch (ParentTransactionDoesNotExistException e) {
+                        repository.addTransaction(id, new Transaction(1d, "type"));
+                    }
+                }
+                return null;
+            }));
+        }
+        executor.shutdown();
+        int epoch = 0;
+        while (!executor.isTerminated()) {
+            TransactionSnapshot snapshot = repository.allTransactions();
+            assertTrue(snapshot.epoch() >= epoch);
+            epoch = snapshot.epoch();
+            int size = 0;
+            for (Map.Entry<Long, Transaction> entry : snapshot.entrySet()) {
+                Long parentId = entry.getValue().parentId();
+                assertTrue("missing parent of " + entry.getKey(), parentId == null || snapshot.containsKey(parentId));
+                size++;
+            }
+            assertEquals(snapshot.size(), size);
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        assertEquals(threads * 5000, repository.allTransactions().size());
+    }
+
+    @Test public void
+    the_watermark_passes_every_ordinal_once_concurrent_writers_are_done() throws Exception {
+        final InMemoryTransactionalRepository repository = new InMemoryTransactionalRepository();
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (long id = 0; id < 20000; id++) {
+                    try {
+                        repository.addTransaction(id, new Transaction(1d, "type"));
+                    } catch (TransactionAlreadyExistsException e) {
+                        // another writer got it first, its ordinal is wasted
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        TransactionSnapshot snapshot = repository.allTransactions();
+        assertTrue(snapshot.epoch() >= 20000);
+        assertEquals(20000, snapshot.size());
+        assertEquals(20000d, snapshot.values().stream().mapToDouble(Transaction::amount).sum());
+    }
+}
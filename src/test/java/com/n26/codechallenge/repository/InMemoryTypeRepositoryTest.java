@@ -3,6 +3,7 @@ package com.n26.codechallenge.repository;
 import com.google.common.collect.Sets;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 
 import static org.testng.Assert.*;
@@ -42,5 +43,12 @@ public class InMemoryTypeRepositoryTest {
         assertEquals(typeRepository.getTransactionIdsByType("type"), Sets.newHashSet(3l));
     }
 
-
-}
\ No newline at end of file
+    @Test
+    public void
+    pages_are_sorted_and_start_after_the_cursor() throws Exception {
+        TypeRepository typeRepository = new InMemoryTypeRepository();
+        typeRepository.addTransactions("type", Arrays.asList(9l, 3l, 7l));
+        typeRepository.addTransaction("other", 5l);
+        assertEquals(typeRepository.getTransactionIdsByTypes(Arrays.asList("type", "other"), 3l, 2), Arrays.asList(5l, 7l));
+    }
+}
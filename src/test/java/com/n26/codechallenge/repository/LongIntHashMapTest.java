@@ -0,0 +1,52 @@
+package com.n26.codechallenge.repository;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class LongIntHashMapTest {
+
+    @Test
+    public void
+    missing_key_returns_no_value() throws Exception {
+        assertEquals(new LongIntHashMap().get(3l), LongIntHashMap.NO_VALUE);
+    }
+
+    @Test
+    public void
+    put_if_absent_keeps_first_value() throws Exception {
+        LongIntHashMap map = new LongIntHashMap();
+        assertEquals(map.putIfAbsent(3l, 0), LongIntHashMap.NO_VALUE);
+        assertEquals(map.putIfAbsent(3l, 7), 0);
+        assertEquals(map.get(3l), 0);
+        assertEquals(map.size(), 1);
+    }
+
+    @Test
+    public void
+    any_long_can_be_used_as_key() throws Exception {
+        LongIntHashMap map = new LongIntHashMap();
+        map.putIfAbsent(0l, 1);
+        map.putIfAbsent(-1l, 2);
+        map.putIfAbsent(Long.MIN_VALUE, 3);
+        map.putIfAbsent(Long.MAX_VALUE, 4);
+        assertEquals(map.get(0l), 1);
+        assertEquals(map.get(-1l), 2);
+        assertEquals(map.get(Long.MIN_VALUE), 3);
+        assertEquals(map.get(Long.MAX_VALUE), 4);
+    }
+
+    @Test
+    public void
+    rehash_keeps_all_mappings() throws Exception {
+        LongIntHashMap map = new LongIntHashMap(2);
+        for (int i = 0; i < 100_000; i++) {
+            map.putIfAbsent(i * 31l, i);
+        }
+        assertEquals(map.size(), 100_000);
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals(map.get(i * 31l), i);
+        }
+        assertFalse(map.containsKey(1l));
+    }
+}
@@ -0,0 +1,96 @@
+package com.n26.codechallenge.repository;
+
+import com.google.common.collect.Sets;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link PrimitiveTransactionalRepository}
+ */
+public class PrimitiveTransactionalRepositoryTest {
+
+    @Test(expectedExceptions = TransactionAlreadyExistsException.class) public void
+    add_existing_transaction_does_not_work() throws Exception {
+        TransactionalRepository repository = new PrimitiveTransactionalRepository();
+        repository.addTransaction(10l, new Transaction(2d, "any_type"));
+        repository.addTransaction(10l, new Transaction(25d, "another_type"));
+    }
+
+    @Test(expectedExceptions = ParentTransactionDoesNotExistException.class) public void
+    add_transaction_with_inexsting_parent_fails() throws Exception {
+        TransactionalRepository repository = new PrimitiveTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type", 8l));
+    }
+
+    @Test public void
+    inexisting_transaction_return_null() throws Exception {
+        assertNull(new PrimitiveTransactionalRepository().transaction(32l));
+    }
+
+    @Test public void
+    existing_transaction_returns_succesfully() throws Exception {
+        TransactionalRepository repository = new PrimitiveTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        repository.addTransaction(2l, new Transaction(4.5d, "another_type", 1l));
+        assertEquals(repository.transaction(1l), new Transaction(3d, "some_type"));
+        assertEquals(repository.transaction(2l), new Transaction(4.5d, "another_type", 1l));
+    }
+
+    @Test public void
+    children_returns_only_direct_children() throws Exception {
+        TransactionalRepository repository = new PrimitiveTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        repository.addTransaction(2l, new Transaction(4d, "some_type", 1l));
+        repository.addTransaction(3l, new Transaction(5d, "some_type", 1l));
+        repository.addTransaction(4l, new Transaction(6d, "some_type", 2l));
+
+        assertEquals(repository.children(1l).keySet(), Sets.newHashSet(2l, 3l));
+        assertEquals(repository.children(2l), Collections.singletonMap(4l, new Transaction(6d, "some_type", 2l)));
+        assertEquals(repository.children(4l), Collections.emptyMap());
+    }
+
+    @Test public void
+    all_transactions_is_a_view_of_the_transactions_at_call_time() throws Exception {
+        TransactionalRepository repository = new PrimitiveTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        Map<Long, Transaction> all = repository.allTransactions();
+        repository.addTransaction(2l, new Transaction(4d, "some_type", 1l));
+
+        assertEquals(all, Collections.singletonMap(1l, new Transaction(3d, "some_type")));
+        assertEquals(repository.allTransactions().size(), 2);
+    }
+
+    @Test public void
+    transactions_are_read_at_once() throws Exception {
+        PrimitiveTransactionalRepository repository = new PrimitiveTransactionalRepository();
+        repository.addTransaction(1l, new Transaction(3d, "some_type"));
+        repository.addTransaction(2l, new Transaction(4d, "other_type", 1l));
+        long acquisitions = repository.lockAcquisitions();
+
+        Map<Long, Transaction> transactions = repository.transactions(Arrays.asList(2l, 3l, 1l, 2l));
+        assertEquals(transactions.keySet(), Sets.newHashSet(1l, 2l));
+        assertEquals(transactions.get(2l), new Transaction(4d, "other_type", 1l));
+        assertEquals(repository.lockAcquisitions() - acquisitions, 1);
+    }
+
+    @Test public void
+    storage_grows_beyond_initial_capacity() throws Exception {
+        TransactionalRepository repository = new PrimitiveTransactionalRepository();
+        repository.addTransaction(0l, new Transaction(1d, "type"));
+        for (long id = 1; id < 5000; id++) {
+            repository.addTransaction(id, new Transaction(1d, "type" + (id % 7), id - 1));
+        }
+        assertEquals(repository.allTransactions().size(), 5000);
+        assertEquals(repository.transaction(4999l), new Transaction(1d, "type" + (4999 % 7), 4998l));
+        assertEquals(repository.children(4998l).keySet(), Collections.singleton(4999l));
+    }
+}
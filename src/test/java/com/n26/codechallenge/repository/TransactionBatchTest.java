@@ -0,0 +1,74 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeDictionary;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link TransactionBatch}
+ */
+public class TransactionBatchTest {
+
+    @Test
+    public void
+    children_are_moved_after_their_parent() throws Exception {
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(3l, new Transaction(1d, "type", 2l));
+        batch.put(2l, new Transaction(1d, "type", 1l));
+        batch.put(1l, new Transaction(1d, "type"));
+        batch.put(4l, new Transaction(1d, "type", 100l));
+        assertEquals(new ArrayList<>(TransactionBatch.parentsFirst(batch).keySet()), Arrays.asList(1l, 4l, 2l, 3l));
+    }
+
+    @Test
+    public void
+    cycles_are_kept_at_the_end() throws Exception {
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(1l, new Transaction(1d, "type", 2l));
+        batch.put(2l, new Transaction(1d, "type", 1l));
+        batch.put(3l, new Transaction(1d, "type"));
+        Map<Long, Transaction> ordered = TransactionBatch.parentsFirst(batch);
+        assertEquals(ordered.size(), 3);
+        assertEquals(ordered.keySet().iterator().next(), Long.valueOf(3l));
+    }
+
+    @Test
+    public void
+    sub_tree_amounts_stop_at_the_batch_boundary() throws Exception {
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(1l, new Transaction(1d, "type", 100l));
+        batch.put(2l, new Transaction(2d, "type", 1l));
+        batch.put(3l, new Transaction(4d, "type", 1l));
+        batch.put(4l, new Transaction(8d, "type", 100l));
+        batch.put(5l, new Transaction(16d, "type"));
+        Map<Long, Double> outside = new HashMap<>();
+        Map<Long, Double> sums = TransactionBatch.subTreeAmounts(batch, outside);
+        assertEquals(sums.get(1l), 7d);
+        assertEquals(sums.get(2l), 2d);
+        assertEquals(sums.get(5l), 16d);
+        assertEquals(outside.size(), 1);
+        assertEquals(outside.get(100l), 15d);
+    }
+
+    @Test
+    public void
+    accepted_drops_the_rejected_transactions_and_keeps_the_order() throws Exception {
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(2l, new Transaction(1d, "type"));
+        batch.put(1l, new Transaction(1d, "type"));
+        batch.put(3l, new Transaction(1d, "type"));
+        Map<Long, Transaction> accepted = TransactionBatch.accepted(batch, new HashSet<>(Arrays.asList(1l)));
+        assertEquals(new ArrayList<>(accepted.keySet()), Arrays.asList(2l, 3l));
+        assertTrue(TransactionBatch.idsPerType(accepted).get(TypeDictionary.encode("type")).containsAll(Arrays.asList(2l, 3l)));
+    }
+}
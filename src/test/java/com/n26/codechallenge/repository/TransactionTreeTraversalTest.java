@@ -0,0 +1,121 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link TransactionTreeTraversal}
+ */
+public class TransactionTreeTraversalTest {
+
+    private static final int DEEP = 100_000;
+
+    @Test
+    public void
+    inexisting_root_returns_null() throws Exception {
+        assertNull(new TransactionTreeTraversal(new InMemoryTransactionalRepository()).subTreeAmount(1l));
+    }
+
+    @Test
+    public void
+    deep_chain_does_not_overflow_the_stack() throws Exception {
+        TransactionalRepository repository = chain(DEEP);
+        TransactionTreeTraversal sequential = new TransactionTreeTraversal(repository, Integer.MAX_VALUE);
+        TransactionTreeTraversal parallel = new TransactionTreeTraversal(repository, 0);
+        assertEquals(sequential.subTreeAmount(0l), (double) DEEP);
+        assertEquals(parallel.subTreeAmount(0l), (double) DEEP);
+        assertEquals(sequential.subTreeAmount(DEEP - 10l), 10d);
+    }
+
+    @Test
+    public void
+    listener_receives_the_size_and_depth_of_the_subtree() throws Exception {
+        TransactionalRepository repository = chain(DEEP);
+        repository.addTransaction((long) DEEP, new Transaction(1d, "type", 0l));
+        for (int threshold : Arrays.asList(0, Integer.MAX_VALUE)) {
+            List<Integer> visited = new ArrayList<>();
+            new TransactionTreeTraversal(repository, threshold, (size, depth) -> visited.addAll(Arrays.asList(size, depth))).subTreeAmount(0l);
+            assertEquals(visited, Arrays.asList(DEEP + 1, DEEP - 1));
+        }
+    }
+
+    @Test
+    public void
+    nested_subtrees_of_a_batch_are_walked_once() throws Exception {
+        TransactionalRepository repository = chain(DEEP);
+        for (int threshold : Arrays.asList(0, Integer.MAX_VALUE)) {
+            List<Integer> sizes = new ArrayList<>();
+            Map<Long, Double> sums = new TransactionTreeTraversal(repository, threshold, (size, depth) -> sizes.add(size))
+                    .subTreeAmounts(Arrays.asList(0l, DEEP - 10l, -1l, DEEP / 2l, 0l));
+
+            assertEquals(sums.size(), 3);
+            assertEquals(sums.get(0l), (double) DEEP);
+            assertEquals(sums.get(DEEP / 2l), (double) DEEP / 2);
+            assertEquals(sums.get(DEEP - 10l), 10d);
+            assertEquals(sizes, Arrays.asList(10, DEEP / 2 - 10, DEEP / 2));
+        }
+    }
+
+    @Test
+    public void
+    for_each_ancestor_walks_up_to_the_root() throws Exception {
+        TransactionalRepository repository = chain(DEEP);
+        List<Long> visited = new ArrayList<>();
+        new TransactionTreeTraversal(repository).forEachAncestor(DEEP - 1l, visited::add);
+        assertEquals(visited.size(), DEEP);
+        assertEquals(visited.get(0), (Long) (DEEP - 1l));
+        assertEquals(visited.get(DEEP - 1), (Long) 0l);
+    }
+
+    @Test
+    public void
+    for_each_ancestor_of_root_visits_nothing() throws Exception {
+        List<Long> visited = new ArrayList<>();
+        new TransactionTreeTraversal(new InMemoryTransactionalRepository()).forEachAncestor(null, visited::add);
+        assertEquals(visited.size(), 0);
+    }
+
+    @Test
+    public void
+    parallel_and_sequential_sums_agree_on_wide_random_trees() throws Exception {
+        final TransactionalRepository repository = new InMemoryTransactionalRepository();
+        final Random random = new Random(7);
+        repository.addTransaction(0l, new Transaction(1d, "root"));
+        long expected = 1;
+        for (long id = 1; id < 200_000; id++) {
+            final long amount = random.nextInt(100);
+            repository.addTransaction(id, new Transaction((double) amount, "type", (long) random.nextInt((int) Math.min(id, 1000))));
+            expected += amount;
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (int threshold : Arrays.asList(0, 1, 100, Integer.MAX_VALUE)) {
+            assertEquals(new TransactionTreeTraversal(repository, pool, threshold).subTreeAmount(0l), (double) expected);
+        }
+        pool.shutdown();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void
+    negative_threshold_is_rejected() throws Exception {
+        new TransactionTreeTraversal(new InMemoryTransactionalRepository(), -1);
+    }
+
+    private static TransactionalRepository chain(int length) throws Exception {
+        TransactionalRepository repository = new InMemoryTransactionalRepository();
+        repository.addTransaction(0l, new Transaction(1d, "chain"));
+        for (long id = 1; id < length; id++) {
+            repository.addTransaction(id, new Transaction(1d, "chain", id - 1));
+        }
+        return repository;
+    }
+}
@@ -0,0 +1,75 @@
+package com.n26.codechallenge.repository;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link TypeAggregates}
+ */
+public class TypeAggregatesTest {
+
+    @Test public void
+    statistics_of_a_type_simply_work() throws Exception {
+        TypeAggregates aggregates = new TypeAggregates();
+        aggregates.add(new Transaction(3d, "aggregated"));
+        aggregates.addAll(Arrays.asList(new Transaction(1d, "aggregated"), new Transaction(8d, "aggregated", 1l), new Transaction(5d, "aggregated_other")));
+
+        TypeStatistics statistics = aggregates.statistics("aggregated");
+        assertEquals(statistics.count(), 3);
+        assertEquals(statistics.sum(), 12d);
+        assertEquals(statistics.min(), 1d);
+        assertEquals(statistics.max(), 8d);
+        assertEquals(statistics.average(), 4d);
+        assertEquals(aggregates.statistics("aggregated_other"), new TypeStatistics(1, 5d, 5d, 5d));
+    }
+
+    @Test public void
+    unknown_types_have_empty_statistics() throws Exception {
+        TypeAggregates aggregates = new TypeAggregates();
+        aggregates.add(new Transaction(3d, "aggregated"));
+
+        assertEquals(aggregates.statistics("never_aggregated"), TypeStatistics.EMPTY);
+        assertEquals(new TypeAggregates().statistics("aggregated"), TypeStatistics.EMPTY);
+        assertEquals(TypeStatistics.EMPTY.count(), 0);
+        assertNull(TypeStatistics.EMPTY.average());
+        assertNull(TypeStatistics.EMPTY.min());
+    }
+
+    @Test public void
+    concurrent_writers_of_many_types_are_all_accounted_for() throws Exception {
+        TypeAggregates aggregates = new TypeAggregates();
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int writer = 0; writer < 8; writer++) {
+                done.add(writers.submit(() -> {
+                    for (int i = 1; i <= 10_000; i++) {
+                        aggregates.add(new Transaction((double) i, "concurrently_aggregated_" + (i % 200)));
+                        aggregates.add(new Transaction(1d, "concurrently_aggregated"));
+                    }
+                }));
+            }
+            for (Future<?> writer : done) {
+                writer.get();
+            }
+        } finally {
+            writers.shutdown();
+        }
+        assertEquals(aggregates.statistics("concurrently_aggregated"), new TypeStatistics(80_000, 80_000d, 1d, 1d));
+        TypeStatistics statistics = aggregates.statistics("concurrently_aggregated_7");
+        assertEquals(statistics.count(), 8 * 50);
+        assertEquals(statistics.min(), 7d);
+        assertEquals(statistics.max(), 9807d);
+    }
+}
@@ -0,0 +1,118 @@
+package com.n26.codechallenge.service;
+
+import com.google.common.collect.Sets;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.repository.InMemoryTransactionalRepository;
+import com.n26.codechallenge.repository.SubTreeListener;
+import com.n26.codechallenge.service.AdaptiveTransactionService.Strategy;
+import com.n26.codechallenge.service.AdaptiveTransactionService.SwitchPolicy;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Set of unit tests to ensure the implementation {@link AdaptiveTransactionService}
+ */
+public class AdaptiveTransactionServiceTest {
+
+    private static final SwitchPolicy MANUAL = new SwitchPolicy(4d, 1d, 10, TimeUnit.HOURS.toMillis(1));
+
+    @Test public void
+    starts_write_optimized() throws Exception {
+        try (AdaptiveTransactionService service = new AdaptiveTransactionService()) {
+            assertEquals(service.activeStrategy(), Strategy.WRITE_OPTIMIZED);
+            assertNull(service.lastSwitch());
+        }
+    }
+
+    @Test public void
+    both_strategies_return_the_same_results() throws Exception {
+        try (AdaptiveTransactionService service = new AdaptiveTransactionService(new InMemoryTransactionalRepository(), 0, MANUAL)) {
+            service.addTransaction(10l, new Transaction(5000d, "cars"));
+            service.addTransaction(11l, new Transaction(10000d, "shopping", 10l));
+            assertResults(service, 15000d, Sets.newHashSet(10l));
+
+            service.switchTo(Strategy.READ_OPTIMIZED);
+            assertEquals(service.activeStrategy(), Strategy.READ_OPTIMIZED);
+            assertNotNull(service.lastSwitch());
+            assertResults(service, 15000d, Sets.newHashSet(10l));
+
+            service.addTransaction(12l, new Transaction(1d, "cars", 11l));
+            assertResults(service, 15001d, Sets.newHashSet(10l, 12l));
+
+            service.switchTo(Strategy.WRITE_OPTIMIZED);
+            service.addTransaction(13l, new Transaction(1d, "cars", 11l));
+            assertResults(service, 15002d, Sets.newHashSet(10l, 12l, 13l));
+        }
+    }
+
+    @Test public void
+    memoized_sums_survive_writes_made_while_read_optimized() throws Exception {
+        try (AdaptiveTransactionService service = new AdaptiveTransactionService(new InMemoryTransactionalRepository(), 0, MANUAL, 16, SubTreeListener.IGNORE)) {
+            service.addTransaction(10l, new Transaction(5000d, "cars"));
+            assertEquals(service.transactionSum(10l), 5000d);
+            assertEquals(service.transactionSum(10l), 5000d);
+            assertEquals(service.sumCacheHits(), 1);
+
+            service.switchTo(Strategy.READ_OPTIMIZED);
+            service.addTransaction(11l, new Transaction(1d, "cars", 10l));
+            service.switchTo(Strategy.WRITE_OPTIMIZED);
+            assertEquals(service.transactionSum(10l), 5001d);
+        }
+    }
+
+    @Test(expectedExceptions = TransactionDoesNotExistException.class) public void
+    read_optimized_sum_of_inexisting_transaction_fails() throws Exception {
+        try (AdaptiveTransactionService service = new AdaptiveTransactionService(new InMemoryTransactionalRepository(), 0, MANUAL)) {
+            service.switchTo(Strategy.READ_OPTIMIZED);
+            service.transactionSum(1l);
+        }
+    }
+
+    @Test public void
+    switches_following_the_read_write_ratio() throws Exception {
+        try (AdaptiveTransactionService service = new AdaptiveTransactionService(new InMemoryTransactionalRepository(), 0, MANUAL)) {
+            for (long id = 0; id < 10; id++) {
+                service.addTransaction(id, new Transaction(1d, "type"));
+            }
+            service.evaluate();
+            assertEquals(service.activeStrategy(), Strategy.WRITE_OPTIMIZED);
+
+            for (long id = 0; id < 50; id++) {
+                service.transactionSum(id % 10);
+            }
+            service.evaluate();
+            assertEquals(service.activeStrategy(), Strategy.READ_OPTIMIZED);
+            assertEquals(service.transactionByType("type").size(), 10);
+
+            for (long id = 10; id < 30; id++) {
+                service.addTransaction(id, new Transaction(1d, "type"));
+            }
+            service.evaluate();
+            assertEquals(service.activeStrategy(), Strategy.WRITE_OPTIMIZED);
+        }
+    }
+
+    @Test public void
+    quiet_periods_do_not_switch() throws Exception {
+        try (AdaptiveTransactionService service = new AdaptiveTransactionService(new InMemoryTransactionalRepository(), 0, MANUAL)) {
+            service.addTransaction(1l, new Transaction(1d, "type"));
+            service.transactionSum(1l);
+            service.transactionSum(1l);
+            service.evaluate();
+            assertEquals(service.activeStrategy(), Strategy.WRITE_OPTIMIZED);
+            assertEquals(service.transactionByType("another"), Collections.emptySet());
+        }
+    }
+
+    private static void assertResults(TransactionalService service, double rootSum, Object carIds) throws Exception {
+        assertEquals(service.transactionSum(10l), rootSum);
+        assertEquals(service.transactionSum(11l), rootSum - 5000d);
+        assertEquals(service.transactionByType("cars"), carIds);
+        assertEquals(service.transaction(11l), new Transaction(10000d, "shopping", 10l));
+    }
+}
@@ -2,10 +2,30 @@ package com.n26.codechallenge.service;
 
 import com.google.common.collect.Sets;
 import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeDictionary;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidAmountException;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
 import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.repository.BitmapTypeRepository;
+import com.n26.codechallenge.repository.EulerTourSumRepository;
+import com.n26.codechallenge.repository.FixedPointSumRepository;
+import com.n26.codechallenge.repository.InMemoryTransactionalRepository;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 /**
  * Set of unit tests to ensure the implementation {@link ReadOptimizedTransactionService}
@@ -43,4 +63,224 @@ public class ReadOptimizedTransactionServiceTest {
         Transaction inexistingTransaction = service.transaction(23l);
     }
 
-}
\ No newline at end of file
+    @Test public void
+    sum_of_inexisting_transaction_fails_whatever_the_sum_view() throws Exception {
+        InMemoryTransactionalRepository repository = new InMemoryTransactionalRepository();
+        List<TransactionalService> services = new ArrayList<>();
+        services.add(new ReadOptimizedTransactionService(repository, false));
+        services.add(new ReadOptimizedTransactionService(repository, true));
+        services.add(new ReadOptimizedTransactionService(repository, new BitmapTypeRepository(), new FixedPointSumRepository(2)));
+        services.add(new ReadOptimizedTransactionService(repository, new BitmapTypeRepository(), new EulerTourSumRepository()));
+        for (TransactionalService service : services) {
+            try {
+                service.transactionSum(23l);
+                fail("no failure for the sum of an inexisting transaction");
+            } catch (TransactionDoesNotExistException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test public void
+    concurrent_additions_to_the_same_tree_sum_up() throws Exception {
+        final TransactionalService service = new ReadOptimizedTransactionService();
+        service.addTransaction(0l, new Transaction(1d, "root"));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final long firstId = 1 + t * 1000l;
+            futures.add(executor.submit(() -> {
+                service.addTransaction(firstId, new Transaction(1d, "branch", 0l));
+                for (long id = firstId + 1; id < firstId + 1000; id++) {
+                    service.addTransaction(id, new Transaction(1d, "leaf", id - 1));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(service.transactionSum(0l), 4001d);
+        assertEquals(service.transactionSum(1l), 1000d);
+        assertEquals(service.transactionByType("leaf").size(), 4 * 999);
+    }
+
+    @Test public void
+    transaction_sum_of_a_deep_chain_does_not_overflow_the_stack() throws Exception {
+        TransactionalService service = new ReadOptimizedTransactionService();
+        service.addTransaction(0l, new Transaction(1d, "chain"));
+        for (long id = 1; id < 50_000; id++) {
+            service.addTransaction(id, new Transaction(1d, "chain", id - 1));
+        }
+        assertEquals(service.transactionSum(0l), 50_000d);
+    }
+
+    @Test public void
+    batch_accepts_children_before_their_parent() throws Exception {
+        TransactionalService service = new ReadOptimizedTransactionService();
+        service.addTransaction(1l, new Transaction(1d, "root"));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(4l, new Transaction(8d, "leaf", 3l));
+        batch.put(3l, new Transaction(4d, "branch", 2l));
+        batch.put(2l, new Transaction(2d, "branch", 1l));
+        batch.put(5l, new Transaction(16d, "leaf", 1l));
+
+        assertTrue(service.addTransactions(batch).isEmpty());
+        assertEquals(service.transactionSum(1l), 31d);
+        assertEquals(service.transactionSum(3l), 12d);
+        assertEquals(service.transactionByType("leaf"), Sets.newHashSet(4l, 5l));
+    }
+
+    @Test public void
+    batch_rejects_descendants_of_rejected_transactions_only() throws Exception {
+        TransactionalService service = new ReadOptimizedTransactionService();
+        service.addTransaction(1l, new Transaction(1d, "root"));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(2l, new Transaction(2d, "orphan", 99l));
+        batch.put(3l, new Transaction(4d, "orphan", 2l));
+        batch.put(1l, new Transaction(8d, "duplicate"));
+        batch.put(4l, new Transaction(16d, "leaf", 1l));
+
+        Map<Long, InvalidTransaction> rejected = service.addTransactions(batch);
+        assertEquals(rejected.keySet(), Sets.newHashSet(1l, 2l, 3l));
+        assertTrue(rejected.get(3l) instanceof ParentTransactionDoesNotExistException);
+        assertEquals(service.transactionSum(1l), 17d);
+        assertTrue(service.transactionByType("orphan").isEmpty());
+    }
+
+    @Test public void
+    fixed_point_sums_reject_amounts_they_cannot_represent() throws Exception {
+        TransactionalService service = new ReadOptimizedTransactionService(new InMemoryTransactionalRepository(),
+                new BitmapTypeRepository(), new FixedPointSumRepository(2));
+        service.addTransaction(1l, new Transaction(0.1d, "root"));
+        try {
+            service.addTransaction(2l, new Transaction(0.001d, "leaf", 1l));
+            fail("The amount has more than 2 decimals");
+        } catch (InvalidAmountException e) {
+            assertTrue(service.transactionByType("leaf").isEmpty());
+        }
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(3l, new Transaction(0.2d, "leaf", 1l));
+        batch.put(4l, new Transaction(0.005d, "leaf", 1l));
+        batch.put(5l, new Transaction(0.3d, "leaf", 4l));
+
+        Map<Long, InvalidTransaction> rejected = service.addTransactions(batch);
+        assertEquals(rejected.keySet(), Sets.newHashSet(4l, 5l));
+        assertTrue(rejected.get(4l) instanceof InvalidAmountException);
+        assertEquals(service.transactionSum(1l), 0.3d);
+        assertEquals(service.transactionByType("leaf"), Sets.newHashSet(3l));
+        assertEquals(service.typeStatistics("leaf"), new TypeStatistics(1, 0.2d, 0.2d, 0.2d));
+    }
+
+    @Test public void
+    fixed_point_sums_never_overflow_once_a_transaction_is_stored() throws Exception {
+        TransactionalService service = new ReadOptimizedTransactionService(new InMemoryTransactionalRepository(),
+                new BitmapTypeRepository(), new FixedPointSumRepository(0));
+        service.addTransaction(1l, new Transaction(0d, "root"));
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final long first = 100l * (t + 1);
+            futures.add(executor.submit(() -> {
+                int stored = 0;
+                for (long id = first; id < first + 4; id++) {
+                    try {
+                        service.addTransaction(id, new Transaction(0x1p60, "child", 1l));
+                        stored++;
+                    } catch (InvalidAmountException e) {
+                        // no room left in the sum of the root
+                    }
+                }
+                return stored;
+            }));
+        }
+        int stored = 0;
+        for (Future<Integer> future : futures) {
+            stored += future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(stored, 7);
+        assertEquals(service.transactionByType("child").size(), 7);
+        assertEquals(service.transactionSum(1l), 7 * 0x1p60);
+    }
+
+    @Test public void
+    fixed_point_batches_refuse_amounts_overflowing_together() throws Exception {
+        TransactionalService service = new ReadOptimizedTransactionService(new InMemoryTransactionalRepository(),
+                new BitmapTypeRepository(), new FixedPointSumRepository(0));
+        service.addTransaction(1l, new Transaction(0x1p61, "root"));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(2l, new Transaction(0x1p62, "child", 1l));
+        batch.put(3l, new Transaction(0x1p62, "child", 1l));
+        batch.put(4l, new Transaction(1d, "child", 3l));
+
+        Map<Long, InvalidTransaction> rejected = service.addTransactions(batch);
+        assertEquals(rejected.keySet(), Sets.newHashSet(3l, 4l));
+        assertTrue(rejected.get(3l) instanceof InvalidAmountException);
+        assertEquals(service.transactionByType("child"), Sets.newHashSet(2l));
+        assertEquals(service.transactionSum(1l), 0x1p61 + 0x1p62);
+    }
+
+    @Test public void
+    type_statistics_follow_every_write() throws Exception {
+        TransactionalService service = new ReadOptimizedTransactionService();
+        assertEquals(service.typeStatistics("read_stats"), TypeStatistics.EMPTY);
+
+        service.addTransaction(1l, new Transaction(4d, "read_stats"));
+        service.addTransaction(2l, new Transaction(1d, "read_stats_other", 1l));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(3l, new Transaction(10d, "read_stats", 1l));
+        batch.put(4l, new Transaction(7d, "read_stats", 99l));
+        service.addTransactions(batch);
+
+        TypeStatistics statistics = service.typeStatistics("read_stats");
+        assertEquals(statistics, new TypeStatistics(2, 14d, 4d, 10d));
+        assertEquals(statistics.average(), 7d);
+    }
+
+    @Test public void
+    subtree_statistics_are_read_from_the_euler_tour_index() throws Exception {
+        TransactionalService service = new ReadOptimizedTransactionService(new InMemoryTransactionalRepository(),
+                new BitmapTypeRepository(), new EulerTourSumRepository());
+        service.addTransaction(1l, new Transaction(5d, "read_subtree"));
+        service.addTransaction(2l, new Transaction(10d, "read_subtree_other", 1l));
+        service.addTransaction(3l, new Transaction(2d, "read_subtree", 2l));
+
+        assertEquals(service.transactionSum(1l), 17d);
+        assertEquals(service.subTreeStatistics(1l, null), new TypeStatistics(3, 17d, 2d, 10d));
+        assertEquals(service.subTreeStatistics(2l, "read_subtree"), new TypeStatistics(1, 2d, 2d, 2d));
+    }
+
+    @Test public void
+    subtree_statistics_are_computed_without_the_euler_tour_index() throws Exception {
+        TransactionalService service = new ReadOptimizedTransactionService();
+        service.addTransaction(1l, new Transaction(5d, "read_subtree"));
+        service.addTransaction(2l, new Transaction(10d, "read_subtree_other", 1l));
+        service.addTransaction(3l, new Transaction(2d, "read_subtree", 2l));
+
+        assertEquals(service.subTreeStatistics(1l, "read_subtree"), new TypeStatistics(2, 7d, 2d, 5d));
+        try {
+            service.subTreeStatistics(4l, null);
+            fail("There is no such transaction");
+        } catch (TransactionDoesNotExistException expected) {
+        }
+    }
+
+    @Test public void
+    rejected_transactions_do_not_register_their_type() throws Exception {
+        TransactionalService service = new ReadOptimizedTransactionService();
+        service.addTransaction(1l, new Transaction(1d, "read_registered"));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(1l, new Transaction(1d, "read_rejected_duplicate"));
+        batch.put(2l, new Transaction(1d, "read_rejected_orphan", 99l));
+
+        assertEquals(service.addTransactions(batch).size(), 2);
+        assertEquals(TypeDictionary.lookup("read_rejected_duplicate"), TypeDictionary.NONE);
+        assertEquals(TypeDictionary.lookup("read_rejected_orphan"), TypeDictionary.NONE);
+        assertEquals(service.transactionByType("read_registered"), Sets.newHashSet(1l));
+    }
+}
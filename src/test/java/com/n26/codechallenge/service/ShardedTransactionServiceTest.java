@@ -0,0 +1,182 @@
+package com.n26.codechallenge.service;
+
+import com.google.common.collect.Sets;
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.InvalidTransaction;
+import com.n26.codechallenge.exception.ParentTransactionDoesNotExistException;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
+import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Set of unit tests to ensure the expected behaviour of {@link ShardedTransactionService}
+ */
+public class ShardedTransactionServiceTest {
+
+    private static List<TransactionalService> shards(int count) {
+        List<TransactionalService> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shards.add(i % 2 == 0 ? new WriteOptimizedTransactionService() : new ReadOptimizedTransactionService());
+        }
+        return shards;
+    }
+
+    @Test public void
+    example_in_the_description_works() throws Exception {
+        TransactionalService service = new ShardedTransactionService(shards(4));
+        service.addTransaction(10l, new Transaction(5000d, "sharded_cars"));
+        service.addTransaction(11l, new Transaction(10000d, "sharded_shopping", 10l));
+        service.addTransaction(12l, new Transaction(5000d, "sharded_shopping", 11l));
+
+        assertEquals(service.transaction(11l), new Transaction(10000d, "sharded_shopping", 10l));
+        assertEquals(service.transactionByType("sharded_cars"), Collections.singleton(10l));
+        assertEquals(service.transactionSum(10l), 20000d);
+        assertEquals(service.transactionSum(11l), 15000d);
+    }
+
+    @Test public void
+    trees_are_spread_over_the_shards_and_children_follow_their_root() throws Exception {
+        List<TransactionalService> shards = shards(4);
+        TransactionalService service = new ShardedTransactionService(shards);
+        for (long root = 0; root < 100; root++) {
+            service.addTransaction(root, new Transaction(1d, "sharded_spread"));
+            service.addTransaction(1000 + root, new Transaction(2d, "sharded_spread", root));
+            service.addTransaction(2000 + root, new Transaction(3d, "sharded_spread", 1000 + root));
+        }
+
+        int total = 0;
+        for (TransactionalService shard : shards) {
+            int roots = 0;
+            for (long id : shard.transactionByType("sharded_spread")) {
+                if (id < 1000) {
+                    roots++;
+                    assertEquals(shard.transactionSum(id), 6d);
+                }
+            }
+            assertTrue(roots > 0, "every shard holds some trees");
+            assertEquals(shard.transactionByType("sharded_spread").size(), 3 * roots);
+            total += roots;
+        }
+        assertEquals(total, 100);
+    }
+
+    @Test public void
+    identifiers_are_unique_across_shards() throws Exception {
+        TransactionalService service = new ShardedTransactionService(shards(4));
+        service.addTransaction(1l, new Transaction(1d, "sharded_unique"));
+        for (long id = 2; id < 20; id++) {
+            service.addTransaction(id, new Transaction(1d, "sharded_unique", 1l));
+        }
+        for (long id = 1; id < 20; id++) {
+            try {
+                service.addTransaction(id, new Transaction(1d, "sharded_unique"));
+                fail("identifier " + id + " was added twice");
+            } catch (TransactionAlreadyExistsException e) {
+                // expected
+            }
+        }
+        assertEquals(service.transactionSum(1l), 19d);
+    }
+
+    @Test public void
+    rejected_transactions_leave_their_identifier_free() throws Exception {
+        TransactionalService service = new ShardedTransactionService(shards(2));
+        try {
+            service.addTransaction(1l, new Transaction(1d, "sharded_free", 7l));
+            fail();
+        } catch (ParentTransactionDoesNotExistException e) {
+            // expected
+        }
+        try {
+            service.transaction(1l);
+            fail();
+        } catch (TransactionDoesNotExistException e) {
+            // expected
+        }
+        service.addTransaction(1l, new Transaction(1d, "sharded_free"));
+        assertEquals(service.transaction(1l), new Transaction(1d, "sharded_free"));
+    }
+
+    @Test public void
+    identifiers_a_failing_shard_did_not_store_are_released() throws Exception {
+        TransactionalService failing = new WriteOptimizedTransactionService() {
+            @Override
+            public Map<Long, InvalidTransaction> addTransactions(Map<Long, Transaction> transactions) {
+                Map.Entry<Long, Transaction> first = transactions.entrySet().iterator().next();
+                super.addTransactions(Collections.singletonMap(first.getKey(), first.getValue()));
+                throw new IllegalStateException("The shard failed after storing transaction " + first.getKey());
+            }
+        };
+        TransactionalService service = new ShardedTransactionService(Collections.singletonList(failing));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(1l, new Transaction(1d, "sharded_failing"));
+        batch.put(2l, new Transaction(2d, "sharded_failing"));
+        try {
+            service.addTransactions(batch);
+            fail("The shard failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(service.transaction(1l), new Transaction(1d, "sharded_failing"));
+        try {
+            service.addTransaction(1l, new Transaction(3d, "sharded_failing"));
+            fail("Transaction 1 is stored");
+        } catch (TransactionAlreadyExistsException e) {
+            // expected
+        }
+        service.addTransaction(2l, new Transaction(2d, "sharded_failing"));
+        assertEquals(service.transaction(2l), new Transaction(2d, "sharded_failing"));
+    }
+
+    @Test public void
+    batches_are_routed_parents_first_and_report_every_rejection() throws Exception {
+        TransactionalService service = new ShardedTransactionService(shards(4));
+        service.addTransaction(1l, new Transaction(1d, "sharded_batch"));
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(12l, new Transaction(4d, "sharded_batch", 11l));
+        batch.put(11l, new Transaction(2d, "sharded_batch", 10l));
+        batch.put(10l, new Transaction(1d, "sharded_batch"));
+        batch.put(1l, new Transaction(5d, "sharded_batch"));
+        batch.put(2l, new Transaction(6d, "sharded_batch", 1l));
+        batch.put(3l, new Transaction(7d, "sharded_batch", 99l));
+        batch.put(4l, new Transaction(8d, "sharded_batch", 3l));
+
+        Map<Long, InvalidTransaction> rejected = service.addTransactions(batch);
+
+        assertEquals(rejected.keySet(), Sets.newHashSet(1l, 3l, 4l));
+        assertTrue(rejected.get(1l) instanceof TransactionAlreadyExistsException);
+        assertTrue(rejected.get(3l) instanceof ParentTransactionDoesNotExistException);
+        assertTrue(rejected.get(4l) instanceof ParentTransactionDoesNotExistException);
+        assertEquals(service.transactionSum(10l), 7d);
+        assertEquals(service.transactionSum(1l), 7d);
+        assertEquals(service.transactionSums(Arrays.asList(10l, 1l, 3l)).keySet(), Sets.newHashSet(10l, 1l));
+        assertEquals(service.transactions(Arrays.asList(11l, 2l, 4l)).keySet(), Sets.newHashSet(11l, 2l));
+    }
+
+    @Test public void
+    type_queries_merge_the_shards() throws Exception {
+        TransactionalService service = new ShardedTransactionService(shards(4));
+        for (long id = 0; id < 50; id++) {
+            service.addTransaction(id, new Transaction((double) id, id % 2 == 0 ? "sharded_even" : "sharded_odd"));
+        }
+
+        assertEquals(service.transactionByType("sharded_even").size(), 25);
+        assertEquals(service.transactionByTypes(Arrays.asList("sharded_even", "sharded_odd"), null, 5), Arrays.asList(0l, 1l, 2l, 3l, 4l));
+        assertEquals(service.transactionByTypes(Collections.singleton("sharded_odd"), 40l, 10), Arrays.asList(41l, 43l, 45l, 47l, 49l));
+        assertEquals(service.typeStatistics("sharded_even"), new TypeStatistics(25, 600d, 0d, 48d));
+        assertEquals(service.typeStatistics("sharded_none"), TypeStatistics.EMPTY);
+    }
+}
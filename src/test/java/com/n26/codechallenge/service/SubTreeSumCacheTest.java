@@ -0,0 +1,39 @@
+package com.n26.codechallenge.service;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link SubTreeSumCache}
+ */
+public class SubTreeSumCacheTest {
+
+    @Test
+    public void
+    sums_computed_across_a_clear_are_not_memoized() throws Exception {
+        SubTreeSumCache cache = new SubTreeSumCache(16);
+        assertNull(cache.get(1l));
+        long stamp = cache.stamp(1l);
+        cache.clear();
+        cache.put(1l, 5d, stamp);
+
+        assertNull(cache.get(1l));
+    }
+
+    @Test
+    public void
+    reading_a_stamp_after_a_clear_activates_the_memo_again() throws Exception {
+        SubTreeSumCache cache = new SubTreeSumCache(16);
+        assertNull(cache.get(1l));
+        cache.clear();
+        assertFalse(cache.isActive());
+        long stamp = cache.stamp(1l);
+
+        // a writer landing in the subtree meanwhile must see the memo active, and invalidate the sum
+        assertTrue(cache.isActive());
+        cache.invalidate(1l);
+        cache.put(1l, 5d, stamp);
+        assertNull(cache.get(1l));
+    }
+}
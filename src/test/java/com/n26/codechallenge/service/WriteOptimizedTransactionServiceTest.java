@@ -3,13 +3,21 @@ package com.n26.codechallenge.service;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.TypeStatistics;
+import com.n26.codechallenge.exception.TransactionAlreadyExistsException;
 import com.n26.codechallenge.exception.TransactionDoesNotExistException;
+import com.n26.codechallenge.repository.ColumnarTransactionalRepository;
+import com.n26.codechallenge.repository.InMemoryTransactionalRepository;
+import com.n26.codechallenge.repository.SubTreeListener;
 import com.n26.codechallenge.repository.TransactionalRepository;
 import org.mockito.Mockito;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.*;
@@ -29,10 +37,10 @@ public class WriteOptimizedTransactionServiceTest {
     @Test public void
     transaction_by_type_simply_works() throws Exception {
         Map<Long, Transaction> mockTransactionStorage = new HashMap<>();
-        mockTransactionStorage.put(1l, new Transaction(1d, "type1"));
-        mockTransactionStorage.put(2l, new Transaction(1d, "type2"));
-        mockTransactionStorage.put(3l, new Transaction(1d, "type2"));
-        mockTransactionStorage.put(4l, new Transaction(1d, "type2"));
+        mockTransactionStorage.put(1l, new Transaction(1d, "type1").encoded());
+        mockTransactionStorage.put(2l, new Transaction(1d, "type2").encoded());
+        mockTransactionStorage.put(3l, new Transaction(1d, "type2").encoded());
+        mockTransactionStorage.put(4l, new Transaction(1d, "type2").encoded());
         TransactionalRepository repository = Mockito.mock(TransactionalRepository.class);
         when(repository.allTransactions()).thenReturn(mockTransactionStorage);
         TransactionalService service = new WriteOptimizedTransactionService(repository);
@@ -41,6 +49,55 @@ public class WriteOptimizedTransactionServiceTest {
         Assert.assertEquals(service.transactionByType("type3"), Collections.emptySet());
     }
 
+    @Test public void
+    transactions_by_type_are_a_snapshot_unchanged_by_later_writes() throws Exception {
+        for (TransactionalRepository repository : Arrays.asList(new InMemoryTransactionalRepository(), new ColumnarTransactionalRepository())) {
+            TransactionalService service = new WriteOptimizedTransactionService(repository);
+            service.addTransaction(2l, new Transaction(1d, "cars"));
+            service.addTransaction(1l, new Transaction(1d, "cars"));
+            Set<Long> cars = service.transactionByType("cars");
+
+            service.addTransaction(3l, new Transaction(1d, "cars"));
+
+            Assert.assertEquals(cars.size(), 2);
+            Assert.assertEquals(new ArrayList<>(cars), Arrays.asList(2l, 1l));
+            Assert.assertFalse(cars.contains(3l));
+        }
+    }
+
+    @Test public void
+    transaction_by_types_returns_the_lowest_identifiers_after_the_cursor() throws Exception {
+        Map<Long, Transaction> mockTransactionStorage = new HashMap<>();
+        for (long id = 100; id > 0; id--) {
+            mockTransactionStorage.put(id, new Transaction(1d, id % 2 == 0 ? "even" : "odd"));
+        }
+        mockTransactionStorage.put(1000l, new Transaction(1d, "other"));
+        TransactionalRepository repository = Mockito.mock(TransactionalRepository.class);
+        when(repository.allTransactions()).thenReturn(mockTransactionStorage);
+        TransactionalService service = new WriteOptimizedTransactionService(repository);
+        Assert.assertEquals(service.transactionByTypes(Arrays.asList("even", "odd"), null, 3), Arrays.asList(1l, 2l, 3l));
+        Assert.assertEquals(service.transactionByTypes(Collections.singleton("even"), 95l, 3), Arrays.asList(96l, 98l, 100l));
+        Assert.assertEquals(service.transactionByTypes(Collections.singleton("even"), 100l, 3), Collections.emptyList());
+    }
+
+    @Test public void
+    columnar_repository_is_scanned_over_its_columns() throws Exception {
+        TransactionalService service = new WriteOptimizedTransactionService(new ColumnarTransactionalRepository());
+        service.addTransaction(0l, new Transaction(1d, "even"));
+        for (long id = 1; id < 40000; id++) {
+            service.addTransaction(id, new Transaction(1d, id % 2 == 0 ? "even" : "odd", id - 1));
+        }
+        service.addTransaction(50000l, new Transaction(2d, "other", 39999l));
+
+        Assert.assertEquals(service.transactionByType("even").size(), 20000);
+        Assert.assertTrue(service.transactionByType("even").contains(39998l));
+        Assert.assertEquals(service.transactionByType("other"), Sets.newHashSet(50000l));
+        Assert.assertEquals(service.transactionByType("unknown_type"), Collections.emptySet());
+        Assert.assertEquals(service.transactionByTypes(Arrays.asList("other", "odd"), 39990l, 3), Arrays.asList(39991l, 39993l, 39995l));
+        assertEquals(service.transactionSum(0l), 40002d);
+        assertEquals(service.transactionSum(39999l), 3d);
+    }
+
     @Test public void
     transaction_sum_by_parent_simply_woks() throws Exception {
         final double fixedAmountPerTransaction = 3d;
@@ -143,6 +200,100 @@ public class WriteOptimizedTransactionServiceTest {
         assertEquals(service.transactionSum(root), 7*fixedAmountPerTransaction);
     }
 
+    @Test public void
+    memoized_sums_are_invalidated_by_new_descendants() throws Exception {
+        WriteOptimizedTransactionService service = new WriteOptimizedTransactionService(new InMemoryTransactionalRepository(), 0, 100, SubTreeListener.IGNORE);
+        service.addTransaction(1l, new Transaction(1d, "type"));
+        service.addTransaction(2l, new Transaction(2d, "type", 1l));
+        service.addTransaction(3l, new Transaction(4d, "type"));
+        assertEquals(service.transactionSum(1l), 3d);
+        assertEquals(service.transactionSum(1l), 3d);
+        assertEquals(service.transactionSum(3l), 4d);
+        assertEquals(service.sumCacheHits(), 1);
+        assertEquals(service.sumCacheMisses(), 2);
+
+        service.addTransaction(4l, new Transaction(8d, "type", 2l));
+        assertEquals(service.sumCacheSize(), 1);
+        assertEquals(service.transactionSum(1l), 11d);
+
+        service.addTransactions(ImmutableMap.of(6l, new Transaction(32d, "type", 5l), 5l, new Transaction(16d, "type", 4l)));
+        assertEquals(service.transactionSum(1l), 59d);
+        assertEquals(service.transactionSum(3l), 4d);
+        assertEquals(service.sumCacheHits(), 2);
+    }
+
+    @Test public void
+    transaction_sums_report_only_existing_transactions_and_memoize_them() throws Exception {
+        List<Integer> sizes = new ArrayList<>();
+        WriteOptimizedTransactionService service = new WriteOptimizedTransactionService(new InMemoryTransactionalRepository(), 0, 100,
+                (size, depth) -> sizes.add(size));
+        service.addTransaction(1l, new Transaction(1d, "type"));
+        service.addTransaction(2l, new Transaction(2d, "type", 1l));
+        service.addTransaction(3l, new Transaction(4d, "type", 2l));
+        assertEquals(service.transactionSum(3l), 4d);
+
+        assertEquals(service.transactionSums(Arrays.asList(1l, 9l, 2l, 3l, 1l)), ImmutableMap.of(1l, 7d, 2l, 6d, 3l, 4d));
+        assertEquals(sizes, Arrays.asList(1, 2, 1));
+        assertEquals(service.transactionSum(1l), 7d);
+        assertEquals(service.sumCacheHits(), 2);
+    }
+
+    @Test public void
+    type_statistics_follow_every_accepted_write() throws Exception {
+        WriteOptimizedTransactionService service = new WriteOptimizedTransactionService();
+        service.addTransaction(1l, new Transaction(4d, "write_stats"));
+        service.addTransactions(ImmutableMap.of(2l, new Transaction(10d, "write_stats", 1l), 3l, new Transaction(7d, "write_stats", 99l)));
+        try {
+            service.addTransaction(1l, new Transaction(100d, "write_stats"));
+            fail("The identifier is already used");
+        } catch (TransactionAlreadyExistsException e) {
+            assertEquals(service.typeStatistics("write_stats"), new TypeStatistics(2, 14d, 4d, 10d));
+        }
+        assertEquals(service.typeStatistics("write_stats_unknown"), TypeStatistics.EMPTY);
+    }
+
+    @Test public void
+    least_recently_read_sums_are_evicted() throws Exception {
+        WriteOptimizedTransactionService service = new WriteOptimizedTransactionService(new InMemoryTransactionalRepository(), 0, 16, SubTreeListener.IGNORE);
+        for (long id = 0; id < 1000; id++) {
+            service.addTransaction(id, new Transaction(1d, "type"));
+            service.transactionSum(id);
+        }
+        assertTrue(service.sumCacheSize() <= 16);
+        assertEquals(service.sumCacheEvictions(), 1000 - service.sumCacheSize());
+    }
+
+    @Test public void
+    memoized_sums_stay_exact_under_concurrent_writes() throws Exception {
+        WriteOptimizedTransactionService service = new WriteOptimizedTransactionService(new InMemoryTransactionalRepository(), 0, 1000, SubTreeListener.IGNORE);
+        service.addTransaction(0l, new Transaction(1d, "type"));
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int writer = 0; writer < 2; writer++) {
+            final long first = 1 + writer * 10_000;
+            tasks.add(threads.submit(() -> {
+                for (long id = first; id < first + 5_000; id++) {
+                    service.addTransaction(id, new Transaction(1d, "type", id == first ? 0l : id - 1));
+                }
+                return null;
+            }));
+        }
+        for (int reader = 0; reader < 2; reader++) {
+            tasks.add(threads.submit(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    service.transactionSum(0l);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        threads.shutdown();
+        assertEquals(service.transactionSum(0l), 10_001d);
+        assertEquals(service.transactionSum(1l), 5_000d);
+    }
+
     private TransactionalRepository mockRepository(double fixedAmountPerTransaction, long parentIdWith3Children, long parentIdWith1Child) {
         TransactionalRepository repository = Mockito.mock(TransactionalRepository.class);
         when(repository.transaction(parentIdWith3Children)).thenReturn(new Transaction(fixedAmountPerTransaction, "any_type"));
@@ -162,4 +313,13 @@ public class WriteOptimizedTransactionServiceTest {
 
 
 
-}
\ No newline at end of file
+
+    @Test(expectedExceptions = TransactionDoesNotExistException.class) public void
+    subtree_statistics_of_an_inexisting_transaction_fail() throws Exception {
+        WriteOptimizedTransactionService service = new WriteOptimizedTransactionService();
+        service.addTransaction(1l, new Transaction(4d, "write_subtree"));
+        service.addTransaction(2l, new Transaction(6d, "write_subtree", 1l));
+        assertEquals(service.subTreeStatistics(1l, null), new TypeStatistics(2, 10d, 4d, 6d));
+        service.subTreeStatistics(3l, "write_subtree");
+    }
+}
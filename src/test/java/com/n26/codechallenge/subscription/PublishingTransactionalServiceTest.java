@@ -0,0 +1,189 @@
+package com.n26.codechallenge.subscription;
+
+import com.n26.codechallenge.Transaction;
+import com.n26.codechallenge.repository.InMemoryTransactionalRepository;
+import com.n26.codechallenge.service.WriteOptimizedTransactionService;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Set of unit tests to ensure expected behaviour of {@link PublishingTransactionalService} and {@link SubscriptionHub}
+ */
+public class PublishingTransactionalServiceTest {
+
+    private static final long NEVER = TimeUnit.DAYS.toMillis(1);
+
+    private SubscriptionHub hub;
+    private PublishingTransactionalService service;
+    private final BlockingQueue<Changes> received = new LinkedBlockingQueue<>();
+
+    @BeforeMethod
+    public void setUp() {
+        hub = new SubscriptionHub(2);
+        service = new PublishingTransactionalService(new WriteOptimizedTransactionService(new InMemoryTransactionalRepository()), hub, NEVER);
+        received.clear();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        service.close();
+        hub.close();
+    }
+
+    @Test
+    public void
+    watched_sum_is_sent_once_per_flush_whatever_the_number_of_writes() throws Exception {
+        service.addTransaction(10l, new Transaction(5000d, "cars"));
+        hub.subscribe(Collections.singletonList(10l), Collections.emptyList(), received::add);
+        service.flush();
+        assertEquals(next().sums(), Collections.singletonMap(10l, 5000d));
+
+        service.addTransaction(11l, new Transaction(10000d, "shopping", 10l));
+        service.addTransaction(12l, new Transaction(1d, "shopping", 11l));
+        service.flush();
+
+        assertEquals(next().sums(), Collections.singletonMap(10l, 15001d));
+    }
+
+    @Test
+    public void
+    unchanged_sums_are_not_sent_again() throws Exception {
+        service.addTransaction(10l, new Transaction(5000d, "cars"));
+        hub.subscribe(Collections.singletonList(10l), Collections.emptyList(), received::add);
+        service.flush();
+        next();
+
+        service.addTransaction(20l, new Transaction(1d, "cars"));
+        service.flush();
+
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void
+    accepted_transactions_of_watched_types_are_sent() throws Exception {
+        hub.subscribe(Collections.emptyList(), Collections.singletonList("cars"), received::add);
+        Map<Long, Transaction> batch = new LinkedHashMap<>();
+        batch.put(10l, new Transaction(5000d, "cars"));
+        batch.put(11l, new Transaction(1d, "shopping", 10l));
+        batch.put(12l, new Transaction(2d, "cars", 99l));
+
+        assertEquals(service.addTransactions(batch).keySet(), Collections.singleton(12l));
+        service.flush();
+
+        assertEquals(next().transactions(), Collections.singletonMap(10l, new Transaction(5000d, "cars")));
+    }
+
+    @Test
+    public void
+    changes_pile_up_while_a_slow_subscriber_is_sent_a_batch() throws Exception {
+        CountDownLatch slow = new CountDownLatch(1);
+        service.addTransaction(10l, new Transaction(1d, "cars"));
+        hub.subscribe(Collections.singletonList(10l), Collections.singletonList("cars"), changes -> {
+            received.add(changes);
+            try {
+                slow.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        service.flush();
+        next();
+
+        for (long id = 11; id < 15; id++) {
+            service.addTransaction(id, new Transaction(1d, "cars", 10l));
+            service.flush();
+        }
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+        slow.countDown();
+        Thread.sleep(100);
+        service.flush();
+
+        Changes changes = next();
+        assertEquals(changes.sums(), Collections.singletonMap(10l, 5d));
+        assertEquals(changes.transactions().keySet().size(), 2);
+        assertEquals(changes.dropped(), 2);
+        assertEquals(hub.droppedTransactions(), 2);
+    }
+
+    @Test
+    public void
+    changes_piled_up_during_a_slow_send_go_out_as_soon_as_it_completes() throws Exception {
+        CountDownLatch slow = new CountDownLatch(1);
+        hub.subscribe(Collections.emptyList(), Collections.singletonList("cars"), changes -> {
+            received.add(changes);
+            try {
+                slow.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        service.addTransaction(10l, new Transaction(1d, "cars"));
+        service.flush();
+        assertEquals(next().transactions().keySet(), Collections.singleton(10l));
+
+        service.addTransaction(11l, new Transaction(1d, "cars", 10l));
+        service.flush();
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+        slow.countDown();
+
+        assertEquals(next().transactions().keySet(), Collections.singleton(11l));
+    }
+
+    @Test
+    public void
+    every_watched_ancestor_of_new_transactions_is_sent_its_sum() throws Exception {
+        service.addTransaction(10l, new Transaction(1d, "cars"));
+        service.addTransaction(11l, new Transaction(1d, "cars", 10l));
+        hub.subscribe(Arrays.asList(10l, 11l), Collections.emptyList(), received::add);
+        service.flush();
+        next();
+
+        service.addTransaction(12l, new Transaction(1d, "cars", 11l));
+        service.addTransaction(13l, new Transaction(1d, "cars", 11l));
+        service.addTransaction(14l, new Transaction(1d, "cars", 10l));
+        service.flush();
+
+        Map<Long, Double> sums = new LinkedHashMap<>();
+        sums.put(10l, 5d);
+        sums.put(11l, 3d);
+        assertEquals(next().sums(), sums);
+    }
+
+    @Test
+    public void
+    subscriber_is_dropped_once_its_client_is_gone() throws Exception {
+        hub.subscribe(Collections.emptyList(), Collections.singletonList("cars"), changes -> {
+            throw new IOException("gone");
+        });
+        service.addTransaction(10l, new Transaction(1d, "cars"));
+        service.flush();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (hub.subscriptions() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(hub.subscriptions(), 0);
+    }
+
+    private Changes next() throws InterruptedException {
+        Changes changes = received.poll(5, TimeUnit.SECONDS);
+        assertTrue(changes != null, "no changes sent");
+        return changes;
+    }
+}